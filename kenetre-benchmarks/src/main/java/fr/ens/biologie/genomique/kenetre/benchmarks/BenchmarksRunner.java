@@ -0,0 +1,107 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This class define the main class of the benchmarks. The arguments are the
+ * arguments of the JMH command line. Unlike the default JMH main class, the
+ * results are saved in JSON format by default, in a file named with the
+ * version of Kenetre, so the results of two releases can be compared.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class BenchmarksRunner {
+
+  /**
+   * Get the name of the default result file.
+   * @return the name of the default result file
+   */
+  private static String defaultResultFilename() {
+
+    final String version =
+        BenchmarksRunner.class.getPackage().getImplementationVersion();
+
+    return "kenetre-benchmarks-"
+        + (version == null ? "dev" : version) + ".json";
+  }
+
+  //
+  // Main method
+  //
+
+  /**
+   * Main method.
+   * @param args command line arguments
+   * @throws RunnerException if an error occurs while running the benchmarks
+   * @throws IOException if an error occurs while listing the benchmarks
+   */
+  public static void main(final String[] args)
+      throws RunnerException, IOException {
+
+    final CommandLineOptions cmdOptions;
+    try {
+      cmdOptions = new CommandLineOptions(args);
+    } catch (CommandLineOptionException e) {
+      System.err.println("Error parsing command line: " + e.getMessage());
+      System.exit(1);
+      return;
+    }
+
+    // Let JMH handle the help and the lists
+    if (cmdOptions.shouldHelp()
+        || cmdOptions.shouldList() || cmdOptions.shouldListWithParams()
+        || cmdOptions.shouldListProfilers()
+        || cmdOptions.shouldListResultFormats()) {
+      Main.main(args);
+      return;
+    }
+
+    final ChainedOptionsBuilder builder =
+        new OptionsBuilder().parent(cmdOptions);
+
+    // JSON results by default
+    if (!cmdOptions.getResultFormat().hasValue()) {
+      builder.resultFormat(ResultFormatType.JSON);
+    }
+
+    if (!cmdOptions.getResult().hasValue()) {
+      builder.result(defaultResultFilename());
+    }
+
+    new Runner(builder.build()).run();
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.ens.biologie.genomique.kenetre.io.CompressionType;
+
+/**
+ * This class define the benchmarks of the compressed streams created by
+ * {@link CompressionType}. The data to compress is synthetic FASTQ data.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  @Param({"GZIP", "BZIP2"})
+  public CompressionType compressionType;
+
+  @Param({"20000"})
+  public int readCount;
+
+  @Param({"1"})
+  public int threads;
+
+  private byte[] data;
+  private byte[] compressedData;
+
+  @Setup
+  public void setup() throws IOException {
+
+    CompressionType.setGZipCompressionThreads(this.threads);
+    CompressionType.setDecompressionThreads(this.threads);
+
+    this.data = SyntheticData.toFastq(SyntheticData.createReads(this.readCount,
+        150, SyntheticData.DEFAULT_SEED));
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try (OutputStream out = this.compressionType.createOutputStream(os)) {
+      out.write(this.data);
+    }
+    this.compressedData = os.toByteArray();
+  }
+
+  @Benchmark
+  public void compress() throws IOException {
+
+    try (OutputStream out = this.compressionType
+        .createOutputStream(OutputStream.nullOutputStream())) {
+
+      for (int i = 0; i < this.data.length; i += BUFFER_SIZE) {
+        out.write(this.data, i, Math.min(BUFFER_SIZE, this.data.length - i));
+      }
+    }
+  }
+
+  @Benchmark
+  public long decompress() throws IOException {
+
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    long result = 0;
+
+    try (InputStream in = this.compressionType
+        .createInputStream(new ByteArrayInputStream(this.compressedData))) {
+
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+        result += n;
+      }
+    }
+
+    return result;
+  }
+
+}
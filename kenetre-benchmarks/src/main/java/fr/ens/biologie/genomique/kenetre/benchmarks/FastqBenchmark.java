@@ -0,0 +1,108 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+import fr.ens.biologie.genomique.kenetre.bio.io.FastqReader;
+import fr.ens.biologie.genomique.kenetre.bio.io.FastqWriter;
+
+/**
+ * This class define the benchmarks of the parsing and the writing of FASTQ
+ * data. The data is read from and written to memory to only measure the cost
+ * of the FASTQ format.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FastqBenchmark {
+
+  @Param({"100000"})
+  public int readCount;
+
+  @Param({"75", "150"})
+  public int readLength;
+
+  private List<ReadSequence> reads;
+  private byte[] fastq;
+
+  @Setup
+  public void setup() throws IOException {
+
+    this.reads = SyntheticData.createReads(this.readCount, this.readLength,
+        SyntheticData.DEFAULT_SEED);
+    this.fastq = SyntheticData.toFastq(this.reads);
+  }
+
+  @Benchmark
+  public void parse(final Blackhole bh)
+      throws IOException, BadBioEntryException {
+
+    try (FastqReader reader =
+        new FastqReader(new ByteArrayInputStream(this.fastq))) {
+
+      for (ReadSequence read : reader) {
+        bh.consume(read);
+      }
+      reader.throwException();
+    }
+  }
+
+  @Benchmark
+  public void write() throws IOException {
+
+    try (FastqWriter writer =
+        new FastqWriter(OutputStream.nullOutputStream())) {
+      for (ReadSequence read : this.reads) {
+        writer.write(read);
+      }
+    }
+  }
+
+}
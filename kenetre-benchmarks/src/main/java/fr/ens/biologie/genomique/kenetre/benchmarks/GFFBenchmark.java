@@ -0,0 +1,100 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.GFFEntry;
+import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
+import fr.ens.biologie.genomique.kenetre.bio.io.GFFReader;
+import fr.ens.biologie.genomique.kenetre.bio.io.GTFReader;
+import fr.ens.biologie.genomique.kenetre.bio.io.ParallelGFFReader;
+
+/**
+ * This class define the benchmarks of the parsing of annotations in GTF
+ * format. The value of the "gene_id" attribute of each entry is read, as
+ * counters do.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GFFBenchmark {
+
+  @Param({"20000"})
+  public int genesPerChromosome;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  private byte[] gtf;
+
+  @Setup
+  public void setup() {
+
+    final GenomeDescription desc =
+        SyntheticData.createGenomeDescription(5, 50_000_000);
+    this.gtf = SyntheticData.createGTF(desc, this.genesPerChromosome,
+        SyntheticData.DEFAULT_SEED);
+  }
+
+  @Benchmark
+  public void parse(final Blackhole bh)
+      throws IOException, BadBioEntryException {
+
+    final InputStream is = new ByteArrayInputStream(this.gtf);
+
+    try (GFFReader reader = this.threads > 1
+        ? new ParallelGFFReader(is, true, this.threads) : new GTFReader(is)) {
+
+      for (GFFEntry e : reader) {
+        bh.consume(e.getAttributeValue("gene_id"));
+      }
+      reader.throwException();
+    }
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
+import fr.ens.biologie.genomique.kenetre.bio.GenomicArray;
+import fr.ens.biologie.genomique.kenetre.bio.GenomicInterval;
+
+/**
+ * This class define the benchmarks of the build and the queries of a
+ * {@link GenomicArray}.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GenomicArrayBenchmark {
+
+  private static final int CHROMOSOMES = 10;
+  private static final int CHROMOSOME_LENGTH = 10_000_000;
+
+  @Param({"200000"})
+  public int featureCount;
+
+  @Param({"1000000"})
+  public int queryCount;
+
+  private GenomeDescription desc;
+  private List<GenomicInterval> features;
+  private List<GenomicInterval> queries;
+  private GenomicArray<String> array;
+
+  @Setup
+  public void setup() {
+
+    this.desc =
+        SyntheticData.createGenomeDescription(CHROMOSOMES, CHROMOSOME_LENGTH);
+    this.features = SyntheticData.createIntervals(this.desc,
+        this.featureCount, 2000, SyntheticData.DEFAULT_SEED);
+    this.queries = SyntheticData.createIntervals(this.desc, this.queryCount,
+        150, SyntheticData.DEFAULT_SEED + 1);
+    this.array = build();
+  }
+
+  @Benchmark
+  public GenomicArray<String> build() {
+
+    final GenomicArray<String> result = new GenomicArray<>(this.desc);
+
+    int i = 0;
+    for (GenomicInterval feature : this.features) {
+      result.addEntry(feature, "feature" + (i++ % 50000));
+    }
+    result.freeze();
+
+    return result;
+  }
+
+  @Benchmark
+  public long query() {
+
+    final long[] result = new long[1];
+
+    for (GenomicInterval q : this.queries) {
+      this.array.forEachEntry(q.getChromosome(), q.getStart(), q.getEnd(),
+          (start, end, strand, values) -> result[0] += values.size());
+    }
+
+    return result[0];
+  }
+
+}
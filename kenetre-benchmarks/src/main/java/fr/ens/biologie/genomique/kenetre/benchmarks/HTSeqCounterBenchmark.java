@@ -0,0 +1,113 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.benchmarks;
+
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.ATTRIBUTE_ID_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.GENOMIC_TYPE_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.OVERLAP_MODE_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.STRANDED_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.THREADS_PARAMETER_NAME;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
+import fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter;
+import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * This class define the benchmarks of the counting of alignments with
+ * {@link HTSeqCounter}. The counter is initialized once, only the counting
+ * step is measured.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HTSeqCounterBenchmark {
+
+  private static final String COUNTER_GROUP = "expression";
+
+  @Param({"union", "intersection-nonempty"})
+  public String overlapMode;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  @Param({"500000"})
+  public int alignmentCount;
+
+  private HTSeqCounter counter;
+  private List<SAMRecord> alignments;
+
+  @Setup
+  public void setup() throws KenetreException, IOException {
+
+    final GenomeDescription desc =
+        SyntheticData.createGenomeDescription(5, 5_000_000);
+    final byte[] gtf =
+        SyntheticData.createGTF(desc, 2000, SyntheticData.DEFAULT_SEED);
+
+    this.counter = new HTSeqCounter();
+    this.counter.setParameter(OVERLAP_MODE_PARAMETER_NAME, this.overlapMode);
+    this.counter.setParameter(GENOMIC_TYPE_PARAMETER_NAME, "exon");
+    this.counter.setParameter(ATTRIBUTE_ID_PARAMETER_NAME, "gene_id");
+    this.counter.setParameter(STRANDED_PARAMETER_NAME, "no");
+    this.counter.setParameter(THREADS_PARAMETER_NAME, "" + this.threads);
+    this.counter.init(desc, new ByteArrayInputStream(gtf), true);
+
+    this.alignments = SyntheticData.createAlignments(desc, this.alignmentCount,
+        100, SyntheticData.DEFAULT_SEED);
+  }
+
+  @Benchmark
+  public Map<String, Integer> count() throws KenetreException {
+
+    return this.counter.count(this.alignments, new LocalReporter(),
+        COUNTER_GROUP);
+  }
+
+}
@@ -0,0 +1,183 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.ens.biologie.genomique.kenetre.bio.DenseMatrix;
+import fr.ens.biologie.genomique.kenetre.bio.Matrix;
+import fr.ens.biologie.genomique.kenetre.bio.SparseMatrix;
+
+/**
+ * This class define the benchmarks of the {@link SparseMatrix} and
+ * {@link DenseMatrix} implementations. The matrices are expression matrices
+ * of genes (rows) and cells (columns) with a low density of non zero values,
+ * like in single cell experiments.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatrixBenchmark {
+
+  @Param({"sparse", "dense"})
+  public String implementation;
+
+  @Param({"20000"})
+  public int rowCount;
+
+  @Param({"100"})
+  public int columnCount;
+
+  @Param({"0.1"})
+  public double density;
+
+  private String[] rowNames;
+  private String[] columnNames;
+  private int[] nonZeroRows;
+  private int[] nonZeroColumns;
+  private int[] nonZeroValues;
+  private Matrix<Integer> matrix;
+
+  @Setup
+  public void setup() {
+
+    this.rowNames = new String[this.rowCount];
+    for (int i = 0; i < this.rowCount; i++) {
+      this.rowNames[i] = "gene" + i;
+    }
+
+    this.columnNames = new String[this.columnCount];
+    for (int i = 0; i < this.columnCount; i++) {
+      this.columnNames[i] = "cell" + i;
+    }
+
+    final Random random = new Random(SyntheticData.DEFAULT_SEED);
+    final int count = (int) (this.rowCount * this.columnCount * this.density);
+    this.nonZeroRows = new int[count];
+    this.nonZeroColumns = new int[count];
+    this.nonZeroValues = new int[count];
+
+    for (int i = 0; i < count; i++) {
+      this.nonZeroRows[i] = random.nextInt(this.rowCount);
+      this.nonZeroColumns[i] = random.nextInt(this.columnCount);
+      this.nonZeroValues[i] = 1 + random.nextInt(100);
+    }
+
+    this.matrix = fill();
+  }
+
+  /**
+   * Create an empty matrix.
+   * @return a new matrix
+   */
+  private Matrix<Integer> newMatrix() {
+
+    return "dense".equals(this.implementation)
+        ? new DenseMatrix<>(0) : new SparseMatrix<>(0);
+  }
+
+  @Benchmark
+  public Matrix<Integer> fill() {
+
+    final Matrix<Integer> result = newMatrix();
+    result.addRows(this.rowNames);
+    result.addColumns(this.columnNames);
+
+    for (int i = 0; i < this.nonZeroRows.length; i++) {
+      result.setValue(this.rowNames[this.nonZeroRows[i]],
+          this.columnNames[this.nonZeroColumns[i]], this.nonZeroValues[i]);
+    }
+
+    return result;
+  }
+
+  @Benchmark
+  public long getValues() {
+
+    long result = 0;
+
+    for (String rowName : this.rowNames) {
+      for (String columnName : this.columnNames) {
+        result += this.matrix.getValue(rowName, columnName);
+      }
+    }
+
+    return result;
+  }
+
+  @Benchmark
+  public long iterateNonZeroValues() {
+
+    long result = 0;
+
+    for (Matrix.Entry<Integer> e : this.matrix.nonZeroValues()) {
+      result += e.getValue();
+    }
+
+    return result;
+  }
+
+  @Benchmark
+  public long columnValues() {
+
+    long result = 0;
+
+    for (String columnName : this.columnNames) {
+      for (Integer value : this.matrix.getColumnValues(columnName)) {
+        result += value;
+      }
+    }
+
+    return result;
+  }
+
+  @Benchmark
+  public Matrix<Integer> add() {
+
+    final Matrix<Integer> result = newMatrix();
+    result.add(this.matrix);
+
+    return result;
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+import fr.ens.biologie.genomique.kenetre.bio.readfilter.MultiReadFilter;
+import fr.ens.biologie.genomique.kenetre.bio.readfilter.MotifReadFilter;
+import fr.ens.biologie.genomique.kenetre.bio.readfilter.MultiReadFilterBuilder;
+import fr.ens.biologie.genomique.kenetre.bio.readfilter.PatternReadFilter;
+import fr.ens.biologie.genomique.kenetre.bio.readfilter.ReadFilter;
+import fr.ens.biologie.genomique.kenetre.util.ConcurrentReporter;
+
+/**
+ * This class define the benchmarks of a chain of read filters. Only filters
+ * that do not modify the reads are used, so the same reads can be filtered at
+ * each invocation.
+ * <p>
+ * The motif benchmarks compare the search of the same forbidden motifs with
+ * the motif filter and with an alternation regex in the pattern filter. They
+ * do not depend on the adaptive ordering and counters parameters.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadFilterBenchmark {
+
+  @Param({"100000"})
+  public int readCount;
+
+  @Param({"false", "true"})
+  public boolean adaptiveOrdering;
+
+  @Param({"false", "true"})
+  public boolean counters;
+
+  private List<ReadSequence> reads;
+  private MultiReadFilter filter;
+  private ReadFilter motifFilter;
+  private ReadFilter regexFilter;
+
+  /** Number of adapter-like motifs to search. */
+  private static final int MOTIF_COUNT = 16;
+  private static final int MOTIF_LENGTH = 12;
+
+  @Setup
+  public void setup() throws KenetreException {
+
+    this.reads = SyntheticData.createReads(this.readCount, 150,
+        SyntheticData.DEFAULT_SEED);
+
+    final MultiReadFilterBuilder builder = new MultiReadFilterBuilder();
+    builder.addParameter("valid", "true");
+    builder.addParameter("length.minimal.length.threshold", "40");
+    builder.addParameter("quality.threshold", "20");
+    builder.addParameter("motif.forbidden.motifs",
+        "polyA:AAAAAAAAAAAAAAA,adapter:AGATCGGAAGAGC");
+    builder.setAdaptiveOrdering(this.adaptiveOrdering);
+
+    this.filter = this.counters
+        ? builder.getReadFilter(new ConcurrentReporter(), "reads_filtering")
+        : builder.getReadFilter();
+
+    // The same motifs for the motif filter and the regex filter
+    final Random random = new Random(SyntheticData.DEFAULT_SEED);
+    final List<String> motifs = new ArrayList<>();
+    for (int i = 0; i < MOTIF_COUNT; i++) {
+      motifs.add(SyntheticData.randomSequence(random, MOTIF_LENGTH, 0.0));
+    }
+
+    this.motifFilter = new MotifReadFilter();
+    this.motifFilter.setParameter("forbidden.motifs", String.join(",", motifs));
+    this.motifFilter.init();
+
+    this.regexFilter = new PatternReadFilter();
+    this.regexFilter.setParameter("forbidden.regex", String.join("|", motifs));
+    this.regexFilter.init();
+  }
+
+  /**
+   * Count the reads accepted by a filter.
+   * @param filter the filter
+   * @return the number of accepted reads
+   */
+  private int filter(final ReadFilter filter) {
+
+    int result = 0;
+
+    for (ReadSequence read : this.reads) {
+      if (filter.accept(read)) {
+        result++;
+      }
+    }
+
+    return result;
+  }
+
+  @Benchmark
+  public int filter() {
+
+    return filter(this.filter);
+  }
+
+  @Benchmark
+  public int motifFilter() {
+
+    return filter(this.motifFilter);
+  }
+
+  @Benchmark
+  public int regexFilter() {
+
+    return filter(this.regexFilter);
+  }
+
+}
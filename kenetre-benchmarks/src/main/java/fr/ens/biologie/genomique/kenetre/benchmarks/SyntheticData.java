@@ -0,0 +1,379 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.benchmarks;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
+import fr.ens.biologie.genomique.kenetre.bio.GenomicInterval;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+import fr.ens.biologie.genomique.kenetre.bio.io.FastqWriter;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+
+/**
+ * This class define generators of synthetic data for the benchmarks. All the
+ * data are generated from a seed, so two runs of the benchmarks with the same
+ * parameters always process the same data.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public final class SyntheticData {
+
+  /** Default seed of the generators. */
+  public static final long DEFAULT_SEED = 42;
+
+  private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+  // Range of the Phred quality scores of the reads
+  private static final int MIN_QUALITY = 2;
+  private static final int MAX_QUALITY = 41;
+  private static final int QUALITY_DROP = 20;
+
+  //
+  // Sequences
+  //
+
+  /**
+   * Create a random DNA sequence.
+   * @param random random generator
+   * @param length length of the sequence
+   * @param nRate rate of N bases in the sequence
+   * @return a String with the sequence
+   */
+  public static String randomSequence(final Random random, final int length,
+      final double nRate) {
+
+    final char[] result = new char[length];
+
+    for (int i = 0; i < length; i++) {
+      result[i] = random.nextDouble() < nRate
+          ? 'N' : BASES[random.nextInt(BASES.length)];
+    }
+
+    return new String(result);
+  }
+
+  /**
+   * Create a random quality string in Sanger format. The quality decreases
+   * along the read like in real Illumina runs.
+   * @param random random generator
+   * @param length length of the quality string
+   * @return a String with the qualities
+   */
+  public static String randomQuality(final Random random, final int length) {
+
+    final char[] result = new char[length];
+
+    for (int i = 0; i < length; i++) {
+
+      final int max = MAX_QUALITY - QUALITY_DROP * i / length;
+      final int quality = Math.max(MIN_QUALITY, max - random.nextInt(10));
+      result[i] = (char) ('!' + quality);
+    }
+
+    return new String(result);
+  }
+
+  //
+  // Reads
+  //
+
+  /**
+   * Create random reads.
+   * @param count number of reads
+   * @param length length of the reads
+   * @param seed seed of the random generator
+   * @return a list with the reads
+   */
+  public static List<ReadSequence> createReads(final int count,
+      final int length, final long seed) {
+
+    final Random random = new Random(seed);
+    final List<ReadSequence> result = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+
+      // Some reads end with a poly N tail or contain a polyA motif
+      String sequence = randomSequence(random, length, 0.005);
+      if (random.nextInt(20) == 0) {
+        sequence = sequence.substring(0, length - 10) + "NNNNNNNNNN";
+      } else if (random.nextInt(50) == 0) {
+        sequence = "AAAAAAAAAAAAAAAAAAAA" + sequence.substring(20);
+      }
+
+      result.add(new ReadSequence("read" + i + " 1:N:0:ACGTACGT", sequence,
+          randomQuality(random, length)));
+    }
+
+    return result;
+  }
+
+  /**
+   * Convert reads to the FASTQ format.
+   * @param reads the reads
+   * @return an array of bytes with the reads in FASTQ format
+   * @throws IOException if an error occurs while writing the reads
+   */
+  public static byte[] toFastq(final List<ReadSequence> reads)
+      throws IOException {
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+    try (FastqWriter writer = new FastqWriter(os)) {
+      for (ReadSequence read : reads) {
+        writer.write(read);
+      }
+    }
+
+    return os.toByteArray();
+  }
+
+  //
+  // Genome and annotation
+  //
+
+  /**
+   * Create the description of a synthetic genome.
+   * @param chromosomes number of chromosomes
+   * @param chromosomeLength length of the chromosomes
+   * @return a GenomeDescription object
+   */
+  public static GenomeDescription createGenomeDescription(
+      final int chromosomes, final int chromosomeLength) {
+
+    final GenomeDescription result = new GenomeDescription();
+
+    for (int i = 1; i <= chromosomes; i++) {
+      result.addSequence("chr" + i, chromosomeLength);
+    }
+
+    return result;
+  }
+
+  /**
+   * Create random intervals on a genome.
+   * @param desc description of the genome
+   * @param count number of intervals
+   * @param maxLength maximal length of the intervals
+   * @param seed seed of the random generator
+   * @return a list with the intervals
+   */
+  public static List<GenomicInterval> createIntervals(
+      final GenomeDescription desc, final int count, final int maxLength,
+      final long seed) {
+
+    final Random random = new Random(seed);
+    final List<String> chromosomes = desc.getSequencesNames();
+    final List<GenomicInterval> result = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+
+      final String chromosome =
+          chromosomes.get(random.nextInt(chromosomes.size()));
+      final int chrLength = (int) desc.getSequenceLength(chromosome);
+      final int length = 1 + random.nextInt(maxLength);
+      final int start = 1 + random.nextInt(chrLength - length);
+
+      result.add(new GenomicInterval(chromosome, start, start + length - 1,
+          random.nextBoolean() ? '+' : '-'));
+    }
+
+    return result;
+  }
+
+  /**
+   * Create a synthetic annotation in GTF format. Each gene has one transcript
+   * with several exons, the genes of the two strands can overlap.
+   * @param desc description of the genome
+   * @param genesPerChromosome number of genes per chromosome
+   * @param seed seed of the random generator
+   * @return an array of bytes with the annotation in GTF format
+   */
+  public static byte[] createGTF(final GenomeDescription desc,
+      final int genesPerChromosome, final long seed) {
+
+    final Random random = new Random(seed);
+    final StringBuilder sb = new StringBuilder();
+
+    sb.append("#!genome-build synthetic\n");
+
+    int geneCount = 0;
+    for (String chromosome : desc.getSequencesNames()) {
+
+      final int chrLength = (int) desc.getSequenceLength(chromosome);
+      final int step = chrLength / genesPerChromosome;
+
+      for (int i = 0; i < genesPerChromosome; i++) {
+
+        final String geneId = "gene" + (++geneCount);
+        final String transcriptId = "transcript" + geneCount;
+        final char strand = random.nextBoolean() ? '+' : '-';
+        final int exonCount = 1 + random.nextInt(8);
+
+        int pos = 1 + i * step + random.nextInt(Math.max(1, step / 2));
+        final int geneStart = pos;
+        final StringBuilder exons = new StringBuilder();
+
+        for (int j = 0; j < exonCount && pos < chrLength; j++) {
+
+          final int end = Math.min(chrLength, pos + 50 + random.nextInt(300));
+          appendGTFLine(exons, chromosome, "exon", pos, end, strand, geneId,
+              transcriptId, "; exon_number \"" + (j + 1) + "\"");
+          pos = end + 100 + random.nextInt(2000);
+        }
+
+        final int geneEnd = Math.min(chrLength, pos);
+        appendGTFLine(sb, chromosome, "gene", geneStart, geneEnd, strand,
+            geneId, null, "");
+        appendGTFLine(sb, chromosome, "transcript", geneStart, geneEnd, strand,
+            geneId, transcriptId, "");
+        sb.append(exons);
+      }
+    }
+
+    return sb.toString().getBytes(US_ASCII);
+  }
+
+  /**
+   * Append a GTF line.
+   * @param sb the StringBuilder
+   * @param chromosome chromosome
+   * @param type type of the feature
+   * @param start start of the feature
+   * @param end end of the feature
+   * @param strand strand of the feature
+   * @param geneId gene id
+   * @param transcriptId transcript id, can be null
+   * @param otherAttributes other attributes
+   */
+  private static void appendGTFLine(final StringBuilder sb,
+      final String chromosome, final String type, final int start,
+      final int end, final char strand, final String geneId,
+      final String transcriptId, final String otherAttributes) {
+
+    sb.append(chromosome).append("\tsynthetic\t").append(type).append('\t')
+        .append(start).append('\t').append(end).append("\t.\t").append(strand)
+        .append("\t.\tgene_id \"").append(geneId).append('"');
+
+    if (transcriptId != null) {
+      sb.append("; transcript_id \"").append(transcriptId).append('"');
+    }
+
+    sb.append("; gene_biotype \"protein_coding\"").append(otherAttributes)
+        .append(";\n");
+  }
+
+  //
+  // Alignments
+  //
+
+  /**
+   * Create a SAM header for a genome.
+   * @param desc description of the genome
+   * @return a SAMFileHeader object
+   */
+  public static SAMFileHeader createSAMHeader(final GenomeDescription desc) {
+
+    final SAMFileHeader result = new SAMFileHeader();
+    result.setSortOrder(SAMFileHeader.SortOrder.unsorted);
+
+    for (String chromosome : desc.getSequencesNames()) {
+      result.addSequence(new SAMSequenceRecord(chromosome,
+          (int) desc.getSequenceLength(chromosome)));
+    }
+
+    return result;
+  }
+
+  /**
+   * Create random single-end alignments. Some alignments are unmapped, spliced
+   * or not unique.
+   * @param desc description of the genome
+   * @param count number of alignments
+   * @param readLength length of the reads
+   * @param seed seed of the random generator
+   * @return a list with the alignments
+   */
+  public static List<SAMRecord> createAlignments(final GenomeDescription desc,
+      final int count, final int readLength, final long seed) {
+
+    final Random random = new Random(seed);
+    final SAMFileHeader header = createSAMHeader(desc);
+    final List<String> chromosomes = desc.getSequencesNames();
+    final String quality = randomQuality(random, readLength);
+    final String splicedCigar =
+        (readLength / 2) + "M500N" + (readLength - readLength / 2) + "M";
+    final List<SAMRecord> result = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+
+      final SAMRecord r = new SAMRecord(header);
+      r.setReadName("read" + i);
+      r.setReadString(randomSequence(random, readLength, 0));
+      r.setBaseQualityString(quality);
+      r.setReadUnmappedFlag(random.nextInt(20) == 0);
+
+      if (!r.getReadUnmappedFlag()) {
+
+        final String chromosome =
+            chromosomes.get(random.nextInt(chromosomes.size()));
+        final int chrLength = (int) desc.getSequenceLength(chromosome);
+
+        r.setReferenceName(chromosome);
+        r.setAlignmentStart(1 + random.nextInt(chrLength - readLength - 600));
+        r.setCigarString(
+            random.nextInt(5) == 0 ? splicedCigar : readLength + "M");
+        r.setReadNegativeStrandFlag(random.nextBoolean());
+        r.setMappingQuality(random.nextInt(60));
+        if (random.nextInt(10) == 0) {
+          r.setAttribute("NH", 2);
+        }
+      }
+
+      result.add(r);
+    }
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   */
+  private SyntheticData() {
+  }
+
+}
@@ -4,9 +4,15 @@ import static org.apache.commons.cli.Option.builder;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -21,11 +27,18 @@ import fr.ens.biologie.genomique.kenetre.bio.FastqFormat;
 import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 import fr.ens.biologie.genomique.kenetre.bio.io.FastqReader;
 import fr.ens.biologie.genomique.kenetre.bio.io.FastqWriter;
+import fr.ens.biologie.genomique.kenetre.bio.readfilter.MultiReadFilter;
 import fr.ens.biologie.genomique.kenetre.bio.readfilter.MultiReadFilterBuilder;
 import fr.ens.biologie.genomique.kenetre.bio.readfilter.ReadFilter;
 import fr.ens.biologie.genomique.kenetre.io.CompressionType;
-import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+import fr.ens.biologie.genomique.kenetre.util.ConcurrentReporter;
+import fr.ens.biologie.genomique.kenetre.util.OrderedBatchPipeline;
 import fr.ens.biologie.genomique.kenetre.util.Reporter;
+import fr.ens.biologie.genomique.kenetre.util.ReporterCounter;
+import fr.ens.biologie.genomique.kenetre.util.metrics.MeteredInputStream;
+import fr.ens.biologie.genomique.kenetre.util.metrics.MeteredOutputStream;
+import fr.ens.biologie.genomique.kenetre.util.metrics.MetricRegistry;
+import fr.ens.biologie.genomique.kenetre.util.metrics.MetricsExporter;
 
 /**
  * This program allow to filter FASTQ files.
@@ -35,6 +48,9 @@ import fr.ens.biologie.genomique.kenetre.util.Reporter;
 public class FilterReadsAction implements Action {
 
   private static final String COUNTER_GROUP = "reads_filtering";
+  private static final int BATCH_SIZE = 1024;
+  private static final String METRICS_PREFIX = "filterreads";
+  private static final long METRICS_PERIOD = 10000;
 
   private File inputFile;
   private File inputFile1;
@@ -44,6 +60,10 @@ public class FilterReadsAction implements Action {
   private File outputFile2;
   private FastqFormat format = FastqFormat.FASTQ_SANGER;
   private boolean printStats = true;
+  private int threads = 1;
+  private boolean reorderFilters;
+  private File metricsFile;
+  private MetricsExporter.Format metricsFormat = MetricsExporter.Format.JSON;
 
   @Override
   public String getName() {
@@ -63,24 +83,58 @@ public class FilterReadsAction implements Action {
     return false;
   }
 
+  // The metrics exporter is only used to be closed at the end of the action
+  @SuppressWarnings("try")
   @Override
   public void action(List<String> arguments) {
 
-    try {
+    // Parse command line
+    final Map<String, String> parameters = parseOptions(arguments);
+
+    final MetricRegistry metrics =
+        this.metricsFile == null ? null : new MetricRegistry();
+
+    try (MetricsExporter exporter = metrics == null
+        ? null : new MetricsExporter(metrics, this.metricsFile,
+            this.metricsFormat, METRICS_PERIOD)) {
 
-      // Parse command line and create filter
+      // Create filter
       MultiReadFilterBuilder filterBuilder = new MultiReadFilterBuilder();
-      filterBuilder.addParameters(parseOptions(arguments));
-      ReadFilter filter = filterBuilder.getReadFilter();
+      filterBuilder.addParameters(parameters);
+      filterBuilder.setAdaptiveOrdering(this.reorderFilters);
+      MultiReadFilter filter = filterBuilder.getReadFilter();
+      filter.setMetrics(metrics, METRICS_PREFIX);
+
+      ConcurrentReporter reporter = new ConcurrentReporter();
+
+      if (this.threads > 1) {
+
+        // Create an independent filter for each worker
+        final List<ReadFilter> filters = new ArrayList<>();
+        filters.add(filter);
+        for (int i = 1; i < this.threads; i++) {
+          final MultiReadFilterBuilder builder =
+              new MultiReadFilterBuilder(parameters);
+          builder.setAdaptiveOrdering(this.reorderFilters);
+          final MultiReadFilter workerFilter = builder.getReadFilter();
+          workerFilter.setMetrics(metrics, METRICS_PREFIX);
+          filters.add(workerFilter);
+        }
 
-      Reporter reporter = new LocalReporter();
+        if (this.inputFile != null) {
+          filterFile(this.inputFile, null, this.outputFile, null, reporter,
+              filters, this.format, metrics);
+        } else {
+          filterFile(this.inputFile1, this.inputFile2, this.outputFile1,
+              this.outputFile2, reporter, filters, this.format, metrics);
+        }
 
-      if (this.inputFile != null) {
+      } else if (this.inputFile != null) {
         filterFile(this.inputFile, this.outputFile, reporter, filter,
-            this.format);
+            this.format, metrics);
       } else {
         filterFile(this.inputFile1, this.inputFile2, this.outputFile1,
-            this.outputFile2, reporter, filter, this.format);
+            this.outputFile2, reporter, filter, this.format, metrics);
       }
 
       if (this.printStats) {
@@ -131,6 +185,28 @@ public class FilterReadsAction implements Action {
             "FASTQ format (sanger,  solexa, fastq-illumina-1.3, fastq-illumina-1.5), default: sanger")
         .build());
 
+    options.addOption(builder("p").longOpt("threads").hasArg()
+        .argName("number").desc("number of filtering threads, default: 1")
+        .build());
+
+    options.addOption(builder("z").longOpt("compression-threads").hasArg()
+        .argName("number")
+        .desc("number of threads used by each compressed file, default: 1")
+        .build());
+
+    options.addOption("r", "reorder-filters", false,
+        "run the cheapest and most selective filters first");
+
+    options.addOption(builder("m").longOpt("metrics").hasArg().argName("file")
+        .desc("periodically write the throughput and latency metrics in a "
+            + "file")
+        .build());
+
+    options.addOption(builder("mf").longOpt("metrics-format").hasArg()
+        .argName("format")
+        .desc("format of the metrics file (json, prometheus), default: json")
+        .build());
+
     options.addOption("s", "stdin", false, "stdin input");
     options.addOption("t", "stdout", false, "stdout output");
     options.addOption("n", "no-stats", false, "stdout output");
@@ -171,6 +247,10 @@ public class FilterReadsAction implements Action {
         this.printStats = false;
       }
 
+      if (line.hasOption("r")) {
+        this.reorderFilters = true;
+      }
+
       if (line.hasOption("i")) {
         this.inputFile = new File(line.getOptionValue("input"));
       }
@@ -205,6 +285,50 @@ public class FilterReadsAction implements Action {
         }
       }
 
+      if (line.hasOption("m")) {
+        this.metricsFile = new File(line.getOptionValue("metrics"));
+      }
+
+      if (line.hasOption("mf")) {
+        try {
+          this.metricsFormat = MetricsExporter.Format
+              .getFormat(line.getOptionValue("metrics-format"));
+        } catch (IllegalArgumentException e) {
+          error("Error: " + e.getMessage());
+        }
+      }
+
+      if (line.hasOption("p")) {
+        try {
+          this.threads = Integer.parseInt(line.getOptionValue("threads"));
+        } catch (NumberFormatException e) {
+          this.threads = 0;
+        }
+
+        if (this.threads < 1) {
+          error("Error: Invalid number of threads: "
+              + line.getOptionValue("threads"));
+        }
+      }
+
+      if (line.hasOption("z")) {
+        int compressionThreads;
+        try {
+          compressionThreads =
+              Integer.parseInt(line.getOptionValue("compression-threads"));
+        } catch (NumberFormatException e) {
+          compressionThreads = 0;
+        }
+
+        if (compressionThreads < 1) {
+          error("Error: Invalid number of compression threads: "
+              + line.getOptionValue("compression-threads"));
+        }
+
+        CompressionType.setGZipCompressionThreads(compressionThreads);
+        CompressionType.setDecompressionThreads(compressionThreads);
+      }
+
       for (String arg : line.getArgList()) {
 
         int pos = arg.indexOf('=');
@@ -284,27 +408,40 @@ public class FilterReadsAction implements Action {
    * @param reporter reporter to use
    * @param filter reads filter to use
    * @param fastqFormat FastqFormat
+   * @param metrics metric registry, can be null
    * @throws IOException if an error occurs while filtering data
    */
   private static void filterFile(final File inFile, final File outFile,
       final Reporter reporter, final ReadFilter filter,
-      final FastqFormat fastqFormat) throws IOException {
+      final FastqFormat fastqFormat, final MetricRegistry metrics)
+      throws IOException {
+
+    try (
+        FastqReader reader =
+            new FastqReader(openInput(inFile, metrics, "input1"));
+        FastqWriter writer =
+            new FastqWriter(createOutput(outFile, metrics, "output1"))) {
+
+      final ReporterCounter inputCounter =
+          reporter.getCounter(COUNTER_GROUP, "input raw reads");
+      final ReporterCounter acceptedCounter =
+          reporter.getCounter(COUNTER_GROUP, "output accepted reads");
+      final ReporterCounter rejectedCounter =
+          reporter.getCounter(COUNTER_GROUP, "reads rejected by filters");
 
-    try (FastqReader reader = new FastqReader(CompressionType.open(inFile));
-        FastqWriter writer = new FastqWriter(CompressionType.create(outFile))) {
       for (final ReadSequence read : reader) {
 
         // Set Fastq format
         read.setFastqFormat(fastqFormat);
 
-        reporter.incrCounter(COUNTER_GROUP, "input raw reads", 1);
+        inputCounter.increment();
 
         if (filter.accept(read)) {
 
           writer.write(read);
-          reporter.incrCounter(COUNTER_GROUP, "output accepted reads", 1);
+          acceptedCounter.increment();
         } else {
-          reporter.incrCounter(COUNTER_GROUP, "reads rejected by filters", 1);
+          rejectedCounter.increment();
         }
 
       }
@@ -327,17 +464,31 @@ public class FilterReadsAction implements Action {
    * @param reporter reporter to use
    * @param filter reads filter to use
    * @param fastqFormat FastqFormat
+   * @param metrics metric registry, can be null
    * @throws IOException if an error occurs while filtering data
    */
   private static void filterFile(final File inFile1, final File inFile2,
       final File outFile1, final File outFile2, final Reporter reporter,
-      final ReadFilter filter, final FastqFormat fastqFormat)
-      throws IOException {
+      final ReadFilter filter, final FastqFormat fastqFormat,
+      final MetricRegistry metrics) throws IOException {
+
+    try (
+        FastqReader reader2 =
+            new FastqReader(openInput(inFile2, metrics, "input2"));
+        FastqWriter writer1 =
+            new FastqWriter(createOutput(outFile1, metrics, "output1"));
+        FastqWriter writer2 =
+            new FastqWriter(createOutput(outFile2, metrics, "output2"));
+        FastqReader reader1 =
+            new FastqReader(openInput(inFile1, metrics, "input1"))) {
+
+      final ReporterCounter inputCounter =
+          reporter.getCounter(COUNTER_GROUP, "input raw reads");
+      final ReporterCounter acceptedCounter =
+          reporter.getCounter(COUNTER_GROUP, "output accepted reads");
+      final ReporterCounter rejectedCounter =
+          reporter.getCounter(COUNTER_GROUP, "reads rejected by filters");
 
-    try (FastqReader reader2 = new FastqReader(CompressionType.open(inFile2));
-        FastqWriter writer1 = new FastqWriter(CompressionType.create(outFile1));
-        FastqWriter writer2 = new FastqWriter(CompressionType.create(outFile2));
-        FastqReader reader1 = new FastqReader(CompressionType.open(inFile1))) {
       for (final ReadSequence read1 : reader1) {
 
         // Test if the second read exists
@@ -355,14 +506,14 @@ public class FilterReadsAction implements Action {
         read1.setFastqFormat(fastqFormat);
         read2.setFastqFormat(fastqFormat);
 
-        reporter.incrCounter(COUNTER_GROUP, "input raw reads", 1);
+        inputCounter.increment();
 
         if (filter.accept(read1, read2)) {
           writer1.write(read1);
           writer2.write(read2);
-          reporter.incrCounter(COUNTER_GROUP, "output accepted reads", 1);
+          acceptedCounter.increment();
         } else {
-          reporter.incrCounter(COUNTER_GROUP, "reads rejected by filters", 1);
+          rejectedCounter.increment();
         }
 
       }
@@ -385,4 +536,263 @@ public class FilterReadsAction implements Action {
 
   }
 
+
+  //
+  // Parallel filtering code
+  //
+
+  /**
+   * This class define a batch of reads or read pairs to filter.
+   */
+  private static final class Batch {
+
+    private final ReadSequence[] reads1 = new ReadSequence[BATCH_SIZE];
+    private final ReadSequence[] reads2;
+    private final boolean[] accepted = new boolean[BATCH_SIZE];
+    private int size;
+
+    private Batch(final boolean pairedEnd) {
+      this.reads2 = pairedEnd ? new ReadSequence[BATCH_SIZE] : null;
+    }
+  }
+
+  /**
+   * This class define a filtering worker with its own filter.
+   */
+  private static final class Worker {
+
+    private final ReadFilter filter;
+    private final ReporterCounter inputCounter;
+    private final ReporterCounter acceptedCounter;
+    private final ReporterCounter rejectedCounter;
+
+    private Worker(final ReadFilter filter, final ConcurrentReporter reporter) {
+      this.filter = filter;
+      this.inputCounter = reporter.getCounter(COUNTER_GROUP, "input raw reads");
+      this.acceptedCounter =
+          reporter.getCounter(COUNTER_GROUP, "output accepted reads");
+      this.rejectedCounter =
+          reporter.getCounter(COUNTER_GROUP, "reads rejected by filters");
+    }
+
+    /**
+     * Filter a batch of reads.
+     * @param batch the batch to filter
+     * @param fastqFormat FastqFormat
+     * @return the batch
+     */
+    private Batch filter(final Batch batch, final FastqFormat fastqFormat) {
+
+      final boolean pairedEnd = batch.reads2 != null;
+
+      for (int i = 0; i < batch.size; i++) {
+
+        final ReadSequence read1 = batch.reads1[i];
+        read1.setFastqFormat(fastqFormat);
+
+        final boolean accepted;
+
+        if (pairedEnd) {
+          final ReadSequence read2 = batch.reads2[i];
+          read2.setFastqFormat(fastqFormat);
+          accepted = this.filter.accept(read1, read2);
+        } else {
+          accepted = this.filter.accept(read1);
+        }
+
+        batch.accepted[i] = accepted;
+
+        if (accepted) {
+          this.acceptedCounter.increment();
+        } else {
+          this.rejectedCounter.increment();
+        }
+      }
+
+      this.inputCounter.increment(batch.size);
+
+      return batch;
+    }
+  }
+
+  /**
+   * Filter a file in single end or paired-end mode using several threads. The
+   * reads are read by batches in the current thread, filtered by the workers
+   * and written in the input order by a dedicated writer thread.
+   * @param inFile1 first input file
+   * @param inFile2 second input file, null in single-end mode
+   * @param outFile1 first output file
+   * @param outFile2 second output file, null in single-end mode
+   * @param reporter reporter to use, shared by the workers
+   * @param filters reads filters to use, one for each worker
+   * @param fastqFormat FastqFormat
+   * @param metrics metric registry, can be null
+   * @throws IOException if an error occurs while filtering data
+   */
+  private static void filterFile(final File inFile1, final File inFile2,
+      final File outFile1, final File outFile2,
+      final ConcurrentReporter reporter, final List<ReadFilter> filters,
+      final FastqFormat fastqFormat, final MetricRegistry metrics)
+      throws IOException {
+
+    final boolean pairedEnd = inFile2 != null;
+    final int threads = filters.size();
+
+    final BlockingQueue<Worker> workers = new ArrayBlockingQueue<>(threads);
+    for (ReadFilter filter : filters) {
+      workers.add(new Worker(filter, reporter));
+    }
+
+    try (
+        FastqReader reader1 =
+            new FastqReader(openInput(inFile1, metrics, "input1"));
+        FastqReader reader2 = pairedEnd
+            ? new FastqReader(openInput(inFile2, metrics, "input2")) : null;
+        FastqWriter writer1 =
+            new FastqWriter(createOutput(outFile1, metrics, "output1"));
+        FastqWriter writer2 = pairedEnd
+            ? new FastqWriter(createOutput(outFile2, metrics, "output2"))
+            : null;
+
+        // The pipeline is closed first, so its threads are stopped before
+        // the files are closed
+        OrderedBatchPipeline<Batch> pipeline =
+            new OrderedBatchPipeline<>(threads, batch -> {
+
+              for (int i = 0; i < batch.size; i++) {
+                if (batch.accepted[i]) {
+                  writer1.write(batch.reads1[i]);
+                  if (pairedEnd) {
+                    writer2.write(batch.reads2[i]);
+                  }
+                }
+              }
+            })) {
+
+      if (metrics != null) {
+        metrics.gauge(METRICS_PREFIX + ".queue.batches",
+            pipeline::getPendingBatchCount);
+      }
+
+      // Reader stage
+      Batch batch = new Batch(pairedEnd);
+      boolean endOfInput = false;
+
+      while (!endOfInput) {
+
+        endOfInput = !reader1.hasNext();
+
+        if (!endOfInput) {
+
+          batch.reads1[batch.size] = reader1.next();
+
+          if (pairedEnd) {
+
+            // Test if the second read exists
+            if (!reader2.hasNext()) {
+              reader2.throwException();
+              throw new IOException("Unexcepted end of the second read file. "
+                  + inFile1.getName() + " and " + inFile2.getName()
+                  + " must have the same number of entries/lines.");
+            }
+            batch.reads2[batch.size] = reader2.next();
+          }
+
+          batch.size++;
+        }
+
+        if (batch.size == BATCH_SIZE || (endOfInput && batch.size > 0)) {
+
+          final Batch toFilter = batch;
+          pipeline.submit(() -> {
+
+            final Worker worker = workers.take();
+            try {
+              return worker.filter(toFilter, fastqFormat);
+            } finally {
+              workers.put(worker);
+            }
+          });
+
+          batch = new Batch(pairedEnd);
+        }
+      }
+
+      // Wait the end of the writer
+      pipeline.finish();
+
+      reader1.throwException();
+
+      if (pairedEnd) {
+        reader2.throwException();
+
+        if (reader2.hasNext()) {
+          throw new IOException("Unexcepted end of the first read file. "
+              + inFile1.getName() + " and " + inFile2.getName()
+              + " must have the same number of entries/lines.");
+        }
+      }
+
+    } catch (BadBioEntryException e) {
+
+      throw new IOException("Invalid Fastq format: "
+          + e.getMessage() + " File: " + inFile1
+          + (pairedEnd ? " File2: " + inFile2 : "") + " Entry: "
+          + e.getEntry());
+
+    } catch (InterruptedException e) {
+
+      Thread.currentThread().interrupt();
+      throw new IOException("Filtering has been interrupted", e);
+
+    } catch (ExecutionException e) {
+
+      throw new IOException(e.getCause());
+
+    } finally {
+
+      // The gauge must not keep a reference to the queue
+      if (metrics != null) {
+        metrics.remove(METRICS_PREFIX + ".queue.batches");
+      }
+    }
+  }
+
+  /**
+   * Open an input file and count the bytes read if the metrics are enabled.
+   * @param file the file to open
+   * @param metrics metric registry, can be null
+   * @param name name of the input in the metrics
+   * @return an InputStream
+   * @throws IOException if an error occurs while opening the file
+   */
+  private static InputStream openInput(final File file,
+      final MetricRegistry metrics, final String name) throws IOException {
+
+    final InputStream is = CompressionType.open(file, true);
+
+    return metrics == null
+        ? is : new MeteredInputStream(is,
+            metrics.meter(METRICS_PREFIX + '.' + name + ".bytes"));
+  }
+
+  /**
+   * Create an output file and count the bytes written if the metrics are
+   * enabled.
+   * @param file the file to create
+   * @param metrics metric registry, can be null
+   * @param name name of the output in the metrics
+   * @return an OutputStream
+   * @throws IOException if an error occurs while creating the file
+   */
+  private static OutputStream createOutput(final File file,
+      final MetricRegistry metrics, final String name) throws IOException {
+
+    final OutputStream os = CompressionType.create(file);
+
+    return metrics == null
+        ? os : new MeteredOutputStream(os,
+            metrics.meter(METRICS_PREFIX + '.' + name + ".bytes"));
+  }
+
 }
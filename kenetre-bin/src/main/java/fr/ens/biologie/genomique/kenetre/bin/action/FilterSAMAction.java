@@ -8,6 +8,10 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -18,11 +22,17 @@ import org.apache.commons.cli.ParseException;
 
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.bio.SAMComparator;
+import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.MultiReadAlignmentFilter;
 import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.MultiReadAlignmentFilterBuilder;
 import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.ReadAlignmentFilter;
 import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.ReadAlignmentFilterBuffer;
 import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+import fr.ens.biologie.genomique.kenetre.util.OrderedBatchPipeline;
 import fr.ens.biologie.genomique.kenetre.util.Reporter;
+import fr.ens.biologie.genomique.kenetre.util.metrics.Meter;
+import fr.ens.biologie.genomique.kenetre.util.metrics.MetricRegistry;
+import fr.ens.biologie.genomique.kenetre.util.metrics.MetricsExporter;
+import fr.ens.biologie.genomique.kenetre.util.metrics.Timer;
 import htsjdk.samtools.SAMFileWriter;
 import htsjdk.samtools.SAMFileWriterFactory;
 import htsjdk.samtools.SAMFormatException;
@@ -40,11 +50,17 @@ import htsjdk.samtools.SamReaderFactory;
 public class FilterSAMAction implements Action {
 
   private static final String COUNTER_GROUP = "sam_filtering";
+  private static final String METRICS_PREFIX = "filtersam";
+  private static final long METRICS_PERIOD = 10000;
+  private static final int BATCH_SIZE = 1024;
 
   private File inputFile;
   private File outputFile;
   private File tmpDir = new File(System.getProperty("java.io.tmpdir"));
   private boolean printStats = true;
+  private int threads = 1;
+  private File metricsFile;
+  private MetricsExporter.Format metricsFormat = MetricsExporter.Format.JSON;
 
   @Override
   public String getName() {
@@ -64,21 +80,49 @@ public class FilterSAMAction implements Action {
     return false;
   }
 
+  // The metrics exporter is only used to be closed at the end of the action
+  @SuppressWarnings("try")
   @Override
   public void action(List<String> arguments) {
 
-    try {
+    // Parse command line
+    final Map<String, String> parameters = parseOptions(arguments);
+
+    final MetricRegistry metrics =
+        this.metricsFile == null ? null : new MetricRegistry();
+
+    try (MetricsExporter exporter = metrics == null
+        ? null : new MetricsExporter(metrics, this.metricsFile,
+            this.metricsFormat, METRICS_PERIOD)) {
 
-      // Parse command line and create filter
+      // Create filter
       MultiReadAlignmentFilterBuilder filterBuilder =
           new MultiReadAlignmentFilterBuilder();
-      filterBuilder.addParameters(parseOptions(arguments));
-      ReadAlignmentFilter filter = filterBuilder.getAlignmentFilter();
+      filterBuilder.addParameters(parameters);
+      MultiReadAlignmentFilter filter = filterBuilder.getAlignmentFilter();
+      filter.setMetrics(metrics, METRICS_PREFIX);
 
       Reporter reporter = new LocalReporter();
 
-      filterFile(this.inputFile, this.outputFile, reporter, filter,
-          this.tmpDir);
+      if (this.threads > 1) {
+
+        // Create an independent filter for each worker
+        final List<ReadAlignmentFilter> filters = new ArrayList<>();
+        filters.add(filter);
+        for (int i = 1; i < this.threads; i++) {
+          final MultiReadAlignmentFilter workerFilter =
+              new MultiReadAlignmentFilterBuilder(parameters)
+                  .getAlignmentFilter();
+          workerFilter.setMetrics(metrics, METRICS_PREFIX);
+          filters.add(workerFilter);
+        }
+
+        filterFile(this.inputFile, this.outputFile, reporter, filters,
+            this.tmpDir, metrics);
+      } else {
+        filterFile(this.inputFile, this.outputFile, reporter, filter,
+            this.tmpDir, metrics);
+      }
 
       if (this.printStats) {
         System.err.println(reporter);
@@ -113,6 +157,20 @@ public class FilterSAMAction implements Action {
     options.addOption(builder("T").longOpt("tmpdir").hasArg().argName("dire")
         .desc("temporary directory").build());
 
+    options.addOption(builder("p").longOpt("threads").hasArg()
+        .argName("number").desc("number of filtering threads, default: 1")
+        .build());
+
+    options.addOption(builder("m").longOpt("metrics").hasArg().argName("file")
+        .desc("periodically write the throughput and latency metrics in a "
+            + "file")
+        .build());
+
+    options.addOption(builder("mf").longOpt("metrics-format").hasArg()
+        .argName("format")
+        .desc("format of the metrics file (json, prometheus), default: json")
+        .build());
+
     options.addOption("s", "stdin", false, "stdin input");
     options.addOption("t", "stdout", false, "stdout output");
     options.addOption("n", "no-stats", false, "stdout output");
@@ -165,6 +223,32 @@ public class FilterSAMAction implements Action {
         this.tmpDir = new File(line.getOptionValue("tmpdir"));
       }
 
+      if (line.hasOption("p")) {
+        try {
+          this.threads = Integer.parseInt(line.getOptionValue("threads"));
+        } catch (NumberFormatException e) {
+          this.threads = 0;
+        }
+
+        if (this.threads < 1) {
+          error("Error: Invalid number of threads: "
+              + line.getOptionValue("threads"));
+        }
+      }
+
+      if (line.hasOption("m")) {
+        this.metricsFile = new File(line.getOptionValue("metrics"));
+      }
+
+      if (line.hasOption("mf")) {
+        try {
+          this.metricsFormat = MetricsExporter.Format
+              .getFormat(line.getOptionValue("metrics-format"));
+        } catch (IllegalArgumentException e) {
+          error("Error: " + e.getMessage());
+        }
+      }
+
       for (String arg : line.getArgList()) {
 
         int pos = arg.indexOf('=');
@@ -220,11 +304,12 @@ public class FilterSAMAction implements Action {
    * @param reporter reporter to use
    * @param filter alignments filter to use
    * @param tmpDir temporary directory
+   * @param metrics metric registry, can be null
    * @throws IOException if an error occurs while filtering data
    */
-  private static void filterFile(final File inFile, final File outFile,
+  static void filterFile(final File inFile, final File outFile,
       final Reporter reporter, final ReadAlignmentFilter filter,
-      final File tmpDir) throws IOException {
+      final File tmpDir, final MetricRegistry metrics) throws IOException {
 
     final List<SAMRecord> records = new ArrayList<>();
     int counterInput = 0;
@@ -232,6 +317,12 @@ public class FilterSAMAction implements Action {
     int counterInvalid = 0;
     boolean pairedEnd = false;
 
+    final SAMComparator comparator = new SAMComparator();
+    final Timer sortTimer =
+        metrics == null ? null : metrics.timer(METRICS_PREFIX + ".sort");
+    final Meter outputMeter = metrics == null
+        ? null : metrics.meter(METRICS_PREFIX + ".output");
+
     // Creation of a buffer object to store alignments with the same read name
     final ReadAlignmentFilterBuffer rafb =
         new ReadAlignmentFilterBuffer(filter);
@@ -277,7 +368,7 @@ public class FilterSAMAction implements Action {
         records.addAll(rafb.getFilteredAlignments());
 
         // sort alignments of the current read
-        records.sort(new SAMComparator());
+        sort(records, comparator, sortTimer);
 
         // writing records
         for (SAMRecord r : records) {
@@ -285,6 +376,10 @@ public class FilterSAMAction implements Action {
           counterOutput++;
         }
 
+        if (outputMeter != null) {
+          outputMeter.mark(records.size());
+        }
+
         rafb.addAlignment(samRecord);
       }
 
@@ -295,7 +390,7 @@ public class FilterSAMAction implements Action {
     records.addAll(rafb.getFilteredAlignments());
 
     // sort alignments of the last read
-    records.sort(new SAMComparator());
+    sort(records, comparator, sortTimer);
 
     // writing records
     for (SAMRecord r : records) {
@@ -303,6 +398,46 @@ public class FilterSAMAction implements Action {
       counterOutput++;
     }
 
+    if (outputMeter != null) {
+      outputMeter.mark(records.size());
+    }
+
+    setCounters(reporter, pairedEnd, counterInput, counterOutput,
+        counterInvalid);
+
+    // Close files
+    inputSam.close();
+    outputSam.close();
+  }
+
+  /**
+   * Sort the alignments of a read.
+   * @param records the alignments to sort
+   * @param comparator the comparator to use
+   * @param sortTimer the timer of the sort, can be null
+   */
+  private static void sort(final List<SAMRecord> records,
+      final SAMComparator comparator, final Timer sortTimer) {
+
+    final long startTime = System.nanoTime();
+    records.sort(comparator);
+    if (sortTimer != null) {
+      sortTimer.stop(startTime);
+    }
+  }
+
+  /**
+   * Set the counters of the filtering in the reporter.
+   * @param reporter reporter to use
+   * @param pairedEnd true if the alignments are paired-end alignments
+   * @param counterInput number of input alignments
+   * @param counterOutput number of output alignments
+   * @param counterInvalid number of invalid alignments
+   */
+  private static void setCounters(final Reporter reporter,
+      final boolean pairedEnd, final int counterInput, final int counterOutput,
+      final int counterInvalid) {
+
     // paired-end mode
     if (pairedEnd) {
       int nbInput = counterInput / 2;
@@ -326,10 +461,234 @@ public class FilterSAMAction implements Action {
       reporter.incrCounter(COUNTER_GROUP, "alignments rejected by filters",
           counterInput - counterOutput);
     }
+  }
+
+  //
+  // Parallel filtering code
+  //
+
+  /**
+   * This class define a batch of alignments to filter. The alignments with the
+   * same read name are always in the same group of the same batch.
+   */
+  private static final class Batch {
+
+    private final List<List<SAMRecord>> groups = new ArrayList<>();
+    private int size;
+
+    /**
+     * Add a group of alignments with the same read name to the batch.
+     * @param group the group to add
+     */
+    private void add(final List<SAMRecord> group) {
+
+      this.groups.add(group);
+      this.size += group.size();
+    }
+  }
+
+  /**
+   * This class define a filtering worker with its own filter and comparator.
+   */
+  private static final class Worker {
+
+    private final ReadAlignmentFilter filter;
+    private final SAMComparator comparator = new SAMComparator();
+    private final Timer sortTimer;
+
+    /**
+     * Filter and sort the groups of alignments of a batch.
+     * @param batch the batch to filter
+     * @return the batch
+     */
+    private Batch filter(final Batch batch) {
+
+      for (List<SAMRecord> group : batch.groups) {
+
+        this.filter.filterReadAlignments(group);
+
+        // sort alignments of the current read
+        sort(group, this.comparator, this.sortTimer);
+      }
+
+      return batch;
+    }
+
+    private Worker(final ReadAlignmentFilter filter,
+        final MetricRegistry metrics) {
+
+      this.filter = filter;
+      this.sortTimer =
+          metrics == null ? null : metrics.timer(METRICS_PREFIX + ".sort");
+    }
+  }
+
+  /**
+   * Filter a file in single-end mode or paired-end mode using several threads.
+   * The alignments are decoded and grouped by read name in the current thread,
+   * the groups are filtered and sorted by batches by the workers and written in
+   * the input order by a dedicated writer thread. The output and the counters
+   * are the same as with a single thread.
+   * @param inFile input file
+   * @param outFile output file
+   * @param reporter reporter to use
+   * @param filters alignments filters to use, one for each worker
+   * @param tmpDir temporary directory
+   * @param metrics metric registry, can be null
+   * @throws IOException if an error occurs while filtering data
+   */
+  static void filterFile(final File inFile, final File outFile,
+      final Reporter reporter, final List<ReadAlignmentFilter> filters,
+      final File tmpDir, final MetricRegistry metrics) throws IOException {
+
+    final int threads = filters.size();
+    int counterInput = 0;
+    int counterInvalid = 0;
+    boolean pairedEnd = false;
+
+    final Meter outputMeter = metrics == null
+        ? null : metrics.meter(METRICS_PREFIX + ".output");
+
+    final BlockingQueue<Worker> workers = new ArrayBlockingQueue<>(threads);
+    for (ReadAlignmentFilter filter : filters) {
+      workers.add(new Worker(filter, metrics));
+    }
+
+    // Get reader
+    final SamReader inputSam =
+        SamReaderFactory.makeDefault().open(SamInputResource.of(inFile));
+
+    // Get Writer
+    final SAMFileWriter outputSam =
+        new SAMFileWriterFactory().setTempDirectory(tmpDir)
+            .makeSAMWriter(inputSam.getFileHeader(), false, outFile);
+
+    // Writer stage
+    final int[] counterOutput = new int[1];
+    try (OrderedBatchPipeline<Batch> pipeline =
+        new OrderedBatchPipeline<>(threads, batch -> {
+
+          for (List<SAMRecord> group : batch.groups) {
+
+            for (SAMRecord r : group) {
+              outputSam.addAlignment(r);
+            }
+
+            counterOutput[0] += group.size();
+            if (outputMeter != null) {
+              outputMeter.mark(group.size());
+            }
+          }
+        })) {
+
+      if (metrics != null) {
+        metrics.gauge(METRICS_PREFIX + ".queue.batches",
+            pipeline::getPendingBatchCount);
+      }
+
+      // Reader stage
+      final SAMRecordIterator it = inputSam.iterator();
+      String currentName = null;
+      List<SAMRecord> group = new ArrayList<>();
+      Batch batch = new Batch();
+
+      while (it.hasNext()) {
+
+        final SAMRecord samRecord;
+
+        // Check if SAM entry is correct
+        try {
+          samRecord = it.next();
+
+        } catch (SAMFormatException e) {
+          counterInvalid++;
+          continue;
+        }
+
+        // single-end or paired-end mode ?
+        if (counterInput == 0) {
+          if (samRecord.getReadPairedFlag()) {
+            pairedEnd = true;
+          }
+        }
+
+        counterInput++;
+
+        final String name =
+            ReadAlignmentFilterBuffer.parseAlignmentName(samRecord);
+
+        // The current alignment has a new read name
+        if (currentName != null && !currentName.equals(name)) {
+
+          batch.add(group);
+          group = new ArrayList<>();
+
+          // Do not split the alignments of a read between two batches
+          if (batch.size >= BATCH_SIZE) {
+            pipeline.submit(filterTask(workers, batch));
+            batch = new Batch();
+          }
+        }
+
+        currentName = name;
+        group.add(samRecord);
+      }
+
+      // treatment of the last read
+      if (!group.isEmpty()) {
+        batch.add(group);
+      }
+
+      if (!batch.groups.isEmpty()) {
+        pipeline.submit(filterTask(workers, batch));
+      }
+
+      // Wait the end of the writer
+      pipeline.finish();
+
+      setCounters(reporter, pairedEnd, counterInput, counterOutput[0],
+          counterInvalid);
+
+    } catch (InterruptedException e) {
+
+      Thread.currentThread().interrupt();
+      throw new IOException("Filtering has been interrupted", e);
+
+    } catch (ExecutionException e) {
+
+      throw new IOException(e.getCause());
+
+    } finally {
+
+      // The gauge must not keep a reference to the queue
+      if (metrics != null) {
+        metrics.remove(METRICS_PREFIX + ".queue.batches");
+      }
+    }
 
     // Close files
     inputSam.close();
     outputSam.close();
   }
 
+  /**
+   * Create the task that filters a batch with the first available worker.
+   * @param workers the workers
+   * @param batch the batch to filter
+   * @return the task that filters the batch
+   */
+  private static Callable<Batch> filterTask(
+      final BlockingQueue<Worker> workers, final Batch batch) {
+
+    return () -> {
+
+      final Worker worker = workers.take();
+      try {
+        return worker.filter(batch);
+      } finally {
+        workers.put(worker);
+      }
+    };
+  }
+
 }
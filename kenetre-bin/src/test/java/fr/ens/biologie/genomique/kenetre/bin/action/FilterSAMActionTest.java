@@ -0,0 +1,203 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bin.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.MultiReadAlignmentFilterBuilder;
+import fr.ens.biologie.genomique.kenetre.bio.alignmentfilter.ReadAlignmentFilter;
+import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+import fr.ens.biologie.genomique.kenetre.util.metrics.MetricRegistry;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+
+/**
+ * This class test that the filtering of a SAM file with several threads gives
+ * the same result as the filtering with a single thread.
+ * @author Laurent Jourdren
+ */
+public class FilterSAMActionTest {
+
+  private static final String COUNTER_GROUP = "sam_filtering";
+  private static final int READ_COUNT = 5000;
+
+  @Test
+  public void testThreads() throws IOException, KenetreException {
+
+    final File tmpDir = Files.createTempDirectory("filtersam-test").toFile();
+    final File inFile = new File(tmpDir, "input.sam");
+    final File singleFile = new File(tmpDir, "single.sam");
+    final File parallelFile = new File(tmpDir, "parallel.sam");
+
+    try {
+
+      final int inputCount = createSAMFile(inFile);
+
+      final Map<String, String> parameters = new LinkedHashMap<>();
+      parameters.put("removeunmapped", "");
+      parameters.put("quality.threshold", "30");
+      parameters.put("removemultimatches", "");
+
+      // Single thread
+      final LocalReporter singleReporter = new LocalReporter();
+      final MetricRegistry singleMetrics = new MetricRegistry();
+      FilterSAMAction.filterFile(inFile, singleFile, singleReporter,
+          createFilter(parameters), tmpDir, singleMetrics);
+
+      // Several threads
+      final LocalReporter parallelReporter = new LocalReporter();
+      final MetricRegistry parallelMetrics = new MetricRegistry();
+      final List<ReadAlignmentFilter> filters = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        filters.add(createFilter(parameters));
+      }
+      FilterSAMAction.filterFile(inFile, parallelFile, parallelReporter,
+          filters, tmpDir, parallelMetrics);
+
+      // Compare the outputs
+      final List<String> expected = readSAMFile(singleFile);
+      assertTrue(expected.size() > 0);
+      assertTrue(expected.size() < inputCount);
+      assertEquals(expected, readSAMFile(parallelFile));
+
+      // Compare the counters
+      assertEquals(inputCount, singleReporter.getCounterValue(COUNTER_GROUP,
+          "input alignments"));
+      assertEquals(expected.size(), singleReporter
+          .getCounterValue(COUNTER_GROUP, "output filtered alignments"));
+      for (String counter : Arrays.asList("input alignments",
+          "output filtered alignments", "alignments in invalid sam format",
+          "alignments rejected by filters")) {
+
+        assertEquals(counter,
+            singleReporter.getCounterValue(COUNTER_GROUP, counter),
+            parallelReporter.getCounterValue(COUNTER_GROUP, counter));
+      }
+
+      // The alignments of each read are sorted once in both modes
+      assertEquals(READ_COUNT,
+          singleMetrics.timer("filtersam.sort").getCount());
+      assertEquals(READ_COUNT,
+          parallelMetrics.timer("filtersam.sort").getCount());
+
+    } finally {
+      inFile.delete();
+      singleFile.delete();
+      parallelFile.delete();
+      tmpDir.delete();
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static ReadAlignmentFilter createFilter(
+      final Map<String, String> parameters) throws KenetreException {
+
+    return new MultiReadAlignmentFilterBuilder(parameters)
+        .getAlignmentFilter();
+  }
+
+  /**
+   * Create a single-end SAM file where each read has one to three alignments.
+   * @param file the file to create
+   * @return the number of alignments in the file
+   */
+  private static int createSAMFile(final File file) {
+
+    final SAMFileHeader header = new SAMFileHeader();
+    header.setSortOrder(SAMFileHeader.SortOrder.unsorted);
+    header.addSequence(new SAMSequenceRecord("chr1", 100000));
+
+    final Random random = new Random(5);
+    int result = 0;
+
+    try (SAMFileWriter writer =
+        new SAMFileWriterFactory().makeSAMWriter(header, true, file)) {
+
+      for (int i = 0; i < READ_COUNT; i++) {
+
+        final int count = 1 + random.nextInt(3);
+
+        for (int j = 0; j < count; j++) {
+
+          final SAMRecord r = new SAMRecord(header);
+          r.setReadName("read" + i);
+          r.setReadString("ACGTACGTACGTACGTACGTACGTACGTACGTACGTACGT");
+          r.setBaseQualityString("IIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIII");
+          r.setReadUnmappedFlag(count == 1 && random.nextInt(10) == 0);
+          if (!r.getReadUnmappedFlag()) {
+            r.setReferenceName("chr1");
+            r.setAlignmentStart(1 + random.nextInt(99000));
+            r.setCigarString("40M");
+            r.setReadNegativeStrandFlag(random.nextBoolean());
+            r.setMappingQuality(random.nextInt(60));
+            r.setNotPrimaryAlignmentFlag(j > 0);
+            r.setAttribute("NH", count);
+          }
+
+          writer.addAlignment(r);
+          result++;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private static List<String> readSAMFile(final File file) throws IOException {
+
+    final List<String> result = new ArrayList<>();
+
+    try (SamReader reader = SamReaderFactory.makeDefault().open(file)) {
+      for (SAMRecord r : reader) {
+        result.add(r.getSAMString());
+      }
+    }
+
+    return result;
+  }
+
+}
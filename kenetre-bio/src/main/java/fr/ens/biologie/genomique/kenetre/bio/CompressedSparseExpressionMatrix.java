@@ -0,0 +1,955 @@
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * This class define a sparse expression matrix stored in primitive arrays
+ * using the compressed sparse row (CSR) layout. A compressed sparse column
+ * (CSC) copy of the values is built on demand for column access.
+ * <p>
+ * Values set in row then column order are directly appended to the CSR
+ * arrays. Other values are buffered and merged in the CSR arrays on the next
+ * read access, the last value set for a cell wins. Row and column removals are
+ * also applied lazily. Cells with the default value of the matrix are not
+ * stored.
+ * @author Laurent Jourdren
+ * @since 1.0
+ */
+public class CompressedSparseExpressionMatrix extends AbstractMatrix<Double>
+    implements ExpressionMatrix {
+
+  private static final double DEFAULT_DEFAULT_VALUE = 0.0;
+  private static final int INITIAL_CAPACITY = 16;
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  private final double defaultValue;
+  private final long defaultValueBits;
+
+  // Row and column names. The names of the removed rows and columns are kept
+  // in the lists until the next compaction
+  private final List<String> rowNames = new ArrayList<>();
+  private final Map<String, Integer> rowIndexes = new HashMap<>();
+  private final List<String> columnNames = new ArrayList<>();
+  private final Map<String, Integer> columnIndexes = new HashMap<>();
+  private final BitSet removedRows = new BitSet();
+  private final BitSet removedColumns = new BitSet();
+
+  // CSR storage, the rows after csrRowCount are empty
+  private int[] rowPointers = new int[INITIAL_CAPACITY + 1];
+  private int csrRowCount;
+  private int[] csrColumns = new int[INITIAL_CAPACITY];
+  private double[] csrValues = new double[INITIAL_CAPACITY];
+  private int valueCount;
+
+  // Values to merge in the CSR storage
+  private int[] pendingRows = new int[0];
+  private int[] pendingColumns = new int[0];
+  private double[] pendingValues = new double[0];
+  private int pendingCount;
+
+  // CSC storage, null if not computed
+  private int[] columnPointers;
+  private int[] cscRows;
+  private double[] cscValues;
+
+  /**
+   * This interface define a consumer of the stored values of the matrix.
+   */
+  public interface NonZeroValueConsumer {
+
+    /**
+     * Process a value of the matrix.
+     * @param rowIndex index of the row in the list of the row names
+     * @param columnIndex index of the column in the list of the column names
+     * @param value the value
+     */
+    void accept(int rowIndex, int columnIndex, double value);
+  }
+
+  @Override
+  public List<String> getRowNames() {
+
+    compact();
+
+    return Collections.unmodifiableList(new ArrayList<>(this.rowNames));
+  }
+
+  @Override
+  public int getRowCount() {
+
+    return this.rowIndexes.size();
+  }
+
+  @Override
+  public List<String> getColumnNames() {
+
+    compact();
+
+    return Collections.unmodifiableList(new ArrayList<>(this.columnNames));
+  }
+
+  @Override
+  public int getColumnCount() {
+
+    return this.columnIndexes.size();
+  }
+
+  @Override
+  public Iterable<Entry<Double>> nonZeroValues() {
+
+    return new Iterable<Entry<Double>>() {
+
+      @Override
+      public Iterator<Entry<Double>> iterator() {
+
+        compact();
+
+        return new Iterator<Entry<Double>>() {
+
+          int row;
+          int pos;
+
+          @Override
+          public boolean hasNext() {
+
+            return this.pos < valueCount;
+          }
+
+          @Override
+          public Entry<Double> next() {
+
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+
+            while (rowPointers[this.row + 1] <= this.pos) {
+              this.row++;
+            }
+
+            final Entry<Double> result = new BasicEntry<>(
+                rowNames.get(this.row), columnNames.get(csrColumns[this.pos]),
+                csrValues[this.pos]);
+            this.pos++;
+
+            return result;
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Process all the stored values of the matrix in row then column order
+   * without creating any object.
+   * @param consumer consumer of the values
+   */
+  public void forEachNonZeroValue(final NonZeroValueConsumer consumer) {
+
+    Objects.requireNonNull(consumer, "consumer argument cannot be null");
+
+    compact();
+
+    for (int row = 0; row < this.csrRowCount; row++) {
+      for (int k = this.rowPointers[row], end =
+          this.rowPointers[row + 1]; k < end; k++) {
+        consumer.accept(row, this.csrColumns[k], this.csrValues[k]);
+      }
+    }
+  }
+
+  /**
+   * Get the number of values stored in the matrix.
+   * @return the number of values stored in the matrix
+   */
+  public int getNonZeroCount() {
+
+    compact();
+
+    return this.valueCount;
+  }
+
+  /**
+   * Reserve room for values that will be set in the matrix. This avoid the
+   * resizing of the internal arrays when the number of values to set is known.
+   * @param valueCount the number of values that will be set
+   */
+  public void ensureCapacity(final int valueCount) {
+
+    if (valueCount < 0) {
+      throw new IllegalArgumentException(
+          "valueCount argument cannot be lower than 0: " + valueCount);
+    }
+
+    final int capacity = this.pendingCount + valueCount;
+
+    if (capacity > this.pendingRows.length) {
+      this.pendingRows = Arrays.copyOf(this.pendingRows, capacity);
+      this.pendingColumns = Arrays.copyOf(this.pendingColumns, capacity);
+      this.pendingValues = Arrays.copyOf(this.pendingValues, capacity);
+    }
+  }
+
+  @Override
+  public List<Double> getColumnValues(final String columnName) {
+
+    return toList(getColumnArray(columnName));
+  }
+
+  @Override
+  public List<Double> getRowValues(final String rowName) {
+
+    return toList(getRowArray(rowName));
+  }
+
+  /**
+   * Get the values of a column.
+   * @param columnName the name of the column
+   * @return an array with the values of the column
+   */
+  public double[] getColumnArray(final String columnName) {
+
+    compact();
+    buildColumnStorage();
+
+    final int column = columnIndex(columnName);
+    final double[] result = new double[this.rowNames.size()];
+    Arrays.fill(result, this.defaultValue);
+
+    for (int k = this.columnPointers[column], end =
+        this.columnPointers[column + 1]; k < end; k++) {
+      result[this.cscRows[k]] = this.cscValues[k];
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the values of a row.
+   * @param rowName the name of the row
+   * @return an array with the values of the row
+   */
+  public double[] getRowArray(final String rowName) {
+
+    compact();
+
+    final int row = rowIndex(rowName);
+    final double[] result = new double[this.columnNames.size()];
+    Arrays.fill(result, this.defaultValue);
+
+    if (row < this.csrRowCount) {
+      for (int k = this.rowPointers[row], end =
+          this.rowPointers[row + 1]; k < end; k++) {
+        result[this.csrColumns[k]] = this.csrValues[k];
+      }
+    }
+
+    return result;
+  }
+
+  @Override
+  public Double getValue(final String rowName, final String columnName) {
+
+    compact();
+
+    return getValue(rowIndex(rowName), columnIndex(columnName));
+  }
+
+  /**
+   * Get a value of the matrix.
+   * @param rowIndex index of the row in the list of the row names
+   * @param columnIndex index of the column in the list of the column names
+   * @return the value of the cell
+   */
+  public double getValue(final int rowIndex, final int columnIndex) {
+
+    compact();
+    checkIndexes(rowIndex, columnIndex);
+
+    if (rowIndex >= this.csrRowCount) {
+      return this.defaultValue;
+    }
+
+    final int pos = Arrays.binarySearch(this.csrColumns,
+        this.rowPointers[rowIndex], this.rowPointers[rowIndex + 1],
+        columnIndex);
+
+    return pos < 0 ? this.defaultValue : this.csrValues[pos];
+  }
+
+  /**
+   * Get the index of a row.
+   * @param rowName the name of the row
+   * @return the index of the row in the list of the row names
+   */
+  public int getRowIndex(final String rowName) {
+
+    applyRemovals();
+
+    return rowIndex(rowName);
+  }
+
+  /**
+   * Get the index of a column.
+   * @param columnName the name of the column
+   * @return the index of the column in the list of the column names
+   */
+  public int getColumnIndex(final String columnName) {
+
+    applyRemovals();
+
+    return columnIndex(columnName);
+  }
+
+  @Override
+  public boolean containsColumn(final String columnName) {
+
+    Objects.requireNonNull(columnName, "columnName argument cannot be null");
+
+    return this.columnIndexes.containsKey(columnName);
+  }
+
+  @Override
+  public boolean containsRow(final String rowName) {
+
+    Objects.requireNonNull(rowName, "rowName argument cannot be null");
+
+    return this.rowIndexes.containsKey(rowName);
+  }
+
+  @Override
+  public void setValue(final String rowName, final String columnName,
+      final Double value) {
+
+    Objects.requireNonNull(value, "value argument cannot be null");
+
+    setValue(rowName, columnName, value.doubleValue());
+  }
+
+  @Override
+  public void setValue(final String rowName, final String columnName,
+      final double value) {
+
+    Objects.requireNonNull(rowName, "rowName argument cannot be null");
+    Objects.requireNonNull(columnName, "columnName argument cannot be null");
+
+    // Get the row index
+    Integer row = this.rowIndexes.get(rowName);
+    if (row == null) {
+      addRow(rowName);
+      row = this.rowNames.size() - 1;
+    }
+
+    // Get the column index
+    Integer column = this.columnIndexes.get(columnName);
+    if (column == null) {
+      addColumn(columnName);
+      column = this.columnNames.size() - 1;
+    }
+
+    put(row, column, value);
+  }
+
+  /**
+   * Set a value of the matrix.
+   * @param rowIndex index of the row in the list of the row names
+   * @param columnIndex index of the column in the list of the column names
+   * @param value the value to set
+   */
+  public void setValue(final int rowIndex, final int columnIndex,
+      final double value) {
+
+    applyRemovals();
+    checkIndexes(rowIndex, columnIndex);
+
+    put(rowIndex, columnIndex, value);
+  }
+
+  @Override
+  public void addRow(final String rowName) {
+
+    Objects.requireNonNull(rowName, "rowName argument cannot be null");
+
+    if (this.rowIndexes.containsKey(rowName)) {
+      return;
+    }
+
+    this.rowIndexes.put(rowName, this.rowNames.size());
+    this.rowNames.add(rowName);
+  }
+
+  @Override
+  public void addColumn(final String columnName) {
+
+    Objects.requireNonNull(columnName, "columnName argument cannot be null");
+
+    if (this.columnIndexes.containsKey(columnName)) {
+      return;
+    }
+
+    this.columnIndexes.put(columnName, this.columnNames.size());
+    this.columnNames.add(columnName);
+    this.columnPointers = null;
+  }
+
+  @Override
+  public void renameColumn(final String oldColumnName,
+      final String newColumnName) {
+
+    Objects.requireNonNull(oldColumnName, "oldColumnName cannot be null");
+    Objects.requireNonNull(newColumnName, "newColumnName cannot be null");
+
+    if (!containsColumn(oldColumnName)) {
+      throw new IllegalArgumentException(
+          "Unknown column name: " + oldColumnName);
+    }
+
+    if (containsColumn(newColumnName)) {
+      throw new IllegalArgumentException(
+          "The new column name already exists: " + newColumnName);
+    }
+
+    final int column = this.columnIndexes.remove(oldColumnName);
+    this.columnIndexes.put(newColumnName, column);
+    this.columnNames.set(column, newColumnName);
+  }
+
+  @Override
+  public void removeColumn(final String columnName) {
+
+    Objects.requireNonNull(columnName, "columnName argument cannot be null");
+
+    final Integer column = this.columnIndexes.remove(columnName);
+
+    if (column == null) {
+      throw new IllegalArgumentException(
+          "columnName does not exists: " + columnName);
+    }
+
+    this.removedColumns.set(column);
+    this.columnPointers = null;
+  }
+
+  @Override
+  public void removeRow(final String rowName) {
+
+    Objects.requireNonNull(rowName, "rowName argument cannot be null");
+
+    final Integer row = this.rowIndexes.remove(rowName);
+
+    if (row == null) {
+      throw new IllegalArgumentException("rowName does not exists: " + rowName);
+    }
+
+    this.removedRows.set(row);
+    this.columnPointers = null;
+  }
+
+  @Override
+  public void retainRows(final Collection<String> rowNames) {
+
+    Objects.requireNonNull(rowNames);
+
+    retain(this.rowIndexes, this.removedRows, rowNames);
+  }
+
+  @Override
+  public void retainColumns(final Collection<String> columnNames) {
+
+    Objects.requireNonNull(columnNames);
+
+    retain(this.columnIndexes, this.removedColumns, columnNames);
+  }
+
+  @Override
+  public Double getDefaultValue() {
+
+    return this.defaultValue;
+  }
+
+  //
+  // Internal methods
+  //
+
+  private int rowIndex(final String rowName) {
+
+    Objects.requireNonNull(rowName, "rowName argument cannot be null");
+
+    final Integer result = this.rowIndexes.get(rowName);
+
+    if (result == null) {
+      throw new IllegalArgumentException("Unknown row name: " + rowName);
+    }
+
+    return result;
+  }
+
+  private int columnIndex(final String columnName) {
+
+    Objects.requireNonNull(columnName, "columnName argument cannot be null");
+
+    final Integer result = this.columnIndexes.get(columnName);
+
+    if (result == null) {
+      throw new IllegalArgumentException("Unknown column name: " + columnName);
+    }
+
+    return result;
+  }
+
+  private void checkIndexes(final int rowIndex, final int columnIndex) {
+
+    if (rowIndex < 0 || rowIndex >= this.rowNames.size()) {
+      throw new IllegalArgumentException("Invalid row index: " + rowIndex);
+    }
+
+    if (columnIndex < 0 || columnIndex >= this.columnNames.size()) {
+      throw new IllegalArgumentException(
+          "Invalid column index: " + columnIndex);
+    }
+  }
+
+  private boolean isDefaultValue(final double value) {
+
+    return Double.doubleToLongBits(value) == this.defaultValueBits;
+  }
+
+  /**
+   * Mark as removed the entries that are not in a collection.
+   * @param indexes the index of the entries
+   * @param removed the removed entries
+   * @param names the names of the entries to keep
+   */
+  private void retain(final Map<String, Integer> indexes, final BitSet removed,
+      final Collection<String> names) {
+
+    final Set<String> namesToKeep =
+        names instanceof Set ? (Set<String>) names : new HashSet<>(names);
+
+    final Iterator<Map.Entry<String, Integer>> it =
+        indexes.entrySet().iterator();
+
+    while (it.hasNext()) {
+
+      final Map.Entry<String, Integer> e = it.next();
+      if (!namesToKeep.contains(e.getKey())) {
+        removed.set(e.getValue());
+        it.remove();
+      }
+    }
+
+    this.columnPointers = null;
+  }
+
+  /**
+   * Set the value of a cell.
+   * @param row row index
+   * @param column column index
+   * @param value value to set
+   */
+  private void put(final int row, final int column, final double value) {
+
+    this.columnPointers = null;
+
+    // Values set in row then column order are directly added to the CSR
+    // storage
+    if (this.pendingCount == 0
+        && this.removedRows.isEmpty() && this.removedColumns.isEmpty()
+        && isAppendable(row, column)) {
+
+      if (!isDefaultValue(value)) {
+        append(row, column, value);
+      }
+      return;
+    }
+
+    if (this.pendingCount == this.pendingRows.length) {
+      final int capacity = newCapacity(this.pendingRows.length,
+          this.pendingCount + 1);
+      this.pendingRows = Arrays.copyOf(this.pendingRows, capacity);
+      this.pendingColumns = Arrays.copyOf(this.pendingColumns, capacity);
+      this.pendingValues = Arrays.copyOf(this.pendingValues, capacity);
+    }
+
+    this.pendingRows[this.pendingCount] = row;
+    this.pendingColumns[this.pendingCount] = column;
+    this.pendingValues[this.pendingCount] = value;
+    this.pendingCount++;
+  }
+
+  /**
+   * Test if a cell is after the last cell of the CSR storage.
+   * @param row row index
+   * @param column column index
+   * @return true if the cell can be appended to the CSR storage
+   */
+  private boolean isAppendable(final int row, final int column) {
+
+    if (row >= this.csrRowCount) {
+      return true;
+    }
+
+    if (row == this.csrRowCount - 1) {
+      return this.valueCount == this.rowPointers[row]
+          || this.csrColumns[this.valueCount - 1] < column;
+    }
+
+    return false;
+  }
+
+  /**
+   * Append a value at the end of the CSR storage.
+   * @param row row index
+   * @param column column index
+   * @param value value to set
+   */
+  private void append(final int row, final int column, final double value) {
+
+    if (row >= this.csrRowCount) {
+
+      if (row + 2 > this.rowPointers.length) {
+        this.rowPointers = Arrays.copyOf(this.rowPointers,
+            newCapacity(this.rowPointers.length, row + 2));
+      }
+
+      // Empty rows
+      Arrays.fill(this.rowPointers, this.csrRowCount + 1, row + 2,
+          this.valueCount);
+      this.csrRowCount = row + 1;
+    }
+
+    if (this.valueCount == this.csrColumns.length) {
+      final int capacity =
+          newCapacity(this.csrColumns.length, this.valueCount + 1);
+      this.csrColumns = Arrays.copyOf(this.csrColumns, capacity);
+      this.csrValues = Arrays.copyOf(this.csrValues, capacity);
+    }
+
+    this.csrColumns[this.valueCount] = column;
+    this.csrValues[this.valueCount] = value;
+    this.rowPointers[this.csrRowCount] = ++this.valueCount;
+  }
+
+  /**
+   * Apply the pending removals and merge the pending values in the CSR
+   * storage.
+   */
+  private void compact() {
+
+    applyRemovals();
+    mergePendingValues();
+  }
+
+  /**
+   * Apply the pending row and column removals.
+   */
+  private void applyRemovals() {
+
+    if (this.removedRows.isEmpty() && this.removedColumns.isEmpty()) {
+      return;
+    }
+
+    final int[] rowMap =
+        removeNames(this.rowNames, this.rowIndexes, this.removedRows);
+    final int[] columnMap =
+        removeNames(this.columnNames, this.columnIndexes, this.removedColumns);
+
+    // Update the CSR storage. Indexes can only decrease so the arrays are
+    // updated in place
+    int count = 0;
+    int rowCount = 0;
+    int start = this.rowPointers[0];
+
+    for (int row = 0; row < this.csrRowCount; row++) {
+
+      final int end = this.rowPointers[row + 1];
+
+      if (rowMap[row] != -1) {
+
+        for (int k = start; k < end; k++) {
+
+          final int column = columnMap[this.csrColumns[k]];
+          if (column != -1) {
+            this.csrColumns[count] = column;
+            this.csrValues[count] = this.csrValues[k];
+            count++;
+          }
+        }
+
+        this.rowPointers[++rowCount] = count;
+      }
+
+      start = end;
+    }
+
+    this.csrRowCount = rowCount;
+    this.valueCount = count;
+
+    // Update the pending values
+    count = 0;
+    for (int i = 0; i < this.pendingCount; i++) {
+
+      final int row = rowMap[this.pendingRows[i]];
+      final int column = columnMap[this.pendingColumns[i]];
+
+      if (row != -1 && column != -1) {
+        this.pendingRows[count] = row;
+        this.pendingColumns[count] = column;
+        this.pendingValues[count] = this.pendingValues[i];
+        count++;
+      }
+    }
+    this.pendingCount = count;
+
+    this.columnPointers = null;
+  }
+
+  /**
+   * Remove names from a list of names.
+   * @param names list of the names
+   * @param indexes index of the names to update
+   * @param removed indexes of the names to remove
+   * @return an array with the new indexes of the names, -1 for the removed
+   *         names
+   */
+  private static int[] removeNames(final List<String> names,
+      final Map<String, Integer> indexes, final BitSet removed) {
+
+    final int[] result = new int[names.size()];
+
+    if (removed.isEmpty()) {
+      for (int i = 0; i < result.length; i++) {
+        result[i] = i;
+      }
+      return result;
+    }
+
+    int count = 0;
+    for (int i = 0; i < result.length; i++) {
+
+      if (removed.get(i)) {
+        result[i] = -1;
+      } else {
+        names.set(count, names.get(i));
+        result[i] = count++;
+      }
+    }
+
+    names.subList(count, names.size()).clear();
+    removed.clear();
+
+    indexes.clear();
+    for (int i = 0; i < count; i++) {
+      indexes.put(names.get(i), i);
+    }
+
+    return result;
+  }
+
+  /**
+   * Merge the pending values in the CSR storage.
+   */
+  private void mergePendingValues() {
+
+    if (this.pendingCount == 0) {
+
+      // Release the reserved room if all the values have been appended
+      if (this.pendingRows.length > 0) {
+        this.pendingRows = new int[0];
+        this.pendingColumns = new int[0];
+        this.pendingValues = new double[0];
+      }
+
+      return;
+    }
+
+    final int rowCount = this.rowNames.size();
+    final int n = this.pendingCount;
+    final int[] pRows = this.pendingRows;
+    final int[] pColumns = this.pendingColumns;
+    final double[] pValues = this.pendingValues;
+
+    // Stable sort of the pending values by row and column
+    final int[] order = countingSort(pRows, n, rowCount,
+        countingSort(pColumns, n, this.columnNames.size(), null));
+
+    final int[] newRowPointers = new int[rowCount + 1];
+    final int[] newColumns = new int[this.valueCount + n];
+    final double[] newValues = new double[this.valueCount + n];
+    int count = 0;
+    int p = 0;
+
+    for (int row = 0; row < rowCount; row++) {
+
+      int k = row < this.csrRowCount ? this.rowPointers[row] : 0;
+      final int end = row < this.csrRowCount ? this.rowPointers[row + 1] : 0;
+
+      while (k < end || (p < n && pRows[order[p]] == row)) {
+
+        final int existingColumn =
+            k < end ? this.csrColumns[k] : Integer.MAX_VALUE;
+        final int pendingColumn = p < n && pRows[order[p]] == row
+            ? pColumns[order[p]] : Integer.MAX_VALUE;
+
+        if (existingColumn < pendingColumn) {
+          newColumns[count] = existingColumn;
+          newValues[count++] = this.csrValues[k++];
+          continue;
+        }
+
+        // Keep the last value set for the cell
+        double value = pValues[order[p++]];
+        while (p < n
+            && pRows[order[p]] == row && pColumns[order[p]] == pendingColumn) {
+          value = pValues[order[p++]];
+        }
+
+        if (existingColumn == pendingColumn) {
+          k++;
+        }
+
+        if (!isDefaultValue(value)) {
+          newColumns[count] = pendingColumn;
+          newValues[count++] = value;
+        }
+      }
+
+      newRowPointers[row + 1] = count;
+    }
+
+    this.rowPointers = newRowPointers;
+    this.csrColumns = newColumns;
+    this.csrValues = newValues;
+    this.csrRowCount = rowCount;
+    this.valueCount = count;
+
+    this.pendingRows = new int[0];
+    this.pendingColumns = new int[0];
+    this.pendingValues = new double[0];
+    this.pendingCount = 0;
+
+    this.columnPointers = null;
+  }
+
+  /**
+   * Stable counting sort.
+   * @param keys the keys to sort
+   * @param n number of keys
+   * @param range the keys are between 0 and range
+   * @param order initial order of the keys, can be null
+   * @return an array with the sorted indexes of the keys
+   */
+  private static int[] countingSort(final int[] keys, final int n,
+      final int range, final int[] order) {
+
+    final int[] positions = new int[range + 1];
+
+    for (int i = 0; i < n; i++) {
+      positions[keys[i] + 1]++;
+    }
+
+    for (int i = 1; i <= range; i++) {
+      positions[i] += positions[i - 1];
+    }
+
+    final int[] result = new int[n];
+    for (int i = 0; i < n; i++) {
+      final int index = order == null ? i : order[i];
+      result[positions[keys[index]]++] = index;
+    }
+
+    return result;
+  }
+
+  /**
+   * Build the CSC storage if required.
+   */
+  private void buildColumnStorage() {
+
+    if (this.columnPointers != null) {
+      return;
+    }
+
+    final int columnCount = this.columnNames.size();
+    final int[] pointers = new int[columnCount + 1];
+
+    for (int k = 0; k < this.valueCount; k++) {
+      pointers[this.csrColumns[k] + 1]++;
+    }
+
+    for (int i = 1; i <= columnCount; i++) {
+      pointers[i] += pointers[i - 1];
+    }
+
+    final int[] positions = Arrays.copyOf(pointers, columnCount);
+    final int[] rows = new int[this.valueCount];
+    final double[] values = new double[this.valueCount];
+
+    for (int row = 0; row < this.csrRowCount; row++) {
+      for (int k = this.rowPointers[row], end =
+          this.rowPointers[row + 1]; k < end; k++) {
+
+        final int pos = positions[this.csrColumns[k]]++;
+        rows[pos] = row;
+        values[pos] = this.csrValues[k];
+      }
+    }
+
+    this.cscRows = rows;
+    this.cscValues = values;
+    this.columnPointers = pointers;
+  }
+
+  private static int newCapacity(final int capacity, final int minCapacity) {
+
+    if (minCapacity < 0 || minCapacity > MAX_ARRAY_SIZE) {
+      throw new OutOfMemoryError("Too many values in the matrix");
+    }
+
+    final long result = capacity + (capacity >> 1) + INITIAL_CAPACITY;
+
+    return (int) Math.max(minCapacity, Math.min(result, MAX_ARRAY_SIZE));
+  }
+
+  private static List<Double> toList(final double[] values) {
+
+    final List<Double> result = new ArrayList<>(values.length);
+    for (double v : values) {
+      result.add(v);
+    }
+
+    return result;
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor.
+   */
+  public CompressedSparseExpressionMatrix() {
+    this(DEFAULT_DEFAULT_VALUE);
+  }
+
+  /**
+   * Public constructor.
+   * @param defaultValue the default value of the matrix
+   */
+  public CompressedSparseExpressionMatrix(final double defaultValue) {
+    this.defaultValue = defaultValue;
+    this.defaultValueBits = Double.doubleToLongBits(defaultValue);
+  }
+
+}
@@ -30,6 +30,12 @@ public class ExpressionMatrices {
     Objects.requireNonNull(destColumName,
         "destColumName argument cannot be null");
 
+    if (srcMatrix instanceof CompressedSparseExpressionMatrix) {
+      mergeColumns((CompressedSparseExpressionMatrix) srcMatrix, srcColumNames,
+          destMatrix, destColumName);
+      return;
+    }
+
     for (String rowName : srcMatrix.getRowNames()) {
 
       double sum = 0.0;
@@ -50,6 +56,11 @@ public class ExpressionMatrices {
 
     Objects.requireNonNull(matrix, "matrix argument cannot be null");
 
+    if (matrix instanceof CompressedSparseExpressionMatrix) {
+      removeEmptyRows((CompressedSparseExpressionMatrix) matrix);
+      return;
+    }
+
     for (String rowName : matrix.getRowNames()) {
 
       List<Double> row = matrix.getRowValues(rowName);
@@ -68,6 +79,67 @@ public class ExpressionMatrices {
     }
   }
 
+  /**
+   * Merge some columns of a compressed sparse matrix in another matrice by
+   * summing the content of the cell to merge.
+   * @param srcMatrix source matrix
+   * @param srcColumNames column of the source matrix to merge
+   * @param destMatrix destination matrix
+   * @param destColumName destination column name
+   */
+  private static void mergeColumns(
+      final CompressedSparseExpressionMatrix srcMatrix,
+      final Collection<String> srcColumNames, final ExpressionMatrix destMatrix,
+      final String destColumName) {
+
+    final List<String> rowNames = srcMatrix.getRowNames();
+    final double[] sums = new double[rowNames.size()];
+
+    for (String columnName : srcColumNames) {
+
+      final double[] values = srcMatrix.getColumnArray(columnName);
+      for (int i = 0; i < sums.length; i++) {
+        sums[i] += values[i];
+      }
+    }
+
+    for (int i = 0; i < sums.length; i++) {
+      destMatrix.setValue(rowNames.get(i), destColumName, sums[i]);
+    }
+  }
+
+  /**
+   * Remove all the rows of a compressed sparse matrix that contains only zero
+   * values.
+   * @param matrix the matrix to process
+   */
+  private static void removeEmptyRows(
+      final CompressedSparseExpressionMatrix matrix) {
+
+    final List<String> rowNames = matrix.getRowNames();
+    final int[] storedCounts = new int[rowNames.size()];
+    final boolean[] nonZero = new boolean[rowNames.size()];
+
+    matrix.forEachNonZeroValue((row, column, value) -> {
+      storedCounts[row]++;
+      if (value != 0.0) {
+        nonZero[row] = true;
+      }
+    });
+
+    // Cells that are not stored contain the default value
+    final int columnCount = matrix.getColumnCount();
+    final boolean nonZeroDefault = matrix.getDefaultValue() != 0.0;
+
+    for (int i = 0; i < nonZero.length; i++) {
+
+      if (!nonZero[i]
+          && !(nonZeroDefault && storedCounts[i] < columnCount)) {
+        matrix.removeRow(rowNames.get(i));
+      }
+    }
+  }
+
   /**
    * Reverse the row and column of a matrix.
    * @param srcMatrix input matrix
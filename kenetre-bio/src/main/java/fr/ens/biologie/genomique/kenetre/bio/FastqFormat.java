@@ -75,6 +75,15 @@ public enum FastqFormat {
   private final int asciiOffset;
   private final boolean phredScore;
 
+  // Size of the lookup tables. The constructor can only use this static field
+  // because it is a compile-time constant: the other static fields of an enum
+  // are initialized after its constants
+  private static final int TABLE_SIZE = 256;
+
+  // Lookup tables indexed by quality character
+  private final double[] probabilities = new double[TABLE_SIZE];
+  private final double[] log10Probabilities = new double[TABLE_SIZE];
+
   //
   // Getters
   //
@@ -233,9 +242,27 @@ public enum FastqFormat {
    */
   public double getProbability(final char character) {
 
+    if (character < TABLE_SIZE) {
+      return this.probabilities[character];
+    }
+
     return convertScoreToProbability(character - this.asciiOffset);
   }
 
+  /**
+   * Convert a character to the log10 of an error probability.
+   * @param character character to convert
+   * @return the log10 of the error probability
+   */
+  public double getLog10Probability(final char character) {
+
+    if (character < TABLE_SIZE) {
+      return this.log10Probabilities[character];
+    }
+
+    return log10(convertScoreToProbability(character - this.asciiOffset));
+  }
+
   /**
    * Convert a quality score to a probability.
    * @param score the quality score
@@ -525,6 +552,378 @@ public enum FastqFormat {
     return null;
   }
 
+  //
+  // Quality kernels
+  //
+
+  /**
+   * Get the mean quality score of a quality string.
+   * @param quality the quality string
+   * @return the mean quality score
+   */
+  public double meanScore(final String quality) {
+
+    return meanScore(quality, 0, quality.length());
+  }
+
+  /**
+   * Get the mean quality score of a region of a quality string.
+   * @param quality the quality string
+   * @param start start of the region
+   * @param end end of the region (exclusive)
+   * @return the mean quality score
+   */
+  public double meanScore(final String quality, final int start,
+      final int end) {
+
+    checkRegion(quality.length(), start, end);
+
+    long sum = 0;
+    for (int i = start; i < end; i++) {
+      sum += quality.charAt(i);
+    }
+
+    return (double) (sum - (long) this.asciiOffset * (end - start))
+        / (end - start);
+  }
+
+  /**
+   * Get the mean quality score of quality characters stored in bytes.
+   * @param quality the quality bytes
+   * @param offset index of the first quality byte
+   * @param length number of quality bytes
+   * @return the mean quality score
+   */
+  public double meanScore(final byte[] quality, final int offset,
+      final int length) {
+
+    checkRegion(quality.length, offset, offset + length);
+
+    long sum = 0;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      sum += quality[i] & 0xFF;
+    }
+
+    return (double) (sum - (long) this.asciiOffset * length) / length;
+  }
+
+  /**
+   * Get the expected number of errors of a quality string, i.e. the sum of the
+   * error probabilities of the bases.
+   * @param quality the quality string
+   * @return the expected number of errors
+   */
+  public double expectedErrors(final String quality) {
+
+    return expectedErrors(quality, 0, quality.length());
+  }
+
+  /**
+   * Get the expected number of errors of a region of a quality string.
+   * @param quality the quality string
+   * @param start start of the region
+   * @param end end of the region (exclusive)
+   * @return the expected number of errors
+   */
+  public double expectedErrors(final String quality, final int start,
+      final int end) {
+
+    checkRegion(quality.length(), start, end);
+
+    double sum = 0.0;
+    for (int i = start; i < end; i++) {
+      sum += getProbability(quality.charAt(i));
+    }
+
+    return sum;
+  }
+
+  /**
+   * Get the expected number of errors of quality characters stored in bytes.
+   * @param quality the quality bytes
+   * @param offset index of the first quality byte
+   * @param length number of quality bytes
+   * @return the expected number of errors
+   */
+  public double expectedErrors(final byte[] quality, final int offset,
+      final int length) {
+
+    checkRegion(quality.length, offset, offset + length);
+
+    final double[] probabilities = this.probabilities;
+    double sum = 0.0;
+    for (int i = offset, end = offset + length; i < end; i++) {
+      sum += probabilities[quality[i] & 0xFF];
+    }
+
+    return sum;
+  }
+
+  /**
+   * Get the minimal mean quality score of the windows of a region of a quality
+   * string. If the region is shorter than the window, the mean quality score
+   * of the region is returned.
+   * @param quality the quality string
+   * @param start start of the region
+   * @param end end of the region (exclusive)
+   * @param windowLength length of the window
+   * @return the minimal mean quality score of the windows
+   */
+  public double minWindowMeanScore(final String quality, final int start,
+      final int end, final int windowLength) {
+
+    checkRegion(quality.length(), start, end);
+    checkWindowLength(windowLength);
+
+    if (end - start <= windowLength) {
+      return meanScore(quality, start, end);
+    }
+
+    long sum = 0;
+    for (int i = start, n = start + windowLength; i < n; i++) {
+      sum += quality.charAt(i);
+    }
+
+    long min = sum;
+    for (int i = start + windowLength; i < end; i++) {
+      sum += quality.charAt(i) - quality.charAt(i - windowLength);
+      if (sum < min) {
+        min = sum;
+      }
+    }
+
+    return (double) (min - (long) this.asciiOffset * windowLength)
+        / windowLength;
+  }
+
+  /**
+   * Get the minimal mean quality score of the windows of quality characters
+   * stored in bytes. If the region is shorter than the window, the mean
+   * quality score of the region is returned.
+   * @param quality the quality bytes
+   * @param offset index of the first quality byte
+   * @param length number of quality bytes
+   * @param windowLength length of the window
+   * @return the minimal mean quality score of the windows
+   */
+  public double minWindowMeanScore(final byte[] quality, final int offset,
+      final int length, final int windowLength) {
+
+    checkRegion(quality.length, offset, offset + length);
+    checkWindowLength(windowLength);
+
+    if (length <= windowLength) {
+      return meanScore(quality, offset, length);
+    }
+
+    final int end = offset + length;
+    long sum = 0;
+    for (int i = offset, n = offset + windowLength; i < n; i++) {
+      sum += quality[i] & 0xFF;
+    }
+
+    long min = sum;
+    for (int i = offset + windowLength; i < end; i++) {
+      sum += (quality[i] & 0xFF) - (quality[i - windowLength] & 0xFF);
+      if (sum < min) {
+        min = sum;
+      }
+    }
+
+    return (double) (min - (long) this.asciiOffset * windowLength)
+        / windowLength;
+  }
+
+  /**
+   * Get the start of a region of a quality string after the removal of the
+   * leading bases with a quality score lower than a threshold. As in
+   * Trimmomatic, the negative quality scores are handled as 0.
+   * @param quality the quality string
+   * @param start start of the region
+   * @param end end of the region (exclusive)
+   * @param threshold the minimal quality score of the first base to keep
+   * @return the index of the first base to keep or end if all the bases must
+   *         be removed
+   */
+  public int leadingTrimIndex(final String quality, final int start,
+      final int end, final int threshold) {
+
+    checkRegion(quality.length(), start, end);
+
+    final int minChar = trimThresholdChar(threshold);
+    for (int i = start; i < end; i++) {
+      if (quality.charAt(i) >= minChar) {
+        return i;
+      }
+    }
+
+    return end;
+  }
+
+  /**
+   * Get the start of a region of quality characters stored in bytes after the
+   * removal of the leading bases with a quality score lower than a threshold.
+   * As in Trimmomatic, the negative quality scores are handled as 0.
+   * @param quality the quality bytes
+   * @param offset index of the first quality byte
+   * @param length number of quality bytes
+   * @param threshold the minimal quality score of the first base to keep
+   * @return the index of the first base to keep or offset + length if all the
+   *         bases must be removed
+   */
+  public int leadingTrimIndex(final byte[] quality, final int offset,
+      final int length, final int threshold) {
+
+    checkRegion(quality.length, offset, offset + length);
+
+    final int minChar = trimThresholdChar(threshold);
+    final int end = offset + length;
+    for (int i = offset; i < end; i++) {
+      if ((quality[i] & 0xFF) >= minChar) {
+        return i;
+      }
+    }
+
+    return end;
+  }
+
+  /**
+   * Get the end of a region of a quality string after the removal of the
+   * trailing bases with a quality score lower than a threshold. As in
+   * Trimmomatic, the negative quality scores are handled as 0.
+   * @param quality the quality string
+   * @param start start of the region
+   * @param end end of the region (exclusive)
+   * @param threshold the minimal quality score of the last base to keep
+   * @return the index after the last base to keep or start if all the bases
+   *         must be removed
+   */
+  public int trailingTrimIndex(final String quality, final int start,
+      final int end, final int threshold) {
+
+    checkRegion(quality.length(), start, end);
+
+    final int minChar = trimThresholdChar(threshold);
+    for (int i = end - 1; i >= start; i--) {
+      if (quality.charAt(i) >= minChar) {
+        return i + 1;
+      }
+    }
+
+    return start;
+  }
+
+  /**
+   * Get the end of a region of quality characters stored in bytes after the
+   * removal of the trailing bases with a quality score lower than a threshold.
+   * As in Trimmomatic, the negative quality scores are handled as 0.
+   * @param quality the quality bytes
+   * @param offset index of the first quality byte
+   * @param length number of quality bytes
+   * @param threshold the minimal quality score of the last base to keep
+   * @return the index after the last base to keep or offset if all the bases
+   *         must be removed
+   */
+  public int trailingTrimIndex(final byte[] quality, final int offset,
+      final int length, final int threshold) {
+
+    checkRegion(quality.length, offset, offset + length);
+
+    final int minChar = trimThresholdChar(threshold);
+    for (int i = offset + length - 1; i >= offset; i--) {
+      if ((quality[i] & 0xFF) >= minChar) {
+        return i + 1;
+      }
+    }
+
+    return offset;
+  }
+
+  /**
+   * Get the end of a region of a quality string after a sliding window
+   * trimming. The region is cut at the first window which mean quality score
+   * is lower than the required quality, then the trailing bases with a
+   * quality score lower than the required quality are removed. This is the
+   * algorithm of the SLIDINGWINDOW step of Trimmomatic, the negative quality
+   * scores are handled as 0 and the required quality is a float.
+   * @param quality the quality string
+   * @param start start of the region
+   * @param end end of the region (exclusive)
+   * @param windowLength length of the window
+   * @param requiredQuality the required mean quality score of the windows
+   * @return the index after the last base to keep or start if all the bases
+   *         must be removed
+   */
+  public int slidingWindowTrimIndex(final String quality, final int start,
+      final int end, final int windowLength, final float requiredQuality) {
+
+    checkRegion(quality.length(), start, end);
+    checkWindowLength(windowLength);
+
+    if (end - start < windowLength) {
+      return start;
+    }
+
+    final float totalRequired = requiredQuality * windowLength;
+
+    int total = 0;
+    for (int i = start, n = start + windowLength; i < n; i++) {
+      total += trimScore(quality.charAt(i));
+    }
+
+    if (total < totalRequired) {
+      return start;
+    }
+
+    int keepEnd = end;
+    for (int i = start; i < end - windowLength; i++) {
+
+      total += trimScore(quality.charAt(i + windowLength))
+          - trimScore(quality.charAt(i));
+
+      if (total < totalRequired) {
+        keepEnd = i + windowLength;
+        break;
+      }
+    }
+
+    // Remove the trailing bases with a low quality score
+    while (keepEnd > start
+        && trimScore(quality.charAt(keepEnd - 1)) < requiredQuality) {
+      keepEnd--;
+    }
+
+    return keepEnd;
+  }
+
+  private int trimScore(final char c) {
+
+    return max(0, c - this.asciiOffset);
+  }
+
+  private int trimThresholdChar(final int threshold) {
+
+    // All the bases have a score greater or equal to 0
+    return threshold <= 0 ? Integer.MIN_VALUE : this.asciiOffset + threshold;
+  }
+
+  private static void checkRegion(final int length, final int start,
+      final int end) {
+
+    if (start < 0 || end > length || start > end) {
+      throw new IndexOutOfBoundsException(
+          "Invalid region [" + start + ", " + end + "[ for length " + length);
+    }
+  }
+
+  private static void checkWindowLength(final int windowLength) {
+
+    if (windowLength < 1) {
+      throw new IllegalArgumentException(
+          "Invalid window length: " + windowLength);
+    }
+  }
+
   @Override
   public String toString() {
 
@@ -559,6 +958,11 @@ public enum FastqFormat {
     this.scoreMaxExpected = scoreMaxExpected;
     this.asciiOffset = asciiOffset;
     this.phredScore = phredQualityScore;
+
+    for (int i = 0; i < TABLE_SIZE; i++) {
+      this.probabilities[i] = convertScoreToProbability(i - asciiOffset);
+      this.log10Probabilities[i] = log10(this.probabilities[i]);
+    }
   }
 
 }
@@ -35,12 +35,20 @@ import java.util.Set;
 import java.util.regex.Pattern;
 
 import com.google.common.base.Splitter;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 import fr.ens.biologie.genomique.kenetre.util.GuavaCompatibility;
 import fr.ens.biologie.genomique.kenetre.util.StringUtils;
 
 /**
  * This class defines a GFF Entry.
+ * <p>
+ * When an entry is parsed, the attribute field is only decoded when all the
+ * attributes are needed. Reading the value of a single attribute with
+ * {@link #getAttributeValue(String)} is done directly on the attribute field.
+ * The sequence ids, the sources, the types and the attribute names of the
+ * parsed entries are interned as they are shared by a lot of entries.
  * @since 1.0
  * @author Laurent Jourdren
  */
@@ -49,6 +57,8 @@ public class GFFEntry {
   private static final Pattern SEMI_COMA_SPLIT_PATTERN = Pattern.compile(";");
   private static final Pattern COMA_SPLIT_PATTERN = Pattern.compile(",");
 
+  private static final Interner<String> INTERNER = Interners.newWeakInterner();
+
   private final EntryMetadata metadata;
   private String seqId;
   private String source;
@@ -60,6 +70,10 @@ public class GFFEntry {
   private int phase;
   private final Map<String, String> attributes = new LinkedHashMap<>();
 
+  // Attribute field not yet decoded, null if there is nothing to decode
+  private String rawAttributes;
+  private boolean rawGTFAttributes;
+
   //
   // Getters
   //
@@ -170,7 +184,7 @@ public class GFFEntry {
    */
   public final Set<String> getAttributesNames() {
 
-    return Collections.unmodifiableSet(this.attributes.keySet());
+    return Collections.unmodifiableSet(attributes().keySet());
   }
 
   /**
@@ -191,6 +205,10 @@ public class GFFEntry {
    */
   public final boolean isAttribute(final String attributeName) {
 
+    if (this.rawAttributes != null) {
+      return findRawAttributeValue(attributeName) != null;
+    }
+
     return this.attributes.containsKey(attributeName);
   }
 
@@ -214,6 +232,10 @@ public class GFFEntry {
    */
   public final String getAttributeValue(final String attributeName) {
 
+    if (this.rawAttributes != null) {
+      return findRawAttributeValue(attributeName);
+    }
+
     return this.attributes.get(attributeName);
   }
 
@@ -373,7 +395,7 @@ public class GFFEntry {
       return false;
     }
 
-    this.attributes.put(attributeName, value);
+    attributes().put(attributeName, value);
 
     return true;
   }
@@ -396,7 +418,7 @@ public class GFFEntry {
    */
   public final boolean removeAttribute(final String attributeName) {
 
-    return this.attributes.remove(attributeName) != null;
+    return attributes().remove(attributeName) != null;
   }
 
   /**
@@ -415,7 +437,7 @@ public class GFFEntry {
     this.score = entry.score;
     this.strand = entry.strand;
     this.phase = entry.phase;
-    this.attributes.putAll(entry.attributes);
+    attributes().putAll(entry.attributes());
   }
 
   //
@@ -436,6 +458,7 @@ public class GFFEntry {
     this.strand = '.';
     this.phase = -1;
     this.attributes.clear();
+    this.rawAttributes = null;
   }
 
   /**
@@ -553,6 +576,9 @@ public class GFFEntry {
     setSeqId(fields.get(0));
     setSource(fields.get(1));
     setType(fields.get(2));
+    this.seqId = INTERNER.intern(this.seqId);
+    this.source = INTERNER.intern(this.source);
+    this.type = INTERNER.intern(this.type);
 
     setStart(parseInt(fields.get(3), Integer.MIN_VALUE));
     setEnd(parseInt(fields.get(4), Integer.MIN_VALUE));
@@ -586,7 +612,7 @@ public class GFFEntry {
         continue;
       }
 
-      final String key = f.substring(0, indexEquals).trim();
+      final String key = INTERNER.intern(f.substring(0, indexEquals).trim());
       final String value = f.substring(indexEquals + 1).trim();
 
       setAttributeValue(key, value);
@@ -621,7 +647,7 @@ public class GFFEntry {
         continue;
       }
 
-      final String key = f.substring(0, indexEquals).trim();
+      final String key = INTERNER.intern(f.substring(0, indexEquals).trim());
       final String value = StringUtils
           .unDoubleQuotes(f.substring(indexEquals + 1).trim()).trim();
 
@@ -654,7 +680,9 @@ public class GFFEntry {
   public void parseGFF3(final String s) throws BadBioEntryException {
 
     final String attributeField = parseCommon(s);
-    parseGFF3Attributes(attributeField);
+    this.attributes.clear();
+    this.rawAttributes = attributeField;
+    this.rawGTFAttributes = false;
   }
 
   /**
@@ -665,7 +693,98 @@ public class GFFEntry {
   public void parseGTF(final String s) throws BadBioEntryException {
 
     final String attributeField = parseCommon(s);
-    parseGTFAttributes(attributeField);
+    this.attributes.clear();
+    this.rawAttributes = attributeField;
+    this.rawGTFAttributes = true;
+  }
+
+  /**
+   * Get the attributes of the entry. The attribute field is decoded if
+   * required.
+   * @return the map with the attributes
+   */
+  private Map<String, String> attributes() {
+
+    if (this.rawAttributes != null) {
+
+      final String attributeField = this.rawAttributes;
+      this.rawAttributes = null;
+
+      if (this.rawGTFAttributes) {
+        parseGTFAttributes(attributeField);
+      } else {
+        parseGFF3Attributes(attributeField);
+      }
+    }
+
+    return this.attributes;
+  }
+
+  /**
+   * Get the value of an attribute from the attribute field that has not been
+   * decoded. The result is the same as decoding the attribute field and then
+   * getting the value of the attribute.
+   * @param attributeName name of the attribute
+   * @return the value of the attribute or null if the attribute name does not
+   *         exists
+   */
+  private String findRawAttributeValue(final String attributeName) {
+
+    final String s = this.rawAttributes;
+
+    if (attributeName == null || "".equals(s) || ".".equals(s)) {
+      return null;
+    }
+
+    final char separator = this.rawGTFAttributes ? ' ' : '=';
+    final int length = s.length();
+    String result = null;
+    int from = 0;
+
+    while (from <= length) {
+
+      int to = s.indexOf(';', from);
+      if (to == -1) {
+        to = length;
+      }
+
+      // Bounds of the trimmed field
+      int start = from;
+      int end = to;
+      while (start < end && s.charAt(start) <= ' ') {
+        start++;
+      }
+      while (end > start && s.charAt(end - 1) <= ' ') {
+        end--;
+      }
+
+      final int pos = s.indexOf(separator, start);
+
+      if (pos != -1 && pos < end) {
+
+        int keyEnd = pos;
+        while (keyEnd > start && s.charAt(keyEnd - 1) <= ' ') {
+          keyEnd--;
+        }
+
+        if (keyEnd - start == attributeName.length()
+            && s.regionMatches(start, attributeName, 0, keyEnd - start)) {
+
+          final String value = s.substring(pos + 1, end).trim();
+
+          if (this.rawGTFAttributes) {
+            final String v = StringUtils.unDoubleQuotes(value).trim();
+            result = result == null ? v : result + ',' + v;
+          } else {
+            result = value;
+          }
+        }
+      }
+
+      from = to + 1;
+    }
+
+    return result;
   }
 
   /**
@@ -674,7 +793,7 @@ public class GFFEntry {
    */
   private String attributesToGFF3String() {
 
-    if (this.attributes.size() == 0) {
+    if (attributes().size() == 0) {
       return ".";
     }
 
@@ -682,7 +801,7 @@ public class GFFEntry {
 
     boolean first = true;
 
-    for (Map.Entry<String, String> e : this.attributes.entrySet()) {
+    for (Map.Entry<String, String> e : attributes().entrySet()) {
 
       if (first) {
         first = false;
@@ -704,7 +823,7 @@ public class GFFEntry {
    */
   private String attributesToGTFString() {
 
-    if (this.attributes.size() == 0) {
+    if (attributes().size() == 0) {
       return ".";
     }
 
@@ -712,7 +831,7 @@ public class GFFEntry {
 
     boolean first = true;
 
-    for (Map.Entry<String, String> e : this.attributes.entrySet()) {
+    for (Map.Entry<String, String> e : attributes().entrySet()) {
 
       final String key = e.getKey();
 
@@ -795,7 +914,7 @@ public class GFFEntry {
 
     return Objects.hash(this.metadata, this.seqId, this.source, this.type,
         this.start, this.end, this.score, this.strand, this.phase,
-        this.attributes);
+        attributes());
   }
 
   @Override
@@ -817,7 +936,7 @@ public class GFFEntry {
         && Objects.equals(this.type, that.type) && this.start == that.start
         && this.end == that.end && Objects.equals(this.score, that.score)
         && this.strand == that.strand && this.phase == that.phase
-        && Objects.equals(this.attributes, that.attributes);
+        && Objects.equals(attributes(), that.attributes());
   }
 
   //
@@ -24,26 +24,25 @@
 
 package fr.ens.biologie.genomique.kenetre.bio;
 
-import static fr.ens.biologie.genomique.kenetre.util.StringUtils.md5DigestToString;
 import static fr.ens.biologie.genomique.kenetre.util.Utils.newArrayList;
 import static java.util.Arrays.asList;
 import static java.util.Objects.requireNonNull;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Writer;
-import java.nio.charset.Charset;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import fr.ens.biologie.genomique.kenetre.bio.io.FastaLineParser;
+import fr.ens.biologie.genomique.kenetre.bio.io.FastaIndex;
 import fr.ens.biologie.genomique.kenetre.io.FileUtils;
 import fr.ens.biologie.genomique.kenetre.util.StringUtils;
 
@@ -73,7 +72,7 @@ public class GenomeDescription {
    * Set the genome name.
    * @param genomeName name of the genome
    */
-  private void setGenomeName(final String genomeName) {
+  void setGenomeName(final String genomeName) {
 
     this.genomeName = genomeName;
   }
@@ -306,9 +305,18 @@ public class GenomeDescription {
 
     requireNonNull(genomeFastaFile, "The genome file is null");
 
-    return createGenomeDescFromFasta(
-        FileUtils.createInputStream(genomeFastaFile),
-        genomeFastaFile.getName());
+    if (genomeFastaFile.isDirectory()) {
+      throw new FileNotFoundException(
+          "The file is a directory: " + genomeFastaFile);
+    }
+
+    // Read the file channel directly instead of using a stream
+    try (FileChannel channel = FileChannel.open(genomeFastaFile.toPath(),
+        StandardOpenOption.READ)) {
+
+      return new GenomeScanner(StringUtils.basename(genomeFastaFile.getName()),
+          false).scan(channel);
+    }
   }
 
   /**
@@ -361,99 +369,76 @@ public class GenomeDescription {
   }
 
   /**
-   * Create a GenomeDescription object from a Fasta file of GFF file.
-   * @param genomeFastaIs genome fasta input stream
-   * @param filename name of the file of the input stream
-   * @param gffFormat the input file is in GFF format
+   * Create a GenomeDescription object from the index of a Fasta file. The
+   * index does not contain the MD5 sum of the genome.
+   * @param index index of the Fasta file
+   * @param filename name of the Fasta file
    * @return a genome description object
-   * @throws BadBioEntryException if an error occurs while creating the genome
-   *           description
-   * @throws IOException if an error occurs while reading the GFF file
    */
-  public static GenomeDescription createGenomeDesc(
-      final InputStream genomeFastaIs, final String filename,
-      final boolean gffFormat) throws BadBioEntryException, IOException {
+  public static GenomeDescription createGenomeDescFromFastaIndex(
+      final FastaIndex index, final String filename) {
 
-    requireNonNull(genomeFastaIs, "The input stream of the genome is null");
+    requireNonNull(index, "The index of the genome is null");
 
     final GenomeDescription result = new GenomeDescription();
     result.setGenomeName(StringUtils.basename(filename));
 
-    MessageDigest md5Digest;
-    try {
-      md5Digest = MessageDigest.getInstance("MD5");
-    } catch (NoSuchAlgorithmException e) {
-      md5Digest = null;
+    for (FastaIndex.Entry e : index.getEntries()) {
+      result.addSequence(e.getName(), e.getLength());
     }
 
-    final FastaLineParser parser =
-        new FastaLineParser(genomeFastaIs, gffFormat);
-
-    final Alphabet alphabet = Alphabets.AMBIGUOUS_DNA_ALPHABET;
-    String seqName = null;
-    String lastSeqName = null;
-    String parsedSeqName = null;
-    long chrSize = 0;
-
-    while ((seqName = parser.parseNextLineAndGetSequenceName()) != null) {
-
-      if (!seqName.equals(lastSeqName)) {
-
-        // Check if sequence has been found more than one time
-        if (result.getSequenceLength(lastSeqName) != -1) {
-          throw new BadBioEntryException(
-              "Sequence name found twice: " + lastSeqName, lastSeqName);
-        }
-
-        // Add sequence
-        if (lastSeqName != null) {
-          result.addSequence(parsedSeqName, chrSize);
-        }
-
-        // Parse chromosome name
-        parsedSeqName = parseChromosomeName(seqName);
+    return result;
+  }
 
-        if (parsedSeqName == null) {
-          throw new IOException("No fasta header found.");
-        }
+  /**
+   * Create a GenomeDescription object from the index of a Fasta file.
+   * @param faiFile index of the Fasta file
+   * @return a genome description object
+   * @throws IOException if an error occurs while reading the index
+   */
+  public static GenomeDescription createGenomeDescFromFastaIndex(
+      final File faiFile) throws IOException {
 
-        // Update digest with chromosome name
-        if (md5Digest != null) {
-          md5Digest.update(parsedSeqName.getBytes(Charset.defaultCharset()));
-        }
+    requireNonNull(faiFile, "The index file is null");
 
-        lastSeqName = seqName;
-        chrSize = 0;
-      }
+    final String filename = faiFile.getName();
 
-      final String sequence = parser.getSequence();
-      if (sequence == null) {
-        throw new IOException("No fasta sequence found.");
-      }
-
-      // Check the sequence and increment the length of the sequence
-      chrSize += checkBases(sequence, lastSeqName, alphabet);
+    return createGenomeDescFromFastaIndex(FastaIndex.load(faiFile),
+        filename.endsWith(FastaIndex.INDEX_EXTENSION)
+            ? filename.substring(0,
+                filename.length() - FastaIndex.INDEX_EXTENSION.length())
+            : filename);
+  }
 
-      // Update digest with chromosome sequence
-      md5Digest.update(sequence.getBytes(Charset.defaultCharset()));
-    }
+  /**
+   * Create a GenomeDescription object from a Fasta file of GFF file.
+   * @param genomeFastaIs genome fasta input stream
+   * @param filename name of the file of the input stream
+   * @param gffFormat the input file is in GFF format
+   * @return a genome description object
+   * @throws BadBioEntryException if an error occurs while creating the genome
+   *           description
+   * @throws IOException if an error occurs while reading the GFF file
+   */
+  public static GenomeDescription createGenomeDesc(
+      final InputStream genomeFastaIs, final String filename,
+      final boolean gffFormat) throws BadBioEntryException, IOException {
 
-    // Add the last sequence
-    if (lastSeqName != null) {
-      result.addSequence(parsedSeqName, chrSize);
-    }
+    requireNonNull(genomeFastaIs, "The input stream of the genome is null");
 
-    // Compute final MD5 sum
-    if (md5Digest != null) {
-      result.setMD5Sum(md5DigestToString(md5Digest));
+    try (InputStream is = genomeFastaIs) {
+      return new GenomeScanner(StringUtils.basename(filename), gffFormat)
+          .scan(is);
     }
-
-    genomeFastaIs.close();
-
-    return result;
   }
 
-  private static String parseChromosomeName(final String fastaHeader)
+  /**
+   * Parse the chromosome name of a FASTA header.
+   * @param fastaHeader FASTA header
+   * @return the chromosome name
+   * @throws BadBioEntryException if the header is invalid
+   */
+  static String parseChromosomeName(final String fastaHeader)
       throws BadBioEntryException {
 
     if (fastaHeader == null) {
@@ -482,22 +467,6 @@ public class GenomeDescription {
     return fields[0];
   }
 
-  private static long checkBases(final String sequence,
-      final String sequenceName, final Alphabet alphabet)
-      throws BadBioEntryException {
-
-    final char[] array = sequence.toCharArray();
-
-    for (final char c : array) {
-      if (!alphabet.isLetterValid(c)) {
-        throw new BadBioEntryException("Invalid base in genome: " + c,
-            sequenceName);
-      }
-    }
-
-    return sequence.length();
-  }
-
   //
   // Other methods
   //
@@ -0,0 +1,562 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import static fr.ens.biologie.genomique.kenetre.bio.io.BioCharsets.FASTA_CHARSET;
+import static fr.ens.biologie.genomique.kenetre.util.StringUtils.md5DigestToString;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class define a byte-oriented scanner of FASTA files that computes the
+ * description of a genome. The bases are checked with a lookup table and the
+ * MD5 digest is computed by a dedicated thread. The result is the same as the
+ * result of the line by line parsing with FastaLineParser.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+final class GenomeScanner {
+
+  private static final int CHUNK_SIZE = 1024 * 1024;
+
+  private static final byte[] FASTA_SECTION = {'#', '#', 'F', 'A', 'S', 'T',
+      'A'};
+
+  private static final boolean[] VALID_BASES = new boolean[256];
+
+  static {
+
+    final Alphabet alphabet = Alphabets.AMBIGUOUS_DNA_ALPHABET;
+    for (int i = 0; i < VALID_BASES.length; i++) {
+      VALID_BASES[i] = alphabet.isLetterValid((char) i);
+    }
+  }
+
+  // States of the scanner
+  private static final int GFF_LINE = 0;
+  private static final int LINE_START = 1;
+  private static final int HEADER = 2;
+  private static final int SEQUENCE = 3;
+  private static final int SEQUENCE_SPACE = 4;
+  private static final int NO_HEADER = 5;
+
+  private final GenomeDescription result;
+  private final DigestThread digest;
+
+  private int state;
+  private int gffColumn;
+  private boolean lineStartSpace;
+  private boolean gffFastaSection;
+  private byte firstSpace;
+
+  // Current line, used for the headers and the error messages
+  private byte[] line = new byte[256];
+  private int lineLength;
+
+  private String seqName;
+  private String lastSeqName;
+  private String parsedSeqName;
+  private long chrSize;
+
+  /**
+   * This class define a thread that computes a MD5 digest. The data to digest
+   * are copied in a ring of reusable buffers.
+   */
+  private static final class DigestThread extends Thread {
+
+    private static final int BUFFER_COUNT = 4;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    // Buffer used to signal the end of the data
+    private static final Buffer END_OF_DATA = new Buffer(0);
+
+    private final MessageDigest md5Digest;
+    private final BlockingQueue<Buffer> freeBuffers =
+        new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final BlockingQueue<Buffer> filledBuffers =
+        new ArrayBlockingQueue<>(BUFFER_COUNT + 1);
+
+    private Buffer current;
+
+    /**
+     * A reusable buffer.
+     */
+    private static final class Buffer {
+
+      private final byte[] data;
+      private int length;
+
+      Buffer(final int size) {
+        this.data = new byte[size];
+      }
+    }
+
+    @Override
+    public void run() {
+
+      try {
+
+        Buffer buffer;
+        while ((buffer = this.filledBuffers.take()) != END_OF_DATA) {
+
+          this.md5Digest.update(buffer.data, 0, buffer.length);
+          buffer.length = 0;
+          this.freeBuffers.add(buffer);
+        }
+
+      } catch (InterruptedException e) {
+        // The digest has been aborted
+      }
+    }
+
+    /**
+     * Add data to digest.
+     * @param data array with the data
+     * @param offset offset of the data in the array
+     * @param length length of the data
+     * @throws IOException if the thread has been interrupted
+     */
+    void update(final byte[] data, final int offset, final int length)
+        throws IOException {
+
+      int pos = offset;
+      final int end = offset + length;
+
+      while (pos < end) {
+
+        if (this.current.length == BUFFER_SIZE) {
+          handOff();
+        }
+
+        final int n = Math.min(end - pos, BUFFER_SIZE - this.current.length);
+        System.arraycopy(data, pos, this.current.data, this.current.length, n);
+        this.current.length += n;
+        pos += n;
+      }
+    }
+
+    /**
+     * Wait the end of the computation of the digest.
+     * @return the MD5 digest as a string
+     * @throws IOException if the thread has been interrupted
+     */
+    String digest() throws IOException {
+
+      if (this.current.length > 0) {
+        handOff();
+      }
+
+      try {
+        this.filledBuffers.put(END_OF_DATA);
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while computing MD5");
+      }
+
+      return md5DigestToString(this.md5Digest);
+    }
+
+    /**
+     * Send the current buffer to the digest thread and get a free buffer.
+     * @throws IOException if the thread has been interrupted
+     */
+    private void handOff() throws IOException {
+
+      try {
+        this.filledBuffers.put(this.current);
+        this.current = this.freeBuffers.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while computing MD5");
+      }
+    }
+
+    /**
+     * Constructor.
+     * @param md5Digest the MD5 digest to update
+     */
+    DigestThread(final MessageDigest md5Digest) {
+
+      super("GenomeScanner MD5");
+      setDaemon(true);
+
+      this.md5Digest = md5Digest;
+      this.current = new Buffer(BUFFER_SIZE);
+      for (int i = 1; i < BUFFER_COUNT; i++) {
+        this.freeBuffers.add(new Buffer(BUFFER_SIZE));
+      }
+    }
+  }
+
+  //
+  // Scan methods
+  //
+
+  /**
+   * Scan a FASTA input stream.
+   * @param is the input stream
+   * @return the genome description
+   * @throws BadBioEntryException if the FASTA file is invalid
+   * @throws IOException if an error occurs while reading the FASTA file
+   */
+  GenomeDescription scan(final InputStream is)
+      throws BadBioEntryException, IOException {
+
+    try {
+
+      final byte[] chunk = new byte[CHUNK_SIZE];
+      int n;
+
+      while ((n = is.read(chunk)) != -1) {
+        process(chunk, n);
+      }
+
+      return end();
+    } finally {
+      stop();
+    }
+  }
+
+  /**
+   * Scan a FASTA file channel. The file is read directly in a reused chunk,
+   * without the copies of a buffered input stream.
+   * @param channel the file channel
+   * @return the genome description
+   * @throws BadBioEntryException if the FASTA file is invalid
+   * @throws IOException if an error occurs while reading the FASTA file
+   */
+  GenomeDescription scan(final FileChannel channel)
+      throws BadBioEntryException, IOException {
+
+    try {
+
+      final byte[] chunk = new byte[CHUNK_SIZE];
+      final ByteBuffer buffer = ByteBuffer.wrap(chunk);
+      int n;
+
+      while ((n = channel.read(buffer)) != -1) {
+        process(chunk, n);
+        buffer.clear();
+      }
+
+      return end();
+    } finally {
+      stop();
+    }
+  }
+
+  /**
+   * Process a chunk of the FASTA file.
+   * @param data the chunk
+   * @param length the length of the chunk
+   * @throws BadBioEntryException if the FASTA file is invalid
+   * @throws IOException if an error occurs while computing the digest
+   */
+  private void process(final byte[] data, final int length)
+      throws BadBioEntryException, IOException {
+
+    final boolean[] validBases = VALID_BASES;
+    int i = 0;
+
+    while (i < length) {
+
+      final int b = data[i] & 0xFF;
+      final boolean eol = b == '\n' || b == '\r';
+
+      switch (this.state) {
+
+      case SEQUENCE:
+
+        // Fast path, scan the run of bases
+        final int start = i;
+        while (i < length && validBases[data[i] & 0xFF]) {
+          i++;
+        }
+
+        if (i > start) {
+          this.chrSize += i - start;
+          if (this.digest != null) {
+            this.digest.update(data, start, i - start);
+          }
+          continue;
+        }
+
+        if (eol) {
+          this.state = LINE_START;
+        } else if (b <= ' ') {
+          this.firstSpace = (byte) b;
+          this.state = SEQUENCE_SPACE;
+        } else {
+          throw invalidBase(b);
+        }
+        break;
+
+      case SEQUENCE_SPACE:
+
+        // Spaces at the end of a line are ignored
+        if (eol) {
+          this.state = LINE_START;
+        } else if (b > ' ') {
+          throw invalidBase(this.firstSpace & 0xFF);
+        }
+        break;
+
+      case LINE_START:
+
+        if (eol) {
+          // Discard empty lines
+          this.lineStartSpace = false;
+        } else if (b <= ' ') {
+          // Discard the spaces at the beginning of the lines
+          this.lineStartSpace = true;
+        } else if (!this.gffFastaSection) {
+          // The section mark must be at the beginning of the line
+          this.gffColumn = this.lineStartSpace ? -1 : 0;
+          this.state = GFF_LINE;
+          continue;
+        } else if (b == '>') {
+          this.lineLength = 0;
+          this.state = HEADER;
+        } else if (this.seqName == null) {
+          this.lineLength = 0;
+          this.state = NO_HEADER;
+          continue;
+        } else {
+          startSequenceLine();
+          this.state = SEQUENCE;
+          continue;
+        }
+        break;
+
+      case HEADER:
+
+        if (eol) {
+          this.seqName = trimmedLine();
+          this.state = LINE_START;
+        } else {
+          appendToLine(b);
+        }
+        break;
+
+      case GFF_LINE:
+
+        // Search the start of the FASTA section of a GFF file
+        if (eol) {
+          this.gffFastaSection = this.gffColumn == FASTA_SECTION.length;
+          this.lineStartSpace = false;
+          this.state = LINE_START;
+        } else if (this.gffColumn >= 0 && this.gffColumn < FASTA_SECTION.length) {
+          this.gffColumn = FASTA_SECTION[this.gffColumn] == b
+              ? this.gffColumn + 1 : -1;
+        }
+        break;
+
+      case NO_HEADER:
+
+        if (eol) {
+          throw noHeader();
+        }
+        appendToLine(b);
+        break;
+
+      default:
+        throw new IllegalStateException("Unknown state: " + this.state);
+      }
+
+      i++;
+    }
+  }
+
+  /**
+   * End the scan of the FASTA file.
+   * @return the genome description
+   * @throws BadBioEntryException if the FASTA file is invalid
+   * @throws IOException if an error occurs while computing the digest
+   */
+  private GenomeDescription end() throws BadBioEntryException, IOException {
+
+    switch (this.state) {
+
+    case HEADER:
+      this.seqName = trimmedLine();
+      break;
+
+    case GFF_LINE:
+      this.gffFastaSection = this.gffColumn == FASTA_SECTION.length;
+      break;
+
+    case NO_HEADER:
+      throw noHeader();
+
+    default:
+      break;
+    }
+
+    // Add the last sequence
+    if (this.lastSeqName != null) {
+      this.result.addSequence(this.parsedSeqName, this.chrSize);
+    }
+
+    // Compute final MD5 sum
+    if (this.digest != null) {
+      this.result.setMD5Sum(this.digest.digest());
+    }
+
+    return this.result;
+  }
+
+  /**
+   * Stop the digest thread if the scan has failed.
+   */
+  private void stop() {
+
+    if (this.digest != null && this.digest.isAlive()) {
+      this.digest.interrupt();
+    }
+  }
+
+  /**
+   * Handle the start of a new sequence line.
+   * @throws BadBioEntryException if the sequence name is invalid
+   * @throws IOException if an error occurs while computing the digest
+   */
+  private void startSequenceLine() throws BadBioEntryException, IOException {
+
+    if (this.seqName.equals(this.lastSeqName)) {
+      return;
+    }
+
+    // Check if sequence has been found more than one time
+    if (this.result.getSequenceLength(this.lastSeqName) != -1) {
+      throw new BadBioEntryException(
+          "Sequence name found twice: " + this.lastSeqName, this.lastSeqName);
+    }
+
+    // Add sequence
+    if (this.lastSeqName != null) {
+      this.result.addSequence(this.parsedSeqName, this.chrSize);
+    }
+
+    // Parse chromosome name
+    this.parsedSeqName = GenomeDescription.parseChromosomeName(this.seqName);
+
+    // Update digest with chromosome name
+    if (this.digest != null) {
+      final byte[] bytes =
+          this.parsedSeqName.getBytes(Charset.defaultCharset());
+      this.digest.update(bytes, 0, bytes.length);
+    }
+
+    this.lastSeqName = this.seqName;
+    this.chrSize = 0;
+  }
+
+  /**
+   * Append a byte to the current line.
+   * @param b the byte to append
+   */
+  private void appendToLine(final int b) {
+
+    if (this.lineLength == this.line.length) {
+      this.line = Arrays.copyOf(this.line, this.line.length * 2);
+    }
+
+    this.line[this.lineLength++] = (byte) b;
+  }
+
+  /**
+   * Get the current line without its trailing spaces.
+   * @return the current line as a String
+   */
+  private String trimmedLine() {
+
+    int len = this.lineLength;
+    while (len > 0 && (this.line[len - 1] & 0xFF) <= ' ') {
+      len--;
+    }
+
+    return new String(this.line, 0, len, FASTA_CHARSET);
+  }
+
+  /**
+   * Create the exception for an invalid base.
+   * @param b the invalid base
+   * @return a BadBioEntryException
+   */
+  private BadBioEntryException invalidBase(final int b) {
+
+    return new BadBioEntryException("Invalid base in genome: " + (char) b,
+        this.lastSeqName);
+  }
+
+  /**
+   * Create the exception for a sequence without header.
+   * @return an IOException
+   */
+  private IOException noHeader() {
+
+    return new IOException(
+        "No fasta header found at the beginning of the fasta file: "
+            + trimmedLine());
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param genomeName name of the genome
+   * @param gffFormat the input file is in GFF format
+   */
+  GenomeScanner(final String genomeName, final boolean gffFormat) {
+
+    this.result = new GenomeDescription();
+    this.result.setGenomeName(genomeName);
+    this.gffFastaSection = !gffFormat;
+    this.state = LINE_START;
+
+    DigestThread digest;
+    try {
+      digest = new DigestThread(MessageDigest.getInstance("MD5"));
+      digest.start();
+    } catch (NoSuchAlgorithmException e) {
+      digest = null;
+    }
+    this.digest = digest;
+  }
+
+}
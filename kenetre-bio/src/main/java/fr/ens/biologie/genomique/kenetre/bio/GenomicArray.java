@@ -24,20 +24,49 @@
 
 package fr.ens.biologie.genomique.kenetre.bio;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 
+import fr.ens.biologie.genomique.kenetre.io.FileUtils;
+
 /**
- * This class define a genomic array. TODO more doc and rename attributes and
- * field of the inner classes
+ * This class define a genomic array. Entries are first buffered by
+ * {@link #addEntry(GenomicInterval, Object)} and then swept into zones when the
+ * array is frozen. Freezing is done once by sorting all the intervals of a
+ * strand, so building an array is O(n log n). The frozen zones are stored in
+ * primitive arrays, lookups use a binary search and zones that share the same
+ * values share the same set object. The buffered entries are released once
+ * frozen, they are rebuilt from the zones if new entries are added.
+ * <p>
+ * The array is frozen on the first query or by an explicit call to
+ * {@link #freeze()}. Once frozen, it can be queried concurrently by several
+ * threads as long as no entry is added.
+ * <p>
+ * The zones of an array can be saved in a compact binary format with
+ * {@link #save(OutputStream)} and loaded back with {@link #load(File)}, that
+ * avoid to rebuild the array from the annotation.
  * @since 1.2
  * @author Laurent Jourdren
  */
@@ -45,440 +74,321 @@ public class GenomicArray<T> implements Serializable {
 
   private static final long serialVersionUID = 539825064205425262L;
 
+  private static final int[] EMPTY_INT_ARRAY = new int[0];
+
+  // "KGA" followed by the version of the binary format
+  private static final int BINARY_FORMAT_MAGIC = 0x4b474101;
+
   private final Map<String, ChromosomeZones<T>> chromosomes = new HashMap<>();
+  private volatile boolean frozen = true;
 
   /**
-   * This class define a zone in a ChromosomeZone object.
-   * @author Laurent Jourdren
+   * This interface define a consumer of the zones found by
+   * {@link GenomicArray#forEachEntry(String, int, int, ZoneConsumer)}.
+   * @param <T> type of the values of the genomic array
    */
-  private static final class Zone<T> implements Serializable {
-
-    private static final long serialVersionUID = 3581472137861260840L;
-
-    private final int start;
-    private int end;
-    private final char strand;
-
-    private Set<T> _values;
-    private T _value;
-    private int valueCount;
+  public interface ZoneConsumer<T> {
 
     /**
-     * Add a value to the zone.
-     * @param value Exon to add
+     * Process a zone.
+     * @param start start of the zone
+     * @param end end of the zone
+     * @param strand strand of the zone
+     * @param values an unmodifiable set with the values of the zone, never
+     *          null
      */
-    public void addExon(final T value) {
+    void accept(int start, int end, char strand, Set<T> values);
+  }
 
-      if (value == null) {
-        throw new NullPointerException("value argument cannot be null");
-      }
+  /**
+   * This class define an object that contains all the stranded zones of a
+   * chromosome.
+   * @author Laurent Jourdren
+   */
+  private static final class ChromosomeStrandedZones<T>
+      implements Serializable {
 
-      if (this.valueCount == 0) {
-        this._value = value;
-        this.valueCount = 1;
-      } else {
+    private static final long serialVersionUID = 8073207058699194059L;
 
-        if (this.valueCount == 1) {
+    private final String chromosomeName;
+    private char strand;
 
-          if (value == this._value
-              || this._value.hashCode() == value.hashCode()) {
-            return;
-          }
+    // Entries added since the last freeze, released once the zones are built
+    private int entryCount;
+    private int[] entryStarts = EMPTY_INT_ARRAY;
+    private int[] entryEnds = EMPTY_INT_ARRAY;
+    private List<T> entryValues = new ArrayList<>();
+    private boolean dirty;
 
-          this._values = new HashSet<>();
-          this._values.add(this._value);
-          this._value = null;
-        }
+    // Zones computed from the entries
+    private int length = 0;
+    private int zoneCount;
+    private int[] zoneStarts = EMPTY_INT_ARRAY;
+    private Set<T>[] zoneValues = newSetArray(0);
 
-        this._values.add(value);
-        this.valueCount = this._values.size();
-      }
+    @SuppressWarnings("unchecked")
+    private static <T> Set<T>[] newSetArray(final int size) {
+
+      return (Set<T>[]) new Set<?>[size];
     }
 
     /**
-     * Add values to the zone.
-     * @param values values to add
+     * Get the end of a zone.
+     * @param index index of the zone
+     * @return the end of the zone
      */
-    private void addExons(final Set<T> values) {
-
-      if (values == null) {
-        return;
-      }
-
-      final int len = values.size();
-
-      if (len == 0) {
-        return;
-      }
-
-      if (len == 1) {
-        this._value = values.iterator().next();
-        this.valueCount = this._value == null ? 0 : 1;
-      } else {
-        this._values = new HashSet<>(values);
-        this.valueCount = len;
-      }
+    private int zoneEnd(final int index) {
 
+      return index + 1 < this.zoneCount
+          ? this.zoneStarts[index + 1] - 1 : this.length;
     }
 
     /**
-     * Get the values of the zone.
-     * @return a set with the values of the zone
+     * Find the zone index for a position.
+     * @param pos the position on the chromosome
+     * @return the index of the zone or -1 if the position if lower than 1 or
+     *         greater than the length of the chromosome
      */
-    public Set<T> getValues() {
+    private int findIndexPos(final int pos) {
 
-      if (this.valueCount == 0) {
-        return null;
+      if (pos < 1 || pos > this.length) {
+        return -1;
       }
 
-      if (this.valueCount == 1) {
-        return Collections.singleton(this._value);
-      }
+      final int index =
+          Arrays.binarySearch(this.zoneStarts, 0, this.zoneCount, pos);
 
-      return this._values;
+      return index >= 0 ? index : -index - 2;
     }
 
     /**
-     * Test if a position is before, in or after the zone.
-     * @param position to test
-     * @return -1 if position is before the zone, 0 if the position is in the
-     *         zone and 1 of the position is after the zone
+     * Add an entry.
+     * @param interval interval of the entry
+     * @param value value to add
      */
-    public int compareTo(final int position) {
-
-      if (position >= this.start && position <= this.end) {
-        return 0;
-      }
-
-      return position < this.start ? -1 : 1;
-    }
-
-    @Override
-    public String toString() {
-
-      Set<String> r = new HashSet<>();
-      if (getValues() != null) {
-        for (T e : getValues()) {
-          r.add(e.toString());
-        }
-      }
-
-      return this.getClass().getSimpleName()
-          + "{" + this.start + "," + this.end + "," + r + "}";
-    }
-
-    @Override
-    public boolean equals(final Object o) {
+    public void addEntry(final GenomicInterval interval, final T value) {
 
-      if (o == this) {
-        return true;
+      if (interval == null) {
+        throw new NullPointerException("interval argument cannot be null");
       }
 
-      if (!(o instanceof Zone<?>)) {
-        return false;
+      if (value == null) {
+        throw new NullPointerException("value argument cannot be null");
       }
 
-      final Zone<?> that = (Zone<?>) o;
-
-      if (!(Objects.equals(this.valueCount, that.valueCount)
-          && Objects.equals(this.start, that.start)
-          && Objects.equals(this.end, that.end)
-          && Objects.equals(this.strand, that.strand))) {
-        return false;
+      // The entries of frozen or loaded zones have been released
+      if (this.entryCount == 0 && this.zoneCount > 0) {
+        restoreEntries();
       }
 
-      switch (this.valueCount) {
-
-      case 0:
-        return true;
+      appendEntry(interval.getStart(), interval.getEnd(), value);
+      this.dirty = true;
+    }
 
-      case 1:
-        return Objects.equals(this._value, that._value);
+    /**
+     * Append an entry to the buffered entries.
+     * @param start start of the entry
+     * @param end end of the entry
+     * @param value value of the entry
+     */
+    private void appendEntry(final int start, final int end, final T value) {
 
-      default:
-        return Objects.equals(this._values, that._values);
+      if (this.entryCount == this.entryStarts.length) {
+        final int newSize = Math.max(16, this.entryCount * 2);
+        this.entryStarts = Arrays.copyOf(this.entryStarts, newSize);
+        this.entryEnds = Arrays.copyOf(this.entryEnds, newSize);
       }
 
+      this.entryStarts[this.entryCount] = start;
+      this.entryEnds[this.entryCount] = end;
+      this.entryValues.add(value);
+      this.entryCount++;
     }
 
-    @Override
-    public int hashCode() {
-
-      return Objects.hash(this._value, this._values, this.start, this.end,
-          this.strand, this.valueCount);
-    }
-
-    //
-    // Constructor
-    //
-
     /**
-     * Constructor that create a zone
-     * @param start start position of the zone
-     * @param end end position of the zone
-     * @param strand strand of the zone
+     * Rebuild the entries from the zones. Each value of a zone becomes an
+     * entry of the bounds of the zone: sweeping these entries gives back the
+     * same zones, as every zone start is the start of an entry or follows the
+     * end of an entry.
      */
-    public Zone(final int start, final int end, final char strand) {
+    private void restoreEntries() {
 
-      this.start = start;
-      this.end = end;
-      this.strand = strand;
+      for (int i = 0; i < this.zoneCount; i++) {
+        final int end = zoneEnd(i);
+        for (T value : this.zoneValues[i]) {
+          appendEntry(this.zoneStarts[i], end, value);
+        }
+      }
     }
 
     /**
-     * Constructor that create a zone
-     * @param start start position of the zone
-     * @param end end position of the zone
-     * @param strand strand of the zone
-     * @param exons of the zone
+     * Release the entries once the zones have been built.
      */
-    public Zone(final int start, final int end, final char strand,
-        final Set<T> exons) {
-
-      this(start, end, strand);
-      addExons(exons);
-    }
-
-  }
-
-  /**
-   * This class define an object that contains all the stranded zones of a
-   * chromosome.
-   * @author Laurent Jourdren
-   */
-  private static final class ChromosomeStrandedZones<T>
-      implements Serializable {
+    private void releaseEntries() {
 
-    private static final long serialVersionUID = 8073207058699194059L;
-
-    private final String chromosomeName;
-    private int length = 0;
-    private final List<Zone<T>> zones = new ArrayList<>();
-
-    private Zone<T> get(final int index) {
-
-      return this.zones.get(index);
+      this.entryCount = 0;
+      this.entryStarts = EMPTY_INT_ARRAY;
+      this.entryEnds = EMPTY_INT_ARRAY;
+      this.entryValues = new ArrayList<>();
     }
 
     /**
-     * Add a zone.
-     * @param zone zone to add
+     * Compute the zones from the entries. The bounds of all the entries are
+     * sorted once and then swept: a new zone starts at position 1, at the start
+     * of each entry and after the end of each entry.
+     * @param sets sets of values already created, used to share the sets
+     *          between zones
      */
-    private void add(final Zone<T> zone) {
+    private void freeze(final Map<Set<T>, Set<T>> sets) {
 
-      this.zones.add(zone);
-    }
+      if (!this.dirty) {
+        return;
+      }
 
-    /**
-     * Add a zone.
-     * @param index index where add the zone
-     * @param zone the zone to add
-     */
-    private void add(final int index, final Zone<T> zone) {
+      final int n = this.entryCount;
 
-      this.zones.add(index, zone);
-    }
+      // Encode the events as position in the high bits and entry index and
+      // event type in the low bits
+      final long[] events = new long[2 * n];
+      int maxEnd = 0;
 
-    /**
-     * Find the zone index for a position.
-     * @param pos the position on the chromosome
-     * @return the index of the zone or -1 if the position if lower than 1 or
-     *         greater than the length of the chromosome
-     */
-    private int findIndexPos(final int pos) {
+      for (int i = 0; i < n; i++) {
 
-      if (pos < 1 || pos > this.length) {
-        return -1;
+        final long index = (long) i << 1;
+        events[2 * i] = (long) this.entryStarts[i] << 32 | index | 1;
+        events[2 * i + 1] = (long) (this.entryEnds[i] + 1) << 32 | index;
+        maxEnd = Math.max(maxEnd, this.entryEnds[i]);
       }
 
-      int minIndex = 0;
-      int maxIndex = this.zones.size() - 1;
-      int index = 0;
+      Arrays.sort(events);
 
-      while (true) {
+      final Map<T, Integer> active = new HashMap<>();
+      final int[] starts = new int[2 * n + 1];
+      final Set<T>[] values = newSetArray(2 * n + 1);
+      Set<T> current = Collections.emptySet();
+      int count = 0;
+      int e = 0;
+      int pos = 1;
 
-        final int diff = maxIndex - minIndex;
-        index = minIndex + diff / 2;
+      while (pos <= maxEnd) {
 
-        if (diff == 1) {
+        boolean changed = false;
 
-          if (get(minIndex).compareTo(pos) == 0) {
-            return minIndex;
-          }
-          if (get(maxIndex).compareTo(pos) == 0) {
-            return maxIndex;
-          }
+        // Apply all the events of the current position
+        while (e < events.length && (int) (events[e] >>> 32) == pos) {
 
-          assert (false);
+          final int index = (int) ((events[e] & 0xffffffffL) >>> 1);
+          final T value = this.entryValues.get(index);
+          if ((events[e] & 1) == 1) {
+            active.merge(value, 1, Integer::sum);
+          } else if (active.merge(value, -1, Integer::sum) == 0) {
+            active.remove(value);
+          }
+          changed = true;
+          e++;
         }
 
-        final Zone<T> z = get(index);
-
-        final int comp = z.compareTo(pos);
-        if (comp == 0) {
-          return index;
+        if (changed) {
+          current = intern(sets, active.keySet());
         }
 
-        if (comp < 0) {
-          maxIndex = index;
-        } else {
-          minIndex = index;
-        }
-      }
-    }
+        starts[count] = pos;
+        values[count] = current;
+        count++;
 
-    /**
-     * Split a zone in two zone.
-     * @param zone zone to split
-     * @param pos position of the split
-     * @return a new zone object
-     */
-    private Zone<T> splitZone(final Zone<T> zone, final int pos) {
+        pos = e < events.length ? (int) (events[e] >>> 32) : maxEnd + 1;
+      }
 
-      final Zone<T> result =
-          new Zone<>(pos, zone.end, zone.strand, zone.getValues());
-      zone.end = pos - 1;
+      this.length = maxEnd;
+      this.zoneCount = count;
+      this.zoneStarts = Arrays.copyOf(starts, count);
+      this.zoneValues = Arrays.copyOf(values, count);
+      this.dirty = false;
 
-      return result;
+      releaseEntries();
     }
 
     /**
-     * Add an entry.
-     * @param interval interval of the entry
-     * @param value value to add
+     * Add the values of the strand to a set.
+     * @param results the set where add the values
      */
-    public void addEntry(final GenomicInterval interval, final T value) {
-
-      if (interval == null) {
-        throw new NullPointerException("interval argument cannot be null");
-      }
+    private void addValues(final Set<String> results) {
 
-      if (value == null) {
-        throw new NullPointerException("value argument cannot be null");
+      // The entries are released once frozen, only the zones are available
+      if (this.entryCount == 0) {
+        for (int i = 0; i < this.zoneCount; i++) {
+          for (T value : this.zoneValues[i]) {
+            results.add(String.valueOf(value));
+          }
+        }
+      } else {
+        for (T value : this.entryValues) {
+          results.add(String.valueOf(value));
+        }
       }
+    }
 
-      final int intervalStart = interval.getStart();
-      final int intervalEnd = interval.getEnd();
+    /**
+     * Get the shared instance of a set of values.
+     * @param sets sets of values already created
+     * @param values values of the set
+     * @return an unmodifiable set
+     */
+    private static <T> Set<T> intern(final Map<Set<T>, Set<T>> sets,
+        final Set<T> values) {
 
-      // Create an empty zone if the interval is after the end of the
-      // last chromosome zone
-      if (intervalEnd > this.length) {
-        add(new Zone<>(this.length + 1, intervalEnd, interval.getStrand()));
-        this.length = intervalEnd;
+      if (values.isEmpty()) {
+        return Collections.emptySet();
       }
 
-      final int indexStart = findIndexPos(intervalStart);
-      final int indexEnd = findIndexPos(intervalEnd);
-
-      final Zone<T> z1 = get(indexStart);
-      final Zone<T> z1b;
-      final int count1b;
-
-      if (z1.start == intervalStart) {
-        z1b = z1;
-        count1b = 0;
-      } else {
-        z1b = splitZone(z1, intervalStart);
-        count1b = 1;
+      final Set<T> result = sets.get(values);
+      if (result != null) {
+        return result;
       }
 
-      // Same index
-      if (indexStart == indexEnd) {
-
-        if (z1b.end == intervalEnd) {
-          z1b.addExon(value);
-        } else {
-
-          final Zone<T> z1c = splitZone(z1b, intervalEnd + 1);
-          add(indexStart + 1, z1c);
-        }
-
-        if (z1 != z1b) {
-          z1b.addExon(value);
-          add(indexStart + 1, z1b);
-
-        } else {
-          z1.addExon(value);
-        }
-
-      } else {
-
-        final Zone<T> z2 = get(indexEnd);
-        final Zone<T> z2b;
-
-        if (z2.end != intervalEnd) {
-          z2b = splitZone(z2, intervalEnd + 1);
-        } else {
-          z2b = z2;
-        }
+      final Set<T> newSet = Collections.unmodifiableSet(new HashSet<>(values));
+      sets.put(newSet, newSet);
 
-        if (z1 != z1b) {
-          add(indexStart + 1, z1b);
-        }
-
-        if (z2 != z2b) {
-          add(indexEnd + 1 + count1b, z2b);
-        }
-
-        for (int i = indexStart + count1b; i <= indexEnd + count1b; i++) {
-          get(i).addExon(value);
-        }
-      }
+      return newSet;
     }
 
     /**
-     * Get entries.
+     * Process entries.
      * @param start start of the interval
      * @param stop end of the interval
-     * @return a map with the values
+     * @param consumer consumer of the zones
      */
-    public Map<GenomicInterval, Set<T>> getEntries(final int start,
-        final int stop) {
+    public void forEachEntry(final int start, final int stop,
+        final ZoneConsumer<T> consumer) {
 
       final int indexStart = findIndexPos(start);
       final int indexEnd = findIndexPos(stop);
 
       if (indexStart == -1) {
-        return null;
+        return;
       }
 
-      final int to = indexEnd == -1 ? this.zones.size() - 1 : indexEnd;
-
-      Map<GenomicInterval, Set<T>> result = null;
+      final int to = indexEnd == -1 ? this.zoneCount - 1 : indexEnd;
 
       for (int i = indexStart; i <= to; i++) {
 
-        final Zone<T> zone = get(i);
+        final int zoneStart = this.zoneStarts[i];
+        final int zoneEnd = zoneEnd(i);
 
         // Really needed ?
-        if (intersect(start, stop, zone.start, zone.end)) {
-
-          final GenomicInterval iv = new GenomicInterval(this.chromosomeName,
-              zone.start, zone.end, zone.strand);
-
-          final Set<T> r = zone.getValues();
-
-          if (result == null) {
-            result = new HashMap<>();
-          }
-
-          if (r != null) {
-            result.put(iv, Collections.unmodifiableSet(r));
-          } else {
-            result.put(iv, new HashSet<>());
-          }
+        if (intersect(start, stop, zoneStart, zoneEnd)) {
+          consumer.accept(zoneStart, zoneEnd, this.strand, this.zoneValues[i]);
         }
       }
 
-      if (stop > get(to).end && start > get(to).start) {
-        result.put(new GenomicInterval(this.chromosomeName, start, stop,
-            get(to).strand), new HashSet<>());
-      } else if (stop > get(to).end) {
-        result.put(new GenomicInterval(this.chromosomeName, get(to).end + 1,
-            stop, get(to).strand), new HashSet<>());
-      }
+      final int lastEnd = zoneEnd(to);
 
-      return result;
+      if (stop > lastEnd && start > this.zoneStarts[to]) {
+        consumer.accept(start, stop, this.strand, Collections.emptySet());
+      } else if (stop > lastEnd) {
+        consumer.accept(lastEnd + 1, stop, this.strand,
+            Collections.emptySet());
+      }
     }
 
     /**
@@ -511,22 +421,36 @@ public class GenomicArray<T> implements Serializable {
       final ChromosomeStrandedZones<?> that = (ChromosomeStrandedZones<?>) o;
 
       return Objects.equals(this.chromosomeName, that.chromosomeName)
-          && Objects.equals(this.length, that.length)
-          && Objects.equals(this.zones, that.zones);
+          && this.length == that.length && this.strand == that.strand
+          && Arrays.equals(this.zoneStarts, that.zoneStarts)
+          && Arrays.equals(this.zoneValues, that.zoneValues);
     }
 
     @Override
     public int hashCode() {
 
-      return Objects.hash(this.chromosomeName, this.length, this.zones);
+      return Objects.hash(this.chromosomeName, this.length, this.strand,
+          Arrays.hashCode(this.zoneStarts), Arrays.hashCode(this.zoneValues));
     }
 
     @Override
     public String toString() {
 
+      final List<String> zones = new ArrayList<>();
+      for (int i = 0; i < this.zoneCount; i++) {
+
+        final Set<String> r = new HashSet<>();
+        for (T e : this.zoneValues[i]) {
+          r.add(e.toString());
+        }
+
+        zones.add(
+            "Zone{" + this.zoneStarts[i] + "," + zoneEnd(i) + "," + r + "}");
+      }
+
       return this.getClass().getSimpleName()
           + "{chromosomeName=" + this.chromosomeName + ", length=" + this.length
-          + ", zones=" + this.zones + "}";
+          + ", zones=" + zones + "}";
     }
 
     //
@@ -536,8 +460,10 @@ public class GenomicArray<T> implements Serializable {
     /**
      * Public constructor.
      * @param chromosomeName name of the chromosome
+     * @param strand strand of the zones
      */
-    public ChromosomeStrandedZones(final String chromosomeName) {
+    public ChromosomeStrandedZones(final String chromosomeName,
+        final char strand) {
 
       if (chromosomeName == null) {
         throw new NullPointerException(
@@ -545,6 +471,7 @@ public class GenomicArray<T> implements Serializable {
       }
 
       this.chromosomeName = chromosomeName;
+      this.strand = strand;
     }
   }
 
@@ -576,6 +503,12 @@ public class GenomicArray<T> implements Serializable {
       }
 
       if (interval.getStrand() == '+' || interval.getStrand() == '.') {
+
+        // The zones of the plus strand are unstranded until a stranded entry
+        // is added
+        if (interval.getStrand() == '+') {
+          this.plus.strand = '+';
+        }
         this.plus.addEntry(interval, value);
       } else if (interval.getStrand() == '-') {
         this.minus.addEntry(interval, value);
@@ -583,31 +516,26 @@ public class GenomicArray<T> implements Serializable {
     }
 
     /**
-     * Get stranded entries.
-     * @param start start of the interval
-     * @param stop end of the interval
-     * @return a map with the values
+     * Compute the zones of the two strands.
+     * @param sets sets of values already created
      */
-    public Map<GenomicInterval, Set<T>> getEntries(final int start,
-        final int stop) {
+    private void freeze(final Map<Set<T>, Set<T>> sets) {
 
-      final Map<GenomicInterval, Set<T>> result = new HashMap<>();
-
-      final Map<GenomicInterval, Set<T>> interPlus =
-          this.plus.getEntries(start, stop);
-
-      if (interPlus != null) {
-        result.putAll(interPlus);
-      }
-
-      final Map<GenomicInterval, Set<T>> interMinus =
-          this.minus.getEntries(start, stop);
+      this.plus.freeze(sets);
+      this.minus.freeze(sets);
+    }
 
-      if (interMinus != null) {
-        result.putAll(interMinus);
-      }
+    /**
+     * Process stranded entries.
+     * @param start start of the interval
+     * @param stop end of the interval
+     * @param consumer consumer of the zones
+     */
+    public void forEachEntry(final int start, final int stop,
+        final ZoneConsumer<T> consumer) {
 
-      return result;
+      this.plus.forEachEntry(start, stop, consumer);
+      this.minus.forEachEntry(start, stop, consumer);
     }
 
     @Override
@@ -655,8 +583,8 @@ public class GenomicArray<T> implements Serializable {
             "chromosomeName argument cannot be null");
       }
 
-      this.plus = new ChromosomeStrandedZones<>(chromosomeName);
-      this.minus = new ChromosomeStrandedZones<>(chromosomeName);
+      this.plus = new ChromosomeStrandedZones<>(chromosomeName, '.');
+      this.minus = new ChromosomeStrandedZones<>(chromosomeName, '-');
     }
   }
 
@@ -684,6 +612,7 @@ public class GenomicArray<T> implements Serializable {
 
     // Add the GenomicInterval to the ChromosomeZones
     this.chromosomes.get(chromosomeName).addEntry(interval, value);
+    this.frozen = false;
   }
 
   /**
@@ -718,6 +647,26 @@ public class GenomicArray<T> implements Serializable {
     }
   }
 
+  /**
+   * Compute the zones of the entries added since the last call to this
+   * method. This method is automatically called by the query methods, calling
+   * it explicitly after the last entry has been added allow to share the
+   * genomic array between threads.
+   */
+  public synchronized void freeze() {
+
+    if (this.frozen) {
+      return;
+    }
+
+    final Map<Set<T>, Set<T>> sets = new HashMap<>();
+    for (ChromosomeZones<T> zones : this.chromosomes.values()) {
+      zones.freeze(sets);
+    }
+
+    this.frozen = true;
+  }
+
   /**
    * Get entries in an interval.
    * @param interval the genomic interval
@@ -744,17 +693,51 @@ public class GenomicArray<T> implements Serializable {
   public Map<GenomicInterval, Set<T>> getEntries(final String chromosome,
       final int start, final int end) {
 
+    final Map<GenomicInterval, Set<T>> result = new HashMap<>();
+
+    final boolean found = forEachEntry(chromosome, start, end,
+        (zoneStart, zoneEnd, strand, values) -> result.put(
+            new GenomicInterval(chromosome, zoneStart, zoneEnd, strand),
+            values.isEmpty() ? new HashSet<>() : values));
+
+    return found ? result : null;
+  }
+
+  /**
+   * Process the zones that overlap an interval. Unlike
+   * {@link #getEntries(String, int, int)}, this method does not create any
+   * object for the zones. The zones of the plus strand are processed before
+   * the zones of the minus strand, in the order of their positions.
+   * @param chromosome chromosome of the interval
+   * @param start start of the interval
+   * @param end end of the interval
+   * @param consumer consumer of the zones
+   * @return false if the chromosome is unknown
+   */
+  public boolean forEachEntry(final String chromosome, final int start,
+      final int end, final ZoneConsumer<T> consumer) {
+
     if (chromosome == null) {
       throw new NullPointerException("chromosome argument cannot be null");
     }
 
+    if (consumer == null) {
+      throw new NullPointerException("consumer argument cannot be null");
+    }
+
+    if (!this.frozen) {
+      freeze();
+    }
+
     final ChromosomeZones<T> chr = this.chromosomes.get(chromosome);
 
     if (chr == null) {
-      return null;
+      return false;
     }
 
-    return chr.getEntries(start, end);
+    chr.forEachEntry(start, end, consumer);
+
+    return true;
   }
 
   /**
@@ -779,27 +762,13 @@ public class GenomicArray<T> implements Serializable {
 
     Set<String> results = new TreeSet<>();
 
-    for (Map.Entry<String, ChromosomeZones<T>> strandedZone : this.chromosomes
-        .entrySet()) {
+    for (ChromosomeZones<T> zones : this.chromosomes.values()) {
 
       // Process plus zones
-      for (Zone<T> zone : strandedZone.getValue().plus.zones) {
-        if (zone.valueCount != 0) {
-          for (T value : zone.getValues()) {
-            results.add(String.valueOf(value));
-          }
-        }
-      }
+      zones.plus.addValues(results);
 
       // Process minus zones
-      for (Zone<T> zone : strandedZone.getValue().minus.zones) {
-        if (zone.valueCount != 0) {
-          for (T value : zone.getValues()) {
-            results.add(String.valueOf(value));
-          }
-        }
-      }
-
+      zones.minus.addValues(results);
     }
 
     return results;
@@ -821,7 +790,252 @@ public class GenomicArray<T> implements Serializable {
   public void clear() {
 
     this.chromosomes.clear();
+    this.frozen = true;
+  }
+
+  //
+  // Binary format
+  //
+
+  /**
+   * Save the zones of the array in a compact binary format. The values are
+   * saved as strings, the array can be loaded with {@link #load(ByteBuffer)}.
+   * The file contains a table of the values, a table of the sets of values
+   * and then for each strand of each chromosome the starts of the zones and
+   * the index of their sets. The output stream is closed at the end of the
+   * method.
+   * @param os output stream
+   * @throws IOException if an error occurs while writing the array
+   */
+  public void save(final OutputStream os) throws IOException {
+
+    if (os == null) {
+      throw new NullPointerException("os argument cannot be null");
+    }
+
+    freeze();
+
+    // Index the values and the sets of values, the empty set is always the
+    // first set
+    final Map<String, Integer> values = new LinkedHashMap<>();
+    final Map<Set<T>, Integer> sets = new LinkedHashMap<>();
+    sets.put(Collections.emptySet(), 0);
+
+    for (ChromosomeZones<T> zones : this.chromosomes.values()) {
+      for (ChromosomeStrandedZones<T> strand : Arrays.asList(zones.plus,
+          zones.minus)) {
+        for (int i = 0; i < strand.zoneCount; i++) {
+          if (!sets.containsKey(strand.zoneValues[i])) {
+            sets.put(strand.zoneValues[i], sets.size());
+            for (T value : strand.zoneValues[i]) {
+              values.putIfAbsent(String.valueOf(value), values.size());
+            }
+          }
+        }
+      }
+    }
+
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(os))) {
+
+      out.writeInt(BINARY_FORMAT_MAGIC);
+
+      out.writeInt(values.size());
+      for (String value : values.keySet()) {
+        writeString(out, value);
+      }
+
+      out.writeInt(sets.size());
+      for (Set<T> set : sets.keySet()) {
+        out.writeInt(set.size());
+        for (T value : set) {
+          out.writeInt(values.get(String.valueOf(value)));
+        }
+      }
+
+      out.writeInt(this.chromosomes.size());
+      for (Map.Entry<String, ChromosomeZones<T>> e : this.chromosomes
+          .entrySet()) {
+
+        writeString(out, e.getKey());
+
+        for (ChromosomeStrandedZones<T> strand : Arrays
+            .asList(e.getValue().plus, e.getValue().minus)) {
+
+          out.writeChar(strand.strand);
+          out.writeInt(strand.length);
+          out.writeInt(strand.zoneCount);
+          for (int i = 0; i < strand.zoneCount; i++) {
+            out.writeInt(strand.zoneStarts[i]);
+          }
+          for (int i = 0; i < strand.zoneCount; i++) {
+            out.writeInt(sets.get(strand.zoneValues[i]));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Save the zones of the array in a compact binary format.
+   * @param file output file
+   * @throws IOException if an error occurs while writing the array
+   */
+  public void save(final File file) throws IOException {
+
+    if (file == null) {
+      throw new NullPointerException("file argument cannot be null");
+    }
+
+    save(FileUtils.createOutputStream(file));
+  }
+
+  /**
+   * Load a genomic array saved with {@link #save(OutputStream)}. Entries can
+   * still be added to the loaded array: the zones are then rebuilt from the
+   * loaded zones and the new entries.
+   * @param buffer the buffer to read
+   * @return a new GenomicArray object
+   * @throws IOException if the content of the buffer is not a valid genomic
+   *           array
+   */
+  public static GenomicArray<String> load(final ByteBuffer buffer)
+      throws IOException {
+
+    if (buffer == null) {
+      throw new NullPointerException("buffer argument cannot be null");
+    }
+
+    final ByteBuffer in = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    final GenomicArray<String> result = new GenomicArray<>();
+
+    try {
+
+      if (in.getInt() != BINARY_FORMAT_MAGIC) {
+        throw new IOException("Invalid genomic array format");
+      }
+
+      final String[] values = new String[in.getInt()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = readString(in);
+      }
+
+      final List<Set<String>> sets = new ArrayList<>();
+      final int setCount = in.getInt();
+      for (int i = 0; i < setCount; i++) {
+
+        final String[] set = new String[in.getInt()];
+        for (int j = 0; j < set.length; j++) {
+          set[j] = values[in.getInt()];
+        }
+
+        sets.add(set.length == 0
+            ? Collections.emptySet()
+            : Collections.unmodifiableSet(new HashSet<>(Arrays.asList(set))));
+      }
 
+      final int chromosomeCount = in.getInt();
+      for (int i = 0; i < chromosomeCount; i++) {
+
+        final String chromosomeName = readString(in);
+        final ChromosomeZones<String> zones =
+            new ChromosomeZones<>(chromosomeName);
+
+        for (ChromosomeStrandedZones<String> strand : Arrays.asList(zones.plus,
+            zones.minus)) {
+
+          strand.strand = in.getChar();
+          strand.length = in.getInt();
+          strand.zoneCount = in.getInt();
+          strand.zoneStarts = readInts(in, strand.zoneCount);
+          strand.zoneValues =
+              ChromosomeStrandedZones.newSetArray(strand.zoneCount);
+
+          final int[] setIndexes = readInts(in, strand.zoneCount);
+          for (int j = 0; j < setIndexes.length; j++) {
+            strand.zoneValues[j] = sets.get(setIndexes[j]);
+          }
+        }
+
+        result.chromosomes.put(chromosomeName, zones);
+      }
+
+    } catch (BufferUnderflowException | IndexOutOfBoundsException
+        | NegativeArraySizeException e) {
+      throw new IOException("Invalid genomic array format", e);
+    }
+
+    return result;
+  }
+
+  /**
+   * Load a genomic array saved with {@link #save(OutputStream)}. The file is
+   * mapped in memory.
+   * @param file the file to read
+   * @return a new GenomicArray object
+   * @throws IOException if an error occurs while reading the file or if the
+   *           file is not a valid genomic array
+   */
+  public static GenomicArray<String> load(final File file)
+      throws IOException {
+
+    if (file == null) {
+      throw new NullPointerException("file argument cannot be null");
+    }
+
+    try (FileChannel channel =
+        FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Genomic array file too large: " + file);
+      }
+
+      return load(
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Write a string.
+   * @param out output
+   * @param s string to write
+   * @throws IOException if an error occurs while writing the string
+   */
+  private static void writeString(final DataOutputStream out, final String s)
+      throws IOException {
+
+    final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Read a string.
+   * @param in input buffer
+   * @return the string
+   */
+  private static String readString(final ByteBuffer in) {
+
+    final byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Read an array of integers.
+   * @param in input buffer
+   * @param count number of integers to read
+   * @return an array of integers
+   */
+  private static int[] readInts(final ByteBuffer in, final int count) {
+
+    final int[] result = new int[count];
+    final IntBuffer ints = in.asIntBuffer();
+    ints.get(result);
+    in.position(in.position() + count * Integer.BYTES);
+
+    return result;
   }
 
   //
@@ -841,18 +1055,25 @@ public class GenomicArray<T> implements Serializable {
 
     final GenomicArray<?> that = (GenomicArray<?>) o;
 
+    freeze();
+    that.freeze();
+
     return Objects.equals(this.chromosomes, that.chromosomes);
   }
 
   @Override
   public int hashCode() {
 
+    freeze();
+
     return Objects.hash(this.chromosomes);
   }
 
   @Override
   public String toString() {
 
+    freeze();
+
     return this.getClass().getSimpleName()
         + "{chromosomes=" + this.chromosomes + "}";
   }
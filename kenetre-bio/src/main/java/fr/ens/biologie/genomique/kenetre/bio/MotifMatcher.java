@@ -0,0 +1,366 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class define a matcher that search a set of nucleotide motifs in a
+ * sequence in a single pass. The motifs can contain IUPAC ambiguity codes and
+ * can be found with a maximal number of mismatches (Hamming distance).
+ * <p>
+ * The search use the bit-parallel Shift-And algorithm: the motifs are packed in
+ * 64-bit words, each bit being the state of a position of a motif. All the
+ * motifs of a word are advanced with a few bitwise operations for each letter
+ * of the sequence, whatever the number of motifs. An instance of this class is
+ * immutable and can be shared between threads.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public final class MotifMatcher {
+
+  /** Maximal length of a motif. */
+  public static final int MAX_MOTIF_LENGTH = Long.SIZE;
+
+  private static final int ALPHABET_SIZE = 128;
+
+  // Bases matched by each IUPAC code, as a set of the A(1), C(2), G(4) and
+  // T(8) bits
+  private static final int[] IUPAC = new int[ALPHABET_SIZE];
+
+  static {
+
+    setCode('A', "A");
+    setCode('C', "C");
+    setCode('G', "G");
+    setCode('T', "T");
+    setCode('U', "T");
+    setCode('R', "AG");
+    setCode('Y', "CT");
+    setCode('S', "CG");
+    setCode('W', "AT");
+    setCode('K', "GT");
+    setCode('M', "AC");
+    setCode('B', "CGT");
+    setCode('D', "AGT");
+    setCode('H', "ACT");
+    setCode('V', "ACG");
+    setCode('N', "ACGT");
+  }
+
+  private final List<String> motifs;
+  private final int mismatches;
+  private final int wordCount;
+
+  // Letter masks of the words, the mask of the letter c for the word w is
+  // stored at masks[w * ALPHABET_SIZE + c]
+  private final long[] masks;
+  // Bits of the first and the last positions of the motifs of each word
+  private final long[] startMasks;
+  private final long[] endMasks;
+  // Index of the motif that ends at each bit of each word
+  private final int[] motifAtBit;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the motifs of the matcher.
+   * @return an unmodifiable list with the motifs
+   */
+  public List<String> getMotifs() {
+
+    return this.motifs;
+  }
+
+  /**
+   * Get a motif.
+   * @param index index of the motif
+   * @return the motif
+   */
+  public String getMotif(final int index) {
+
+    return this.motifs.get(index);
+  }
+
+  /**
+   * Get the maximal number of mismatches allowed.
+   * @return the maximal number of mismatches
+   */
+  public int getMismatches() {
+
+    return this.mismatches;
+  }
+
+  //
+  // Search methods
+  //
+
+  /**
+   * Search the motifs in a sequence.
+   * @param sequence the sequence
+   * @return the index of the motif found or -1 if no motif has been found. If
+   *         several motifs are found, the motif that ends first in the
+   *         sequence is returned
+   */
+  public int find(final CharSequence sequence) {
+
+    requireNonNull(sequence, "sequence argument cannot be null");
+
+    final int words = this.wordCount;
+    final int k = this.mismatches;
+    final long[] masks = this.masks;
+    final long[] startMasks = this.startMasks;
+    final long[] endMasks = this.endMasks;
+    final int len = sequence.length();
+
+    // Fast path for exact search of motifs packed in a single word
+    if (words == 1 && k == 0) {
+
+      final long start = startMasks[0];
+      final long end = endMasks[0];
+      long state = 0;
+
+      for (int i = 0; i < len; i++) {
+
+        final char c = sequence.charAt(i);
+        state = ((state << 1) | start) & (c < ALPHABET_SIZE ? masks[c] : 0);
+
+        if ((state & end) != 0) {
+          return motifAt(0, state & end);
+        }
+      }
+
+      return -1;
+    }
+
+    // States of the words, the state of the word w with j mismatches is
+    // stored at states[w * (k + 1) + j]
+    final long[] states = new long[words * (k + 1)];
+
+    for (int i = 0; i < len; i++) {
+
+      final char c = sequence.charAt(i);
+
+      for (int w = 0; w < words; w++) {
+
+        final long start = startMasks[w];
+        final long mask = c < ALPHABET_SIZE ? masks[w * ALPHABET_SIZE + c] : 0;
+        final int offset = w * (k + 1);
+
+        // State with one mismatch less before the processing of the letter
+        long previous = states[offset];
+        long state = ((previous << 1) | start) & mask;
+        states[offset] = state;
+
+        for (int j = 1; j <= k; j++) {
+
+          final long current = states[offset + j];
+          state = (((current << 1) | start) & mask) | ((previous << 1) | start);
+          states[offset + j] = state;
+          previous = current;
+        }
+
+        final long found = state & endMasks[w];
+        if (found != 0) {
+          return motifAt(w, found);
+        }
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Test if one of the motifs is found in a sequence.
+   * @param sequence the sequence
+   * @return true if a motif has been found
+   */
+  public boolean matches(final CharSequence sequence) {
+
+    return find(sequence) != -1;
+  }
+
+  /**
+   * Get the index of the motif that ends at the lowest bit of a set of bits.
+   * @param word index of the word
+   * @param bits the bits
+   * @return the index of the motif
+   */
+  private int motifAt(final int word, final long bits) {
+
+    return this.motifAtBit[word * Long.SIZE
+        + Long.numberOfTrailingZeros(bits)];
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Set the bases matched by an IUPAC code.
+   * @param code the code
+   * @param bases the bases matched by the code
+   */
+  private static void setCode(final char code, final String bases) {
+
+    int value = 0;
+    for (int i = 0; i < bases.length(); i++) {
+      value |= 1 << "ACGT".indexOf(bases.charAt(i));
+    }
+
+    IUPAC[code] = value;
+    IUPAC[Character.toLowerCase(code)] = value;
+  }
+
+  /**
+   * Test if a motif letter matches a sequence letter.
+   * @param motifLetter the letter of the motif
+   * @param letter the letter of the sequence
+   * @return true if the letters match
+   */
+  private static boolean match(final char motifLetter, final char letter) {
+
+    // N in a motif matches any letter
+    if (motifLetter == 'N' || motifLetter == 'n') {
+      return Character.isLetter(letter);
+    }
+
+    // Other letters of a sequence (e.g. N) only match themselves
+    final int bases = IUPAC[letter];
+    if (Integer.bitCount(bases) != 1) {
+      return Character.toUpperCase(letter) == Character.toUpperCase(motifLetter);
+    }
+
+    return (IUPAC[motifLetter] & bases) != 0;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param motifs the motifs to search
+   * @param mismatches the maximal number of mismatches allowed
+   */
+  public MotifMatcher(final List<String> motifs, final int mismatches) {
+
+    requireNonNull(motifs, "motifs argument cannot be null");
+
+    if (motifs.isEmpty()) {
+      throw new IllegalArgumentException("No motif to search");
+    }
+
+    if (mismatches < 0) {
+      throw new IllegalArgumentException(
+          "The number of mismatches cannot be lower than 0: " + mismatches);
+    }
+
+    // Check the motifs and pack them in words
+    final List<List<Integer>> words = new ArrayList<>();
+    List<Integer> word = null;
+    int wordLength = 0;
+
+    for (int i = 0; i < motifs.size(); i++) {
+
+      final String motif = motifs.get(i);
+      requireNonNull(motif, "motif cannot be null");
+
+      if (motif.isEmpty() || motif.length() > MAX_MOTIF_LENGTH) {
+        throw new IllegalArgumentException("Invalid motif length ("
+            + motif.length() + ", maximum is " + MAX_MOTIF_LENGTH + "): "
+            + motif);
+      }
+
+      if (mismatches >= motif.length()) {
+        throw new IllegalArgumentException("The number of mismatches ("
+            + mismatches + ") must be lower than the length of the motif: "
+            + motif);
+      }
+
+      for (int j = 0; j < motif.length(); j++) {
+        final char c = motif.charAt(j);
+        if (c >= ALPHABET_SIZE || IUPAC[c] == 0) {
+          throw new IllegalArgumentException(
+              "Invalid letter in motif: '" + c + "' in " + motif);
+        }
+      }
+
+      if (word == null || wordLength + motif.length() > Long.SIZE) {
+        word = new ArrayList<>();
+        words.add(word);
+        wordLength = 0;
+      }
+
+      word.add(i);
+      wordLength += motif.length();
+    }
+
+    this.motifs = Collections.unmodifiableList(new ArrayList<>(motifs));
+    this.mismatches = mismatches;
+    this.wordCount = words.size();
+    this.masks = new long[this.wordCount * ALPHABET_SIZE];
+    this.startMasks = new long[this.wordCount];
+    this.endMasks = new long[this.wordCount];
+    this.motifAtBit = new int[this.wordCount * Long.SIZE];
+
+    for (int w = 0; w < this.wordCount; w++) {
+
+      int bit = 0;
+      for (int index : words.get(w)) {
+
+        final String motif = motifs.get(index);
+        this.startMasks[w] |= 1L << bit;
+
+        for (int j = 0; j < motif.length(); j++, bit++) {
+          for (char c = 0; c < ALPHABET_SIZE; c++) {
+            if (match(motif.charAt(j), c)) {
+              this.masks[w * ALPHABET_SIZE + c] |= 1L << bit;
+            }
+          }
+        }
+
+        this.endMasks[w] |= 1L << (bit - 1);
+        this.motifAtBit[w * Long.SIZE + bit - 1] = index;
+      }
+    }
+  }
+
+  /**
+   * Public constructor for an exact search.
+   * @param motifs the motifs to search
+   */
+  public MotifMatcher(final List<String> motifs) {
+
+    this(motifs, 0);
+  }
+
+}
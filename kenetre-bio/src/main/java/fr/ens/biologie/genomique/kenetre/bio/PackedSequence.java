@@ -0,0 +1,736 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import java.util.Arrays;
+
+/**
+ * This class define an immutable nucleotide sequence packed with 2 bits per
+ * base. The A, C, G and T bases are stored in an array of longs (32 bases per
+ * long) and the other letters are flagged in an ambiguity mask (64 bases per
+ * long) and decoded as 'N'. The case of the letters is not kept.
+ * <p>
+ * This representation use 4 times less memory than a String and allow to
+ * handle 32 bases at a time for reverse complement, GC counting, k-mer
+ * extraction and substring matching.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public final class PackedSequence {
+
+  private static final int BASES_PER_WORD = 32;
+  private static final int MASK_BASES_PER_WORD = 64;
+  // The 32-mer TTT...T would be encoded as -1
+  private static final int MAX_K = 31;
+
+  private static final long EVEN_BITS = 0x5555555555555555L;
+
+  private static final char[] DECODE = {'A', 'C', 'G', 'T'};
+  private static final byte[] ENCODE = new byte[256];
+
+  static {
+
+    Arrays.fill(ENCODE, (byte) -1);
+    ENCODE['A'] = ENCODE['a'] = 0;
+    ENCODE['C'] = ENCODE['c'] = 1;
+    ENCODE['G'] = ENCODE['g'] = 2;
+    ENCODE['T'] = ENCODE['t'] = 3;
+  }
+
+  private static final long[] EMPTY = new long[0];
+
+  private final int length;
+  // 2-bit codes, base i is stored at bits 2*(i%32) of codes[i/32]. The code of
+  // an ambiguous base and the bits after the end of the sequence are always 0
+  private final long[] codes;
+  // Ambiguity mask, base i is flagged at bit i%64 of mask[i/64]. null if the
+  // sequence does not contains ambiguous bases
+  private final long[] mask;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the length of the sequence.
+   * @return the length of the sequence
+   */
+  public int length() {
+
+    return this.length;
+  }
+
+  /**
+   * Get a base of the sequence.
+   * @param index index of the base
+   * @return the base at the index
+   */
+  public char charAt(final int index) {
+
+    checkIndex(index);
+
+    if (isAmbiguous(index)) {
+      return 'N';
+    }
+
+    return DECODE[code(this.codes, index)];
+  }
+
+  /**
+   * Test if a base of the sequence is ambiguous (not A, C, G or T).
+   * @param index index of the base
+   * @return true if the base is ambiguous
+   */
+  public boolean isAmbiguous(final int index) {
+
+    checkIndex(index);
+
+    return this.mask != null && (this.mask[index >>> 6] >>> index & 1L) != 0;
+  }
+
+  /**
+   * Get the number of ambiguous bases in the sequence.
+   * @return the number of ambiguous bases in the sequence
+   */
+  public int ambiguousCount() {
+
+    if (this.mask == null) {
+      return 0;
+    }
+
+    int count = 0;
+    for (long m : this.mask) {
+      count += Long.bitCount(m);
+    }
+
+    return count;
+  }
+
+  //
+  // Kernels
+  //
+
+  /**
+   * Get the number of G and C bases in the sequence.
+   * @return the number of G and C bases in the sequence
+   */
+  public int gcCount() {
+
+    // C (01) and G (10) are the only codes with two different bits. The
+    // ambiguous bases and the padding have the code of A (00)
+    int count = 0;
+    for (long w : this.codes) {
+      count += Long.bitCount((w ^ (w >>> 1)) & EVEN_BITS);
+    }
+
+    return count;
+  }
+
+  /**
+   * Get the GC percent for the sequence.
+   * @return the GC percent for the sequence
+   */
+  public double getGCPercent() {
+
+    return (double) gcCount() / (double) this.length;
+  }
+
+  /**
+   * Get the reverse complement of the sequence. The ambiguous bases remain
+   * ambiguous.
+   * @return a new PackedSequence with the reverse complement of the sequence
+   */
+  public PackedSequence reverseComplement() {
+
+    final int padding = this.codes.length * BASES_PER_WORD - this.length;
+    final long[] codes = new long[this.codes.length];
+
+    // Complement (x ^ 3) and reverse the order of the 2-bit codes of each
+    // word, then reverse the order of the words
+    for (int i = 0, n = codes.length; i < n; i++) {
+      codes[n - 1 - i] = reverseCodes(~this.codes[i]);
+    }
+    shiftRight(codes, 2 * padding);
+    clearTail(codes, this.length, 2);
+
+    long[] mask = null;
+
+    if (this.mask != null) {
+
+      final int maskPadding =
+          this.mask.length * MASK_BASES_PER_WORD - this.length;
+      mask = new long[this.mask.length];
+
+      for (int i = 0, n = mask.length; i < n; i++) {
+        mask[n - 1 - i] = Long.reverse(this.mask[i]);
+      }
+      shiftRight(mask, maskPadding);
+      clearAmbiguousCodes(codes, mask);
+    }
+
+    return new PackedSequence(this.length, codes, mask);
+  }
+
+  /**
+   * Get a k-mer of the sequence encoded in a long. The first base of the k-mer
+   * is stored in the 2 highest bits of the result, with A=0, C=1, G=2 and T=3.
+   * @param index index of the first base of the k-mer
+   * @param k length of the k-mer, must be between 1 and 31
+   * @return the k-mer or -1 if the k-mer contains an ambiguous base
+   */
+  public long getKmer(final int index, final int k) {
+
+    if (k < 1 || k > MAX_K) {
+      throw new IllegalArgumentException(
+          "k must be between 1 and " + MAX_K + ": " + k);
+    }
+    checkRange(index, index + k);
+
+    if (maskBits(index, k) != 0) {
+      return -1;
+    }
+
+    final long bits = codeBits(this.codes, index, k);
+
+    // Reverse the 2-bit codes to get the first base in the highest bits
+    return reverseCodes(bits) >>> (64 - 2 * k);
+  }
+
+  /**
+   * Get all the k-mers of the sequence.
+   * @param k length of the k-mers, must be between 1 and 31
+   * @return an array with the k-mers, see {@link #getKmer(int, int)}
+   */
+  public long[] getKmers(final int k) {
+
+    if (k < 1 || k > MAX_K) {
+      throw new IllegalArgumentException(
+          "k must be between 1 and " + MAX_K + ": " + k);
+    }
+
+    final int count = Math.max(0, this.length - k + 1);
+    final long[] result = new long[count];
+
+    if (count == 0) {
+      return result;
+    }
+
+    final long kmerMask = (1L << 2 * k) - 1;
+    long kmer = 0;
+    int lastAmbiguous = -1;
+
+    // Rolling k-mer
+    for (int i = 0; i < this.length; i++) {
+
+      if (this.mask != null && (this.mask[i >>> 6] >>> i & 1L) != 0) {
+        lastAmbiguous = i;
+      }
+      kmer = (kmer << 2 | code(this.codes, i)) & kmerMask;
+
+      final int start = i - k + 1;
+      if (start >= 0) {
+        result[start] = lastAmbiguous >= start ? -1 : kmer;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the index of the first occurrence of a sequence in the current
+   * sequence. An ambiguous base only matches an ambiguous base.
+   * @param s query sequence
+   * @param fromIndex the index from which to start the search
+   * @return the index of the first occurrence of the query or -1 if not found
+   */
+  public int indexOf(final PackedSequence s, final int fromIndex) {
+
+    if (s == null) {
+      throw new NullPointerException("s argument cannot be null");
+    }
+
+    final int from = Math.max(0, fromIndex);
+    final int last = this.length - s.length;
+
+    if (s.length == 0) {
+      return from <= this.length ? from : -1;
+    }
+
+    // Compare the first word of the query before the whole query
+    final int firstLength = Math.min(s.length, BASES_PER_WORD);
+    final long firstCodes = codeBits(s.codes, 0, firstLength);
+
+    for (int i = from; i <= last; i++) {
+      if (codeBits(this.codes, i, firstLength) == firstCodes
+          && regionMatches(i, s)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Get the index of the first occurrence of a sequence in the current
+   * sequence.
+   * @param s query sequence
+   * @return the index of the first occurrence of the query or -1 if not found
+   */
+  public int indexOf(final PackedSequence s) {
+
+    return indexOf(s, 0);
+  }
+
+  /**
+   * Count the number of times of a non overlapping sequence is found in the
+   * current sequence.
+   * @param s query sequence
+   * @return the number of time that query sequence was found.
+   */
+  public int countSequence(final PackedSequence s) {
+
+    if (s == null || s.length == 0) {
+      return 0;
+    }
+
+    int count = 0;
+    int index = 0;
+
+    while ((index = indexOf(s, index)) != -1) {
+      count++;
+      index += s.length;
+    }
+
+    return count;
+  }
+
+  /**
+   * Create a sub-sequence from the current sequence. Note that index start at
+   * 0.
+   * @param beginIndex begin index of the sub-sequence
+   * @param endIndex end index of the sub-sequence
+   * @return a new PackedSequence with a sub-sequence of the current object
+   */
+  public PackedSequence subSequence(final int beginIndex, final int endIndex) {
+
+    checkRange(beginIndex, endIndex);
+
+    final int len = endIndex - beginIndex;
+    final long[] codes = new long[wordCount(len, BASES_PER_WORD)];
+
+    for (int i = 0, pos = beginIndex; i < codes.length;
+        i++, pos += BASES_PER_WORD) {
+      codes[i] =
+          codeBits(this.codes, pos, Math.min(BASES_PER_WORD, endIndex - pos));
+    }
+
+    long[] mask = null;
+
+    if (this.mask != null) {
+
+      mask = new long[wordCount(len, MASK_BASES_PER_WORD)];
+      boolean ambiguous = false;
+
+      for (int i = 0, pos = beginIndex; i < mask.length;
+          i++, pos += MASK_BASES_PER_WORD) {
+        mask[i] = maskBits(pos, Math.min(MASK_BASES_PER_WORD, endIndex - pos));
+        ambiguous |= mask[i] != 0;
+      }
+
+      if (!ambiguous) {
+        mask = null;
+      }
+    }
+
+    return new PackedSequence(len, codes, mask);
+  }
+
+  //
+  // Conversion methods
+  //
+
+  /**
+   * Convert the packed sequence to a Sequence object.
+   * @param name name of the sequence
+   * @return a new Sequence object
+   */
+  public Sequence toSequence(final String name) {
+
+    return new Sequence(name, toString());
+  }
+
+  /**
+   * Create a packed sequence from a Sequence object.
+   * @param sequence the sequence
+   * @return a new PackedSequence object
+   */
+  public static PackedSequence valueOf(final Sequence sequence) {
+
+    if (sequence == null) {
+      throw new NullPointerException("sequence argument cannot be null");
+    }
+
+    return valueOf(
+        sequence.getSequence() == null ? "" : sequence.getSequence());
+  }
+
+  /**
+   * Create a packed sequence from a String. All the letters that are not A, C,
+   * G or T (ignoring case) are stored as ambiguous bases.
+   * @param s the string
+   * @return a new PackedSequence object
+   */
+  public static PackedSequence valueOf(final CharSequence s) {
+
+    if (s == null) {
+      throw new NullPointerException("s argument cannot be null");
+    }
+
+    final int len = s.length();
+    final long[] codes = new long[wordCount(len, BASES_PER_WORD)];
+    long[] mask = null;
+
+    for (int w = 0; w < codes.length; w++) {
+
+      final int start = w * BASES_PER_WORD;
+      final int end = Math.min(len, start + BASES_PER_WORD);
+      long word = 0;
+
+      for (int i = start; i < end; i++) {
+
+        final char c = s.charAt(i);
+        final int code = c < 256 ? ENCODE[c] : -1;
+
+        if (code < 0) {
+          if (mask == null) {
+            mask = new long[wordCount(len, MASK_BASES_PER_WORD)];
+          }
+          mask[i >>> 6] |= 1L << i;
+        } else {
+          word |= (long) code << 2 * (i - start);
+        }
+      }
+
+      codes[w] = word;
+    }
+
+    return new PackedSequence(len, codes, mask);
+  }
+
+  /**
+   * Create a packed sequence from an array of bytes. All the letters that are
+   * not A, C, G or T (ignoring case) are stored as ambiguous bases.
+   * @param bytes the array of bytes
+   * @param offset the index of the first byte to use
+   * @param length the number of bytes to use
+   * @return a new PackedSequence object
+   */
+  public static PackedSequence valueOf(final byte[] bytes, final int offset,
+      final int length) {
+
+    if (bytes == null) {
+      throw new NullPointerException("bytes argument cannot be null");
+    }
+
+    if (offset < 0 || length < 0 || offset + length > bytes.length) {
+      throw new IndexOutOfBoundsException(
+          "offset: " + offset + ", length: " + length);
+    }
+
+    final long[] codes = new long[wordCount(length, BASES_PER_WORD)];
+    long[] mask = null;
+
+    for (int i = 0; i < length; i++) {
+
+      final int code = ENCODE[bytes[offset + i] & 0xFF];
+
+      if (code < 0) {
+        if (mask == null) {
+          mask = new long[wordCount(length, MASK_BASES_PER_WORD)];
+        }
+        mask[i >>> 6] |= 1L << i;
+      } else {
+        codes[i >>> 5] |= (long) code << 2 * (i & 31);
+      }
+    }
+
+    return new PackedSequence(length, codes, mask);
+  }
+
+  //
+  // Internal methods
+  //
+
+  private void checkIndex(final int index) {
+
+    if (index < 0 || index >= this.length) {
+      throw new StringIndexOutOfBoundsException(index);
+    }
+  }
+
+  private void checkRange(final int beginIndex, final int endIndex) {
+
+    if (beginIndex < 0) {
+      throw new StringIndexOutOfBoundsException(beginIndex);
+    }
+
+    if (endIndex > this.length) {
+      throw new StringIndexOutOfBoundsException(endIndex);
+    }
+
+    if (beginIndex > endIndex) {
+      throw new StringIndexOutOfBoundsException(endIndex - beginIndex);
+    }
+  }
+
+  /**
+   * Test if the query sequence is found at an index of the current sequence.
+   * @param index the index
+   * @param s the query sequence
+   * @return true if the query is found at the index
+   */
+  private boolean regionMatches(final int index, final PackedSequence s) {
+
+    for (int pos = 0; pos < s.length; pos += BASES_PER_WORD) {
+
+      final int n = Math.min(BASES_PER_WORD, s.length - pos);
+      if (codeBits(this.codes, index + pos, n) != codeBits(s.codes, pos, n)) {
+        return false;
+      }
+    }
+
+    if (this.mask == null && s.mask == null) {
+      return true;
+    }
+
+    for (int pos = 0; pos < s.length; pos += MASK_BASES_PER_WORD) {
+
+      final int n = Math.min(MASK_BASES_PER_WORD, s.length - pos);
+      if (maskBits(index + pos, n) != s.maskBits(pos, n)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the ambiguity flags of a region of the sequence.
+   * @param index index of the first base
+   * @param n number of bases, must be lower or equal to 64
+   * @return the ambiguity flags of the region
+   */
+  private long maskBits(final int index, final int n) {
+
+    return this.mask == null ? 0 : bits(this.mask, index, n, 1);
+  }
+
+  /**
+   * Get the 2-bit codes of a region of a sequence.
+   * @param codes the codes of the sequence
+   * @param index index of the first base
+   * @param n number of bases, must be lower or equal to 32
+   * @return the codes of the region
+   */
+  private static long codeBits(final long[] codes, final int index,
+      final int n) {
+
+    return bits(codes, index, n, 2);
+  }
+
+  /**
+   * Extract up to 64 bits from an array of words.
+   * @param words the array of words
+   * @param index index of the first element
+   * @param n number of elements
+   * @param width width of an element in bits
+   * @return the bits of the elements
+   */
+  private static long bits(final long[] words, final int index, final int n,
+      final int width) {
+
+    if (n == 0) {
+      return 0;
+    }
+
+    final long bitIndex = (long) index * width;
+    final int word = (int) (bitIndex >>> 6);
+    final int shift = (int) (bitIndex & 63);
+    final int bitCount = n * width;
+
+    long result = words[word] >>> shift;
+
+    if (shift != 0 && shift + bitCount > 64) {
+      result |= words[word + 1] << (64 - shift);
+    }
+
+    return bitCount == 64 ? result : result & ((1L << bitCount) - 1);
+  }
+
+  private static int code(final long[] codes, final int index) {
+
+    return (int) (codes[index >>> 5] >>> 2 * (index & 31)) & 3;
+  }
+
+  /**
+   * Reverse the order of the 32 2-bit codes of a word.
+   * @param w the word
+   * @return the word with the codes in reverse order
+   */
+  private static long reverseCodes(final long w) {
+
+    // Swap the codes in pairs, then nibbles, then bytes
+    long x = (w >>> 2 & 0x3333333333333333L) | (w & 0x3333333333333333L) << 2;
+    x = (x >>> 4 & 0x0F0F0F0F0F0F0F0FL) | (x & 0x0F0F0F0F0F0F0F0FL) << 4;
+
+    return Long.reverseBytes(x);
+  }
+
+  /**
+   * Shift right an array of words used as a single bit array.
+   * @param words the words
+   * @param shift the number of bits to shift, must be lower than 64
+   */
+  private static void shiftRight(final long[] words, final int shift) {
+
+    if (shift == 0) {
+      return;
+    }
+
+    final int n = words.length;
+    for (int i = 0; i < n; i++) {
+      words[i] = words[i] >>> shift
+          | (i + 1 < n ? words[i + 1] << (64 - shift) : 0);
+    }
+  }
+
+  /**
+   * Clear the bits after the end of the sequence.
+   * @param words the words
+   * @param length the length of the sequence
+   * @param width width of an element in bits
+   */
+  private static void clearTail(final long[] words, final int length,
+      final int width) {
+
+    final int used = (int) ((long) length * width & 63);
+
+    if (used != 0) {
+      words[words.length - 1] &= (1L << used) - 1;
+    }
+  }
+
+  /**
+   * Clear the codes of the ambiguous bases.
+   * @param codes the codes
+   * @param mask the ambiguity mask
+   */
+  private static void clearAmbiguousCodes(final long[] codes,
+      final long[] mask) {
+
+    for (int i = 0; i < codes.length; i++) {
+
+      final long m = mask[i >>> 1] >>> ((i & 1) << 5);
+      codes[i] &= ~spreadBits(m);
+    }
+  }
+
+  /**
+   * Duplicate each of the 32 lowest bits of a long.
+   * @param m the bits
+   * @return a long where bits 2i and 2i+1 are the bit i of the input
+   */
+  private static long spreadBits(final long m) {
+
+    long x = m & 0xFFFFFFFFL;
+    x = (x | x << 16) & 0x0000FFFF0000FFFFL;
+    x = (x | x << 8) & 0x00FF00FF00FF00FFL;
+    x = (x | x << 4) & 0x0F0F0F0F0F0F0F0FL;
+    x = (x | x << 2) & 0x3333333333333333L;
+    x = (x | x << 1) & EVEN_BITS;
+
+    return x | x << 1;
+  }
+
+  private static int wordCount(final int length, final int elementsPerWord) {
+
+    return (length + elementsPerWord - 1) / elementsPerWord;
+  }
+
+  //
+  // Object methods
+  //
+
+  @Override
+  public String toString() {
+
+    final char[] result = new char[this.length];
+
+    for (int i = 0; i < this.length; i++) {
+      result[i] = this.mask != null && (this.mask[i >>> 6] >>> i & 1L) != 0
+          ? 'N' : DECODE[code(this.codes, i)];
+    }
+
+    return new String(result);
+  }
+
+  @Override
+  public int hashCode() {
+
+    return 31 * (31 * this.length + Arrays.hashCode(this.codes))
+        + (this.mask == null ? 0 : Arrays.hashCode(this.mask));
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+
+    if (o == this) {
+      return true;
+    }
+
+    if (!(o instanceof PackedSequence)) {
+      return false;
+    }
+
+    final PackedSequence that = (PackedSequence) o;
+
+    return this.length == that.length
+        && Arrays.equals(this.codes, that.codes)
+        && Arrays.equals(this.mask, that.mask);
+  }
+
+  //
+  // Constructor
+  //
+
+  private PackedSequence(final int length, final long[] codes,
+      final long[] mask) {
+
+    this.length = length;
+    this.codes = codes.length == 0 ? EMPTY : codes;
+    this.mask = mask;
+  }
+
+}
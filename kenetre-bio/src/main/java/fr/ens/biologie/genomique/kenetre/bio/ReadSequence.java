@@ -114,13 +114,13 @@ public final class ReadSequence extends Sequence {
       return null;
     }
 
-    final char[] qualities = this.quality.toCharArray();
-    final int len = qualities.length;
+    final String quality = this.quality;
+    final int len = quality.length();
     final FastqFormat format = this.fastqFormat;
     final int[] result = new int[len];
 
     for (int i = 0; i < len; i++) {
-      result[i] = format.getScore(qualities[i]);
+      result[i] = format.getScore(quality.charAt(i));
     }
 
     return result;
@@ -132,18 +132,46 @@ public final class ReadSequence extends Sequence {
       return null;
     }
 
-    final char[] qualities = this.quality.toCharArray();
-    final int len = qualities.length;
+    final String quality = this.quality;
+    final int len = quality.length();
     final FastqFormat format = this.fastqFormat;
     final double[] result = new double[len];
 
     for (int i = 0; i < len; i++) {
-      result[i] = format.getProbability(qualities[i]);
+      result[i] = format.getProbability(quality.charAt(i));
     }
 
     return result;
   }
 
+  /**
+   * Get the mean quality score of the read. Unlike qualityScores(), this
+   * method does not allocate memory.
+   * @return the mean quality score of the read
+   */
+  public double meanQualityScore() {
+
+    if (this.quality == null) {
+      throw new NullPointerException("The quality is null");
+    }
+
+    return this.fastqFormat.meanScore(this.quality);
+  }
+
+  /**
+   * Get the expected number of errors in the read, i.e. the sum of the error
+   * probabilities of the bases.
+   * @return the expected number of errors in the read
+   */
+  public double expectedErrors() {
+
+    if (this.quality == null) {
+      throw new NullPointerException("The quality is null");
+    }
+
+    return this.fastqFormat.expectedErrors(this.quality);
+  }
+
   //
   // Sequence methods
   //
@@ -467,6 +467,15 @@ public class Sequence {
     return sb.toString();
   }
 
+  /**
+   * Get the sequence packed with 2 bits per base.
+   * @return a new PackedSequence object
+   */
+  public PackedSequence toPackedSequence() {
+
+    return PackedSequence.valueOf(this);
+  }
+
   //
   // Output methods
   //
@@ -29,6 +29,7 @@ import java.util.List;
 
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTag;
 
 /**
  * This alignments filter keep alignments of a read according to the distance of
@@ -41,6 +42,7 @@ public class DistanceFromReferenceReadAlignmentFilter
     extends AbstractReadAlignmentFilter {
 
   public static final String FILTER_NAME = "distancefromreference";
+  private static final String NM_TAG = SAMTag.NM.name();
   private int distance = -1;
 
   @Override
@@ -101,9 +103,7 @@ public class DistanceFromReferenceReadAlignmentFilter
     // single-end mode
     if (!records.get(0).getReadPairedFlag()) {
       for (SAMRecord r : records) {
-        if (!r.getCigarString().contains("S")
-            && !r.getCigarString().contains("H") && r.getAttribute("NM") != null
-            && r.getIntegerAttribute("NM") <= this.distance) {
+        if (isKept(r)) {
           recordsToKeep.add(r);
         }
       }
@@ -115,14 +115,7 @@ public class DistanceFromReferenceReadAlignmentFilter
           - 1; counterRecord += 2) {
         final SAMRecord r1 = records.get(counterRecord);
         final SAMRecord r2 = records.get(counterRecord + 1);
-        if (!r1.getCigarString().contains("S")
-            && !r1.getCigarString().contains("H")
-            && r1.getAttribute("NM") != null
-            && r1.getIntegerAttribute("NM") <= this.distance
-            && !r2.getCigarString().contains("S")
-            && !r2.getCigarString().contains("H")
-            && r2.getAttribute("NM") != null
-            && r2.getIntegerAttribute("NM") <= this.distance) {
+        if (isKept(r1) && isKept(r2)) {
           recordsToKeep.add(r1);
           recordsToKeep.add(r2);
         }
@@ -134,6 +127,30 @@ public class DistanceFromReferenceReadAlignmentFilter
 
   }
 
+  /**
+   * Test if an alignment must be kept: the alignment must not be clipped and
+   * its edit distance (NM tag) must be lower or equal to the distance
+   * threshold. The CIGAR string and the NM tag are only read once.
+   * @param record the alignment
+   * @return true if the alignment must be kept
+   */
+  private boolean isKept(final SAMRecord record) {
+
+    final String cigar = record.getCigarString();
+
+    for (int i = 0; i < cigar.length(); i++) {
+
+      final char c = cigar.charAt(i);
+      if (c == 'S' || c == 'H') {
+        return false;
+      }
+    }
+
+    final Integer nm = record.getIntegerAttribute(NM_TAG);
+
+    return nm != null && nm <= this.distance;
+  }
+
   @Override
   public String toString() {
 
@@ -32,6 +32,9 @@ import java.util.List;
 import fr.ens.biologie.genomique.kenetre.util.ReporterIncrementer;
 import fr.ens.biologie.genomique.kenetre.log.DummyLogger;
 import fr.ens.biologie.genomique.kenetre.log.GenericLogger;
+import fr.ens.biologie.genomique.kenetre.util.metrics.Meter;
+import fr.ens.biologie.genomique.kenetre.util.metrics.MetricRegistry;
+import fr.ens.biologie.genomique.kenetre.util.metrics.Timer;
 import htsjdk.samtools.SAMRecord;
 
 /**
@@ -48,6 +51,12 @@ public class MultiReadAlignmentFilter implements ReadAlignmentFilter {
   private final ReporterIncrementer incrementer;
   private final String counterGroup;
 
+  // Metrics
+  private MetricRegistry metrics;
+  private String metricsPrefix;
+  private final List<Timer> filterTimers = new ArrayList<>();
+  private Meter inputMeter;
+
   @Override
   public void filterReadAlignments(final List<SAMRecord> records) {
 
@@ -61,10 +70,23 @@ public class MultiReadAlignmentFilter implements ReadAlignmentFilter {
       pairedEnd = true;
     }
 
-    for (ReadAlignmentFilter af : this.list) {
+    final boolean timed = this.metrics != null;
+    if (timed) {
+      this.inputMeter.mark(records.size());
+    }
+
+    for (int i = 0; i < this.list.size(); i++) {
 
+      final ReadAlignmentFilter af = this.list.get(i);
       final int sizeBefore = records.size();
-      af.filterReadAlignments(records);
+
+      if (timed) {
+        final long startTime = System.nanoTime();
+        af.filterReadAlignments(records);
+        this.filterTimers.get(i).stop(startTime);
+      } else {
+        af.filterReadAlignments(records);
+      }
 
       final int sizeAfter = records.size();
       final int diff = sizeBefore - sizeAfter;
@@ -96,10 +118,43 @@ public class MultiReadAlignmentFilter implements ReadAlignmentFilter {
 
     if (filter != null) {
       this.list.add(filter);
+
+      if (this.metrics != null) {
+        this.filterTimers.add(this.metrics
+            .timer(this.metricsPrefix + ".filter." + filter.getName()));
+      }
     }
 
   }
 
+  /**
+   * Enable the metrics of the filter. The metrics contains a timer for each
+   * filter (named "&lt;prefix&gt;.filter.&lt;filter name&gt;") and a meter for
+   * the input alignments.
+   * @param registry the metric registry, null to disable the metrics
+   * @param prefix prefix of the name of the metrics
+   */
+  public void setMetrics(final MetricRegistry registry, final String prefix) {
+
+    this.filterTimers.clear();
+
+    if (registry == null) {
+      this.metrics = null;
+      this.metricsPrefix = null;
+      this.inputMeter = null;
+      return;
+    }
+
+    requireNonNull(prefix, "prefix argument cannot be null");
+    this.metrics = registry;
+    this.metricsPrefix = prefix;
+    this.inputMeter = registry.meter(prefix + ".input");
+
+    for (ReadAlignmentFilter f : this.list) {
+      this.filterTimers.add(registry.timer(prefix + ".filter." + f.getName()));
+    }
+  }
+
   @Override
   public String getName() {
 
@@ -104,11 +104,12 @@ public class ReadAlignmentFilterBuffer {
   }
 
   /**
-   * Parse alignment name.
+   * Parse alignment name. The alignments with the same name are stored in the
+   * same buffer.
    * @param alignment the alignment
    * @return the name of the sequence in the alignment
    */
-  private static String parseAlignmentName(final SAMRecord alignment) {
+  public static String parseAlignmentName(final SAMRecord alignment) {
 
     final String alignmentName = alignment.getReadName();
     final int spaceIndex = alignmentName.indexOf(' ');
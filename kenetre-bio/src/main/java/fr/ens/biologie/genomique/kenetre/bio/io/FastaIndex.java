@@ -0,0 +1,509 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import static fr.ens.biologie.genomique.kenetre.bio.io.BioCharsets.FASTA_CHARSET;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.ens.biologie.genomique.kenetre.io.FileUtils;
+
+/**
+ * This class define an index of a FASTA file. The format of the index is the
+ * format of the ".fai" files of samtools: for each sequence, the name, the
+ * length, the offset of the first base in the file, the number of bases per
+ * line and the number of bytes per line.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class FastaIndex {
+
+  /** Extension of the index files. */
+  public static final String INDEX_EXTENSION = ".fai";
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+  /**
+   * This class define an entry of the index.
+   */
+  public static final class Entry {
+
+    private final String name;
+    private final long length;
+    private final long offset;
+    private final int lineBases;
+    private final int lineBytes;
+
+    /**
+     * Get the name of the sequence.
+     * @return the name of the sequence
+     */
+    public String getName() {
+      return this.name;
+    }
+
+    /**
+     * Get the length of the sequence.
+     * @return the length of the sequence
+     */
+    public long getLength() {
+      return this.length;
+    }
+
+    /**
+     * Get the offset of the first base of the sequence in the file.
+     * @return the offset of the first base of the sequence
+     */
+    public long getOffset() {
+      return this.offset;
+    }
+
+    /**
+     * Get the number of bases per line.
+     * @return the number of bases per line
+     */
+    public int getLineBases() {
+      return this.lineBases;
+    }
+
+    /**
+     * Get the number of bytes per line, including the end of line.
+     * @return the number of bytes per line
+     */
+    public int getLineBytes() {
+      return this.lineBytes;
+    }
+
+    /**
+     * Get the offset of a base in the file.
+     * @param position position of the base in the sequence (zero based)
+     * @return the offset of the base in the file
+     */
+    public long getOffset(final long position) {
+
+      return this.offset + (position / this.lineBases) * this.lineBytes
+          + position % this.lineBases;
+    }
+
+    @Override
+    public String toString() {
+
+      return this.name
+          + '\t' + this.length + '\t' + this.offset + '\t' + this.lineBases
+          + '\t' + this.lineBytes;
+    }
+
+    /**
+     * Constructor.
+     * @param name name of the sequence
+     * @param length length of the sequence
+     * @param offset offset of the first base of the sequence
+     * @param lineBases number of bases per line
+     * @param lineBytes number of bytes per line
+     */
+    Entry(final String name, final long length, final long offset,
+        final int lineBases, final int lineBytes) {
+
+      this.name = name;
+      this.length = length;
+      this.offset = offset;
+      this.lineBases = lineBases;
+      this.lineBytes = lineBytes;
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get an entry of the index.
+   * @param sequenceName name of the sequence
+   * @return the entry of the sequence or null if the sequence does not exists
+   */
+  public Entry getEntry(final String sequenceName) {
+
+    return this.entries.get(sequenceName);
+  }
+
+  /**
+   * Get the entries of the index.
+   * @return an unmodifiable list with the entries of the index
+   */
+  public List<Entry> getEntries() {
+
+    return Collections.unmodifiableList(new ArrayList<>(this.entries.values()));
+  }
+
+  /**
+   * Get the names of the sequences.
+   * @return a list with the names of the sequences
+   */
+  public List<String> getSequenceNames() {
+
+    return Collections.unmodifiableList(new ArrayList<>(this.entries.keySet()));
+  }
+
+  /**
+   * Get the number of sequences in the index.
+   * @return the number of sequences in the index
+   */
+  public int getSequenceCount() {
+
+    return this.entries.size();
+  }
+
+  /**
+   * Get the length of a sequence.
+   * @param sequenceName name of the sequence
+   * @return the length of the sequence or -1 if the sequence does not exists
+   */
+  public long getSequenceLength(final String sequenceName) {
+
+    final Entry entry = this.entries.get(sequenceName);
+
+    return entry == null ? -1 : entry.length;
+  }
+
+  /**
+   * Add an entry to the index.
+   * @param entry the entry to add
+   * @throws IOException if the index already contains the sequence
+   */
+  private void addEntry(final Entry entry) throws IOException {
+
+    if (this.entries.containsKey(entry.name)) {
+      throw new IOException(
+          "Sequence name found twice in FASTA file: " + entry.name);
+    }
+
+    this.entries.put(entry.name, entry);
+  }
+
+  //
+  // Save
+  //
+
+  /**
+   * Save the index.
+   * @param os output stream
+   * @throws IOException if an error occurs while writing the index
+   */
+  public void save(final OutputStream os) throws IOException {
+
+    requireNonNull(os, "os argument cannot be null");
+
+    try (Writer writer = FileUtils.createFastBufferedWriter(os)) {
+      for (Entry e : this.entries.values()) {
+        writer.write(e.toString() + '\n');
+      }
+    }
+  }
+
+  /**
+   * Save the index.
+   * @param file output file
+   * @throws IOException if an error occurs while writing the index
+   */
+  public void save(final File file) throws IOException {
+
+    requireNonNull(file, "file argument cannot be null");
+    save(FileUtils.createOutputStream(file));
+  }
+
+  //
+  // Load
+  //
+
+  /**
+   * Load an index.
+   * @param is input stream
+   * @return a FastaIndex object
+   * @throws IOException if an error occurs while reading the index
+   */
+  public static FastaIndex load(final InputStream is) throws IOException {
+
+    requireNonNull(is, "is argument cannot be null");
+
+    final FastaIndex result = new FastaIndex();
+
+    try (BufferedReader reader = FileUtils.createBufferedReader(is)) {
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+
+        final String[] fields = line.split("\t");
+        if (fields.length < 5) {
+          throw new IOException("Invalid FASTA index entry: " + line);
+        }
+
+        try {
+          result.addEntry(new Entry(fields[0], Long.parseLong(fields[1]),
+              Long.parseLong(fields[2]), Integer.parseInt(fields[3]),
+              Integer.parseInt(fields[4])));
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid FASTA index entry: " + line);
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Load an index.
+   * @param file index file
+   * @return a FastaIndex object
+   * @throws IOException if an error occurs while reading the index
+   */
+  public static FastaIndex load(final File file) throws IOException {
+
+    requireNonNull(file, "file argument cannot be null");
+    return load(FileUtils.createInputStream(file));
+  }
+
+  //
+  // Index creation
+  //
+
+  /**
+   * Create the index of a FASTA file.
+   * @param is input stream of the FASTA file
+   * @return a FastaIndex object
+   * @throws IOException if an error occurs while reading the FASTA file or if
+   *           the file cannot be indexed
+   */
+  public static FastaIndex index(final InputStream is) throws IOException {
+
+    requireNonNull(is, "is argument cannot be null");
+
+    final FastaIndex result = new FastaIndex();
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    byte[] header = new byte[256];
+
+    long filePos = 0;
+    boolean inHeader = false;
+    int headerLength = 0;
+
+    // Current sequence
+    String name = null;
+    long length = 0;
+    long offset = 0;
+    int lineBases = -1;
+    int lineBytes = -1;
+
+    // Current line
+    int bases = 0;
+    int bytes = 0;
+    boolean shortLine = false;
+
+    try (InputStream in = is) {
+
+      int n;
+      while ((n = in.read(buffer)) != -1) {
+
+        for (int i = 0; i < n; i++, filePos++) {
+
+          final byte b = buffer[i];
+
+          if (inHeader) {
+
+            if (b == '\n') {
+              if (name != null) {
+                result.addEntry(new Entry(name, length, offset,
+                    Math.max(lineBases, 0), Math.max(lineBytes, 0)));
+              }
+
+              name = headerName(header, headerLength);
+              length = 0;
+              offset = filePos + 1;
+              lineBases = -1;
+              lineBytes = -1;
+              shortLine = false;
+              inHeader = false;
+            } else {
+              if (headerLength == header.length) {
+                header = Arrays.copyOf(header, header.length * 2);
+              }
+              header[headerLength++] = b;
+            }
+            continue;
+          }
+
+          if (bytes == 0 && b == '>') {
+            inHeader = true;
+            headerLength = 0;
+            continue;
+          }
+
+          bytes++;
+
+          if (b != '\n') {
+            if (b != '\r') {
+              bases++;
+            }
+            continue;
+          }
+
+          // End of a sequence line
+          if (name == null) {
+            if (bases > 0) {
+              throw new IOException(
+                  "No fasta header found at the beginning of the fasta file");
+            }
+          } else if (bases > 0) {
+
+            if (lineBases == -1) {
+              lineBases = bases;
+              lineBytes = bytes;
+            } else if (shortLine || bases > lineBases || bytes != lineBytes
+                && bases == lineBases) {
+              throw new IOException(
+                  "Different line length in sequence: " + name);
+            }
+
+            shortLine = bases < lineBases;
+            length += bases;
+
+          } else if (lineBases != -1) {
+            // An empty line is only allowed at the end of a sequence
+            shortLine = true;
+          }
+
+          bases = 0;
+          bytes = 0;
+        }
+      }
+    }
+
+    // Last line without end of line
+    if (inHeader) {
+      if (name != null) {
+        result.addEntry(new Entry(name, length, offset, Math.max(lineBases, 0),
+            Math.max(lineBytes, 0)));
+      }
+      name = headerName(header, headerLength);
+      length = 0;
+      offset = filePos;
+      lineBases = -1;
+      lineBytes = -1;
+    } else if (bases > 0) {
+
+      if (name == null) {
+        throw new IOException(
+            "No fasta header found at the beginning of the fasta file");
+      }
+
+      if (lineBases == -1) {
+        lineBases = bases;
+        lineBytes = bytes + 1;
+      } else if (shortLine || bases > lineBases) {
+        throw new IOException("Different line length in sequence: " + name);
+      }
+      length += bases;
+    }
+
+    if (name != null) {
+      result.addEntry(new Entry(name, length, offset, Math.max(lineBases, 0),
+          Math.max(lineBytes, 0)));
+    }
+
+    return result;
+  }
+
+  /**
+   * Create the index of a FASTA file.
+   * @param file FASTA file
+   * @return a FastaIndex object
+   * @throws IOException if an error occurs while reading the FASTA file or if
+   *           the file cannot be indexed
+   */
+  public static FastaIndex index(final File file) throws IOException {
+
+    requireNonNull(file, "file argument cannot be null");
+    return index(FileUtils.createInputStream(file));
+  }
+
+  /**
+   * Get the name of a sequence from its header. The name is the first word of
+   * the header.
+   * @param header the header without the '>' character
+   * @param length the length of the header
+   * @return the name of the sequence
+   * @throws IOException if the header is empty
+   */
+  private static String headerName(final byte[] header, final int length)
+      throws IOException {
+
+    int end = 0;
+    while (end < length && (header[end] & 0xFF) > ' ') {
+      end++;
+    }
+
+    if (end == 0) {
+      throw new IOException("Invalid FASTA header: >"
+          + new String(header, 0, length, FASTA_CHARSET).trim());
+    }
+
+    return new String(header, 0, end, FASTA_CHARSET);
+  }
+
+  /**
+   * Get the index file of a FASTA file.
+   * @param fastaFile FASTA file
+   * @return the index file
+   */
+  public static File getIndexFile(final File fastaFile) {
+
+    requireNonNull(fastaFile, "fastaFile argument cannot be null");
+    return new File(fastaFile.getPath() + INDEX_EXTENSION);
+  }
+
+  @Override
+  public String toString() {
+
+    return this.getClass().getSimpleName()
+        + "{entries=" + this.entries.values() + "}";
+  }
+
+}
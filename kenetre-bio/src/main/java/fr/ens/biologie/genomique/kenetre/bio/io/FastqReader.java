@@ -26,12 +26,10 @@ package fr.ens.biologie.genomique.kenetre.bio.io;
 
 import static fr.ens.biologie.genomique.kenetre.bio.io.BioCharsets.FASTQ_CHARSET;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -40,16 +38,34 @@ import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 import fr.ens.biologie.genomique.kenetre.io.FileUtils;
 
 /**
- * This class implements a Fastq reader.
+ * This class implements a Fastq reader. The entries are located directly in a
+ * large byte buffer and the Strings of the ReadSequence objects are only
+ * created when the next() method is called. The name, sequence and quality of
+ * the current entry can also be accessed as slices of the internal buffer with
+ * the getBuffer() method and the offset and length getters.
  * @since 1.0
  * @author Laurent Jourdren
  */
 public class FastqReader implements ReadSequenceReader {
 
-  private final BufferedReader reader;
+  /** Default size of the read buffer. */
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  private final InputStream is;
+
+  private byte[] buffer;
+  private int pos;
+  private int limit;
+  private boolean eof;
+
+  private int nameOffset;
+  private int nameEnd;
+  private int sequenceOffset;
+  private int sequenceEnd;
+  private int qualityOffset;
+  private int qualityEnd;
 
   private ReadSequence result = null;
-  private final StringBuilder sb = new StringBuilder();
   private int lineCount = 0;
 
   private boolean end = false;
@@ -57,10 +73,83 @@ public class FastqReader implements ReadSequenceReader {
   protected IOException ioException;
   protected BadBioEntryException bbeException;
 
+  //
+  // Slice getters
+  //
+
+  /**
+   * Get the internal buffer that contains the current entry. The content of
+   * the buffer is only valid until the next call to hasNext().
+   * @return the internal buffer
+   */
+  public byte[] getBuffer() {
+
+    return this.buffer;
+  }
+
+  /**
+   * Get the offset of the name of the current entry in the internal buffer.
+   * @return the offset of the name
+   */
+  public int getNameOffset() {
+
+    return this.nameOffset;
+  }
+
+  /**
+   * Get the length of the name of the current entry.
+   * @return the length of the name
+   */
+  public int getNameLength() {
+
+    return this.nameEnd - this.nameOffset;
+  }
+
+  /**
+   * Get the offset of the sequence of the current entry in the internal
+   * buffer.
+   * @return the offset of the sequence
+   */
+  public int getSequenceOffset() {
+
+    return this.sequenceOffset;
+  }
+
+  /**
+   * Get the length of the sequence of the current entry.
+   * @return the length of the sequence
+   */
+  public int getSequenceLength() {
+
+    return this.sequenceEnd - this.sequenceOffset;
+  }
+
+  /**
+   * Get the offset of the quality of the current entry in the internal buffer.
+   * @return the offset of the quality
+   */
+  public int getQualityOffset() {
+
+    return this.qualityOffset;
+  }
+
+  /**
+   * Get the length of the quality of the current entry.
+   * @return the length of the quality
+   */
+  public int getQualityLength() {
+
+    return this.qualityEnd - this.qualityOffset;
+  }
+
+  //
+  // Iterator methods
+  //
+
   @Override
   public void close() throws IOException {
 
-    this.reader.close();
+    this.is.close();
   }
 
   @Override
@@ -77,51 +166,22 @@ public class FastqReader implements ReadSequenceReader {
     }
 
     this.nextCallDone = false;
-
-    String line = null;
-    int entryLine = 0;
+    this.result = null;
 
     try {
-      while ((line = this.reader.readLine()) != null) {
-
-        // Increment line count
-        this.lineCount++;
 
-        // Trim the line
-        final String trim = line.trim();
+      while (!parseEntry()) {
 
-        entryLine++;
-        this.sb.append(trim);
-
-        if (entryLine == 1 && trim.charAt(0) != '@') {
-          throw new BadBioEntryException(
-              "Invalid Fastq file. First line of the entry don't start with '@' at line "
-                  + this.lineCount,
-              line);
+        if (this.eof) {
+          this.end = true;
+          return false;
         }
 
-        if (entryLine == 3 && trim.charAt(0) != '+') {
-          throw new BadBioEntryException(
-              "Invalid Fastq file. Third line of the entry don't start with '+' at line "
-                  + this.lineCount,
-              line);
-        }
-
-        if (entryLine == 4) {
-
-          // Fill the ReadSequence object
-          this.result = new ReadSequence();
-          this.result.parseFastQ(this.sb.toString());
-          this.sb.setLength(0);
-          return true;
-        }
-        this.sb.append('\n');
+        fillBuffer();
       }
 
-      this.sb.setLength(0);
-      this.end = true;
+      return true;
 
-      return false;
     } catch (IOException e) {
 
       this.ioException = e;
@@ -144,6 +204,13 @@ public class FastqReader implements ReadSequenceReader {
 
     this.nextCallDone = true;
 
+    if (this.result == null) {
+      this.result = new ReadSequence(
+          createString(this.nameOffset, this.nameEnd),
+          createString(this.sequenceOffset, this.sequenceEnd),
+          createString(this.qualityOffset, this.qualityEnd));
+    }
+
     return this.result;
   }
 
@@ -165,6 +232,158 @@ public class FastqReader implements ReadSequenceReader {
     }
   }
 
+  //
+  // Parsing methods
+  //
+
+  /**
+   * Try to locate the next entry in the buffer.
+   * @return true if a complete entry has been found in the buffer
+   * @throws BadBioEntryException if the entry is invalid
+   */
+  private boolean parseEntry() throws BadBioEntryException {
+
+    final byte[] buf = this.buffer;
+    final int limit = this.limit;
+
+    // Locate the end of the 4 lines of the entry
+    final int eol1 = lineEnd(this.pos);
+    if (eol1 == -1) {
+      return false;
+    }
+    final int eol2 = lineEnd(eol1 + 1);
+    if (eol2 == -1) {
+      return false;
+    }
+    final int eol3 = lineEnd(eol2 + 1);
+    if (eol3 == -1) {
+      return false;
+    }
+    final int eol4 = lineEnd(eol3 + 1);
+    if (eol4 == -1) {
+      return false;
+    }
+
+    // Name line
+    int start = trimStart(buf, this.pos, eol1);
+    int end = trimEnd(buf, start, eol1);
+    if (start == end || buf[start] != '@') {
+      throw new BadBioEntryException(
+          "Invalid Fastq file. First line of the entry don't start with '@' at line "
+              + (this.lineCount + 1),
+          createString(this.pos, eol1));
+    }
+    this.nameOffset = start + 1;
+    this.nameEnd = end;
+
+    // Sequence line
+    start = trimStart(buf, eol1 + 1, eol2);
+    this.sequenceOffset = start;
+    this.sequenceEnd = trimEnd(buf, start, eol2);
+
+    // Separator line
+    start = trimStart(buf, eol2 + 1, eol3);
+    if (start == trimEnd(buf, start, eol3) || buf[start] != '+') {
+      throw new BadBioEntryException(
+          "Invalid Fastq file. Third line of the entry don't start with '+' at line "
+              + (this.lineCount + 3),
+          createString(eol2 + 1, eol3));
+    }
+
+    // Quality line
+    start = trimStart(buf, eol3 + 1, eol4);
+    this.qualityOffset = start;
+    this.qualityEnd = trimEnd(buf, start, eol4);
+
+    this.lineCount += 4;
+    this.pos = eol4 < limit ? eol4 + 1 : limit;
+
+    return true;
+  }
+
+  /**
+   * Get the index of the end of a line in the buffer.
+   * @param from the start index of the line
+   * @return the index of the end of the line or -1 if the end of the line is
+   *         not in the buffer
+   */
+  private int lineEnd(final int from) {
+
+    final byte[] buf = this.buffer;
+    final int limit = this.limit;
+
+    for (int i = from; i < limit; i++) {
+      if (buf[i] == '\n') {
+        return i;
+      }
+    }
+
+    // The last line of the file may not end with a new line character
+    if (this.eof && from < limit) {
+      return limit;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Read data from the input stream to the buffer. The unread data are moved
+   * at the beginning of the buffer and the size of the buffer is increased if
+   * the buffer is full.
+   * @throws IOException if an error occurs while reading data
+   */
+  private void fillBuffer() throws IOException {
+
+    final int remaining = this.limit - this.pos;
+
+    if (this.pos > 0) {
+      System.arraycopy(this.buffer, this.pos, this.buffer, 0, remaining);
+      this.pos = 0;
+      this.limit = remaining;
+    }
+
+    if (this.limit == this.buffer.length) {
+      final byte[] newBuffer = new byte[this.buffer.length * 2];
+      System.arraycopy(this.buffer, 0, newBuffer, 0, this.limit);
+      this.buffer = newBuffer;
+    }
+
+    final int n =
+        this.is.read(this.buffer, this.limit, this.buffer.length - this.limit);
+
+    if (n == -1) {
+      this.eof = true;
+    } else {
+      this.limit += n;
+    }
+  }
+
+  private static int trimStart(final byte[] buf, final int from,
+      final int to) {
+
+    int i = from;
+    while (i < to && (buf[i] & 0xff) <= ' ') {
+      i++;
+    }
+
+    return i;
+  }
+
+  private static int trimEnd(final byte[] buf, final int from, final int to) {
+
+    int i = to;
+    while (i > from && (buf[i - 1] & 0xff) <= ' ') {
+      i--;
+    }
+
+    return i;
+  }
+
+  private String createString(final int from, final int to) {
+
+    return new String(this.buffer, from, to - from, FASTQ_CHARSET);
+  }
+
   //
   // Constructors
   //
@@ -175,11 +394,27 @@ public class FastqReader implements ReadSequenceReader {
    */
   public FastqReader(final InputStream is) {
 
+    this(is, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Public constructor
+   * @param is InputStream to use
+   * @param bufferSize initial size of the read buffer
+   */
+  public FastqReader(final InputStream is, final int bufferSize) {
+
     if (is == null) {
       throw new NullPointerException("InputStream is null");
     }
 
-    this.reader = new BufferedReader(new InputStreamReader(is, FASTQ_CHARSET));
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException(
+          "Invalid buffer size: " + bufferSize);
+    }
+
+    this.is = is;
+    this.buffer = new byte[bufferSize];
   }
 
   /**
@@ -189,11 +424,7 @@ public class FastqReader implements ReadSequenceReader {
    */
   public FastqReader(final File file) throws FileNotFoundException {
 
-    if (file == null) {
-      throw new NullPointerException("File is null");
-    }
-
-    this.reader = FileUtils.createBufferedReader(file, FASTQ_CHARSET);
+    this(FileUtils.createInputStream(file));
   }
 
   /**
@@ -203,7 +434,7 @@ public class FastqReader implements ReadSequenceReader {
    */
   public FastqReader(final String filename) throws FileNotFoundException {
 
-    this.reader = FileUtils.createBufferedReader(filename, FASTQ_CHARSET);
+    this(FileUtils.createInputStream(filename));
   }
 
 }
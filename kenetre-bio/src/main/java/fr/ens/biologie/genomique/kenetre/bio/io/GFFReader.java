@@ -76,6 +76,47 @@ public class GFFReader
     return this.fastaSectionFound;
   }
 
+  /**
+   * This enum define the types of the lines of a GFF file.
+   */
+  enum LineType {
+    ENTRY, FASTA_SECTION, OTHER
+  }
+
+  /**
+   * Get the type of a line of a GFF file. The metadata of the "##" lines are
+   * added to the metadata of the reader.
+   * @param line the line to process
+   * @param metadata the metadata of the reader
+   * @return the type of the line
+   */
+  static LineType parseLineType(final String line,
+      final EntryMetadata metadata) {
+
+    if (line.startsWith("###")) {
+      return LineType.OTHER;
+    }
+
+    if (line.startsWith("##FASTA")) {
+      return LineType.FASTA_SECTION;
+    }
+
+    if (line.startsWith("##")) {
+
+      final int posTab = line.indexOf(' ');
+      if (posTab != -1) {
+
+        final String mdKey = line.substring(2, posTab).trim();
+        final String mdValue = line.substring(posTab + 1).trim();
+        metadata.add(mdKey, mdValue);
+      }
+
+      return LineType.OTHER;
+    }
+
+    return line.startsWith("#") ? LineType.OTHER : LineType.ENTRY;
+  }
+
   @Override
   public boolean hasNext() {
 
@@ -88,30 +129,15 @@ public class GFFReader
     try {
       while ((line = this.reader.readLine()) != null) {
 
-        if (line.startsWith("###")) {
-          continue;
-        }
+        final LineType type = parseLineType(line, this.metadata);
 
-        if (line.startsWith("##FASTA")) {
+        if (type == LineType.FASTA_SECTION) {
           this.fastaSectionFound = true;
           this.end = true;
           return false;
         }
 
-        if (line.startsWith("##")) {
-
-          final int posTab = line.indexOf(' ');
-          if (posTab == -1) {
-            continue;
-          }
-
-          final String mdKey = line.substring(2, posTab).trim();
-          final String mdValue = line.substring(posTab + 1).trim();
-          this.metadata.add(mdKey, mdValue);
-
-        } else if (line.startsWith("#")) {
-          continue;
-        } else {
+        if (type == LineType.ENTRY) {
 
           // Create a new object with metadata
           this.result = new GFFEntry(this.metadata);
@@ -187,6 +213,15 @@ public class GFFReader
   // Protected methods
   //
 
+  /**
+   * Get the reader of the data.
+   * @return the reader of the data
+   */
+  protected BufferedReader getReader() {
+
+    return this.reader;
+  }
+
   /**
    * Get the format of the data to read.
    * @return true if the data to read is in GFF format
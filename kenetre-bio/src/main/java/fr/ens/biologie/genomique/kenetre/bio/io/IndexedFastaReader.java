@@ -0,0 +1,356 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import static fr.ens.biologie.genomique.kenetre.bio.io.BioCharsets.FASTA_CHARSET;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import fr.ens.biologie.genomique.kenetre.bio.Alphabets;
+import fr.ens.biologie.genomique.kenetre.bio.BEDEntry;
+import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
+import fr.ens.biologie.genomique.kenetre.bio.GenomicInterval;
+import fr.ens.biologie.genomique.kenetre.bio.Sequence;
+
+/**
+ * This class define a random access reader of FASTA files. The FASTA file is
+ * mapped in memory and the sequences are located using a samtools ".fai"
+ * index, so the cost of the retrieval of a region only depends of the length of
+ * the region. An instance of this class can be used by several threads.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class IndexedFastaReader implements Closeable {
+
+  // Size of the mapped segments of the file
+  private static final long SEGMENT_SIZE = 1L << 30;
+
+  private final File fastaFile;
+  private final FastaIndex index;
+  private final FileChannel channel;
+  private final ByteBuffer[] segments;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the FASTA file.
+   * @return the FASTA file
+   */
+  public File getFastaFile() {
+
+    return this.fastaFile;
+  }
+
+  /**
+   * Get the index of the FASTA file.
+   * @return the index of the FASTA file
+   */
+  public FastaIndex getIndex() {
+
+    return this.index;
+  }
+
+  /**
+   * Get the names of the sequences.
+   * @return a list with the names of the sequences
+   */
+  public List<String> getSequenceNames() {
+
+    return this.index.getSequenceNames();
+  }
+
+  /**
+   * Get the length of a sequence.
+   * @param sequenceName name of the sequence
+   * @return the length of the sequence or -1 if the sequence does not exists
+   */
+  public long getSequenceLength(final String sequenceName) {
+
+    return this.index.getSequenceLength(sequenceName);
+  }
+
+  /**
+   * Get the description of the genome from the index. The description does
+   * not contain the MD5 sum of the genome.
+   * @return a GenomeDescription object
+   */
+  public GenomeDescription getGenomeDescription() {
+
+    return GenomeDescription.createGenomeDescFromFastaIndex(this.index,
+        this.fastaFile.getName());
+  }
+
+  //
+  // Sequence retrieval
+  //
+
+  /**
+   * Get a region of a sequence.
+   * @param sequenceName name of the sequence
+   * @param start start of the region (one based)
+   * @param end end of the region (one based, included)
+   * @return a String with the bases of the region
+   * @throws IOException if the sequence does not exists or if the region is
+   *           invalid
+   */
+  public String getSubSequence(final String sequenceName, final long start,
+      final long end) throws IOException {
+
+    requireNonNull(sequenceName, "sequenceName argument cannot be null");
+
+    final FastaIndex.Entry entry = this.index.getEntry(sequenceName);
+
+    if (entry == null) {
+      throw new IOException("Unknown sequence: " + sequenceName);
+    }
+
+    if (start < 1 || end > entry.getLength() || end < start - 1) {
+      throw new IOException("Invalid region for sequence "
+          + sequenceName + " (length: " + entry.getLength() + "): " + start
+          + "-" + end);
+    }
+
+    final long length = end - start + 1;
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Region too large: " + sequenceName + ":" + start
+          + "-" + end);
+    }
+
+    final byte[] result = new byte[(int) length];
+    final int lineBases = entry.getLineBases();
+    long pos = start - 1;
+    int written = 0;
+
+    // Copy the region line by line
+    while (written < result.length) {
+
+      final int n = (int) Math.min(result.length - written,
+          lineBases - pos % lineBases);
+      read(entry.getOffset(pos), result, written, n);
+      written += n;
+      pos += n;
+    }
+
+    return new String(result, FASTA_CHARSET);
+  }
+
+  /**
+   * Get the sequence of a genomic interval. If the interval is on the minus
+   * strand, the reverse complement of the sequence is returned.
+   * @param interval the genomic interval
+   * @return a String with the bases of the interval
+   * @throws IOException if the sequence does not exists or if the interval is
+   *           invalid
+   */
+  public String getSubSequence(final GenomicInterval interval)
+      throws IOException {
+
+    requireNonNull(interval, "interval argument cannot be null");
+
+    final String result = getSubSequence(interval.getChromosome(),
+        interval.getStart(), interval.getEnd());
+
+    return interval.getStrand() == '-'
+        ? Sequence.reverseComplement(result, Alphabets.AMBIGUOUS_DNA_ALPHABET)
+        : result;
+  }
+
+  /**
+   * Get the sequence of a BED entry. If the entry is on the minus strand, the
+   * reverse complement of the sequence is returned.
+   * @param entry the BED entry
+   * @return a String with the bases of the entry
+   * @throws IOException if the sequence does not exists or if the entry is
+   *           invalid
+   */
+  public String getSubSequence(final BEDEntry entry) throws IOException {
+
+    requireNonNull(entry, "entry argument cannot be null");
+
+    // BEDEntry stores one based coordinates
+    final String result = getSubSequence(entry.getChromosomeName(),
+        entry.getStart(), entry.getEnd());
+
+    return entry.getStrand() == '-'
+        ? Sequence.reverseComplement(result, Alphabets.AMBIGUOUS_DNA_ALPHABET)
+        : result;
+  }
+
+  /**
+   * Get a whole sequence.
+   * @param sequenceName name of the sequence
+   * @return a Sequence object
+   * @throws IOException if the sequence does not exists
+   */
+  public Sequence getSequence(final String sequenceName) throws IOException {
+
+    final long length = getSequenceLength(sequenceName);
+
+    if (length == -1) {
+      throw new IOException("Unknown sequence: " + sequenceName);
+    }
+
+    return new Sequence(sequenceName,
+        getSubSequence(sequenceName, 1, length));
+  }
+
+  /**
+   * Copy bytes of the file in an array.
+   * @param offset offset of the bytes in the file
+   * @param dst destination array
+   * @param dstOffset offset in the destination array
+   * @param length number of bytes to copy
+   */
+  private void read(final long offset, final byte[] dst, final int dstOffset,
+      final int length) {
+
+    long pos = offset;
+    int off = dstOffset;
+    int remaining = length;
+
+    while (remaining > 0) {
+
+      final int segment = (int) (pos / SEGMENT_SIZE);
+      final int segmentPos = (int) (pos % SEGMENT_SIZE);
+
+      // Use a view of the segment as the position of a buffer is not thread
+      // safe
+      final ByteBuffer buffer = this.segments[segment].duplicate();
+      buffer.position(segmentPos);
+
+      final int n = Math.min(remaining, buffer.remaining());
+      buffer.get(dst, off, n);
+
+      pos += n;
+      off += n;
+      remaining -= n;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    this.channel.close();
+  }
+
+  @Override
+  public String toString() {
+
+    return this.getClass().getSimpleName()
+        + "{fastaFile=" + this.fastaFile + ", index=" + this.index + "}";
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor. The index of the FASTA file is loaded from the ".fai"
+   * file if exists, otherwise the index is created and saved.
+   * @param fastaFile the FASTA file
+   * @throws IOException if an error occurs while reading the FASTA file or its
+   *           index
+   */
+  public IndexedFastaReader(final File fastaFile) throws IOException {
+
+    this(fastaFile, loadOrCreateIndex(fastaFile));
+  }
+
+  /**
+   * Public constructor.
+   * @param fastaFile the FASTA file
+   * @param index the index of the FASTA file
+   * @throws IOException if an error occurs while reading the FASTA file
+   */
+  public IndexedFastaReader(final File fastaFile, final FastaIndex index)
+      throws IOException {
+
+    requireNonNull(fastaFile, "fastaFile argument cannot be null");
+    requireNonNull(index, "index argument cannot be null");
+
+    this.fastaFile = fastaFile;
+    this.index = index;
+    this.channel =
+        FileChannel.open(fastaFile.toPath(), StandardOpenOption.READ);
+
+    final long size = this.channel.size();
+    this.segments =
+        new ByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+
+    for (int i = 0; i < this.segments.length; i++) {
+
+      final long pos = i * SEGMENT_SIZE;
+      this.segments[i] = this.channel.map(FileChannel.MapMode.READ_ONLY, pos,
+          Math.min(SEGMENT_SIZE, size - pos));
+    }
+
+    // Check the index
+    for (FastaIndex.Entry e : index.getEntries()) {
+      if (e.getLength() > 0 && e.getOffset(e.getLength() - 1) >= size) {
+        throw new IOException("The index does not match the FASTA file "
+            + fastaFile + ": " + e.getName());
+      }
+    }
+  }
+
+  /**
+   * Load the index of a FASTA file or create it if not exists.
+   * @param fastaFile the FASTA file
+   * @return the index of the FASTA file
+   * @throws IOException if an error occurs while reading the FASTA file or its
+   *           index
+   */
+  private static FastaIndex loadOrCreateIndex(final File fastaFile)
+      throws IOException {
+
+    requireNonNull(fastaFile, "fastaFile argument cannot be null");
+
+    final File indexFile = FastaIndex.getIndexFile(fastaFile);
+
+    if (indexFile.isFile()
+        && indexFile.lastModified() >= fastaFile.lastModified()) {
+      return FastaIndex.load(indexFile);
+    }
+
+    final FastaIndex result = FastaIndex.index(fastaFile);
+
+    // Save the index if possible
+    if (indexFile.getAbsoluteFile().getParentFile().canWrite()) {
+      result.save(indexFile);
+    }
+
+    return result;
+  }
+
+}
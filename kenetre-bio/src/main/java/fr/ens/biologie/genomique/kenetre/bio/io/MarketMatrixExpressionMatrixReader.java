@@ -1,20 +1,14 @@
 package fr.ens.biologie.genomique.kenetre.bio.io;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
 import java.util.Objects;
-import java.util.zip.GZIPInputStream;
 
-import com.google.common.base.Splitter;
-
-import fr.ens.biologie.genomique.kenetre.bio.DenseExpressionMatrix;
+import fr.ens.biologie.genomique.kenetre.bio.CompressedSparseExpressionMatrix;
 import fr.ens.biologie.genomique.kenetre.bio.ExpressionMatrix;
-import fr.ens.biologie.genomique.kenetre.io.FileUtils;
-import fr.ens.biologie.genomique.kenetre.util.GuavaCompatibility;
+import fr.ens.biologie.genomique.kenetre.io.CompressionType;
 
 /**
  * This class define a reader for matrix saved at Market Matrix format.
@@ -27,6 +21,7 @@ public class MarketMatrixExpressionMatrixReader
   static final String MAGIC_KEY = "%%MatrixMarket ";
 
   private final InputStream is;
+  private int threads = Runtime.getRuntime().availableProcessors();
 
   /**
    * Get the row name of a row number
@@ -49,7 +44,7 @@ public class MarketMatrixExpressionMatrixReader
   @Override
   public ExpressionMatrix read() throws IOException {
 
-    return read(new DenseExpressionMatrix());
+    return read(new CompressedSparseExpressionMatrix());
   }
 
   @Override
@@ -58,118 +53,35 @@ public class MarketMatrixExpressionMatrixReader
 
     Objects.requireNonNull(matrix, "matrix argument cannot be null");
 
-    boolean first = true;
-
-    int rowCount = -1;
-    int columnCount = -1;
-    int nonzero = -1;
-
-    String line;
-    int lineCount = 0;
-
-    try (BufferedReader reader = FileUtils.createBufferedReader(is)) {
-
-      while ((line = reader.readLine()) != null) {
-
-        lineCount++;
-        if (first) {
-
-          if (!line.startsWith(MAGIC_KEY)) {
-            throw new IOException("Invalid Market Matrice header: " + line);
-          }
-
-          List<String> fields = GuavaCompatibility.splitToList(
-              Splitter.on(' ').trimResults().omitEmptyStrings(), line);
-
-          if (fields.size() < 2) {
-            throw new IOException("Invalid Market Matrice header: " + line);
-          }
-
-          if (!"matrix".equals(fields.get(1))) {
-            throw new IOException("The reader only handle matrix files");
-          }
-
-          for (String s : fields.subList(2, fields.size() - 1)) {
-
-            switch (s.toLowerCase()) {
-            case "coordinate":
-            case "real":
-            case "integer":
-            case "general":
-              break;
-
-            default:
-              throw new IOException(
-                  "The reader does not support qualifier: " + s);
-            }
-          }
-
-          first = false;
-          continue;
-        }
-
-        // Skip comments
-        if (line.startsWith("%")) {
-          continue;
-        }
-
-        // Throw an error if the line is too long
-        if (line.length() > 1024) {
-          throw new IOException(
-              "Invalide line length (>1024), line#" + lineCount + ": " + line);
-        }
-
-        line = line.trim();
-
-        // Skip empty lines
-        if (line.isEmpty()) {
-          continue;
-        }
-
-        List<String> fields =
-            GuavaCompatibility.splitToList(Splitter.on(' '), line);
-        if (fields.size() != 3) {
-          throw new IOException(
-              "3 values are expected line #" + lineCount + ": " + line);
-        }
-
-        int i;
-        int j;
-        double value;
-
-        try {
-          i = Integer.parseInt(fields.get(0));
-          j = Integer.parseInt(fields.get(1));
-          value = Double.parseDouble(fields.get(2));
-        } catch (NumberFormatException e) {
-          throw new IOException(
-              "Invalid number format line #" + lineCount + ": " + line);
-        }
-
-        if (nonzero == -1) {
-          rowCount = i;
-          columnCount = j;
-          nonzero = (int) value;
-
-          // Fill row names
-          for (int k = 1; k <= rowCount; k++) {
-            matrix.addRow(getRowName(k));
-          }
-
-          // Fill column names
-          for (int k = 1; k <= columnCount; k++) {
-            matrix.addColumn(getColumnName(k));
-          }
-
-        } else {
-          matrix.setValue(getRowName(i), getColumnName(j), value);
-        }
-      }
-    }
+    new MarketMatrixLoader(this.is, this.threads).load(matrix,
+        this::getRowName, this::getColumnName);
 
     return matrix;
   }
 
+  /**
+   * Get the number of threads used to parse the file.
+   * @return the number of threads used to parse the file
+   */
+  public int getThreads() {
+
+    return this.threads;
+  }
+
+  /**
+   * Set the number of threads used to parse the file.
+   * @param threads the number of threads to use
+   */
+  public void setThreads(final int threads) {
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "threads argument cannot be lower than 1: " + threads);
+    }
+
+    this.threads = threads;
+  }
+
   @Override
   public void close() throws IOException {
 
@@ -188,7 +100,8 @@ public class MarketMatrixExpressionMatrixReader
 
     if (filename.endsWith(".gz")) {
 
-      return new GZIPInputStream(new FileInputStream(filename));
+      return CompressionType.GZIP
+          .createInputStream(new FileInputStream(filename), true);
     }
 
     return new FileInputStream(filename);
@@ -206,7 +119,8 @@ public class MarketMatrixExpressionMatrixReader
 
     if (file.getName().endsWith(".gz")) {
 
-      return new GZIPInputStream(new FileInputStream(file));
+      return CompressionType.GZIP
+          .createInputStream(new FileInputStream(file), true);
     }
 
     return new FileInputStream(file);
@@ -17,6 +17,7 @@ import java.util.zip.GZIPOutputStream;
 
 import com.google.common.math.DoubleMath;
 
+import fr.ens.biologie.genomique.kenetre.bio.CompressedSparseExpressionMatrix;
 import fr.ens.biologie.genomique.kenetre.bio.ExpressionMatrix;
 import fr.ens.biologie.genomique.kenetre.bio.Matrix;
 
@@ -49,21 +50,18 @@ public class MarketMatrixExpressionMatrixWriter
     Set<String> rowNames = rowNamesToWrite instanceof Set
         ? (Set<String>) rowNamesToWrite : new HashSet<>(rowNamesToWrite);
 
+    if (matrix instanceof CompressedSparseExpressionMatrix) {
+      write((CompressedSparseExpressionMatrix) matrix, rowNames);
+      return;
+    }
+
     int entryCount = entryCount(matrix, rowNames);
-    boolean intMatrix = entryCount < -1;
+    boolean intMatrix = entryCount < 0;
     entryCount = Math.abs(entryCount);
 
     try (Writer writer = new OutputStreamWriter(this.os)) {
 
-      // Write header
-      writer.write(MarketMatrixExpressionMatrixReader.MAGIC_KEY);
-      writer.write("matrix coordinate "
-          + (intMatrix ? "integer" : "real") + " general\n");
-
-      // Write the size of the matrix
-      writer.write(""
-          + matrix.getRowCount() + ' ' + matrix.getColumnCount() + ' '
-          + entryCount + '\n');
+      writeHeader(writer, matrix, entryCount, intMatrix);
 
       Map<String, Integer> rowPositions = keyPositions(matrix.getRowNames());
       Map<String, Integer> columnPositions =
@@ -81,6 +79,93 @@ public class MarketMatrixExpressionMatrixWriter
     }
   }
 
+  /**
+   * Write a compressed sparse matrix without looking up the row and column
+   * names of the entries.
+   * @param matrix the matrix to write
+   * @param rowNamesToWrite the row names to write
+   * @throws IOException if an error occurs while writing the matrix
+   */
+  private void write(final CompressedSparseExpressionMatrix matrix,
+      final Set<String> rowNamesToWrite) throws IOException {
+
+    final List<String> rowNames = matrix.getRowNames();
+    final boolean[] rowsToWrite = new boolean[rowNames.size()];
+    for (int i = 0; i < rowsToWrite.length; i++) {
+      rowsToWrite[i] = rowNamesToWrite.contains(rowNames.get(i));
+    }
+
+    // Count the entries to write
+    final int[] entryCount = new int[1];
+    final boolean[] intMatrix = new boolean[] {true};
+    matrix.forEachNonZeroValue((row, column, value) -> {
+      if (rowsToWrite[row]) {
+        entryCount[0]++;
+        if (intMatrix[0] && !DoubleMath.isMathematicalInteger(value)) {
+          intMatrix[0] = false;
+        }
+      }
+    });
+
+    final boolean writeInt = entryCount[0] > 0 && intMatrix[0];
+
+    try (Writer writer = new OutputStreamWriter(this.os)) {
+
+      writeHeader(writer, matrix, entryCount[0], writeInt);
+
+      final StringBuilder sb = new StringBuilder();
+      final IOException[] exception = new IOException[1];
+
+      matrix.forEachNonZeroValue((row, column, value) -> {
+
+        if (!rowsToWrite[row] || exception[0] != null) {
+          return;
+        }
+
+        sb.setLength(0);
+        sb.append(row + 1).append(' ').append(column + 1).append(' ');
+        if (writeInt) {
+          sb.append((int) value);
+        } else {
+          sb.append(value);
+        }
+        sb.append('\n');
+
+        try {
+          writer.append(sb);
+        } catch (IOException e) {
+          exception[0] = e;
+        }
+      });
+
+      if (exception[0] != null) {
+        throw exception[0];
+      }
+    }
+  }
+
+  /**
+   * Write the header of the file.
+   * @param writer the writer
+   * @param matrix the matrix to write
+   * @param entryCount the number of entries to write
+   * @param intMatrix true if the matrix only contains integers
+   * @throws IOException if an error occurs while writing the header
+   */
+  private static void writeHeader(final Writer writer,
+      final ExpressionMatrix matrix, final int entryCount,
+      final boolean intMatrix) throws IOException {
+
+    writer.write(MarketMatrixExpressionMatrixReader.MAGIC_KEY);
+    writer.write("matrix coordinate "
+        + (intMatrix ? "integer" : "real") + " general\n");
+
+    // Write the size of the matrix
+    writer.write(""
+        + matrix.getRowCount() + ' ' + matrix.getColumnCount() + ' '
+        + entryCount + '\n');
+  }
+
   /**
    * Get the indexes of the rows and columns.
    * @param entryNames entry names
@@ -114,14 +199,14 @@ public class MarketMatrixExpressionMatrixWriter
     for (Matrix.Entry<Double> e : matrix.nonZeroValues()) {
 
       if (rowNames.contains(e.getRowName())) {
-        if (!intMatrix && DoubleMath.isMathematicalInteger(e.getValue())) {
+        if (intMatrix && !DoubleMath.isMathematicalInteger(e.getValue())) {
           intMatrix = false;
         }
         entryCount++;
       }
     }
 
-    return entryCount * (intMatrix ? -1 : 1);
+    return entryCount * (intMatrix && entryCount > 0 ? -1 : 1);
   }
 
   @Override
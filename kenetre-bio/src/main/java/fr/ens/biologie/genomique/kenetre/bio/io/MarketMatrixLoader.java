@@ -0,0 +1,666 @@
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+import com.google.common.base.Splitter;
+
+import fr.ens.biologie.genomique.kenetre.bio.CompressedSparseExpressionMatrix;
+import fr.ens.biologie.genomique.kenetre.bio.ExpressionMatrix;
+import fr.ens.biologie.genomique.kenetre.util.GuavaCompatibility;
+
+/**
+ * This class load the content of a Market Matrix file in a matrix. The body of
+ * the file is read by blocks of lines that are parsed on several threads with
+ * a byte level parser. The parsed values are set in the matrix in the order of
+ * the file. When the matrix is a CompressedSparseExpressionMatrix, values are
+ * set using the indexes of the rows and columns.
+ * @author Laurent Jourdren
+ * @since 1.0
+ */
+final class MarketMatrixLoader {
+
+  private static final int BLOCK_SIZE = 1024 * 1024;
+  private static final int MAX_LINE_LENGTH = 1024;
+
+  // Powers of ten that can be exactly represented as double
+  private static final double[] POWERS_OF_TEN = new double[23];
+  static {
+    POWERS_OF_TEN[0] = 1.0;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+    }
+  }
+
+  private final InputStream is;
+  private final int threads;
+
+  private int lineCount;
+
+  /**
+   * This interface define how the parsed values are set in the matrix.
+   */
+  private interface ValueSetter {
+
+    void setValue(int row, int column, double value);
+  }
+
+  /**
+   * This class define a block of lines of the body of the file and the result
+   * of its parsing.
+   */
+  private static final class Block implements Callable<Block> {
+
+    private final byte[] data;
+    private final int length;
+    private final int rowCount;
+    private final int columnCount;
+    private final int[] fields = new int[6];
+
+    private int[] rows = new int[1024];
+    private int[] columns = new int[1024];
+    private double[] values = new double[1024];
+    private int count;
+    private int lineCount;
+
+    private String error;
+    private String errorText;
+    private int errorLine;
+
+    @Override
+    public Block call() {
+
+      int pos = 0;
+
+      while (pos < this.length) {
+
+        int end = pos;
+        while (end < this.length && this.data[end] != '\n') {
+          end++;
+        }
+        this.lineCount++;
+
+        if (!parseLine(pos, end)) {
+          return this;
+        }
+
+        pos = end + 1;
+      }
+
+      return this;
+    }
+
+    /**
+     * Parse a line of the block.
+     * @param start start of the line
+     * @param end end of the line
+     * @return false if the line is invalid
+     */
+    private boolean parseLine(final int start, final int end) {
+
+      int lineEnd = end;
+      if (lineEnd > start && this.data[lineEnd - 1] == '\r') {
+        lineEnd--;
+      }
+
+      // Skip comments
+      if (lineEnd > start && this.data[start] == '%') {
+        return true;
+      }
+
+      if (lineEnd - start > MAX_LINE_LENGTH) {
+        return setError("Invalide line length (>" + MAX_LINE_LENGTH + ")",
+            start, lineEnd);
+      }
+
+      // Split the line
+      final int[] fields = this.fields;
+      int fieldCount = 0;
+      int pos = start;
+
+      while (pos < lineEnd) {
+
+        while (pos < lineEnd && isSpace(this.data[pos])) {
+          pos++;
+        }
+
+        if (pos == lineEnd) {
+          break;
+        }
+
+        final int fieldStart = pos;
+        while (pos < lineEnd && !isSpace(this.data[pos])) {
+          pos++;
+        }
+
+        if (fieldCount < 3) {
+          fields[fieldCount * 2] = fieldStart;
+          fields[fieldCount * 2 + 1] = pos;
+        }
+        fieldCount++;
+      }
+
+      // Skip empty lines
+      if (fieldCount == 0) {
+        return true;
+      }
+
+      if (fieldCount != 3) {
+        return setError("3 values are expected", start, lineEnd);
+      }
+
+      final int i;
+      final int j;
+      final double value;
+
+      try {
+        i = parseInt(this.data, fields[0], fields[1]);
+        j = parseInt(this.data, fields[2], fields[3]);
+        value = parseDouble(this.data, fields[4], fields[5]);
+      } catch (NumberFormatException e) {
+        return setError("Invalid number format", start, lineEnd);
+      }
+
+      if (this.rowCount >= 0
+          && (i < 1 || i > this.rowCount || j < 1 || j > this.columnCount)) {
+        return setError("Invalid coordinates", start, lineEnd);
+      }
+
+      if (this.count == this.rows.length) {
+        final int capacity = this.count * 2;
+        this.rows = Arrays.copyOf(this.rows, capacity);
+        this.columns = Arrays.copyOf(this.columns, capacity);
+        this.values = Arrays.copyOf(this.values, capacity);
+      }
+
+      this.rows[this.count] = i;
+      this.columns[this.count] = j;
+      this.values[this.count] = value;
+      this.count++;
+
+      return true;
+    }
+
+    private boolean setError(final String message, final int start,
+        final int end) {
+
+      this.error = message;
+      this.errorText =
+          new String(this.data, start, end - start, StandardCharsets.UTF_8)
+              .trim();
+      this.errorLine = this.lineCount;
+
+      return false;
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param data the bytes of the block
+     * @param length the length of the block
+     * @param rowCount row count of the matrix, the coordinates are not checked
+     *          if the value is negative
+     * @param columnCount column count of the matrix
+     */
+    Block(final byte[] data, final int length, final int rowCount,
+        final int columnCount) {
+
+      this.data = data;
+      this.length = length;
+      this.rowCount = rowCount;
+      this.columnCount = columnCount;
+    }
+  }
+
+  /**
+   * Load the content of the file in a matrix.
+   * @param matrix the matrix to fill
+   * @param rowNames function that returns the name of a row number
+   * @param columnNames function that returns the name of a column number
+   * @throws IOException if an error occurs while reading the file
+   */
+  void load(final ExpressionMatrix matrix, final IntFunction<String> rowNames,
+      final IntFunction<String> columnNames) throws IOException {
+
+    readMagicLine();
+
+    // Read the size of the matrix
+    final int[] size = readSizeLine();
+    if (size == null) {
+      return;
+    }
+
+    final int rowCount = size[0];
+    final int columnCount = size[1];
+
+    // Fill row names
+    for (int k = 1; k <= rowCount; k++) {
+      matrix.addRow(rowNames.apply(k));
+    }
+
+    // Fill column names
+    for (int k = 1; k <= columnCount; k++) {
+      matrix.addColumn(columnNames.apply(k));
+    }
+
+    final ValueSetter setter;
+
+    if (matrix instanceof CompressedSparseExpressionMatrix) {
+
+      final CompressedSparseExpressionMatrix sparseMatrix =
+          (CompressedSparseExpressionMatrix) matrix;
+
+      final int[] rowIndexes = new int[rowCount + 1];
+      for (int k = 1; k <= rowCount; k++) {
+        rowIndexes[k] = sparseMatrix.getRowIndex(rowNames.apply(k));
+      }
+
+      final int[] columnIndexes = new int[columnCount + 1];
+      for (int k = 1; k <= columnCount; k++) {
+        columnIndexes[k] = sparseMatrix.getColumnIndex(columnNames.apply(k));
+      }
+
+      if (size[2] > 0) {
+        sparseMatrix.ensureCapacity(size[2]);
+      }
+
+      setter = (i, j, value) -> sparseMatrix.setValue(rowIndexes[i],
+          columnIndexes[j], value);
+    } else {
+      setter = (i, j, value) -> matrix.setValue(rowNames.apply(i),
+          columnNames.apply(j), value);
+    }
+
+    readBody(rowCount, columnCount, setter);
+  }
+
+  //
+  // Header parsing
+  //
+
+  /**
+   * Read and check the first line of the file.
+   * @throws IOException if the first line is invalid
+   */
+  private void readMagicLine() throws IOException {
+
+    final String line = readLine();
+
+    if (line == null) {
+      return;
+    }
+
+    if (!line.startsWith(MarketMatrixExpressionMatrixReader.MAGIC_KEY)) {
+      throw new IOException("Invalid Market Matrice header: " + line);
+    }
+
+    List<String> fields = GuavaCompatibility.splitToList(
+        Splitter.on(' ').trimResults().omitEmptyStrings(), line);
+
+    if (fields.size() < 2) {
+      throw new IOException("Invalid Market Matrice header: " + line);
+    }
+
+    if (!"matrix".equals(fields.get(1))) {
+      throw new IOException("The reader only handle matrix files");
+    }
+
+    for (String s : fields.subList(2, fields.size() - 1)) {
+
+      switch (s.toLowerCase()) {
+      case "coordinate":
+      case "real":
+      case "integer":
+      case "general":
+        break;
+
+      default:
+        throw new IOException("The reader does not support qualifier: " + s);
+      }
+    }
+  }
+
+  /**
+   * Read the line with the size of the matrix.
+   * @return an array with the number of rows, columns and entries or null if
+   *         the end of the file has been reached
+   * @throws IOException if the line is invalid
+   */
+  private int[] readSizeLine() throws IOException {
+
+    String line;
+
+    while ((line = readLine()) != null) {
+
+      final byte[] data = (line + '\n').getBytes(StandardCharsets.UTF_8);
+      final Block block = new Block(data, data.length, -1, -1);
+      block.call();
+
+      if (block.error != null) {
+        throw blockException(block, this.lineCount);
+      }
+
+      if (block.count > 0) {
+        return new int[] {block.rows[0], block.columns[0],
+            (int) block.values[0]};
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Read a line of the header.
+   * @return the line or null if the end of the stream has been reached
+   * @throws IOException if an error occurs while reading the line
+   */
+  private String readLine() throws IOException {
+
+    final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int c;
+
+    while ((c = this.is.read()) != -1 && c != '\n') {
+      line.write(c);
+    }
+
+    if (c == -1 && line.size() == 0) {
+      return null;
+    }
+
+    this.lineCount++;
+
+    String result = line.toString(StandardCharsets.UTF_8.name());
+    if (result.endsWith("\r")) {
+      result = result.substring(0, result.length() - 1);
+    }
+
+    return result;
+  }
+
+  //
+  // Body parsing
+  //
+
+  /**
+   * Read the body of the file.
+   * @param rowCount row count
+   * @param columnCount column count
+   * @param setter object that set the values in the matrix
+   * @throws IOException if an error occurs while reading the file
+   */
+  private void readBody(final int rowCount, final int columnCount,
+      final ValueSetter setter) throws IOException {
+
+    final ExecutorService executor = this.threads > 1
+        ? Executors.newFixedThreadPool(this.threads, r -> {
+          Thread t = new Thread(r, "mtx-parser");
+          t.setDaemon(true);
+          return t;
+        }) : null;
+
+    final Deque<Future<Block>> pending = new ArrayDeque<>();
+
+    try {
+
+      byte[] buffer = new byte[BLOCK_SIZE];
+      int length = 0;
+      int n;
+
+      while ((n = this.is.read(buffer, length, buffer.length - length)) != -1) {
+
+        length += n;
+        if (length < buffer.length) {
+          continue;
+        }
+
+        // Cut the block after the last complete line
+        int end = length;
+        while (end > 0 && buffer[end - 1] != '\n') {
+          end--;
+        }
+
+        if (end == 0) {
+          throw new IOException("Invalide line length (>"
+              + MAX_LINE_LENGTH + "), line#" + (this.lineCount + 1));
+        }
+
+        final byte[] next = new byte[BLOCK_SIZE];
+        System.arraycopy(buffer, end, next, 0, length - end);
+
+        submit(executor, pending,
+            new Block(buffer, end, rowCount, columnCount), setter);
+
+        buffer = next;
+        length = length - end;
+      }
+
+      if (length > 0) {
+        submit(executor, pending,
+            new Block(buffer, length, rowCount, columnCount), setter);
+      }
+
+      while (!pending.isEmpty()) {
+        setValues(getBlock(pending.removeFirst()), setter);
+      }
+
+    } finally {
+
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Submit a block to parse.
+   * @param executor executor, null for parsing in the current thread
+   * @param pending blocks being parsed
+   * @param block block to parse
+   * @param setter object that set the values in the matrix
+   * @throws IOException if an error occurs while parsing a block
+   */
+  private void submit(final ExecutorService executor,
+      final Deque<Future<Block>> pending, final Block block,
+      final ValueSetter setter) throws IOException {
+
+    if (executor == null) {
+      setValues(block.call(), setter);
+      return;
+    }
+
+    pending.addLast(executor.submit(block));
+
+    // Limit the number of blocks in memory
+    while (pending.size() > 2 * this.threads) {
+      setValues(getBlock(pending.removeFirst()), setter);
+    }
+  }
+
+  /**
+   * Wait the end of the parsing of a block.
+   * @param future the result of the parsing
+   * @return the parsed block
+   * @throws IOException if the parsing has failed
+   */
+  private static Block getBlock(final Future<Block> future)
+      throws IOException {
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Matrix loading has been interrupted");
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Set the values of a parsed block in the matrix.
+   * @param block the block
+   * @param setter object that set the values in the matrix
+   * @throws IOException if the block contains an invalid line
+   */
+  private void setValues(final Block block, final ValueSetter setter)
+      throws IOException {
+
+    if (block.error != null) {
+      throw blockException(block, this.lineCount + block.errorLine);
+    }
+
+    for (int k = 0; k < block.count; k++) {
+      setter.setValue(block.rows[k], block.columns[k], block.values[k]);
+    }
+
+    this.lineCount += block.lineCount;
+  }
+
+  /**
+   * Create the exception for an invalid line of a block.
+   * @param block the block
+   * @param lineNumber the number of the invalid line in the file
+   * @return an IOException
+   */
+  private static IOException blockException(final Block block,
+      final int lineNumber) {
+
+    return new IOException(
+        block.error + " line #" + lineNumber + ": " + block.errorText);
+  }
+
+  //
+  // Number parsing
+  //
+
+  private static boolean isSpace(final byte b) {
+
+    return b == ' ' || b == '\t';
+  }
+
+  /**
+   * Parse an integer.
+   * @param data the bytes to parse
+   * @param start start of the number
+   * @param end end of the number
+   * @return the parsed integer
+   * @throws NumberFormatException if the number is invalid
+   */
+  static int parseInt(final byte[] data, final int start, final int end) {
+
+    int pos = start;
+    final boolean negative = pos < end && data[pos] == '-';
+    if (pos < end && (data[pos] == '-' || data[pos] == '+')) {
+      pos++;
+    }
+
+    if (pos == end || end - pos > 10) {
+      throw new NumberFormatException();
+    }
+
+    long result = 0;
+    for (; pos < end; pos++) {
+
+      final int digit = data[pos] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException();
+      }
+      result = result * 10 + digit;
+    }
+
+    if (negative) {
+      result = -result;
+    }
+
+    if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+      throw new NumberFormatException();
+    }
+
+    return (int) result;
+  }
+
+  /**
+   * Parse a double. Simple decimal numbers are parsed without creating any
+   * object, the other numbers are parsed with Double.parseDouble().
+   * @param data the bytes to parse
+   * @param start start of the number
+   * @param end end of the number
+   * @return the parsed double
+   * @throws NumberFormatException if the number is invalid
+   */
+  static double parseDouble(final byte[] data, final int start,
+      final int end) {
+
+    int pos = start;
+    final boolean negative = pos < end && data[pos] == '-';
+    if (pos < end && (data[pos] == '-' || data[pos] == '+')) {
+      pos++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int scale = -1;
+
+    for (; pos < end; pos++) {
+
+      final byte b = data[pos];
+
+      if (b >= '0' && b <= '9') {
+        mantissa = mantissa * 10 + (b - '0');
+        digits++;
+        if (scale >= 0) {
+          scale++;
+        }
+      } else if (b == '.' && scale == -1) {
+        scale = 0;
+      } else {
+        break;
+      }
+    }
+
+    // The result is exact if the mantissa and the power of ten are exact
+    if (pos < end
+        || digits == 0 || digits > 15 || scale >= POWERS_OF_TEN.length) {
+      return Double.parseDouble(
+          new String(data, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    final double result =
+        scale > 0 ? mantissa / POWERS_OF_TEN[scale] : (double) mantissa;
+
+    return negative ? -result : result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param is input stream to read
+   * @param threads number of threads to use for parsing
+   */
+  MarketMatrixLoader(final InputStream is, final int threads) {
+
+    this.is = is instanceof BufferedInputStream
+        ? is : new BufferedInputStream(is);
+    this.threads = threads;
+  }
+
+}
@@ -0,0 +1,310 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.EntryMetadata;
+import fr.ens.biologie.genomique.kenetre.bio.GFFEntry;
+
+/**
+ * This class defines a GFF3/GTF reader that parses the entries in parallel.
+ * The lines are read in the caller thread and gathered in chunks that are
+ * parsed on a pool of threads. The entries are returned in the order of the
+ * file, as with {@link GFFReader}.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class ParallelGFFReader extends GFFReader {
+
+  private static final int CHUNK_SIZE = 4096;
+
+  private final ExecutorService executor;
+  private final int maxPendingChunks;
+  private final Deque<Future<Chunk>> pendingChunks = new ArrayDeque<>();
+  private final EntryMetadata metadata = new EntryMetadata();
+
+  private Chunk current;
+  private int pos;
+  private GFFEntry result;
+  private boolean nextCallDone = true;
+  private boolean inputEnd;
+  private boolean end;
+  private boolean fastaSectionFound;
+
+  /**
+   * This class define a chunk of parsed entries.
+   */
+  private static final class Chunk {
+
+    private final List<GFFEntry> entries = new ArrayList<>();
+    private BadBioEntryException exception;
+  }
+
+  @Override
+  public boolean isFastaSectionFound() {
+
+    return this.fastaSectionFound;
+  }
+
+  @Override
+  public boolean hasNext() {
+
+    if (this.end) {
+      return false;
+    }
+
+    try {
+
+      while (this.current == null
+          || this.pos == this.current.entries.size()) {
+
+        // Stop at the first invalid entry
+        if (this.current != null && this.current.exception != null) {
+          this.bbeException = this.current.exception;
+          return endOfEntries();
+        }
+
+        submitChunks();
+
+        if (this.pendingChunks.isEmpty()) {
+          return endOfEntries();
+        }
+
+        try {
+          this.current = this.pendingChunks.removeFirst().get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while parsing entries", e);
+        } catch (ExecutionException e) {
+          throw new IOException("Error while parsing entries", e.getCause());
+        }
+        this.pos = 0;
+      }
+
+    } catch (IOException e) {
+      this.ioException = e;
+      return endOfEntries();
+    }
+
+    this.result = this.current.entries.get(this.pos++);
+    this.nextCallDone = false;
+
+    return true;
+  }
+
+  @Override
+  public GFFEntry next() {
+
+    if (this.nextCallDone) {
+      throw new NoSuchElementException();
+    }
+
+    this.nextCallDone = true;
+
+    return this.result;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    this.executor.shutdownNow();
+    super.close();
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Set the end of the entries.
+   * @return always false
+   */
+  private boolean endOfEntries() {
+
+    this.end = true;
+    this.current = null;
+    this.pendingChunks.clear();
+    this.executor.shutdownNow();
+
+    return false;
+  }
+
+  /**
+   * Read chunks of lines and submit them to the thread pool.
+   * @throws IOException if an error occurs while reading data
+   */
+  private void submitChunks() throws IOException {
+
+    while (!this.inputEnd && this.pendingChunks.size() < this.maxPendingChunks) {
+
+      final List<String> lines = readChunk();
+
+      if (!lines.isEmpty()) {
+        this.pendingChunks.add(this.executor.submit(() -> parse(lines)));
+      }
+    }
+  }
+
+  /**
+   * Read a chunk of lines. The metadata and the comments are processed in the
+   * caller thread.
+   * @return a list with the lines of entries to parse
+   * @throws IOException if an error occurs while reading data
+   */
+  private List<String> readChunk() throws IOException {
+
+    final BufferedReader reader = getReader();
+    final List<String> result = new ArrayList<>(CHUNK_SIZE);
+    String line;
+
+    while (result.size() < CHUNK_SIZE) {
+
+      line = reader.readLine();
+
+      if (line == null) {
+        this.inputEnd = true;
+        break;
+      }
+
+      final LineType type = parseLineType(line, this.metadata);
+
+      if (type == LineType.FASTA_SECTION) {
+        this.fastaSectionFound = true;
+        this.inputEnd = true;
+        break;
+      }
+
+      if (type == LineType.ENTRY) {
+        result.add(line);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Parse a chunk of lines.
+   * @param lines the lines to parse
+   * @return a chunk with the parsed entries
+   */
+  private Chunk parse(final List<String> lines) {
+
+    final Chunk result = new Chunk();
+    final boolean gff3 = isGFF3Format();
+
+    for (String line : lines) {
+
+      // Create a new object with metadata
+      final GFFEntry entry = new GFFEntry(this.metadata);
+
+      try {
+        if (gff3) {
+          entry.parseGFF3(line.trim());
+        } else {
+          entry.parseGTF(line.trim());
+        }
+      } catch (BadBioEntryException e) {
+        result.exception = e;
+        break;
+      }
+
+      result.entries.add(entry);
+    }
+
+    return result;
+  }
+
+  /**
+   * Create the thread pool that parse the entries.
+   * @param threads number of threads to use
+   * @return a new ExecutorService object
+   */
+  private static ExecutorService createExecutor(final int threads) {
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "Invalid number of threads: " + threads);
+    }
+
+    return Executors.newFixedThreadPool(threads, r -> {
+      final Thread t = new Thread(r, "gff-parsing");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor.
+   * @param is InputStream to use
+   * @param gtfFormat true if the data to read is in GTF format
+   * @param threads number of threads to use
+   */
+  public ParallelGFFReader(final InputStream is, final boolean gtfFormat,
+      final int threads) {
+
+    super(is);
+    setGFF3Format(!gtfFormat);
+
+    this.maxPendingChunks = 4 * threads;
+    this.executor = createExecutor(threads);
+  }
+
+  /**
+   * Public constructor.
+   * @param file File to use
+   * @param gtfFormat true if the data to read is in GTF format
+   * @param threads number of threads to use
+   * @throws FileNotFoundException if the file does not exists
+   */
+  public ParallelGFFReader(final File file, final boolean gtfFormat,
+      final int threads) throws FileNotFoundException {
+
+    super(file);
+    setGFF3Format(!gtfFormat);
+
+    this.maxPendingChunks = 4 * threads;
+    this.executor = createExecutor(threads);
+  }
+
+}
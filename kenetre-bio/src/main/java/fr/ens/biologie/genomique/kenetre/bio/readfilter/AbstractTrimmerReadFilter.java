@@ -0,0 +1,130 @@
+package fr.ens.biologie.genomique.kenetre.bio.readfilter;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+
+/**
+ * This class define an abstract trimming ReadFilter. A trimmer only computes
+ * the new boundaries of a region of the read, the sequence and the quality of
+ * the read are cut once all the trimmers of a chain have been applied. The
+ * results are the same as the results of the Trimmomatic trimmers.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public abstract class AbstractTrimmerReadFilter extends AbstractReadFilter {
+
+  private boolean configured;
+
+  /**
+   * This class define the region of a read to keep.
+   */
+  static final class TrimRegion {
+
+    int start;
+    int end;
+
+    /**
+     * Reset the region to the whole read.
+     * @param read the read
+     */
+    void reset(final ReadSequence read) {
+
+      this.start = 0;
+      this.end = read.getQuality().length();
+    }
+
+    /**
+     * Cut the sequence and the quality of a read to the region.
+     * @param read the read
+     */
+    void apply(final ReadSequence read) {
+
+      if (this.start == 0 && this.end == read.getQuality().length()) {
+        return;
+      }
+
+      read.setSequence(read.getSequence().substring(this.start, this.end));
+      read.setQuality(read.getQuality().substring(this.start, this.end));
+    }
+  }
+
+  @Override
+  public String getDescription() {
+    return getName() + " trimming filter";
+  }
+
+  @Override
+  public void setParameter(final String key, final String value)
+      throws KenetreException {
+
+    if ("arguments".equals(key)) {
+
+      try {
+        parseArguments(value == null ? "" : value);
+        this.configured = true;
+      } catch (Exception e) {
+        throw new KenetreException("Invalid parameter: " + value, e);
+      }
+
+    } else {
+      throw new KenetreException(
+          "Unknown parameter for " + getName() + " read filter: " + key);
+    }
+  }
+
+  @Override
+  public void init() {
+
+    if (!this.configured) {
+      parseArguments("");
+      this.configured = true;
+    }
+  }
+
+  /**
+   * Parse the arguments of the trimmer. The syntax of the arguments is the
+   * syntax of the Trimmomatic trimmers.
+   * @param arguments trimmer arguments
+   */
+  protected abstract void parseArguments(String arguments);
+
+  /**
+   * Trim a region of a read.
+   * @param read the read
+   * @param region the region of the read to trim
+   * @return false if the read must be discarded
+   */
+  abstract boolean trim(ReadSequence read, TrimRegion region);
+
+  @Override
+  public boolean accept(final ReadSequence read) {
+
+    // The sequence can not be empty
+    if (read == null) {
+      return false;
+    }
+
+    final TrimRegion region = new TrimRegion();
+    region.reset(read);
+
+    if (!trim(read, region)) {
+      return false;
+    }
+
+    region.apply(read);
+
+    return true;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Package constructor. The trimmers must be in the package of this class to
+   * implement the trim() method.
+   */
+  AbstractTrimmerReadFilter() {
+  }
+
+}
@@ -1,7 +1,6 @@
 package fr.ens.biologie.genomique.kenetre.bio.readfilter;
 
-import org.usadellab.trimmomatic.trim.AbstractSingleRecordTrimmer;
-import org.usadellab.trimmomatic.trim.CropTrimmer;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 
 /**
  * This class define a Crop trimmomatic readfilter allow paired-end and
@@ -10,7 +9,9 @@ import org.usadellab.trimmomatic.trim.CropTrimmer;
  * @author du
  */
 
-public class CropTrimmerReadFilter extends AbstractTrimmomaticReadFilter {
+public class CropTrimmerReadFilter extends AbstractTrimmerReadFilter {
+
+  private int length;
 
   @Override
   public String getName() {
@@ -18,8 +19,19 @@ public class CropTrimmerReadFilter extends AbstractTrimmomaticReadFilter {
   }
 
   @Override
-  protected AbstractSingleRecordTrimmer createTrimmer(String trimmerArgs) {
-    return new CropTrimmer(trimmerArgs);
+  protected void parseArguments(final String arguments) {
+    this.length = Integer.parseInt(arguments);
+  }
+
+  @Override
+  boolean trim(final ReadSequence read, final TrimRegion region) {
+
+    // The crop never discard a read
+    if (region.end - region.start > this.length) {
+      region.end = region.start + this.length;
+    }
+
+    return true;
   }
 
 }
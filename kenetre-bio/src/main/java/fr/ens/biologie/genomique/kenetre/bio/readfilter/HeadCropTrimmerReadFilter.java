@@ -1,7 +1,6 @@
 package fr.ens.biologie.genomique.kenetre.bio.readfilter;
 
-import org.usadellab.trimmomatic.trim.AbstractSingleRecordTrimmer;
-import org.usadellab.trimmomatic.trim.HeadCropTrimmer;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 
 /**
  * This class define a Headcrop trimmomatic readfilter allow paired-end and
@@ -9,7 +8,9 @@ import org.usadellab.trimmomatic.trim.HeadCropTrimmer;
  * @since 1.0
  * @author du
  */
-public class HeadCropTrimmerReadFilter extends AbstractTrimmomaticReadFilter {
+public class HeadCropTrimmerReadFilter extends AbstractTrimmerReadFilter {
+
+  private int bases;
 
   @Override
   public String getName() {
@@ -17,8 +18,20 @@ public class HeadCropTrimmerReadFilter extends AbstractTrimmomaticReadFilter {
   }
 
   @Override
-  protected AbstractSingleRecordTrimmer createTrimmer(String trimmerArgs) {
-    return new HeadCropTrimmer(trimmerArgs);
+  protected void parseArguments(final String arguments) {
+    this.bases = Integer.parseInt(arguments);
+  }
+
+  @Override
+  boolean trim(final ReadSequence read, final TrimRegion region) {
+
+    if (this.bases >= region.end - region.start) {
+      return false;
+    }
+
+    region.start += this.bases;
+
+    return true;
   }
 
 }
@@ -79,6 +79,12 @@ public class IlluminaFilterFlagReadFilter extends AbstractReadFilter {
     return "Filter read with illumina id";
   }
 
+  @Override
+  public boolean isCommutative() {
+
+    return true;
+  }
+
   @Override
   public String toString() {
 
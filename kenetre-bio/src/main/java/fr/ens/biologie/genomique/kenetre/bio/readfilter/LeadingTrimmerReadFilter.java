@@ -1,7 +1,6 @@
 package fr.ens.biologie.genomique.kenetre.bio.readfilter;
 
-import org.usadellab.trimmomatic.trim.AbstractSingleRecordTrimmer;
-import org.usadellab.trimmomatic.trim.LeadingTrimmer;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 
 /**
  * This class define a Leading trimmomatic readfilter allow paired-end and
@@ -10,7 +9,9 @@ import org.usadellab.trimmomatic.trim.LeadingTrimmer;
  * @author du
  */
 
-public class LeadingTrimmerReadFilter extends AbstractTrimmomaticReadFilter {
+public class LeadingTrimmerReadFilter extends AbstractTrimmerReadFilter {
+
+  private int quality;
 
   @Override
   public String getName() {
@@ -18,8 +19,17 @@ public class LeadingTrimmerReadFilter extends AbstractTrimmomaticReadFilter {
   }
 
   @Override
-  protected AbstractSingleRecordTrimmer createTrimmer(String trimmerArgs) {
-    return new LeadingTrimmer(trimmerArgs);
+  protected void parseArguments(final String arguments) {
+    this.quality = Integer.parseInt(arguments);
+  }
+
+  @Override
+  boolean trim(final ReadSequence read, final TrimRegion region) {
+
+    region.start = read.getFastqFormat().leadingTrimIndex(read.getQuality(),
+        region.start, region.end, this.quality);
+
+    return region.start < region.end;
   }
 
 }
@@ -60,6 +60,12 @@ public class LengthReadFilter extends AbstractReadFilter {
     return "Length ReadFilter";
   }
 
+  @Override
+  public boolean isCommutative() {
+
+    return true;
+  }
+
   @Override
   public void setParameter(final String key, final String value)
       throws KenetreException {
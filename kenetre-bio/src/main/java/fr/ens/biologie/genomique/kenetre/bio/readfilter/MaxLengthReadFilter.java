@@ -35,6 +35,12 @@ public class MaxLengthReadFilter extends AbstractReadFilter {
     return "Max Length ReadFilter";
   }
 
+  @Override
+  public boolean isCommutative() {
+
+    return true;
+  }
+
   @Override
   public void setParameter(final String key, final String value)
       throws KenetreException {
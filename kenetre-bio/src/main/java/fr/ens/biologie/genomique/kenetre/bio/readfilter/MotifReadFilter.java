@@ -0,0 +1,200 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.readfilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.MotifMatcher;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+
+/**
+ * This class define a read filter that search a list of literal motifs in the
+ * sequence of the reads. All the motifs are searched in a single pass on the
+ * sequence (see {@link MotifMatcher}). The motifs can contain IUPAC ambiguity
+ * codes and can be found with mismatches.
+ * <p>
+ * The motifs are defined as a comma separated list, each motif can be named
+ * with the "name:motif" syntax. The name of the motif found in a rejected read
+ * is returned by {@link #getRejectionDetail()}.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class MotifReadFilter extends AbstractReadFilter {
+
+  private final List<String> forbiddenNames = new ArrayList<>();
+  private final List<String> forbiddenMotifs = new ArrayList<>();
+  private final List<String> allowedMotifs = new ArrayList<>();
+  private int mismatches;
+
+  private MotifMatcher forbiddenMatcher;
+  private MotifMatcher allowedMatcher;
+  private String rejectionDetail;
+
+  @Override
+  public String getName() {
+
+    return "motif";
+  }
+
+  @Override
+  public String getDescription() {
+
+    return "Filter reads that contains some motifs";
+  }
+
+  @Override
+  public boolean isCommutative() {
+
+    return true;
+  }
+
+  @Override
+  public String getRejectionDetail() {
+
+    return this.rejectionDetail;
+  }
+
+  @Override
+  public void setParameter(final String key, final String value)
+      throws KenetreException {
+
+    if (key == null || value == null) {
+      return;
+    }
+
+    switch (key.trim()) {
+
+    case "forbidden.motifs":
+      parseMotifs(value, this.forbiddenNames, this.forbiddenMotifs);
+      break;
+
+    case "allowed.motifs":
+      parseMotifs(value, null, this.allowedMotifs);
+      break;
+
+    case "mismatches":
+      try {
+        this.mismatches = Integer.parseInt(value.trim());
+      } catch (NumberFormatException e) {
+        throw new KenetreException("Invalid number of mismatches for "
+            + getName() + " read filter: " + value);
+      }
+
+      if (this.mismatches < 0) {
+        throw new KenetreException("Invalid number of mismatches for "
+            + getName() + " read filter: " + value);
+      }
+      break;
+
+    default:
+      throw new KenetreException(
+          "Unknown parameter for " + getName() + " read filter: " + key);
+    }
+  }
+
+  @Override
+  public void init() throws KenetreException {
+
+    if (this.forbiddenMotifs.isEmpty() && this.allowedMotifs.isEmpty()) {
+      throw new KenetreException(
+          "No motif defined for " + getName() + " read filter");
+    }
+
+    try {
+
+      this.forbiddenMatcher = this.forbiddenMotifs.isEmpty()
+          ? null : new MotifMatcher(this.forbiddenMotifs, this.mismatches);
+      this.allowedMatcher = this.allowedMotifs.isEmpty()
+          ? null : new MotifMatcher(this.allowedMotifs, this.mismatches);
+
+    } catch (IllegalArgumentException e) {
+      throw new KenetreException(
+          "Invalid motif for " + getName() + " read filter: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public boolean accept(final ReadSequence read) {
+
+    this.rejectionDetail = null;
+
+    if (read == null) {
+      return false;
+    }
+
+    final String sequence = read.getSequence();
+    if (sequence == null) {
+      return false;
+    }
+
+    if (this.forbiddenMatcher != null) {
+
+      final int index = this.forbiddenMatcher.find(sequence);
+      if (index != -1) {
+        this.rejectionDetail = this.forbiddenNames.get(index);
+        return false;
+      }
+    }
+
+    return this.allowedMatcher == null || this.allowedMatcher.matches(sequence);
+  }
+
+  /**
+   * Parse a list of motifs.
+   * @param value the value to parse
+   * @param names the list where add the names of the motifs, can be null
+   * @param motifs the list where add the motifs
+   * @throws KenetreException if the list of motifs is invalid
+   */
+  private void parseMotifs(final String value, final List<String> names,
+      final List<String> motifs) throws KenetreException {
+
+    for (String s : value.split(",")) {
+
+      final String field = s.trim();
+      if (field.isEmpty()) {
+        continue;
+      }
+
+      final int pos = field.indexOf(':');
+      final String name = pos == -1 ? field : field.substring(0, pos).trim();
+      final String motif =
+          pos == -1 ? field : field.substring(pos + 1).trim().toUpperCase();
+
+      if (name.isEmpty() || motif.isEmpty()) {
+        throw new KenetreException(
+            "Invalid motif for " + getName() + " read filter: " + field);
+      }
+
+      if (names != null) {
+        names.add(name);
+      }
+      motifs.add(motif);
+    }
+  }
+
+}
@@ -27,26 +27,73 @@ package fr.ens.biologie.genomique.kenetre.bio.readfilter;
 import static java.util.Objects.requireNonNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+import fr.ens.biologie.genomique.kenetre.bio.readfilter.AbstractTrimmerReadFilter.TrimRegion;
 import fr.ens.biologie.genomique.kenetre.log.DummyLogger;
 import fr.ens.biologie.genomique.kenetre.log.GenericLogger;
+import fr.ens.biologie.genomique.kenetre.util.ReporterCounter;
 import fr.ens.biologie.genomique.kenetre.util.ReporterIncrementer;
+import fr.ens.biologie.genomique.kenetre.util.metrics.Meter;
+import fr.ens.biologie.genomique.kenetre.util.metrics.MetricRegistry;
+import fr.ens.biologie.genomique.kenetre.util.metrics.Timer;
 
 /**
  * This class define a read filter that calls successively a list of read
  * filters.
+ * <p>
+ * When the adaptive ordering is enabled, the cost and the rejection rate of
+ * each filter are measured on the first reads. The consecutive commutative
+ * filters (see {@link ReadFilter#isCommutative()}) are then reordered to run
+ * first the cheapest and most selective filters. The other filters (e.g. the
+ * trimmers) keep their declared position. The ordering does not change the
+ * rejection counters: when a filter rejects a read, the commutative filters
+ * of its run declared before it that have not been called yet are evaluated,
+ * and the first of them in the declared order that rejects the read is
+ * counted. This extra work is only done for the rejected reads.
  * @since 1.0
  * @author Laurent Jourdren
  */
 public class MultiReadFilter implements ReadFilter {
 
+  private static final int WARMUP_READS = 10000;
+
   private GenericLogger logger = new DummyLogger();
   private final List<ReadFilter> list = new ArrayList<>();
+  private final List<String> rejectedCounterNames = new ArrayList<>();
+  private final List<ReporterCounter> rejectedCounters = new ArrayList<>();
+  private final List<Map<String, ReporterCounter>> rejectedDetailCounters =
+      new ArrayList<>();
   private final ReporterIncrementer incrementer;
   private final String counterGroup;
 
+  // Execution order of the filters, as indexes in the list of filters
+  private int[] order = new int[0];
+
+  // Position of each filter in the execution order and index of the first
+  // filter of its run of commutative filters
+  private int[] positions = new int[0];
+  private int[] runStarts = new int[0];
+
+  // Adaptive ordering
+  private boolean adaptiveOrdering;
+  private int remainingWarmupReads;
+  private long[] filterTimes = new long[0];
+  private long[] filterCalls = new long[0];
+  private long[] filterRejections = new long[0];
+
+  // Metrics
+  private MetricRegistry metrics;
+  private String metricsPrefix;
+  private Timer[] filterTimers;
+  private Meter inputMeter;
+  private Meter acceptedMeter;
+
   @Override
   public void setLogger(GenericLogger logger) {
 
@@ -67,41 +114,443 @@ public class MultiReadFilter implements ReadFilter {
       return false;
     }
 
-    for (ReadFilter rf : this.list) {
+    final List<ReadFilter> list = this.list;
+    final int[] order = this.order;
+    final boolean measure = this.remainingWarmupReads > 0;
+    final boolean timed = measure || this.filterTimers != null;
 
-      if (!rf.accept(read)) {
+    if (this.inputMeter != null) {
+      this.inputMeter.mark();
+    }
 
-        if (this.incrementer != null) {
-          this.incrementer.incrCounter(this.counterGroup,
-              "reads rejected by " + rf.getName() + " filter", 1);
+    for (int p = 0; p < order.length; p++) {
+
+      final int i = order[p];
+      final ReadFilter rf = list.get(i);
+
+      if (rf instanceof AbstractTrimmerReadFilter) {
+
+        // Apply all the consecutive trimmers with a single cut of the read.
+        // The trimmers are never reordered, so p == i
+        final int end = trimmerRunEnd(i);
+        final TrimRegion region = new TrimRegion();
+        region.reset(read);
+
+        final int rejected = trim(read, region, i, end);
+        if (rejected != -1) {
+          incrementRejectedCounter(rejected);
+          endRead(measure);
+          return false;
         }
+
+        region.apply(read);
+        p = end - 1;
+
+      } else if (!(timed
+          ? measuredAccept(i, read, null, false, measure)
+          : rf.accept(read))) {
+
+        incrementRejectedCounter(rejectingFilter(p, read, null, false));
+        endRead(measure);
         return false;
       }
 
     }
 
+    endRead(measure);
+    markAccepted();
     return true;
   }
 
   @Override
   public boolean accept(final ReadSequence read1, final ReadSequence read2) {
 
-    for (ReadFilter rf : this.list) {
+    final List<ReadFilter> list = this.list;
+    final int[] order = this.order;
+    final boolean measure = this.remainingWarmupReads > 0;
+    final boolean timed = measure || this.filterTimers != null;
+
+    if (this.inputMeter != null) {
+      this.inputMeter.mark();
+    }
+
+    for (int p = 0; p < order.length; p++) {
 
-      if (!rf.accept(read1, read2)) {
+      final int i = order[p];
+      final ReadFilter rf = list.get(i);
 
-        if (this.incrementer != null) {
-          this.incrementer.incrCounter(this.counterGroup,
-              "reads rejected by " + rf.getName() + " filter", 1);
+      if (rf instanceof AbstractTrimmerReadFilter
+          && read1 != null && read2 != null) {
+
+        // Apply all the consecutive trimmers with a single cut of the reads.
+        // The first trimmer that discards one of the reads is the rejecting
+        // filter, as if each trimmer was applied to both reads in turn
+        final int end = trimmerRunEnd(i);
+        final TrimRegion region1 = new TrimRegion();
+        final TrimRegion region2 = new TrimRegion();
+        region1.reset(read1);
+        region2.reset(read2);
+
+        final int rejected1 = trim(read1, region1, i, end);
+        final int rejected2 =
+            trim(read2, region2, i, rejected1 == -1 ? end : rejected1);
+
+        if (rejected1 != -1 || rejected2 != -1) {
+          incrementRejectedCounter(rejected2 != -1 ? rejected2 : rejected1);
+          endRead(measure);
+          return false;
         }
+
+        region1.apply(read1);
+        region2.apply(read2);
+        p = end - 1;
+
+      } else if (!(timed
+          ? measuredAccept(i, read1, read2, true, measure)
+          : rf.accept(read1, read2))) {
+
+        incrementRejectedCounter(rejectingFilter(p, read1, read2, true));
+        endRead(measure);
         return false;
       }
 
     }
 
+    endRead(measure);
+    markAccepted();
     return true;
   }
 
+  /**
+   * Get the filter to count for a rejected read. If the filters have been
+   * reordered, the commutative filters of the same run declared before the
+   * rejecting filter and not called yet are evaluated in the declared order.
+   * @param position position of the rejecting filter in the execution order
+   * @param read1 first read
+   * @param read2 second read
+   * @param pairedEnd true in paired-end mode
+   * @return the index of the filter to count
+   */
+  private int rejectingFilter(final int position, final ReadSequence read1,
+      final ReadSequence read2, final boolean pairedEnd) {
+
+    final int index = this.order[position];
+
+    for (int j = this.runStarts[index]; j < index; j++) {
+
+      if (this.positions[j] > position) {
+
+        final ReadFilter rf = this.list.get(j);
+        if (!(pairedEnd ? rf.accept(read1, read2) : rf.accept(read1))) {
+          return j;
+        }
+      }
+    }
+
+    return index;
+  }
+
+  /**
+   * Get the end of a run of consecutive trimmers.
+   * @param start index of the first trimmer of the run
+   * @return the index after the last trimmer of the run
+   */
+  private int trimmerRunEnd(final int start) {
+
+    int end = start + 1;
+    while (end < this.list.size()
+        && this.list.get(end) instanceof AbstractTrimmerReadFilter) {
+      end++;
+    }
+
+    return end;
+  }
+
+  /**
+   * Apply a run of trimmers on the region of a read.
+   * @param read the read
+   * @param region the region to trim
+   * @param start index of the first trimmer to apply
+   * @param end index after the last trimmer to apply
+   * @return the index of the trimmer that discarded the read or -1 if the read
+   *         has not been discarded
+   */
+  private int trim(final ReadSequence read, final TrimRegion region,
+      final int start, final int end) {
+
+    final Timer[] timers = this.filterTimers;
+
+    for (int i = start; i < end; i++) {
+
+      final AbstractTrimmerReadFilter trimmer =
+          (AbstractTrimmerReadFilter) this.list.get(i);
+      final boolean result;
+
+      if (timers == null) {
+        result = trimmer.trim(read, region);
+      } else {
+        final long startTime = System.nanoTime();
+        result = trimmer.trim(read, region);
+        timers[i].stop(startTime);
+      }
+
+      if (!result) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Increment the counter of the reads rejected by a filter.
+   * @param index index of the filter that has rejected the read
+   */
+  private void incrementRejectedCounter(final int index) {
+
+    if (this.incrementer != null) {
+
+      this.rejectedCounters.get(index).increment();
+
+      final String detail = this.list.get(index).getRejectionDetail();
+      if (detail != null) {
+
+        final Map<String, ReporterCounter> counters =
+            this.rejectedDetailCounters.get(index);
+        ReporterCounter counter = counters.get(detail);
+
+        if (counter == null) {
+          counter = this.incrementer.getCounter(this.counterGroup,
+              this.rejectedCounterNames.get(index) + " (" + detail + ")");
+          counters.put(detail, counter);
+        }
+
+        counter.increment();
+      }
+    }
+  }
+
+  /**
+   * Update the meter of the accepted reads.
+   */
+  private void markAccepted() {
+
+    if (this.acceptedMeter != null) {
+      this.acceptedMeter.mark();
+    }
+  }
+
+  //
+  // Metrics
+  //
+
+  /**
+   * Enable the metrics of the filter. The metrics contains a timer for each
+   * filter (named "&lt;prefix&gt;.filter.&lt;filter name&gt;") and meters for
+   * the input and the accepted reads. The timers are shared by all the
+   * MultiReadFilter objects that use the same registry and prefix.
+   * @param registry the metric registry, null to disable the metrics
+   * @param prefix prefix of the name of the metrics
+   */
+  public void setMetrics(final MetricRegistry registry, final String prefix) {
+
+    if (registry == null) {
+      this.metrics = null;
+      this.metricsPrefix = null;
+      this.inputMeter = null;
+      this.acceptedMeter = null;
+    } else {
+      requireNonNull(prefix, "prefix argument cannot be null");
+      this.metrics = registry;
+      this.metricsPrefix = prefix;
+      this.inputMeter = registry.meter(prefix + ".input");
+      this.acceptedMeter = registry.meter(prefix + ".accepted");
+    }
+
+    resolveTimers();
+  }
+
+  /**
+   * Get the timers of the filters from the metric registry.
+   */
+  private void resolveTimers() {
+
+    if (this.metrics == null) {
+      this.filterTimers = null;
+      return;
+    }
+
+    final int n = this.list.size();
+    final Timer[] timers = new Timer[n];
+    for (int i = 0; i < n; i++) {
+      timers[i] = this.metrics.timer(
+          this.metricsPrefix + ".filter." + this.list.get(i).getName());
+    }
+
+    this.filterTimers = timers;
+  }
+
+  //
+  // Adaptive ordering
+  //
+
+  /**
+   * Enable or disable the adaptive ordering of the filters. The ordering is
+   * computed after the processing of the next 10,000 reads or pairs of reads.
+   * @param enable true to enable the adaptive ordering
+   */
+  public void setAdaptiveOrdering(final boolean enable) {
+
+    this.adaptiveOrdering = enable;
+    resetOrder();
+  }
+
+  /**
+   * Test if the adaptive ordering of the filters is enabled.
+   * @return true if the adaptive ordering of the filters is enabled
+   */
+  public boolean isAdaptiveOrdering() {
+
+    return this.adaptiveOrdering;
+  }
+
+  /**
+   * Get the name of the filters in their execution order.
+   * @return a list with the names of the filters
+   */
+  public List<String> getExecutionOrder() {
+
+    final List<String> result = new ArrayList<>();
+    for (int i : this.order) {
+      result.add(this.list.get(i).getName());
+    }
+
+    return result;
+  }
+
+  /**
+   * Call a filter and update its statistics.
+   * @param index index of the filter
+   * @param read1 first read
+   * @param read2 second read
+   * @param pairedEnd true in paired-end mode
+   * @param measure true if the statistics of the adaptive ordering must be
+   *          updated
+   * @return the result of the filter
+   */
+  private boolean measuredAccept(final int index, final ReadSequence read1,
+      final ReadSequence read2, final boolean pairedEnd,
+      final boolean measure) {
+
+    final ReadFilter rf = this.list.get(index);
+    final long start = System.nanoTime();
+    final boolean result =
+        pairedEnd ? rf.accept(read1, read2) : rf.accept(read1);
+    final long elapsed = System.nanoTime() - start;
+
+    if (measure) {
+      this.filterTimes[index] += elapsed;
+      this.filterCalls[index]++;
+      if (!result) {
+        this.filterRejections[index]++;
+      }
+    }
+
+    if (this.filterTimers != null) {
+      this.filterTimers[index].update(elapsed);
+    }
+
+    return result;
+  }
+
+  /**
+   * Update the warm-up counter at the end of the processing of a read.
+   * @param measure true if the statistics of the filters are measured
+   */
+  private void endRead(final boolean measure) {
+
+    if (measure && --this.remainingWarmupReads == 0) {
+      optimizeOrder();
+    }
+  }
+
+  /**
+   * Reset the execution order to the declared order of the filters.
+   */
+  private void resetOrder() {
+
+    final int n = this.list.size();
+    this.order = new int[n];
+    this.positions = new int[n];
+    this.runStarts = new int[n];
+    for (int i = 0; i < n; i++) {
+      this.order[i] = i;
+      this.positions[i] = i;
+      this.runStarts[i] = i;
+    }
+
+    this.filterTimes = new long[n];
+    this.filterCalls = new long[n];
+    this.filterRejections = new long[n];
+    this.remainingWarmupReads = this.adaptiveOrdering ? WARMUP_READS : 0;
+  }
+
+  /**
+   * Reorder the runs of commutative filters using the statistics of the
+   * warm-up. The filters are sorted by increasing cost per rejected read.
+   */
+  private void optimizeOrder() {
+
+    final int n = this.list.size();
+    final Integer[] indexes = new Integer[n];
+    final double[] ranks = new double[n];
+
+    for (int i = 0; i < n; i++) {
+
+      indexes[i] = i;
+
+      if (this.filterCalls[i] == 0) {
+        // The filter has never been called, keep it at the end of its run
+        ranks[i] = Double.MAX_VALUE;
+      } else {
+        final double cost = (double) this.filterTimes[i] / this.filterCalls[i];
+        final double rejectionRate =
+            (this.filterRejections[i] + 1.0) / (this.filterCalls[i] + 2.0);
+        ranks[i] = cost / rejectionRate;
+      }
+    }
+
+    int start = 0;
+    while (start < n) {
+
+      if (!this.list.get(start).isCommutative()) {
+        start++;
+        continue;
+      }
+
+      int end = start;
+      while (end < n && this.list.get(end).isCommutative()) {
+        end++;
+      }
+
+      // Stable sort, the filters with the same rank keep their order
+      Arrays.sort(indexes, start, end,
+          Comparator.comparingDouble(i -> ranks[i]));
+
+      for (int i = start; i < end; i++) {
+        this.runStarts[i] = start;
+      }
+      start = end;
+    }
+
+    for (int i = 0; i < n; i++) {
+      this.order[i] = indexes[i];
+      this.positions[indexes[i]] = i;
+    }
+
+    getLogger().info("Read filters execution order: " + getExecutionOrder());
+  }
+
   /**
    * Add a filter to the multi filter.
    * @param filter filter to add
@@ -109,7 +558,22 @@ public class MultiReadFilter implements ReadFilter {
   public void addFilter(final ReadFilter filter) {
 
     if (filter != null) {
+
+      final String counterName =
+          "reads rejected by " + filter.getName() + " filter";
+
       this.list.add(filter);
+      this.rejectedCounterNames.add(counterName);
+
+      // Resolve the counters once for all the reads
+      if (this.incrementer != null) {
+        this.rejectedCounters
+            .add(this.incrementer.getCounter(this.counterGroup, counterName));
+        this.rejectedDetailCounters.add(new HashMap<>());
+      }
+
+      resetOrder();
+      resolveTimers();
     }
 
   }
@@ -154,7 +618,8 @@ public class MultiReadFilter implements ReadFilter {
 
     return this.getClass().getSimpleName()
         + "{incrementer=" + this.incrementer + ",counterGroup="
-        + this.counterGroup + " , list=" + this.list + "}";
+        + this.counterGroup + " , list=" + this.list + ", adaptiveOrdering="
+        + this.adaptiveOrdering + "}";
   }
 
   //
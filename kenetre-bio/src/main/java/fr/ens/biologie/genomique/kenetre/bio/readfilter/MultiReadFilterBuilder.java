@@ -51,6 +51,7 @@ public class MultiReadFilterBuilder {
 
   private final Map<String, String> mapParameters = new LinkedHashMap<>();
   private boolean useNewServiceInstance;
+  private boolean adaptiveOrdering;
 
   /**
    * Set the logger to use.
@@ -191,7 +192,10 @@ public class MultiReadFilterBuilder {
       f.init();
     }
 
-    return new MultiReadFilter(this.listFilter);
+    final MultiReadFilter result = new MultiReadFilter(this.listFilter);
+    result.setAdaptiveOrdering(this.adaptiveOrdering);
+
+    return result;
   }
 
   /**
@@ -209,7 +213,11 @@ public class MultiReadFilterBuilder {
       f.init();
     }
 
-    return new MultiReadFilter(incrementer, counterGroup, this.listFilter);
+    final MultiReadFilter result =
+        new MultiReadFilter(incrementer, counterGroup, this.listFilter);
+    result.setAdaptiveOrdering(this.adaptiveOrdering);
+
+    return result;
   }
 
   /**
@@ -230,6 +238,17 @@ public class MultiReadFilterBuilder {
     this.useNewServiceInstance = forceUseNewServiceInstance;
   }
 
+  /**
+   * Enable the adaptive ordering of the filters in the created
+   * MultiReadFilter.
+   * @param adaptiveOrdering true to enable the adaptive ordering
+   * @see MultiReadFilter#setAdaptiveOrdering(boolean)
+   */
+  public void setAdaptiveOrdering(boolean adaptiveOrdering) {
+
+    this.adaptiveOrdering = adaptiveOrdering;
+  }
+
   //
   // Constructors
   //
@@ -104,6 +104,11 @@ public class PairCheckReadFilter extends AbstractReadFilter {
     return "Pair check read filter";
   }
 
+  @Override
+  public boolean isCommutative() {
+    return true;
+  }
+
   @Override
   public void setParameter(final String key, final String value) {
     // this filter has no parameter
@@ -26,6 +26,11 @@ public class PatternReadFilter extends AbstractReadFilter {
     return "Pattern Read Filter";
   }
 
+  @Override
+  public boolean isCommutative() {
+    return true;
+  }
+
   @Override
   public boolean accept(ReadSequence read) {
     if (read == null) {
@@ -24,8 +24,6 @@
 
 package fr.ens.biologie.genomique.kenetre.bio.readfilter;
 
-import static fr.ens.biologie.genomique.kenetre.util.StatUtils.mean;
-
 import fr.ens.biologie.genomique.kenetre.KenetreException;
 import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 
@@ -47,7 +45,7 @@ public class QualityReadFilter extends AbstractReadFilter {
       return false;
     }
 
-    return mean(read.qualityScores()) > this.qualityThreshold;
+    return read.meanQualityScore() > this.qualityThreshold;
   }
 
   @Override
@@ -61,6 +59,11 @@ public class QualityReadFilter extends AbstractReadFilter {
     return "Quality threshold ReadFilter";
   }
 
+  @Override
+  public boolean isCommutative() {
+    return true;
+  }
+
   @Override
   public void setParameter(final String key, final String value)
       throws KenetreException {
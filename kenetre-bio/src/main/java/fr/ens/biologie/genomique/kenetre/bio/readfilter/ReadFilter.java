@@ -88,4 +88,26 @@ public interface ReadFilter {
    */
   void init() throws KenetreException;
 
+  /**
+   * Test if the filter is commutative. A commutative filter does not modify
+   * the reads and its result does not depend on the filters called before it,
+   * so it can be moved in a chain of filters.
+   * @return true if the filter is commutative
+   */
+  default boolean isCommutative() {
+
+    return false;
+  }
+
+  /**
+   * Get the detail of the last rejection of the filter (e.g. the name of the
+   * motif found in the read). When not null, the rejected read is also counted
+   * in a dedicated counter.
+   * @return the detail of the last rejection or null if there is no detail
+   */
+  default String getRejectionDetail() {
+
+    return null;
+  }
+
 }
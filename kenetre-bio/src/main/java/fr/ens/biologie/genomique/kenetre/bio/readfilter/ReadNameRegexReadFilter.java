@@ -53,6 +53,12 @@ public class ReadNameRegexReadFilter extends AbstractReadFilter {
     return "Filter reads names with regex";
   }
 
+  @Override
+  public boolean isCommutative() {
+
+    return true;
+  }
+
   @Override
   public void setParameter(final String key, final String value)
       throws KenetreException {
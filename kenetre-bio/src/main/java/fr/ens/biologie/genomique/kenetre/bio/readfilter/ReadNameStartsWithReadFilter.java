@@ -53,6 +53,12 @@ public class ReadNameStartsWithReadFilter extends AbstractReadFilter {
     return "Filter reads names that starts with some prefixes";
   }
 
+  @Override
+  public boolean isCommutative() {
+
+    return true;
+  }
+
   @Override
   public void setParameter(final String key, final String value)
       throws KenetreException {
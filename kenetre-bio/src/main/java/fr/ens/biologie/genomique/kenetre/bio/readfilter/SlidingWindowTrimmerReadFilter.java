@@ -1,7 +1,6 @@
 package fr.ens.biologie.genomique.kenetre.bio.readfilter;
 
-import org.usadellab.trimmomatic.trim.AbstractSingleRecordTrimmer;
-import org.usadellab.trimmomatic.trim.SlidingWindowTrimmer;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 
 /**
  * This class define a Slidingwindow trimmomatic readfilter allow paired-end and
@@ -10,8 +9,10 @@ import org.usadellab.trimmomatic.trim.SlidingWindowTrimmer;
  * @author du
  */
 
-public class SlidingWindowTrimmerReadFilter
-    extends AbstractTrimmomaticReadFilter {
+public class SlidingWindowTrimmerReadFilter extends AbstractTrimmerReadFilter {
+
+  private int windowLength;
+  private float requiredQuality;
 
   @Override
   public String getName() {
@@ -19,8 +20,21 @@ public class SlidingWindowTrimmerReadFilter
   }
 
   @Override
-  protected AbstractSingleRecordTrimmer createTrimmer(String trimmerArgs) {
-    return new SlidingWindowTrimmer(trimmerArgs);
+  protected void parseArguments(final String arguments) {
+
+    final String[] args = arguments.split(":");
+    this.windowLength = Integer.parseInt(args[0]);
+    this.requiredQuality = Float.parseFloat(args[1]);
+  }
+
+  @Override
+  boolean trim(final ReadSequence read, final TrimRegion region) {
+
+    region.end = read.getFastqFormat().slidingWindowTrimIndex(
+        read.getQuality(), region.start, region.end, this.windowLength,
+        this.requiredQuality);
+
+    return region.start < region.end;
   }
 
 }
@@ -1,7 +1,6 @@
 package fr.ens.biologie.genomique.kenetre.bio.readfilter;
 
-import org.usadellab.trimmomatic.trim.AbstractSingleRecordTrimmer;
-import org.usadellab.trimmomatic.trim.TrailingTrimmer;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 
 /**
  * This class define a Trailing trimmomatic readfilter allow paired-end and
@@ -10,7 +9,9 @@ import org.usadellab.trimmomatic.trim.TrailingTrimmer;
  * @author du
  */
 
-public class TrailingTrimmerReadFilter extends AbstractTrimmomaticReadFilter {
+public class TrailingTrimmerReadFilter extends AbstractTrimmerReadFilter {
+
+  private int quality;
 
   @Override
   public String getName() {
@@ -18,7 +19,16 @@ public class TrailingTrimmerReadFilter extends AbstractTrimmomaticReadFilter {
   }
 
   @Override
-  protected AbstractSingleRecordTrimmer createTrimmer(String trimmerArgs) {
-    return new TrailingTrimmer(trimmerArgs);
+  protected void parseArguments(final String arguments) {
+    this.quality = Integer.parseInt(arguments);
+  }
+
+  @Override
+  boolean trim(final ReadSequence read, final TrimRegion region) {
+
+    region.end = read.getFastqFormat().trailingTrimIndex(read.getQuality(),
+        region.start, region.end, this.quality);
+
+    return region.start < region.end;
   }
 }
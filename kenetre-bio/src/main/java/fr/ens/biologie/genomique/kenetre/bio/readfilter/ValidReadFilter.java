@@ -55,6 +55,12 @@ public class ValidReadFilter extends AbstractReadFilter {
     return "Valid ReadFilter";
   }
 
+  @Override
+  public boolean isCommutative() {
+
+    return true;
+  }
+
   @Override
   public String toString() {
 
@@ -0,0 +1,186 @@
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.bio.io.MarketMatrixExpressionMatrixReader;
+import fr.ens.biologie.genomique.kenetre.bio.io.MarketMatrixExpressionMatrixWriter;
+
+public class CompressedSparseExpressionMatrixTest
+    extends AbstractExpressionMatrixTest {
+
+  @Override
+  protected ExpressionMatrix createMatrix() {
+
+    return new CompressedSparseExpressionMatrix();
+  }
+
+  @Override
+  protected ExpressionMatrix createMatrix(double defaultValue) {
+
+    return new CompressedSparseExpressionMatrix(defaultValue);
+  }
+
+  @Test
+  public void testUnorderedValues() {
+
+    CompressedSparseExpressionMatrix matrix =
+        new CompressedSparseExpressionMatrix();
+    matrix.addColumns("col1", "col2", "col3");
+    matrix.addRows("row1", "row2", "row3");
+
+    matrix.setValue("row1", "col1", 1);
+    matrix.setValue("row1", "col3", 3);
+    matrix.setValue("row3", "col2", 8);
+    matrix.setValue("row2", "col2", 5);
+    matrix.setValue("row1", "col2", 2);
+    matrix.setValue("row3", "col2", 9);
+    matrix.setValue("row1", "col3", 0);
+
+    assertEquals(4, matrix.getNonZeroCount());
+    assertArrayEquals(new double[] {1, 2, 0}, matrix.getRowArray("row1"),
+        0.0);
+    assertArrayEquals(new double[] {0, 5, 0}, matrix.getRowArray("row2"),
+        0.0);
+    assertArrayEquals(new double[] {2, 5, 9}, matrix.getColumnArray("col2"),
+        0.0);
+    assertEquals(9.0, matrix.getValue(2, 1), 0.0);
+
+    final List<String> values = new ArrayList<>();
+    matrix.forEachNonZeroValue(
+        (row, column, value) -> values.add(row + ":" + column + "=" + value));
+    assertEquals(Arrays.asList("0:0=1.0", "0:1=2.0", "1:1=5.0", "2:1=9.0"),
+        values);
+  }
+
+  @Test
+  public void testRemoveAndRetain() {
+
+    CompressedSparseExpressionMatrix matrix =
+        new CompressedSparseExpressionMatrix();
+    matrix.addColumns("col1", "col2", "col3", "col4");
+    matrix.addRows("row1", "row2", "row3", "row4");
+
+    for (int i = 0; i < 4; i++) {
+      for (int j = 0; j < 4; j++) {
+        matrix.setValue(i, j, i * 10 + j + 1);
+      }
+    }
+
+    matrix.removeRow("row2");
+    matrix.retainColumns(Arrays.asList("col4", "col2"));
+    matrix.setValue("row3", "col2", 100);
+
+    // A removed row can be added again
+    matrix.addRow("row2");
+
+    assertEquals(Arrays.asList("row1", "row3", "row4", "row2"),
+        matrix.getRowNames());
+    assertEquals(Arrays.asList("col2", "col4"), matrix.getColumnNames());
+    assertFalse(matrix.containsColumn("col1"));
+
+    assertEquals(1, matrix.getRowIndex("row3"));
+    assertArrayEquals(new double[] {2, 100, 32, 0},
+        matrix.getColumnArray("col2"), 0.0);
+    assertArrayEquals(new double[] {4, 24, 34, 0},
+        matrix.getColumnArray("col4"), 0.0);
+    assertEquals(6, matrix.getNonZeroCount());
+
+    matrix.retainRows(Arrays.asList("row4"));
+    assertEquals(Arrays.asList("row4"), matrix.getRowNames());
+    assertArrayEquals(new double[] {32, 34}, matrix.getRowArray("row4"), 0.0);
+  }
+
+  @Test
+  public void testRandomValues() {
+
+    final Random random = new Random(42);
+    final int rowCount = 50;
+    final int columnCount = 30;
+
+    CompressedSparseExpressionMatrix matrix =
+        new CompressedSparseExpressionMatrix();
+    ExpressionMatrix expected = new DenseExpressionMatrix();
+
+    for (int i = 0; i < rowCount; i++) {
+      matrix.addRow("row" + i);
+      expected.addRow("row" + i);
+    }
+    for (int j = 0; j < columnCount; j++) {
+      matrix.addColumn("col" + j);
+      expected.addColumn("col" + j);
+    }
+
+    for (int n = 0; n < 5000; n++) {
+
+      final String rowName = "row" + random.nextInt(rowCount);
+      final String columnName = "col" + random.nextInt(columnCount);
+      final double value = random.nextInt(4);
+
+      matrix.setValue(rowName, columnName, value);
+      expected.setValue(rowName, columnName, value);
+
+      if (n % 500 == 0) {
+        assertEquals(expected.getValue(rowName, columnName),
+            matrix.getValue(rowName, columnName));
+      }
+    }
+
+    for (String rowName : expected.getRowNames()) {
+      assertEquals(expected.getRowValues(rowName),
+          matrix.getRowValues(rowName));
+    }
+    for (String columnName : expected.getColumnNames()) {
+      assertEquals(expected.getColumnValues(columnName),
+          matrix.getColumnValues(columnName));
+    }
+  }
+
+  @Test
+  public void testMarketMatrix() throws IOException {
+
+    CompressedSparseExpressionMatrix matrix =
+        new CompressedSparseExpressionMatrix();
+    matrix.addColumns("column1", "column2", "column3");
+    matrix.addRows("row1", "row2");
+    matrix.setValue("row2", "column3", 4);
+    matrix.setValue("row1", "column2", 2);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (MarketMatrixExpressionMatrixWriter writer =
+        new MarketMatrixExpressionMatrixWriter(out)) {
+      writer.write(matrix);
+    }
+
+    assertEquals("%%MatrixMarket matrix coordinate integer general\n"
+        + "2 3 2\n" + "1 2 2\n" + "2 3 4\n",
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+    ExpressionMatrix result;
+    try (MarketMatrixExpressionMatrixReader reader =
+        new MarketMatrixExpressionMatrixReader(
+            new ByteArrayInputStream(out.toByteArray()))) {
+      result = reader.read();
+    }
+
+    assertTrue(result instanceof CompressedSparseExpressionMatrix);
+    assertEquals(matrix.getRowNames(), result.getRowNames());
+    assertEquals(matrix.getColumnNames(), result.getColumnNames());
+    assertEquals(matrix.getRowValues("row1"), result.getRowValues("row1"));
+    assertEquals(matrix.getRowValues("row2"), result.getRowValues("row2"));
+  }
+
+}
@@ -78,4 +78,60 @@ public class ExpressionMatricesTest {
 
   }
 
+
+  @Test
+  public void testMergeCompressedSparse() {
+
+    CompressedSparseExpressionMatrix src =
+        new CompressedSparseExpressionMatrix();
+    ExpressionMatrix dest = new DenseExpressionMatrix();
+
+    src.addColumns("a1", "a2", "b1");
+    src.addRows("row1", "row2", "row3");
+
+    src.setValue("row2", "a2", 2);
+    src.setValue("row1", "a1", 1);
+    src.setValue("row1", "b1", 8);
+    src.setValue("row2", "a1", 101);
+
+    ExpressionMatrices.merge(src, Arrays.asList("a1", "a2"), dest, "a");
+
+    assertEquals(3, dest.getRowCount());
+    assertEquals(1.0, dest.getValue("row1", "a"), 0.0);
+    assertEquals(103.0, dest.getValue("row2", "a"), 0.0);
+    assertEquals(0.0, dest.getValue("row3", "a"), 0.0);
+  }
+
+  @Test
+  public void testRemoveEmptyRowsCompressedSparse() {
+
+    ExpressionMatrix matrix = new CompressedSparseExpressionMatrix();
+
+    matrix.addColumns("a1", "a2", "a3");
+    matrix.addRows("row1", "row2", "row3", "row4");
+
+    matrix.setValue("row3", "a2", 102);
+    matrix.setValue("row1", "a1", 1);
+    matrix.setValue("row2", "a3", 0);
+    matrix.setValue("row4", "a1", 5);
+    matrix.setValue("row4", "a1", 0);
+
+    ExpressionMatrices.removeEmptyRows(matrix);
+
+    assertEquals(2, matrix.getRowCount());
+    assertEquals(Arrays.asList("row1", "row3"), matrix.getRowNames());
+
+    // Not stored cells contain the default value
+    matrix = new CompressedSparseExpressionMatrix(1.0);
+    matrix.addColumns("a1", "a2");
+    matrix.addRows("row1", "row2", "row3");
+    matrix.setValue("row2", "a1", 0);
+    matrix.setValue("row2", "a2", 0);
+    matrix.setValue("row3", "a1", 0);
+
+    ExpressionMatrices.removeEmptyRows(matrix);
+
+    assertEquals(Arrays.asList("row1", "row3"), matrix.getRowNames());
+  }
+
 }
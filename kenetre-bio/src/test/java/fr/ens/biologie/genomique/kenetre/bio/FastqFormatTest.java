@@ -40,6 +40,7 @@ import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.Test;
 
@@ -503,4 +504,107 @@ public class FastqFormatTest {
 
   }
 
+  @Test
+  public void testGetProbability() {
+
+    for (FastqFormat format : FastqFormat.values()) {
+      for (char c = format.getCharMin(); c <= format.getCharMax(); c++) {
+
+        final double p = format.convertScoreToProbability(format.getScore(c));
+        assertEquals(p, format.getProbability(c), 0.0);
+        assertEquals(Math.log10(p), format.getLog10Probability(c), 1e-12);
+      }
+    }
+  }
+
+  @Test
+  public void testMeanScore() {
+
+    assertEquals('B' - 33.0, FASTQ_SANGER.meanScore("ABC"), 0.0);
+    assertEquals(32.5, FASTQ_SANGER.meanScore("ABC", 0, 2), 0.0);
+    assertTrue(Double.isNaN(FASTQ_SANGER.meanScore("")));
+    assertEquals(1.0, FASTQ_ILLUMINA.meanScore("@AB"), 0.0);
+
+    final byte[] bytes = "xABCx".getBytes(StandardCharsets.US_ASCII);
+    assertEquals('B' - 33.0, FASTQ_SANGER.meanScore(bytes, 1, 3), 0.0);
+
+    try {
+      FASTQ_SANGER.meanScore("ABC", 2, 4);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      assertTrue(true);
+    }
+  }
+
+  @Test
+  public void testExpectedErrors() {
+
+    final String quality = "+5?I";
+    double expected = 0.0;
+    for (char c : quality.toCharArray()) {
+      expected += FASTQ_SANGER.getProbability(c);
+    }
+
+    assertEquals(0.1111, FASTQ_SANGER.expectedErrors(quality), 0.0001);
+    assertEquals(expected, FASTQ_SANGER.expectedErrors(quality), 1e-12);
+    assertEquals(0.1, FASTQ_SANGER.expectedErrors(quality, 0, 1), 1e-12);
+    assertEquals(expected, FASTQ_SANGER.expectedErrors(
+        quality.getBytes(StandardCharsets.US_ASCII), 0, 4), 1e-12);
+  }
+
+  @Test
+  public void testMinWindowMeanScore() {
+
+    final String quality = "IIII+++III";
+    final byte[] bytes = quality.getBytes(StandardCharsets.US_ASCII);
+
+    assertEquals(10.0, FASTQ_SANGER.minWindowMeanScore(quality, 0, 10, 3),
+        0.0);
+    assertEquals(10.0, FASTQ_SANGER.minWindowMeanScore(bytes, 0, 10, 3), 0.0);
+    assertEquals(40.0, FASTQ_SANGER.minWindowMeanScore(quality, 0, 4, 2),
+        0.0);
+    assertEquals(25.0, FASTQ_SANGER.minWindowMeanScore(quality, 3, 5, 4),
+        0.0);
+  }
+
+  @Test
+  public void testTrimIndexes() {
+
+    // '5' = 20, '?' = 30, 'I' = 40
+    final String quality = "55?I?I55";
+    final byte[] bytes = quality.getBytes(StandardCharsets.US_ASCII);
+
+    assertEquals(2, FASTQ_SANGER.leadingTrimIndex(quality, 0, 8, 30));
+    assertEquals(2, FASTQ_SANGER.leadingTrimIndex(bytes, 0, 8, 30));
+    assertEquals(3, FASTQ_SANGER.leadingTrimIndex(quality, 0, 8, 31));
+    assertEquals(8, FASTQ_SANGER.leadingTrimIndex(quality, 0, 8, 41));
+    assertEquals(0, FASTQ_SANGER.leadingTrimIndex("!!", 0, 2, 0));
+
+    assertEquals(6, FASTQ_SANGER.trailingTrimIndex(quality, 0, 8, 30));
+    assertEquals(6, FASTQ_SANGER.trailingTrimIndex(bytes, 0, 8, 30));
+    assertEquals(4, FASTQ_SANGER.trailingTrimIndex(quality, 0, 5, 31));
+    assertEquals(0, FASTQ_SANGER.trailingTrimIndex(quality, 0, 8, 41));
+  }
+
+  @Test
+  public void testSlidingWindowTrimIndex() {
+
+    // ';' = 26, 'A' = 32
+    assertEquals(2, FASTQ_SANGER.slidingWindowTrimIndex("AA;;", 0, 4, 4, 29));
+    assertEquals(5,
+        FASTQ_SANGER.slidingWindowTrimIndex("A;;AA;;", 0, 7, 6, 29));
+    assertEquals(7,
+        FASTQ_SANGER.slidingWindowTrimIndex(";;A;;AA;;", 0, 9, 9, 27.3f));
+    assertEquals(2,
+        FASTQ_SANGER.slidingWindowTrimIndex("AA;;;;;;;", 0, 9, 9, 27));
+    assertEquals(9,
+        FASTQ_SANGER.slidingWindowTrimIndex(";;;;;;;AA", 0, 9, 9, 27));
+
+    // The first window fails
+    assertEquals(0, FASTQ_SANGER.slidingWindowTrimIndex(";;;;", 0, 4, 4, 29));
+
+    // The region is shorter than the window
+    assertEquals(0, FASTQ_SANGER.slidingWindowTrimIndex("AAA", 0, 3, 4, 29));
+  }
+
 }
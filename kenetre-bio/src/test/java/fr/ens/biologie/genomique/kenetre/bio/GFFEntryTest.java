@@ -528,6 +528,57 @@ public class GFFEntryTest {
 
   }
 
+  @Test
+  public void testGetAttributeValueNotDecoded() throws BadBioEntryException {
+
+    final String[] gff3 = {"ID=gene00001;Name=EDEN", " ID = a ; ID=b;;x",
+        "ID=a=b; Name =  ;Note=a,b", ".", ""};
+
+    for (String attributes : gff3) {
+
+      final String line = "ctg123\t.\tgene\t1000\t9000\t.\t+\t.\t" + attributes;
+
+      final GFFEntry e1 = new GFFEntry();
+      final GFFEntry e2 = new GFFEntry();
+      e1.parseGFF3(line);
+      e2.parseGFF3(line);
+
+      // Force the decoding of the attributes of the second entry
+      final List<String> names = new ArrayList<>(e2.getAttributesNames());
+
+      for (String name : asList("ID", "Name", "Note", "x", "", "Other")) {
+        assertEquals(e2.getAttributeValue(name), e1.getAttributeValue(name));
+        assertEquals(e2.isAttribute(name), e1.isAttribute(name));
+      }
+      assertEquals(names, new ArrayList<>(e1.getAttributesNames()));
+      assertEquals(e2, e1);
+    }
+
+    final String[] gtf = {"gene_id \"g1\"; transcript_id \"t1\";",
+        "gene_id \"g1\"; tag \"basic\"; tag  \"CCDS\" ;; tag x;",
+        "gene_id\"g1\"; gene_name \"A B\"", "."};
+
+    for (String attributes : gtf) {
+
+      final String line = "chr1\t.\texon\t1000\t9000\t.\t+\t.\t" + attributes;
+
+      final GFFEntry e1 = new GFFEntry();
+      final GFFEntry e2 = new GFFEntry();
+      e1.parseGTF(line);
+      e2.parseGTF(line);
+
+      final List<String> names = new ArrayList<>(e2.getAttributesNames());
+
+      for (String name : asList("gene_id", "transcript_id", "tag",
+          "gene_name", "gene_id\"g1\"", "Other")) {
+        assertEquals(e2.getAttributeValue(name), e1.getAttributeValue(name));
+        assertEquals(e2.isAttribute(name), e1.isAttribute(name));
+      }
+      assertEquals(names, new ArrayList<>(e1.getAttributesNames()));
+      assertEquals(e2, e1);
+    }
+  }
+
   @Test
   public void testSetSeqId() {
 
@@ -0,0 +1,239 @@
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import static fr.ens.biologie.genomique.kenetre.util.StringUtils.md5DigestToString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.bio.io.FastaLineParser;
+
+public class GenomeDescriptionTest {
+
+  /**
+   * Line by line implementation of the genome description, used as reference.
+   */
+  private static String referenceDescription(final String content,
+      final boolean gffFormat) throws Exception {
+
+    final FastaLineParser parser = new FastaLineParser(
+        new ByteArrayInputStream(content.getBytes(StandardCharsets.ISO_8859_1)),
+        gffFormat);
+    final MessageDigest md5Digest = MessageDigest.getInstance("MD5");
+    final Map<String, Long> sequences = new LinkedHashMap<>();
+    final Alphabet alphabet = Alphabets.AMBIGUOUS_DNA_ALPHABET;
+
+    String seqName = null;
+    String lastSeqName = null;
+    String parsedSeqName = null;
+    long chrSize = 0;
+
+    try {
+      while ((seqName = parser.parseNextLineAndGetSequenceName()) != null) {
+
+        if (!seqName.equals(lastSeqName)) {
+
+          if (lastSeqName != null && sequences.containsKey(lastSeqName)) {
+            throw new BadBioEntryException(
+                "Sequence name found twice: " + lastSeqName, lastSeqName);
+          }
+
+          if (lastSeqName != null) {
+            sequences.put(parsedSeqName, chrSize);
+          }
+
+          parsedSeqName = GenomeDescription.parseChromosomeName(seqName);
+          md5Digest.update(parsedSeqName.getBytes(Charset.defaultCharset()));
+          lastSeqName = seqName;
+          chrSize = 0;
+        }
+
+        final String sequence = parser.getSequence();
+        for (char c : sequence.toCharArray()) {
+          if (!alphabet.isLetterValid(c)) {
+            throw new BadBioEntryException("Invalid base in genome: " + c,
+                lastSeqName);
+          }
+        }
+
+        chrSize += sequence.length();
+        md5Digest.update(sequence.getBytes(Charset.defaultCharset()));
+      }
+    } catch (BadBioEntryException | IOException e) {
+      return e.getClass().getSimpleName() + ": " + e.getMessage();
+    }
+
+    if (lastSeqName != null) {
+      sequences.put(parsedSeqName, chrSize);
+    }
+
+    return sequences + " " + md5DigestToString(md5Digest);
+  }
+
+  private static String description(final String content,
+      final boolean gffFormat) {
+
+    try {
+      final GenomeDescription desc = GenomeDescription.createGenomeDesc(
+          new ByteArrayInputStream(
+              content.getBytes(StandardCharsets.ISO_8859_1)),
+          "genome.fasta", gffFormat);
+
+      final Map<String, Long> sequences = new LinkedHashMap<>();
+      for (String name : desc.getSequencesNames()) {
+        sequences.put(name, desc.getSequenceLength(name));
+      }
+
+      return sequences + " " + desc.getMD5Sum();
+    } catch (BadBioEntryException | IOException e) {
+      return e.getClass().getSimpleName() + ": " + e.getMessage();
+    }
+  }
+
+  private static String randomFasta(final Random random) {
+
+    final List<String> eols = Arrays.asList("\n", "\r\n", "\r", " \n", "\t\n");
+    final String bases = random.nextInt(10) == 0 ? "ACGTNacgtn*" : "ACGTNacgtnRY";
+    final StringBuilder sb = new StringBuilder();
+
+    if (random.nextInt(20) == 0) {
+      sb.append("ACGT\n");
+    }
+
+    final int count = random.nextInt(5);
+    for (int i = 0; i < count; i++) {
+
+      sb.append(random.nextInt(10) == 0 ? " >" : ">");
+      sb.append(random.nextInt(20) == 0 ? " " : "");
+      sb.append("chr").append(random.nextInt(6));
+      if (random.nextBoolean()) {
+        sb.append(" description ").append(i);
+      }
+      sb.append(eols.get(random.nextInt(eols.size())));
+
+      final int lines = random.nextInt(4);
+      for (int j = 0; j < lines; j++) {
+
+        if (random.nextInt(10) == 0) {
+          sb.append("  ");
+        }
+
+        final int len = random.nextInt(70);
+        for (int k = 0; k < len; k++) {
+          sb.append(bases.charAt(random.nextInt(bases.length())));
+          if (random.nextInt(500) == 0) {
+            sb.append(' ');
+          }
+        }
+        sb.append(eols.get(random.nextInt(eols.size())));
+
+        if (random.nextInt(10) == 0) {
+          sb.append("\n");
+        }
+      }
+    }
+
+    return sb.toString();
+  }
+
+  @Test
+  public void testCreateGenomeDesc() throws Exception {
+
+    final String fasta = ">chr1 first\nACGTACGTNN\nacgt\n\n>chr2\r\nGGGG  \r\n";
+    final GenomeDescription desc = GenomeDescription.createGenomeDesc(
+        new ByteArrayInputStream(fasta.getBytes(StandardCharsets.US_ASCII)),
+        "genome.fasta", false);
+
+    assertEquals("genome", desc.getGenomeName());
+    assertEquals(Arrays.asList("chr1", "chr2"), desc.getSequencesNames());
+    assertEquals(14, desc.getSequenceLength("chr1"));
+    assertEquals(4, desc.getSequenceLength("chr2"));
+    assertEquals(18, desc.getGenomeLength());
+    assertEquals(referenceDescription(fasta, false), description(fasta, false));
+
+    try {
+      GenomeDescription.createGenomeDesc(
+          new ByteArrayInputStream(">chr1\nAC-GT\n".getBytes()), "genome",
+          false);
+      fail();
+    } catch (BadBioEntryException e) {
+      assertEquals("Invalid base in genome: -", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testRandomFasta() throws Exception {
+
+    final Random random = new Random(0);
+
+    for (int i = 0; i < 2000; i++) {
+
+      final String fasta = randomFasta(random);
+      assertEquals(fasta, referenceDescription(fasta, false),
+          description(fasta, false));
+    }
+  }
+
+  @Test
+  public void testGFF() throws Exception {
+
+    final String gff = "##gff-version 3\n"
+        + "chr1\tsource\tgene\t1\t10\t.\t+\t.\tID=gene1\n"
+        + " ##FASTA\n" + ">chr0\nAAAA\n" + "##FASTA\n" + ">chr1\nACGTACGTAC\n"
+        + ">chr2\nGGGG\nCC\n";
+
+    assertEquals(referenceDescription(gff, true), description(gff, true));
+
+    final Random random = new Random(1);
+    for (int i = 0; i < 500; i++) {
+
+      final String content = "##gff-version 3\n"
+          + (random.nextBoolean() ? "##FASTA\n" : "") + randomFasta(random);
+      assertEquals(content, referenceDescription(content, true),
+          description(content, true));
+    }
+  }
+
+  @Test
+  public void testFastaFile() throws Exception {
+
+    final File file = File.createTempFile("genome-", ".fasta");
+    try (InputStream is =
+        GenomeDescriptionTest.class.getResourceAsStream("/phix.fasta")) {
+
+      assertNotNull(is);
+      Files.copy(is, file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+
+      final String content =
+          new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+      final GenomeDescription desc =
+          GenomeDescription.createGenomeDescFromFasta(file);
+
+      assertEquals(referenceDescription(content, false),
+          description(content, false));
+      assertEquals(description(content, false).split(" ")[1], desc.getMD5Sum());
+      assertEquals(5386, desc.getGenomeLength());
+    } finally {
+      file.delete();
+    }
+  }
+
+}
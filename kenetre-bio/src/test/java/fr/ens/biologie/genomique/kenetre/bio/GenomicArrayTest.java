@@ -26,8 +26,18 @@ package fr.ens.biologie.genomique.kenetre.bio;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
-
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -425,6 +435,122 @@ public class GenomicArrayTest {
     assertEquals(2, this.r.get(this.fgi.iv(10, 40)).size());
   }
 
+  /**
+   * Test method for
+   * {fr.ens.biologie.genomique.kenetre.bio.GenomicArray#forEachEntry(java.lang.String,
+   * int, int, GenomicArray.ZoneConsumer)}.
+   */
+  @Test
+  public void testForEachEntry() {
+
+    this.ga.addEntry(this.fgi.iv(20, 40), "a");
+    this.ga.addEntry(this.fgi.iv(30, 50), "b");
+    this.ga.addEntry(this.fgi.iv(60, 70), "a");
+
+    final List<String> zones = new ArrayList<>();
+    final List<Set<String>> values = new ArrayList<>();
+    final GenomicArray.ZoneConsumer<String> consumer =
+        (start, end, strand, v) -> {
+          zones.add(start + "-" + end + strand);
+          values.add(v);
+        };
+
+    assertFalse(this.ga.forEachEntry("chr2", 1, 100, consumer));
+    assertTrue(this.ga.forEachEntry(this.fgi.chromosome, 25, 80, consumer));
+
+    assertEquals(Arrays.asList("20-29.", "30-40.", "41-50.", "51-59.",
+        "60-70.", "71-80."), zones);
+    assertEquals(Collections.singleton("a"), values.get(0));
+    assertEquals(new HashSet<>(Arrays.asList("a", "b")), values.get(1));
+    assertEquals(Collections.singleton("b"), values.get(2));
+    assertTrue(values.get(3).isEmpty());
+    assertTrue(values.get(5).isEmpty());
+
+    // Zones with the same values share the same set
+    assertSame(values.get(0), values.get(4));
+
+    // Entries added after a query are taken into account
+    this.ga.addEntry(this.fgi.iv(45, 65), "c");
+    zones.clear();
+    values.clear();
+    this.ga.freeze();
+    assertTrue(this.ga.forEachEntry(this.fgi.chromosome, 50, 50, consumer));
+    assertEquals(Collections.singletonList("45-50."), zones);
+    assertEquals(new HashSet<>(Arrays.asList("b", "c")), values.get(0));
+  }
+
+  /**
+   * Test that building the array does not depend on the order of the entries.
+   */
+  @Test
+  public void testEntryOrder() {
+
+    final GenomicArray<String> ga2 = new GenomicArray<>();
+
+    final int[][] ivs = {{10, 50}, {5, 20}, {30, 30}, {49, 80}, {100, 120}};
+    for (int i = 0; i < ivs.length; i++) {
+      this.ga.addEntry(this.fgi_stranded.iv(ivs[i][0], ivs[i][1]), "e" + i);
+    }
+    for (int i = ivs.length - 1; i >= 0; i--) {
+      ga2.addEntry(this.fgi_stranded.iv(ivs[i][0], ivs[i][1]), "e" + i);
+    }
+
+    assertEquals(this.ga, ga2);
+    assertEquals(this.ga.hashCode(), ga2.hashCode());
+    assertEquals(this.ga.getEntries(this.fgi_stranded.chromosome, 1, 130),
+        ga2.getEntries(this.fgi_stranded.chromosome, 1, 130));
+
+    // Freezing after each entry releases and rebuilds the entries
+    final GenomicArray<String> ga3 = new GenomicArray<>();
+    for (int i = 0; i < ivs.length; i++) {
+      ga3.addEntry(this.fgi_stranded.iv(ivs[i][0], ivs[i][1]), "e" + i);
+      ga3.freeze();
+    }
+
+    assertEquals(this.ga, ga3);
+  }
+
+  /**
+   * Test the binary format of the genomic array.
+   */
+  @Test
+  public void testSaveLoad() throws IOException {
+
+    this.ga.addChromosome("chr2");
+    this.ga.addEntry(this.fgi.iv(10, 50), "a");
+    this.ga.addEntry(this.fgi.iv(30, 80), "b,c");
+    this.ga.addEntry(this.fgi_stranded.iv(5, 20), "\u00e9");
+    this.ga.addEntry(this.fgi_stranded.iv(15, 25), "a");
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    this.ga.save(out);
+
+    final GenomicArray<String> loaded =
+        GenomicArray.load(ByteBuffer.wrap(out.toByteArray()));
+
+    assertEquals(this.ga, loaded);
+    assertEquals(this.ga.getChromosomesNames(), loaded.getChromosomesNames());
+    assertEquals(this.ga.getFeaturesIds(), loaded.getFeaturesIds());
+    assertEquals(this.ga.getEntries("chr1", 1, 100),
+        loaded.getEntries("chr1", 1, 100));
+
+    // Entries can be added to a loaded array, its entries are rebuilt from
+    // the zones
+    this.ga.addEntry(this.fgi.iv(1, 5), "d");
+    loaded.addEntry(this.fgi.iv(1, 5), "d");
+    assertEquals(this.ga, loaded);
+    assertEquals(this.ga.getEntries("chr1", 1, 100),
+        loaded.getEntries("chr1", 1, 100));
+
+    // Invalid content
+    try {
+      GenomicArray.load(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5}));
+      fail();
+    } catch (IOException e) {
+      // Expected exception
+    }
+  }
+
   //
   // /**
   // * Test method for
@@ -0,0 +1,223 @@
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MotifMatcherTest {
+
+  private static final String IUPAC_LETTERS = "ACGTRYSWKMBDHVN";
+
+  /**
+   * Naive search of a motif with mismatches.
+   * @return the position of the end of the first occurrence of the motif or -1
+   */
+  private static int naiveFind(final String motif, final String sequence,
+      final int mismatches) {
+
+    for (int end = motif.length(); end <= sequence.length(); end++) {
+
+      int count = 0;
+      for (int j = 0; j < motif.length(); j++) {
+        if (!naiveMatch(motif.charAt(j),
+            sequence.charAt(end - motif.length() + j))) {
+          count++;
+        }
+      }
+
+      if (count <= mismatches) {
+        return end;
+      }
+    }
+
+    return -1;
+  }
+
+  private static boolean naiveMatch(final char motifLetter, final char c) {
+
+    switch (motifLetter) {
+    case 'N':
+      return true;
+    case 'R':
+      return c == 'A' || c == 'G';
+    case 'Y':
+      return c == 'C' || c == 'T';
+    case 'S':
+      return c == 'C' || c == 'G';
+    case 'W':
+      return c == 'A' || c == 'T';
+    case 'K':
+      return c == 'G' || c == 'T';
+    case 'M':
+      return c == 'A' || c == 'C';
+    case 'B':
+      return c == 'C' || c == 'G' || c == 'T';
+    case 'D':
+      return c == 'A' || c == 'G' || c == 'T';
+    case 'H':
+      return c == 'A' || c == 'C' || c == 'T';
+    case 'V':
+      return c == 'A' || c == 'C' || c == 'G';
+    default:
+      return motifLetter == c;
+    }
+  }
+
+  private static String random(final Random random, final String letters,
+      final int length) {
+
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      sb.append(letters.charAt(random.nextInt(letters.length())));
+    }
+
+    return sb.toString();
+  }
+
+  @Test
+  public void testExactFind() {
+
+    final MotifMatcher matcher =
+        new MotifMatcher(Arrays.asList("AGATCGGAAGAGC", "CTGTCTCTTATA"));
+
+    assertEquals(2, matcher.getMotifs().size());
+    assertEquals(0, matcher.getMismatches());
+
+    assertEquals(-1, matcher.find(""));
+    assertEquals(-1, matcher.find("AGATCGGAAGAG"));
+    assertEquals(0, matcher.find("AGATCGGAAGAGC"));
+    assertEquals(0, matcher.find("TTTTAGATCGGAAGAGCTTT"));
+    assertEquals(1, matcher.find("TTCTGTCTCTTATATTT"));
+    assertEquals(0, matcher.find("agatcggaagagc"));
+
+    // The motif that ends first is returned
+    assertEquals(1, matcher.find("CTGTCTCTTATAGATCGGAAGAGC"));
+    assertTrue(matcher.matches("GGAGATCGGAAGAGCGG"));
+    assertFalse(matcher.matches("GGAGATCGGTAGAGCGG"));
+  }
+
+  @Test
+  public void testIUPAC() {
+
+    final MotifMatcher matcher = new MotifMatcher(Arrays.asList("ARNT"));
+
+    assertEquals(0, matcher.find("AAGT"));
+    assertEquals(0, matcher.find("AGCT"));
+    assertEquals(0, matcher.find("AGNT"));
+    assertEquals(-1, matcher.find("ACGT"));
+    assertEquals(-1, matcher.find("ANGT"));
+
+    // U is handled as T
+    assertEquals(0, new MotifMatcher(Arrays.asList("ACGU")).find("ACGT"));
+  }
+
+  @Test
+  public void testMismatches() {
+
+    final MotifMatcher matcher = new MotifMatcher(Arrays.asList("ACGTACGT"), 2);
+
+    assertEquals(0, matcher.find("ACGTACGT"));
+    assertEquals(0, matcher.find("TCGTACGA"));
+    assertEquals(0, matcher.find("GGTCGTACGAGG"));
+    assertEquals(-1, matcher.find("TCGAACGA"));
+    assertEquals(0, matcher.find("NNGTACGT"));
+    assertEquals(-1, matcher.find("ACGTAC"));
+  }
+
+  @Test
+  public void testRandom() {
+
+    final Random random = new Random(0);
+
+    for (int test = 0; test < 200; test++) {
+
+      final int mismatches = random.nextInt(3);
+      final List<String> motifs = new ArrayList<>();
+      final int motifCount = 1 + random.nextInt(12);
+
+      for (int i = 0; i < motifCount; i++) {
+        motifs.add(random(random, test % 2 == 0 ? "ACGT" : IUPAC_LETTERS,
+            mismatches + 1 + random.nextInt(20)));
+      }
+
+      final MotifMatcher matcher = new MotifMatcher(motifs, mismatches);
+
+      for (int i = 0; i < 50; i++) {
+
+        final String sequence = random(random, "ACGTN", random.nextInt(150));
+
+        int expectedEnd = -1;
+        for (String motif : motifs) {
+          final int end = naiveFind(motif, sequence, mismatches);
+          if (end != -1 && (expectedEnd == -1 || end < expectedEnd)) {
+            expectedEnd = end;
+          }
+        }
+
+        final int index = matcher.find(sequence);
+
+        if (expectedEnd == -1) {
+          assertEquals(-1, index);
+        } else {
+          assertTrue(index != -1);
+          assertEquals(expectedEnd,
+              naiveFind(motifs.get(index), sequence, mismatches));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testLongMotifs() {
+
+    final Random random = new Random(1);
+    final List<String> motifs = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      motifs.add(random(random, "ACGT", MotifMatcher.MAX_MOTIF_LENGTH));
+    }
+
+    final MotifMatcher matcher = new MotifMatcher(motifs, 3);
+
+    for (int i = 0; i < motifs.size(); i++) {
+      final String s = motifs.get(i);
+      final String mutated = "GG" + s.substring(0, 10) + "N" + s.substring(11)
+          + "GG";
+      assertEquals(i, matcher.find(mutated));
+    }
+  }
+
+  @Test
+  public void testInvalidMotifs() {
+
+    final List<List<String>> invalid = Arrays.asList(
+        Collections.<String> emptyList(), Arrays.asList(""),
+        Arrays.asList("ACGXT"), Arrays.asList("AC-GT"),
+        Arrays.asList(random(new Random(0), "ACGT", 65)));
+
+    for (List<String> motifs : invalid) {
+      try {
+        new MotifMatcher(motifs);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // Expected exception
+      }
+    }
+
+    try {
+      new MotifMatcher(Arrays.asList("ACG"), 3);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected exception
+    }
+  }
+
+}
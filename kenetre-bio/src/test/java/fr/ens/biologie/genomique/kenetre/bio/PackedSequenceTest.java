@@ -0,0 +1,215 @@
+package fr.ens.biologie.genomique.kenetre.bio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PackedSequenceTest {
+
+  private static String randomSequence(final Random random, final int length,
+      final boolean ambiguous) {
+
+    final String bases = ambiguous ? "ACGTN" : "ACGT";
+    final StringBuilder sb = new StringBuilder(length);
+
+    for (int i = 0; i < length; i++) {
+      sb.append(bases.charAt(random.nextInt(bases.length())));
+    }
+
+    return sb.toString();
+  }
+
+  @Test
+  public void testValueOf() {
+
+    assertEquals("", PackedSequence.valueOf("").toString());
+    assertEquals(0, PackedSequence.valueOf("").length());
+    assertEquals("ACGTN", PackedSequence.valueOf("acgtn").toString());
+    assertEquals("ANGTN", PackedSequence.valueOf("ARGTX").toString());
+
+    final Random random = new Random(1);
+    for (int len = 0; len < 200; len++) {
+
+      final String s = randomSequence(random, len, len % 2 == 0);
+      final PackedSequence ps = PackedSequence.valueOf(s);
+
+      assertEquals(len, ps.length());
+      assertEquals(s, ps.toString());
+      assertEquals(ps, PackedSequence
+          .valueOf(s.getBytes(StandardCharsets.US_ASCII), 0, len));
+    }
+
+    final byte[] bytes = "xxACGTxx".getBytes(StandardCharsets.US_ASCII);
+    assertEquals("ACGT", PackedSequence.valueOf(bytes, 2, 4).toString());
+
+    try {
+      PackedSequence.valueOf((String) null);
+      fail();
+    } catch (NullPointerException e) {
+      assertTrue(true);
+    }
+  }
+
+  @Test
+  public void testCharAt() {
+
+    final PackedSequence ps = PackedSequence.valueOf("ACGTN");
+    assertEquals('A', ps.charAt(0));
+    assertEquals('T', ps.charAt(3));
+    assertEquals('N', ps.charAt(4));
+    assertFalse(ps.isAmbiguous(3));
+    assertTrue(ps.isAmbiguous(4));
+    assertEquals(1, ps.ambiguousCount());
+
+    try {
+      ps.charAt(5);
+      fail();
+    } catch (StringIndexOutOfBoundsException e) {
+      assertTrue(true);
+    }
+  }
+
+  @Test
+  public void testSequenceConversion() {
+
+    final Sequence s = new Sequence("toto", "ATGCATGC");
+    final PackedSequence ps = s.toPackedSequence();
+
+    assertEquals("ATGCATGC", ps.toString());
+    assertEquals(s, ps.toSequence("toto"));
+    assertEquals(0, new Sequence().toPackedSequence().length());
+  }
+
+  @Test
+  public void testGCPercent() {
+
+    final Random random = new Random(2);
+    for (int len = 1; len < 200; len++) {
+
+      final String s = randomSequence(random, len, true);
+      final PackedSequence ps = PackedSequence.valueOf(s);
+
+      assertEquals(new Sequence("s", s).getGCPercent(), ps.getGCPercent(),
+          0.0);
+      assertEquals(ps.reverseComplement().gcCount(), ps.gcCount());
+    }
+  }
+
+  @Test
+  public void testReverseComplement() {
+
+    assertEquals("", PackedSequence.valueOf("").reverseComplement().toString());
+    assertEquals("NACGT",
+        PackedSequence.valueOf("ACGTN").reverseComplement().toString());
+
+    final Random random = new Random(3);
+    for (int len = 0; len < 300; len++) {
+
+      final String s = randomSequence(random, len, len % 3 == 0);
+      final PackedSequence ps = PackedSequence.valueOf(s);
+      final PackedSequence rc = ps.reverseComplement();
+
+      assertEquals(
+          Sequence.reverseComplement(s, Alphabets.AMBIGUOUS_DNA_ALPHABET),
+          rc.toString());
+      assertEquals(ps, rc.reverseComplement());
+      assertEquals(PackedSequence.valueOf(rc.toString()), rc);
+    }
+  }
+
+  @Test
+  public void testKmers() {
+
+    final PackedSequence ps = PackedSequence.valueOf("ACGTNACGT");
+
+    assertEquals(0b00011011L, ps.getKmer(0, 4));
+    assertEquals(-1L, ps.getKmer(1, 4));
+    assertEquals(0b00011011L, ps.getKmer(5, 4));
+
+    final Random random = new Random(4);
+    final String s = randomSequence(random, 500, true);
+    final PackedSequence rps = PackedSequence.valueOf(s);
+
+    for (int k : new int[] {1, 5, 16, 31}) {
+
+      final long[] kmers = rps.getKmers(k);
+      assertEquals(s.length() - k + 1, kmers.length);
+
+      for (int i = 0; i < kmers.length; i++) {
+        assertEquals(rps.getKmer(i, k), kmers[i]);
+      }
+    }
+
+    assertArrayEquals(new long[0], PackedSequence.valueOf("AC").getKmers(3));
+
+    try {
+      ps.getKmer(0, 32);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertTrue(true);
+    }
+  }
+
+  @Test
+  public void testIndexOfAndCount() {
+
+    final Random random = new Random(5);
+    final String s = randomSequence(random, 2000, true);
+    final PackedSequence ps = PackedSequence.valueOf(s);
+
+    for (int i = 0; i < 200; i++) {
+
+      final int start = random.nextInt(s.length() - 100);
+      final int len = 1 + random.nextInt(i % 2 == 0 ? 8 : 80);
+      final String query = s.substring(start, start + len);
+      final PackedSequence pq = PackedSequence.valueOf(query);
+
+      assertEquals(s.indexOf(query), ps.indexOf(pq));
+      assertEquals(s.indexOf(query, start), ps.indexOf(pq, start));
+      assertEquals(new Sequence("s", s).countSequence(query),
+          ps.countSequence(pq));
+    }
+
+    assertEquals(-1, ps.indexOf(PackedSequence.valueOf(s + "A")));
+    assertEquals(0, ps.countSequence(PackedSequence.valueOf("")));
+  }
+
+  @Test
+  public void testSubSequence() {
+
+    final Random random = new Random(6);
+    final String s = randomSequence(random, 300, true);
+    final PackedSequence ps = PackedSequence.valueOf(s);
+
+    for (int i = 0; i < 200; i++) {
+
+      final int start = random.nextInt(s.length());
+      final int end = start + random.nextInt(s.length() - start + 1);
+
+      assertEquals(PackedSequence.valueOf(s.substring(start, end)),
+          ps.subSequence(start, end));
+    }
+  }
+
+  @Test
+  public void testEquals() {
+
+    final PackedSequence ps1 = PackedSequence.valueOf("ACGTN");
+    final PackedSequence ps2 = PackedSequence.valueOf("acgtx");
+    final PackedSequence ps3 = PackedSequence.valueOf("ACGTA");
+
+    assertEquals(ps1, ps2);
+    assertEquals(ps1.hashCode(), ps2.hashCode());
+    assertNotEquals(ps1, ps3);
+    assertNotEquals(ps1, PackedSequence.valueOf("ACGT"));
+  }
+
+}
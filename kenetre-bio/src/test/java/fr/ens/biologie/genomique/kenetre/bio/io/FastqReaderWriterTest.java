@@ -2,7 +2,10 @@ package fr.ens.biologie.genomique.kenetre.bio.io;
 
 import static fr.ens.biologie.genomique.kenetre.util.StringUtils.md5DigestToString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -10,9 +13,12 @@ import java.security.DigestInputStream;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
 import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 
 public class FastqReaderWriterTest {
@@ -24,6 +30,52 @@ public class FastqReaderWriterTest {
     testFile("/alexander_PC_20161027_R9-4_1D_template.fastq");
   }
 
+  @Test
+  public void testSmallBuffer() throws IOException, BadBioEntryException {
+
+    final String content = "@read1 1:N:0\r\nACGTN\r\n+\r\nIIII#\r\n"
+        + "@read2\nGGCCAATT\n+read2\n!!!!IIII";
+
+    final List<ReadSequence> reads = new ArrayList<>();
+
+    try (FastqReader reader = new FastqReader(
+        new ByteArrayInputStream(content.getBytes(BioCharsets.FASTQ_CHARSET)),
+        4)) {
+
+      assertTrue(reader.hasNext());
+      assertEquals(5, reader.getSequenceLength());
+      assertEquals('A',
+          reader.getBuffer()[reader.getSequenceOffset()]);
+      reads.add(reader.next());
+
+      assertTrue(reader.hasNext());
+      assertEquals(5, reader.getNameLength());
+      assertEquals(8, reader.getQualityLength());
+      reads.add(reader.next());
+
+      assertFalse(reader.hasNext());
+      reader.throwException();
+    }
+
+    assertEquals(new ReadSequence("read1 1:N:0", "ACGTN", "IIII#"),
+        reads.get(0));
+    assertEquals(new ReadSequence("read2", "GGCCAATT", "!!!!IIII"),
+        reads.get(1));
+  }
+
+  @Test(expected = BadBioEntryException.class)
+  public void testInvalidEntry() throws IOException, BadBioEntryException {
+
+    final String content = "@read1\nACGT\n-\nIIII\n";
+
+    try (FastqReader reader = new FastqReader(new ByteArrayInputStream(
+        content.getBytes(BioCharsets.FASTQ_CHARSET)))) {
+
+      assertFalse(reader.hasNext());
+      reader.throwException();
+    }
+  }
+
   private void testFile(final String resourcePath)
       throws NoSuchAlgorithmException, IOException {
 
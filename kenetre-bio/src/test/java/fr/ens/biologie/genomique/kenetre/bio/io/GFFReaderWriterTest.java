@@ -2,7 +2,10 @@ package fr.ens.biologie.genomique.kenetre.bio.io;
 
 import static fr.ens.biologie.genomique.kenetre.util.StringUtils.md5DigestToString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -10,9 +13,12 @@ import java.security.DigestInputStream;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
 import fr.ens.biologie.genomique.kenetre.bio.GFFEntry;
 
 public class GFFReaderWriterTest {
@@ -23,6 +29,72 @@ public class GFFReaderWriterTest {
     testFile("/example.gff3");
   }
 
+  @Test
+  public void testParallelRead() throws IOException, BadBioEntryException {
+
+    final StringBuilder sb = new StringBuilder();
+    sb.append("##gff-version 3\n");
+    for (int i = 0; i < 10000; i++) {
+
+      if (i % 1000 == 0) {
+        sb.append("# comment\n##key value" + i + "\n###\n");
+      }
+
+      sb.append("chr"
+          + (i % 3) + "\ttest\texon\t" + (i + 1) + "\t" + (i + 100)
+          + "\t.\t+\t.\tID=e" + i + ";Parent=g" + (i / 10) + "\n");
+    }
+    sb.append("##FASTA\n>chr1\nACGT\n");
+
+    final byte[] data = sb.toString().getBytes(BioCharsets.GFF_CHARSET);
+
+    final List<GFFEntry> expected = new ArrayList<>();
+    final List<GFFEntry> entries = new ArrayList<>();
+
+    try (GFFReader reader = new GFFReader(new ByteArrayInputStream(data))) {
+      for (GFFEntry e : reader) {
+        expected.add(e);
+      }
+      reader.throwException();
+      assertTrue(reader.isFastaSectionFound());
+    }
+
+    try (GFFReader reader =
+        new ParallelGFFReader(new ByteArrayInputStream(data), false, 3)) {
+      for (GFFEntry e : reader) {
+        entries.add(e);
+      }
+      reader.throwException();
+      assertTrue(reader.isFastaSectionFound());
+    }
+
+    assertEquals(10000, entries.size());
+    assertEquals(expected, entries);
+
+    // Invalid entry
+    final String invalid = sb.toString().replace("\t5000\t5099\t", "\t");
+    entries.clear();
+
+    try (GFFReader reader = new ParallelGFFReader(
+        new ByteArrayInputStream(invalid.getBytes(BioCharsets.GFF_CHARSET)),
+        false, 3)) {
+
+      for (GFFEntry e : reader) {
+        entries.add(e);
+      }
+
+      assertEquals(4999, entries.size());
+      assertEquals(expected.subList(0, 4999), entries);
+
+      try {
+        reader.throwException();
+        fail();
+      } catch (BadBioEntryException e) {
+        // Expected exception
+      }
+    }
+  }
+
   private void testFile(final String resourcePath)
       throws NoSuchAlgorithmException, IOException {
 
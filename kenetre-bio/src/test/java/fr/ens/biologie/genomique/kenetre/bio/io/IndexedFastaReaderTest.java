@@ -0,0 +1,278 @@
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.bio.Alphabets;
+import fr.ens.biologie.genomique.kenetre.bio.BEDEntry;
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
+import fr.ens.biologie.genomique.kenetre.bio.GenomicInterval;
+import fr.ens.biologie.genomique.kenetre.bio.Sequence;
+
+public class IndexedFastaReaderTest {
+
+  private static Map<String, String> randomSequences(final Random random) {
+
+    final Map<String, String> result = new LinkedHashMap<>();
+
+    for (int i = 0; i < 5; i++) {
+
+      final StringBuilder sb = new StringBuilder();
+      final int len = i == 2 ? 0 : random.nextInt(1000);
+      for (int j = 0; j < len; j++) {
+        sb.append("ACGTNacgt".charAt(random.nextInt(9)));
+      }
+      result.put("chr" + i, sb.toString());
+    }
+
+    return result;
+  }
+
+  private static String toFasta(final Map<String, String> sequences,
+      final int width, final String eol) {
+
+    final StringBuilder sb = new StringBuilder();
+
+    for (Map.Entry<String, String> e : sequences.entrySet()) {
+
+      sb.append('>').append(e.getKey()).append(" description").append(eol);
+      final String s = e.getValue();
+      for (int i = 0; i < s.length(); i += width) {
+        sb.append(s, i, Math.min(s.length(), i + width)).append(eol);
+      }
+    }
+
+    return sb.toString();
+  }
+
+  private static File writeFasta(final String content) throws IOException {
+
+    final File file = File.createTempFile("genome-", ".fasta");
+    file.deleteOnExit();
+    FastaIndex.getIndexFile(file).deleteOnExit();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+
+    return file;
+  }
+
+  @Test
+  public void testIndex() throws IOException {
+
+    final String fasta =
+        ">chr1 desc\nACGTACGTAC\nACGTACGTAC\nACG\n>chr2\nAAAA\r\nCC\r\n>chr3\n";
+    final FastaIndex index = FastaIndex
+        .index(new ByteArrayInputStream(fasta.getBytes(StandardCharsets.US_ASCII)));
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    index.save(os);
+
+    assertEquals("chr1\t23\t11\t10\t11\n"
+        + "chr2\t6\t43\t4\t6\n" + "chr3\t0\t59\t0\t0\n",
+        new String(os.toByteArray(), StandardCharsets.US_ASCII));
+
+    // Load the saved index
+    final FastaIndex loaded =
+        FastaIndex.load(new ByteArrayInputStream(os.toByteArray()));
+    assertEquals(Arrays.asList("chr1", "chr2", "chr3"),
+        loaded.getSequenceNames());
+    assertEquals(23, loaded.getSequenceLength("chr1"));
+    assertEquals(-1, loaded.getSequenceLength("chr4"));
+  }
+
+  @Test
+  public void testInvalidFasta() {
+
+    final List<String> invalid = Arrays.asList(">chr1\nACGT\nAC\nACGT\n",
+        ">chr1\nACGT\nACGTA\n", ">chr1\nACGT\n\nACGT\n", "ACGT\n",
+        ">chr1\nACGT\n>chr1\nACGT\n", "> chr1\nACGT\n");
+
+    for (String fasta : invalid) {
+      try {
+        FastaIndex.index(
+            new ByteArrayInputStream(fasta.getBytes(StandardCharsets.US_ASCII)));
+        fail(fasta);
+      } catch (IOException e) {
+        // Expected exception
+      }
+    }
+  }
+
+  @Test
+  public void testGetSubSequence() throws IOException, BadBioEntryException {
+
+    final Random random = new Random(0);
+
+    for (int test = 0; test < 20; test++) {
+
+      final Map<String, String> sequences = randomSequences(random);
+      final File file = writeFasta(toFasta(sequences, 1 + random.nextInt(80),
+          random.nextBoolean() ? "\n" : "\r\n"));
+
+      try (IndexedFastaReader reader = new IndexedFastaReader(file)) {
+
+        assertTrue(FastaIndex.getIndexFile(file).isFile());
+        assertEquals(new ArrayList<>(sequences.keySet()),
+            reader.getSequenceNames());
+
+        for (Map.Entry<String, String> e : sequences.entrySet()) {
+
+          final String s = e.getValue();
+          assertEquals(s.length(), reader.getSequenceLength(e.getKey()));
+          assertEquals(s, reader.getSequence(e.getKey()).getSequence());
+
+          for (int i = 0; i < 50 && s.length() > 0; i++) {
+
+            final int start = 1 + random.nextInt(s.length());
+            final int end = start + random.nextInt(s.length() - start + 1);
+
+            assertEquals(s.substring(start - 1, end),
+                reader.getSubSequence(e.getKey(), start, end));
+            assertEquals(
+                Sequence.reverseComplement(s.substring(start - 1, end),
+                    Alphabets.AMBIGUOUS_DNA_ALPHABET),
+                reader.getSubSequence(
+                    new GenomicInterval(e.getKey(), start, end, '-')));
+
+            final BEDEntry bed = new BEDEntry();
+            bed.parse(e.getKey() + '\t' + (start - 1) + '\t' + end);
+            assertEquals(s.substring(start - 1, end),
+                reader.getSubSequence(bed));
+          }
+        }
+
+        // The index file is used by the next reader
+        try (IndexedFastaReader reader2 = new IndexedFastaReader(file)) {
+          assertEquals(reader.getIndex().toString(),
+              reader2.getIndex().toString());
+        }
+      }
+
+      file.delete();
+      FastaIndex.getIndexFile(file).delete();
+    }
+  }
+
+  @Test
+  public void testInvalidRegion() throws IOException {
+
+    final File file = writeFasta(">chr1\nACGTACGT\nAC\n");
+
+    try (IndexedFastaReader reader = new IndexedFastaReader(file)) {
+
+      assertEquals("", reader.getSubSequence("chr1", 5, 4));
+
+      for (long[] region : new long[][] {{0, 4}, {5, 11}, {5, 3}}) {
+        try {
+          reader.getSubSequence("chr1", region[0], region[1]);
+          fail();
+        } catch (IOException e) {
+          // Expected exception
+        }
+      }
+
+      try {
+        reader.getSubSequence("chr2", 1, 1);
+        fail();
+      } catch (IOException e) {
+        // Expected exception
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentReaders() throws Exception {
+
+    final Random random = new Random(1);
+    final Map<String, String> sequences = randomSequences(random);
+    final File file = writeFasta(toFasta(sequences, 60, "\n"));
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try (IndexedFastaReader reader = new IndexedFastaReader(file)) {
+
+      final List<Future<Boolean>> results = new ArrayList<>();
+
+      for (int t = 0; t < 8; t++) {
+
+        final long seed = t;
+        results.add(executor.submit(() -> {
+
+          final Random r = new Random(seed);
+          for (int i = 0; i < 2000; i++) {
+
+            final String name = "chr" + r.nextInt(sequences.size());
+            final String s = sequences.get(name);
+            if (s.isEmpty()) {
+              continue;
+            }
+
+            final int start = 1 + r.nextInt(s.length());
+            final int end = start + r.nextInt(s.length() - start + 1);
+            if (!s.substring(start - 1, end)
+                .equals(reader.getSubSequence(name, start, end))) {
+              return false;
+            }
+          }
+
+          return true;
+        }));
+      }
+
+      for (Future<Boolean> f : results) {
+        assertTrue(f.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testGenomeDescription() throws Exception {
+
+    final Map<String, String> sequences = randomSequences(new Random(2));
+    final File file = writeFasta(toFasta(sequences, 60, "\n"));
+
+    try (IndexedFastaReader reader = new IndexedFastaReader(file)) {
+
+      final GenomeDescription fromIndex = reader.getGenomeDescription();
+      final GenomeDescription fromFasta =
+          GenomeDescription.createGenomeDescFromFasta(file);
+      final GenomeDescription fromIndexFile = GenomeDescription
+          .createGenomeDescFromFastaIndex(FastaIndex.getIndexFile(file));
+
+      assertEquals(fromFasta.getGenomeName(), fromIndex.getGenomeName());
+      assertEquals(fromFasta.getGenomeName(), fromIndexFile.getGenomeName());
+      assertEquals(fromFasta.getGenomeLength(), fromIndex.getGenomeLength());
+
+      // Empty sequences are not in the description of FASTA files
+      final List<String> names = new ArrayList<>(fromIndex.getSequencesNames());
+      names.remove("chr2");
+      assertEquals(fromFasta.getSequencesNames(), names);
+
+      for (String name : fromFasta.getSequencesNames()) {
+        assertEquals(fromFasta.getSequenceLength(name),
+            fromIndexFile.getSequenceLength(name));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,188 @@
+package fr.ens.biologie.genomique.kenetre.bio.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.bio.CompressedSparseExpressionMatrix;
+import fr.ens.biologie.genomique.kenetre.bio.DenseExpressionMatrix;
+import fr.ens.biologie.genomique.kenetre.bio.ExpressionMatrix;
+
+public class MarketMatrixReaderWriterTest {
+
+  private static final String HEADER =
+      "%%MatrixMarket matrix coordinate real general\n";
+
+  @Test
+  public void testRead() throws IOException {
+
+    final String content = HEADER
+        + "% comment\n" + "\n" + "3 2 4\n" + "1 1 1.5\n" + "3 2 -2\n"
+        + "% another comment\n" + "2 1 1e3\n" + "  1\t2   7  \r\n";
+
+    for (int threads = 1; threads <= 2; threads++) {
+
+      ExpressionMatrix matrix = read(content, threads, null);
+
+      assertTrue(matrix instanceof CompressedSparseExpressionMatrix);
+      assertEquals(3, matrix.getRowCount());
+      assertEquals(2, matrix.getColumnCount());
+      assertEquals(1.5, matrix.getValue("row1", "column1"), 0.0);
+      assertEquals(7.0, matrix.getValue("row1", "column2"), 0.0);
+      assertEquals(1000.0, matrix.getValue("row2", "column1"), 0.0);
+      assertEquals(0.0, matrix.getValue("row2", "column2"), 0.0);
+      assertEquals(-2.0, matrix.getValue("row3", "column2"), 0.0);
+
+      matrix = read(content, threads, new DenseExpressionMatrix());
+      assertTrue(matrix instanceof DenseExpressionMatrix);
+      assertEquals(-2.0, matrix.getValue("row3", "column2"), 0.0);
+    }
+  }
+
+  @Test
+  public void testReadLargeFile() throws IOException {
+
+    final Random random = new Random(7);
+    final int rowCount = 500;
+    final int columnCount = 400;
+    final int entryCount = 200_000;
+
+    ExpressionMatrix expected = new DenseExpressionMatrix();
+    StringBuilder sb = new StringBuilder(HEADER);
+    sb.append(rowCount + " " + columnCount + " " + entryCount + "\n");
+
+    // Column sorted entries, like in Cell Ranger files
+    for (int n = 0; n < entryCount; n++) {
+
+      final int i = random.nextInt(rowCount) + 1;
+      final int j = n * columnCount / entryCount + 1;
+      final double value = random.nextInt(1000) / 8.0;
+
+      sb.append(i + " " + j + " " + value + "\n");
+      expected.setValue("row" + i, "column" + j, value);
+    }
+
+    final String content = sb.toString();
+    assertTrue(content.length() > 2 * 1024 * 1024);
+
+    for (int threads = 1; threads <= 3; threads++) {
+
+      ExpressionMatrix matrix = read(content, threads, null);
+      assertEquals(rowCount, matrix.getRowCount());
+      assertEquals(columnCount, matrix.getColumnCount());
+
+      for (int i = 1; i <= rowCount; i++) {
+        assertEquals(expected.getRowValues("row" + i),
+            matrix.getRowValues("row" + i));
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidFiles() throws IOException {
+
+    assertError("%%MatrixMarket vector coordinate real general\n",
+        "The reader only handle matrix files");
+    assertError(HEADER + "2 2 1\n" + "1 1\n",
+        "3 values are expected line #3: 1 1");
+    assertError(HEADER + "2 2 2\n" + "1 1 1\n" + "1 a 1\n",
+        "Invalid number format line #4: 1 a 1");
+    assertError(HEADER + "%\n" + "2 2 1\n" + "3 1 1\n",
+        "Invalid coordinates line #4: 3 1 1");
+  }
+
+  @Test
+  public void testParseNumbers() {
+
+    final Random random = new Random(11);
+
+    for (int n = 0; n < 10000; n++) {
+
+      final String s;
+      switch (n % 4) {
+      case 0:
+        s = Integer.toString(random.nextInt());
+        break;
+      case 1:
+        s = Double.toString(random.nextDouble() * 1000);
+        break;
+      case 2:
+        s = String.format(Locale.ROOT, "%.3f", random.nextGaussian() * 100);
+        break;
+      default:
+        s = Double.toString(random.nextGaussian() * 1e-10);
+        break;
+      }
+
+      final byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+      assertEquals(s, Double.parseDouble(s),
+          MarketMatrixLoader.parseDouble(bytes, 0, bytes.length), 0.0);
+
+      if (n % 4 == 0) {
+        assertEquals(Integer.parseInt(s),
+            MarketMatrixLoader.parseInt(bytes, 0, bytes.length));
+      }
+    }
+  }
+
+  @Test
+  public void testWriteRead() throws IOException {
+
+    ExpressionMatrix matrix = new DenseExpressionMatrix();
+    matrix.addColumns("column1", "column2");
+    matrix.addRows("row1", "row2");
+    matrix.setValue("row1", "column2", 2.5);
+    matrix.setValue("row2", "column1", 3);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (MarketMatrixExpressionMatrixWriter writer =
+        new MarketMatrixExpressionMatrixWriter(out)) {
+      writer.write(matrix);
+    }
+
+    final String content =
+        new String(out.toByteArray(), StandardCharsets.UTF_8);
+    assertTrue(content.startsWith(HEADER));
+
+    ExpressionMatrix result = read(content, 2, null);
+    assertEquals(2.5, result.getValue("row1", "column2"), 0.0);
+    assertEquals(3.0, result.getValue("row2", "column1"), 0.0);
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static ExpressionMatrix read(final String content, final int threads,
+      final ExpressionMatrix matrix) throws IOException {
+
+    try (MarketMatrixExpressionMatrixReader reader =
+        new MarketMatrixExpressionMatrixReader(new ByteArrayInputStream(
+            content.getBytes(StandardCharsets.UTF_8)))) {
+
+      reader.setThreads(threads);
+
+      return matrix == null ? reader.read() : reader.read(matrix);
+    }
+  }
+
+  private static void assertError(final String content, final String message) {
+
+    try {
+      read(content, 2, null);
+      fail();
+    } catch (IOException e) {
+      assertEquals(message, e.getMessage());
+    }
+  }
+
+}
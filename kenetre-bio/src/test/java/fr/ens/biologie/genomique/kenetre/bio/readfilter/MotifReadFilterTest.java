@@ -0,0 +1,105 @@
+package fr.ens.biologie.genomique.kenetre.bio.readfilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+
+public class MotifReadFilterTest {
+
+  @Test
+  public void testForbiddenMotifs() throws KenetreException {
+
+    final ReadFilter filter = new MotifReadFilter();
+    filter.setParameter("forbidden.motifs",
+        "truseq:AGATCGGAAGAGC, nextera:CTGTCTCTTATA");
+    filter.init();
+
+    assertFalse(filter.accept(null));
+
+    assertTrue(filter.accept(new ReadSequence("read1", "ACGTACGTACGT", "")));
+    assertNull(filter.getRejectionDetail());
+
+    assertFalse(filter
+        .accept(new ReadSequence("read2", "ACGTAGATCGGAAGAGCACG", "")));
+    assertEquals("truseq", filter.getRejectionDetail());
+
+    assertFalse(
+        filter.accept(new ReadSequence("read3", "ACGTCTGTCTCTTATAACG", "")));
+    assertEquals("nextera", filter.getRejectionDetail());
+
+    // One mismatch
+    assertTrue(
+        filter.accept(new ReadSequence("read4", "ACGTCTGTCTGTTATAACG", "")));
+    assertNull(filter.getRejectionDetail());
+  }
+
+  @Test
+  public void testMismatches() throws KenetreException {
+
+    final ReadFilter filter = new MotifReadFilter();
+    filter.setParameter("forbidden.motifs", "CTGTCTCTTATA");
+    filter.setParameter("mismatches", "1");
+    filter.init();
+
+    assertFalse(
+        filter.accept(new ReadSequence("read1", "ACGTCTGTCTGTTATAACG", "")));
+    assertEquals("CTGTCTCTTATA", filter.getRejectionDetail());
+    assertTrue(
+        filter.accept(new ReadSequence("read2", "ACGTCTGACTGTTATAACG", "")));
+  }
+
+  @Test
+  public void testAllowedMotifs() throws KenetreException {
+
+    final ReadFilter filter = new MotifReadFilter();
+    filter.setParameter("allowed.motifs", "GGGRN,TTTT");
+    filter.init();
+
+    assertTrue(filter.accept(new ReadSequence("read1", "AGGGATC", "")));
+    assertTrue(filter.accept(new ReadSequence("read2", "ATTTTC", "")));
+    assertFalse(filter.accept(new ReadSequence("read3", "AGGGCTC", "")));
+    assertNull(filter.getRejectionDetail());
+  }
+
+  @Test
+  public void testInvalidParameters() throws KenetreException {
+
+    try {
+      new MotifReadFilter().init();
+      fail();
+    } catch (KenetreException e) {
+      // Expected exception
+    }
+
+    try {
+      new MotifReadFilter().setParameter("mismatches", "-1");
+      fail();
+    } catch (KenetreException e) {
+      // Expected exception
+    }
+
+    try {
+      new MotifReadFilter().setParameter("forbidden.motifs", "name:");
+      fail();
+    } catch (KenetreException e) {
+      // Expected exception
+    }
+
+    try {
+      final ReadFilter filter = new MotifReadFilter();
+      filter.setParameter("forbidden.motifs", "ACGZ");
+      filter.init();
+      fail();
+    } catch (KenetreException e) {
+      // Expected exception
+    }
+  }
+
+}
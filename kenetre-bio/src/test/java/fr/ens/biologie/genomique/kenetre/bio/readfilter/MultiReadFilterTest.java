@@ -0,0 +1,270 @@
+package fr.ens.biologie.genomique.kenetre.bio.readfilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
+import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+
+public class MultiReadFilterTest {
+
+  private static final String GROUP = "group";
+
+  private static ReadFilter newFilter(final ReadFilter filter,
+      final String arguments) throws KenetreException {
+
+    filter.setParameter("arguments", arguments);
+    filter.init();
+
+    return filter;
+  }
+
+  private static List<ReadFilter> newTrimmers() throws KenetreException {
+
+    return Arrays.asList(newFilter(new HeadCropTrimmerReadFilter(), "2"),
+        newFilter(new LeadingTrimmerReadFilter(), "20"),
+        newFilter(new TrailingTrimmerReadFilter(), "20"),
+        newFilter(new SlidingWindowTrimmerReadFilter(), "4:25"),
+        newFilter(new CropTrimmerReadFilter(), "30"));
+  }
+
+  private static ReadSequence randomRead(final Random random, final int i) {
+
+    final int len = random.nextInt(50);
+    final StringBuilder sequence = new StringBuilder();
+    final StringBuilder quality = new StringBuilder();
+
+    for (int j = 0; j < len; j++) {
+      sequence.append("ATGC".charAt(random.nextInt(4)));
+      quality.append((char) ('!' + random.nextInt(41)));
+    }
+
+    return new ReadSequence("read" + i, sequence.toString(),
+        quality.toString());
+  }
+
+  private static long rejectedCount(final LocalReporter reporter,
+      final String filterName) {
+
+    return Math.max(0, reporter.getCounterValue(GROUP,
+        "reads rejected by " + filterName + " filter"));
+  }
+
+  @Test
+  public void testTrimmerChain() throws KenetreException {
+
+    final List<ReadFilter> trimmers = newTrimmers();
+    final LocalReporter reporter = new LocalReporter();
+    final MultiReadFilter filter =
+        new MultiReadFilter(reporter, GROUP, newTrimmers());
+    final Random random = new Random(1);
+
+    final List<String> rejections = new ArrayList<>();
+
+    for (int i = 0; i < 10000; i++) {
+
+      final ReadSequence read = randomRead(random, i);
+      final ReadSequence expected = new ReadSequence(read.getName(),
+          read.getSequence(), read.getQuality());
+
+      // Apply the trimmers one by one
+      boolean expectedResult = true;
+      for (ReadFilter rf : trimmers) {
+        if (!rf.accept(expected)) {
+          expectedResult = false;
+          rejections.add(rf.getName());
+          break;
+        }
+      }
+
+      assertEquals(expectedResult, filter.accept(read));
+      if (expectedResult) {
+        assertEquals(expected.getSequence(), read.getSequence());
+        assertEquals(expected.getQuality(), read.getQuality());
+      }
+    }
+
+    for (ReadFilter rf : trimmers) {
+      assertEquals(rejections.stream().filter(rf.getName()::equals).count(),
+          rejectedCount(reporter, rf.getName()));
+    }
+  }
+
+  @Test
+  public void testPairedTrimmerChain() throws KenetreException {
+
+    final LocalReporter reporter = new LocalReporter();
+    final MultiReadFilter filter = new MultiReadFilter(reporter, GROUP,
+        Arrays.asList(newFilter(new LeadingTrimmerReadFilter(), "30"),
+            newFilter(new CropTrimmerReadFilter(), "2")));
+
+    ReadSequence read1 = new ReadSequence("read1", "ATGC", "+I?I");
+    ReadSequence read2 = new ReadSequence("read2", "ATGC", "I+II");
+    assertTrue(filter.accept(read1, read2));
+    assertEquals("TG", read1.getSequence());
+    assertEquals("I?", read1.getQuality());
+    assertEquals("AT", read2.getSequence());
+    assertEquals("I+", read2.getQuality());
+
+    read1 = new ReadSequence("read1", "ATGC", "IIII");
+    read2 = new ReadSequence("read2", "ATGC", "++++");
+    assertFalse(filter.accept(read1, read2));
+    assertEquals(1, rejectedCount(reporter, "leading"));
+    assertFalse(filter.accept(null, read2));
+  }
+
+  /**
+   * A commutative filter that accepts all the reads after a costly
+   * computation.
+   */
+  private static class CostlyReadFilter extends AbstractReadFilter {
+
+    private double sink;
+
+    @Override
+    public boolean accept(final ReadSequence read) {
+
+      for (int i = 0; i < 2000; i++) {
+        this.sink += Math.sqrt(i + read.length());
+      }
+
+      return this.sink >= 0;
+    }
+
+    @Override
+    public boolean isCommutative() {
+      return true;
+    }
+
+    @Override
+    public String getName() {
+      return "costly";
+    }
+
+    @Override
+    public String getDescription() {
+      return "Costly filter";
+    }
+  }
+
+  @Test
+  public void testAdaptiveOrdering() throws KenetreException {
+
+    final LengthReadFilter lengthFilter = new LengthReadFilter();
+    lengthFilter.setParameter("minimal.length.threshold", "25");
+    lengthFilter.init();
+
+    final LocalReporter reporter = new LocalReporter();
+    final MultiReadFilter filter = new MultiReadFilter(reporter, GROUP,
+        Arrays.asList(newFilter(new CropTrimmerReadFilter(), "40"),
+            new CostlyReadFilter(), lengthFilter,
+            newFilter(new LeadingTrimmerReadFilter(), "0")));
+    filter.setAdaptiveOrdering(true);
+
+    assertEquals(Arrays.asList("crop", "costly", "length", "leading"),
+        filter.getExecutionOrder());
+
+    final Random random = new Random(2);
+    int rejected = 0;
+
+    for (int i = 0; i < 20000; i++) {
+      if (!filter.accept(randomRead(random, i))) {
+        rejected++;
+      }
+    }
+
+    // Only the commutative filters has been reordered
+    assertEquals(Arrays.asList("crop", "length", "costly", "leading"),
+        filter.getExecutionOrder());
+    assertEquals(Arrays.asList("crop", "costly", "length", "leading"),
+        filter.getFilterNames());
+
+    assertEquals(rejected, rejectedCount(reporter, "length")
+        + rejectedCount(reporter, "leading") + rejectedCount(reporter, "costly")
+        + rejectedCount(reporter, "crop"));
+    assertEquals(0, rejectedCount(reporter, "costly"));
+  }
+
+  @Test
+  public void testAdaptiveOrderingCounters() throws KenetreException {
+
+    final LocalReporter reporter1 = new LocalReporter();
+    final LocalReporter reporter2 = new LocalReporter();
+    final MultiReadFilter filter1 =
+        new MultiReadFilter(reporter1, GROUP, newRejectingFilters());
+    final MultiReadFilter filter2 =
+        new MultiReadFilter(reporter2, GROUP, newRejectingFilters());
+    filter2.setAdaptiveOrdering(true);
+
+    final Random random1 = new Random(3);
+    final Random random2 = new Random(3);
+
+    for (int i = 0; i < 20000; i++) {
+      assertEquals(filter1.accept(randomRead(random1, i)),
+          filter2.accept(randomRead(random2, i)));
+    }
+
+    // The reads shorter than 10 bases are rejected by the two filters, the
+    // length filter is now called first
+    assertEquals(Arrays.asList("length", "costly"),
+        filter2.getExecutionOrder());
+    assertTrue(rejectedCount(reporter1, "costly") > 0);
+    assertEquals(rejectedCount(reporter1, "costly"),
+        rejectedCount(reporter2, "costly"));
+    assertEquals(rejectedCount(reporter1, "length"),
+        rejectedCount(reporter2, "length"));
+  }
+
+  private static List<ReadFilter> newRejectingFilters()
+      throws KenetreException {
+
+    final LengthReadFilter lengthFilter = new LengthReadFilter();
+    lengthFilter.setParameter("minimal.length.threshold", "25");
+    lengthFilter.init();
+
+    final ReadFilter costlyFilter = new CostlyReadFilter() {
+
+      @Override
+      public boolean accept(final ReadSequence read) {
+        return super.accept(read) && read.length() >= 10;
+      }
+    };
+
+    return Arrays.asList(costlyFilter, lengthFilter);
+  }
+
+  @Test
+  public void testRejectionDetail() throws KenetreException {
+
+    final MotifReadFilter motifFilter = new MotifReadFilter();
+    motifFilter.setParameter("forbidden.motifs",
+        "truseq:AGATCGGAAGAGC,nextera:CTGTCTCTTATA");
+    motifFilter.init();
+
+    final LocalReporter reporter = new LocalReporter();
+    final MultiReadFilter filter =
+        new MultiReadFilter(reporter, GROUP, Arrays.asList(motifFilter));
+
+    assertTrue(filter.accept(new ReadSequence("read1", "ACGTACGT", "")));
+    assertFalse(
+        filter.accept(new ReadSequence("read2", "AAGATCGGAAGAGCA", "")));
+    assertFalse(filter.accept(new ReadSequence("read3", "CTGTCTCTTATA", "")));
+    assertFalse(filter.accept(new ReadSequence("read4", "AGATCGGAAGAGC", "")));
+
+    assertEquals(3, rejectedCount(reporter, "motif"));
+    assertEquals(2, reporter.getCounterValue(GROUP,
+        "reads rejected by motif filter (truseq)"));
+    assertEquals(1, reporter.getCounterValue(GROUP,
+        "reads rejected by motif filter (nextera)"));
+  }
+
+}
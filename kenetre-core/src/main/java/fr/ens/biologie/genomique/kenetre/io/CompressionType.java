@@ -26,6 +26,7 @@ package fr.ens.biologie.genomique.kenetre.io;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -53,6 +54,16 @@ public enum CompressionType {
 
   GZIP("gzip", ".gz"), BZIP2("bzip2", ".bz2"), NONE("", "");
 
+  private static final int BGZF_HEADER_LENGTH = 16;
+  private static final int READ_AHEAD_HEADER_BUFFER_SIZE = 64 * 1024;
+
+  // Each stream creates its own threads, so parallel compression and
+  // decompression are opt-in
+  private static volatile int gzipCompressionThreads = 1;
+  private static volatile int gzipCompressionBlockSize =
+      ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE;
+  private static volatile int decompressionThreads = 1;
+
   private final String contentEncoding;
   private final String extension;
 
@@ -87,6 +98,84 @@ public enum CompressionType {
     return this != NONE;
   }
 
+  /**
+   * Get the number of threads used to compress GZip output streams.
+   * @return the number of threads used to compress GZip output streams
+   */
+  public static int getGZipCompressionThreads() {
+
+    return gzipCompressionThreads;
+  }
+
+  /**
+   * Get the size of the blocks compressed in parallel in GZip output streams.
+   * @return the size of the blocks in bytes
+   */
+  public static int getGZipCompressionBlockSize() {
+
+    return gzipCompressionBlockSize;
+  }
+
+  /**
+   * Get the number of threads used to uncompress BGZF input streams in
+   * read-ahead mode.
+   * @return the number of threads used to uncompress BGZF input streams
+   */
+  public static int getDecompressionThreads() {
+
+    return decompressionThreads;
+  }
+
+  //
+  // Setters
+  //
+
+  /**
+   * Set the number of threads used to compress GZip output streams. If the
+   * number of threads is 1, the default, the standard
+   * java.util.zip.GZIPOutputStream is used. Each output stream creates its own
+   * threads.
+   * @param threads the number of threads
+   */
+  public static void setGZipCompressionThreads(final int threads) {
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "Invalid number of threads: " + threads);
+    }
+
+    gzipCompressionThreads = threads;
+  }
+
+  /**
+   * Set the size of the blocks compressed in parallel in GZip output streams.
+   * @param blockSize the size of the blocks in bytes
+   */
+  public static void setGZipCompressionBlockSize(final int blockSize) {
+
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("Invalid block size: " + blockSize);
+    }
+
+    gzipCompressionBlockSize = blockSize;
+  }
+
+  /**
+   * Set the number of threads used to uncompress BGZF input streams in
+   * read-ahead mode. By default, one thread is used. Each input stream creates
+   * its own threads.
+   * @param threads the number of threads
+   */
+  public static void setDecompressionThreads(final int threads) {
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "Invalid number of threads: " + threads);
+    }
+
+    decompressionThreads = threads;
+  }
+
   //
   // Other methods
   //
@@ -122,6 +211,52 @@ public enum CompressionType {
 
   }
 
+  /**
+   * Get the compression input stream required by a content encoding. In
+   * read-ahead mode, the data is uncompressed in a background thread while the
+   * caller parses the previous data. BGZF streams are also uncompressed on
+   * several threads in this mode.
+   * @param is the input stream
+   * @param readAhead true to enable the read-ahead mode
+   * @return an input stream
+   * @throws IOException if an error occurs while creating the input stream
+   */
+  public InputStream createInputStream(final InputStream is,
+      final boolean readAhead) throws IOException {
+
+    if (!readAhead || is == null) {
+      return createInputStream(is);
+    }
+
+    switch (this) {
+
+    case GZIP:
+
+      // Read the beginning of the stream to detect BGZF data
+      final BufferedInputStream bis =
+          new BufferedInputStream(is, READ_AHEAD_HEADER_BUFFER_SIZE);
+      final byte[] header = new byte[BGZF_HEADER_LENGTH];
+      bis.mark(BGZF_HEADER_LENGTH);
+      final int n = bis.readNBytes(header, 0, BGZF_HEADER_LENGTH);
+      bis.reset();
+
+      if (ParallelBGZFInputStream.isBGZFHeader(header, n)) {
+        return new ParallelBGZFInputStream(bis, decompressionThreads);
+      }
+
+      return new ReadAheadInputStream(createGZipInputStream(bis));
+
+    case BZIP2:
+      return new ReadAheadInputStream(createBZip2InputStream(is));
+
+    case NONE:
+      return is;
+
+    default:
+      return null;
+    }
+  }
+
   /**
    * Get the compression output stream required by a content encoding.
    * @param os the output stream
@@ -289,7 +424,27 @@ public enum CompressionType {
   public static OutputStream createGZipOutputStream(final OutputStream os)
       throws IOException {
 
-    return new GZIPOutputStream(os);
+    return createGZipOutputStream(os, gzipCompressionThreads,
+        gzipCompressionBlockSize);
+  }
+
+  /**
+   * Create a GZip output stream. If more than one thread is requested, the
+   * data is compressed in parallel as concatenated GZip members.
+   * @param os the output stream to compress
+   * @param threads number of compression threads
+   * @param blockSize size of the blocks compressed in parallel
+   * @return a compressed output stream
+   * @throws IOException if an error occurs while creating the output stream
+   */
+  public static OutputStream createGZipOutputStream(final OutputStream os,
+      final int threads, final int blockSize) throws IOException {
+
+    if (threads <= 1) {
+      return new GZIPOutputStream(os);
+    }
+
+    return new ParallelGZIPOutputStream(os, threads, blockSize);
   }
 
   /**
@@ -486,6 +641,34 @@ public enum CompressionType {
    */
   public static InputStream open(File file) throws IOException {
 
+    return open(file, false);
+  }
+
+  /**
+   * Create an uncompressed InputStream for a file.
+   * @param path file to read
+   * @param readAhead true to uncompress data in background threads
+   * @return an uncompressed InputStream
+   * @throws IOException if error occurs while creating the InputStream
+   */
+  public static InputStream open(Path path, boolean readAhead)
+      throws IOException {
+
+    requireNonNull(path);
+
+    return open(path.toFile(), readAhead);
+  }
+
+  /**
+   * Create an uncompressed InputStream for a file.
+   * @param file file to read
+   * @param readAhead true to uncompress data in background threads
+   * @return an uncompressed InputStream
+   * @throws IOException if error occurs while creating the InputStream
+   */
+  public static InputStream open(File file, boolean readAhead)
+      throws IOException {
+
     requireNonNull(file);
 
     CompressionType ct = getCompressionTypeByFile(file);
@@ -495,7 +678,7 @@ public enum CompressionType {
           "Unable to determine compression of the file: " + file);
     }
 
-    return ct.createInputStream(new FileInputStream(file));
+    return ct.createInputStream(new FileInputStream(file), readAhead);
   }
 
   /**
@@ -0,0 +1,350 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * This class define an input stream that uncompress BGZF data (blocked GZip
+ * format used by BAM and tabix files) in parallel. As the size of each block
+ * is stored in its header, the compressed blocks are read in the caller thread
+ * and inflated on a pool of threads.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class ParallelBGZFInputStream extends InputStream {
+
+  private static final int HEADER_LENGTH = 12;
+  private static final int TRAILER_LENGTH = 8;
+
+  private final InputStream in;
+  private final ExecutorService executor;
+  private final int maxPendingBlocks;
+  private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+  private byte[] current;
+  private int pos;
+  private boolean inputEnd;
+  private boolean closed;
+
+  //
+  // InputStream methods
+  //
+
+  @Override
+  public int read() throws IOException {
+
+    if (!ensureData()) {
+      return -1;
+    }
+
+    return this.current[this.pos++] & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len)
+      throws IOException {
+
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    if (len == 0) {
+      return 0;
+    }
+
+    if (!ensureData()) {
+      return -1;
+    }
+
+    final int n = Math.min(len, this.current.length - this.pos);
+    System.arraycopy(this.current, this.pos, b, off, n);
+    this.pos += n;
+
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+
+    if (this.closed || this.current == null) {
+      return 0;
+    }
+
+    return this.current.length - this.pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+
+    this.closed = true;
+    this.executor.shutdownNow();
+    this.in.close();
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Get the next uncompressed block if the current block has been fully read.
+   * @return false if the end of the stream has been reached
+   * @throws IOException if an error occurs while reading data
+   */
+  private boolean ensureData() throws IOException {
+
+    if (this.closed) {
+      throw new IOException("Stream closed");
+    }
+
+    while (this.current == null || this.pos == this.current.length) {
+
+      submitBlocks();
+
+      if (this.pendingBlocks.isEmpty()) {
+        return false;
+      }
+
+      try {
+        this.current = this.pendingBlocks.removeFirst().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while uncompressing data", e);
+      } catch (ExecutionException e) {
+        throw new IOException("Error while uncompressing data", e.getCause());
+      }
+      this.pos = 0;
+    }
+
+    return true;
+  }
+
+  /**
+   * Read compressed blocks and submit them to the thread pool.
+   * @throws IOException if an error occurs while reading data
+   */
+  private void submitBlocks() throws IOException {
+
+    while (!this.inputEnd && this.pendingBlocks.size() < this.maxPendingBlocks) {
+
+      final byte[] block = readBlock();
+
+      if (block == null) {
+        this.inputEnd = true;
+      } else {
+        this.pendingBlocks.add(this.executor.submit(() -> inflate(block)));
+      }
+    }
+  }
+
+  /**
+   * Read a compressed block.
+   * @return an array with the compressed block or null if the end of the
+   *         stream has been reached
+   * @throws IOException if an error occurs while reading data
+   */
+  private byte[] readBlock() throws IOException {
+
+    final byte[] header = new byte[HEADER_LENGTH];
+    final int n = this.in.readNBytes(header, 0, HEADER_LENGTH);
+
+    if (n == 0) {
+      return null;
+    }
+
+    if (n < HEADER_LENGTH) {
+      throw new EOFException("Unexpected end of BGZF stream");
+    }
+
+    if ((header[0] & 0xff) != 0x1f
+        || (header[1] & 0xff) != 0x8b || (header[3] & 4) == 0) {
+      throw new IOException("Invalid BGZF block header");
+    }
+
+    final int xlen = readShort(header, 10);
+    final byte[] extra = new byte[xlen];
+    if (this.in.readNBytes(extra, 0, xlen) < xlen) {
+      throw new EOFException("Unexpected end of BGZF stream");
+    }
+
+    final int blockSize = blockSize(extra);
+    if (blockSize < HEADER_LENGTH + xlen + TRAILER_LENGTH) {
+      throw new IOException("Invalid BGZF block size: " + blockSize);
+    }
+
+    final byte[] result = new byte[blockSize];
+    System.arraycopy(header, 0, result, 0, HEADER_LENGTH);
+    System.arraycopy(extra, 0, result, HEADER_LENGTH, xlen);
+
+    final int remaining = blockSize - HEADER_LENGTH - xlen;
+    if (this.in.readNBytes(result, HEADER_LENGTH + xlen,
+        remaining) < remaining) {
+      throw new EOFException("Unexpected end of BGZF stream");
+    }
+
+    return result;
+  }
+
+  /**
+   * Inflate a BGZF block.
+   * @param block the compressed block
+   * @return an array with the uncompressed data
+   * @throws IOException if the block is invalid
+   */
+  private static byte[] inflate(final byte[] block) throws IOException {
+
+    final int xlen = readShort(block, 10);
+    final int dataOffset = HEADER_LENGTH + xlen;
+    final int dataLength = block.length - dataOffset - TRAILER_LENGTH;
+    final long expectedCRC = readInt(block, block.length - 8) & 0xffffffffL;
+    final int size = readInt(block, block.length - 4);
+
+    final byte[] result = new byte[size];
+    final Inflater inflater = new Inflater(true);
+
+    try {
+      inflater.setInput(block, dataOffset, dataLength);
+
+      int count = 0;
+      while (count < size) {
+        final int n = inflater.inflate(result, count, size - count);
+        if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+          break;
+        }
+        count += n;
+      }
+
+      if (count != size) {
+        throw new IOException("Invalid BGZF block length");
+      }
+
+    } catch (DataFormatException e) {
+      throw new IOException("Invalid BGZF block: " + e.getMessage(), e);
+    } finally {
+      inflater.end();
+    }
+
+    final CRC32 crc = new CRC32();
+    crc.update(result, 0, size);
+    if (crc.getValue() != expectedCRC) {
+      throw new IOException("Invalid BGZF block CRC");
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the size of a block from the extra field of its header.
+   * @param extra the extra field
+   * @return the size of the block
+   * @throws IOException if no BGZF sub field has been found
+   */
+  private static int blockSize(final byte[] extra) throws IOException {
+
+    int i = 0;
+    while (i + 4 <= extra.length) {
+
+      final int length = readShort(extra, i + 2);
+
+      if (extra[i] == 'B' && extra[i + 1] == 'C' && length == 2) {
+        return readShort(extra, i + 4) + 1;
+      }
+
+      i += 4 + length;
+    }
+
+    throw new IOException("No BGZF block size in GZip header");
+  }
+
+  private static int readShort(final byte[] b, final int off) {
+
+    return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+  }
+
+  private static int readInt(final byte[] b, final int off) {
+
+    return readShort(b, off) | (readShort(b, off + 2) << 16);
+  }
+
+  /**
+   * Test if the header of a GZip stream is a BGZF header.
+   * @param header the first bytes of the stream
+   * @param length number of bytes of the header
+   * @return true if the header is a BGZF header
+   */
+  public static boolean isBGZFHeader(final byte[] header, final int length) {
+
+    return header != null
+        && length >= 16 && (header[0] & 0xff) == 0x1f
+        && (header[1] & 0xff) == 0x8b && (header[2] & 0xff) == 8
+        && (header[3] & 4) != 0 && header[12] == 'B' && header[13] == 'C'
+        && readShort(header, 14) == 2;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param in the input stream to read
+   * @param threads number of threads to use
+   */
+  public ParallelBGZFInputStream(final InputStream in, final int threads) {
+
+    if (in == null) {
+      throw new NullPointerException("The input stream is null");
+    }
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "Invalid number of threads: " + threads);
+    }
+
+    this.in = in;
+    this.maxPendingBlocks = 4 * threads;
+    this.executor = Executors.newFixedThreadPool(threads, r -> {
+      final Thread t = new Thread(r, "bgzf-decompression");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+}
@@ -0,0 +1,361 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * This class define a GZip output stream that compress data in parallel like
+ * pigz. The data are split in independent blocks that are compressed on a pool
+ * of threads. The compressed blocks are written in the input order as
+ * concatenated GZip members, so the output can be read by gunzip and by
+ * java.util.zip.GZIPInputStream.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+
+  /** Default size of the uncompressed blocks. */
+  public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+  private static final int GZIP_MAGIC = 0x8b1f;
+  private static final int DEFLATE_BUFFER_SIZE = 64 * 1024;
+
+  private final OutputStream out;
+  private final ExecutorService executor;
+  private final int blockSize;
+  private final int maxPendingBlocks;
+  private final int level;
+
+  private final Deque<Block> pendingBlocks = new ArrayDeque<>();
+  private final Queue<byte[]> freeBuffers = new ArrayDeque<>();
+  private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+  private byte[] buffer;
+  private int count;
+  private boolean memberWritten;
+  private boolean closed;
+
+  /**
+   * This class define a block of data to compress.
+   */
+  private static final class Block {
+
+    private final byte[] data;
+    private final Future<ByteArrayOutputStream> result;
+
+    private Block(final byte[] data,
+        final Future<ByteArrayOutputStream> result) {
+      this.data = data;
+      this.result = result;
+    }
+  }
+
+  //
+  // OutputStream methods
+  //
+
+  @Override
+  public void write(final int b) throws IOException {
+
+    checkClosed();
+
+    this.buffer[this.count++] = (byte) b;
+
+    if (this.count == this.blockSize) {
+      submitBlock();
+    }
+  }
+
+  @Override
+  public void write(final byte[] b, int off, int len) throws IOException {
+
+    checkClosed();
+
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    while (len > 0) {
+
+      final int n = Math.min(this.blockSize - this.count, len);
+      System.arraycopy(b, off, this.buffer, this.count, n);
+      this.count += n;
+      off += n;
+      len -= n;
+
+      if (this.count == this.blockSize) {
+        submitBlock();
+      }
+    }
+  }
+
+  /**
+   * Write the blocks that have been already compressed. Like
+   * java.util.zip.GZIPOutputStream, the data of the current block are not
+   * flushed.
+   * @throws IOException if an error occurs while writing data
+   */
+  @Override
+  public void flush() throws IOException {
+
+    checkClosed();
+
+    while (!this.pendingBlocks.isEmpty()
+        && this.pendingBlocks.peekFirst().result.isDone()) {
+      writeFirstPendingBlock();
+    }
+
+    this.out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+
+    // The underlying stream is closed even if the pending blocks cannot be
+    // written
+    try (OutputStream out = this.out) {
+      submitBlock();
+
+      while (!this.pendingBlocks.isEmpty()) {
+        writeFirstPendingBlock();
+      }
+
+      // An empty stream must contain at least one GZip member
+      if (!this.memberWritten) {
+        compress(new byte[0], 0).writeTo(out);
+      }
+
+    } finally {
+
+      this.closed = true;
+      this.executor.shutdownNow();
+
+      Deflater deflater;
+      while ((deflater = this.deflaters.poll()) != null) {
+        deflater.end();
+      }
+    }
+  }
+
+  //
+  // Other methods
+  //
+
+  private void checkClosed() throws IOException {
+
+    if (this.closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  /**
+   * Submit the current block to the thread pool.
+   * @throws IOException if an error occurs while writing compressed data
+   */
+  private void submitBlock() throws IOException {
+
+    if (this.count == 0) {
+      return;
+    }
+
+    final byte[] data = this.buffer;
+    final int len = this.count;
+
+    this.pendingBlocks.add(
+        new Block(data, this.executor.submit(() -> compress(data, len))));
+
+    final byte[] newBuffer = this.freeBuffers.poll();
+    this.buffer = newBuffer != null ? newBuffer : new byte[this.blockSize];
+    this.count = 0;
+
+    // Limit the memory used by the pending blocks
+    while (this.pendingBlocks.size() > this.maxPendingBlocks) {
+      writeFirstPendingBlock();
+    }
+  }
+
+  /**
+   * Wait the end of the compression of the first pending block and write it.
+   * @throws IOException if an error occurs while writing compressed data
+   */
+  private void writeFirstPendingBlock() throws IOException {
+
+    final Block block = this.pendingBlocks.removeFirst();
+
+    try {
+      block.result.get().writeTo(this.out);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while compressing data", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Error while compressing data", e.getCause());
+    }
+
+    this.freeBuffers.add(block.data);
+    this.memberWritten = true;
+  }
+
+  /**
+   * Compress a block of data as a GZip member.
+   * @param data data to compress
+   * @param len length of the data to compress
+   * @return a ByteArrayOutputStream with the GZip member
+   */
+  private ByteArrayOutputStream compress(final byte[] data, final int len) {
+
+    Deflater deflater = this.deflaters.poll();
+    if (deflater == null) {
+      deflater = new Deflater(this.level, true);
+    }
+
+    final ByteArrayOutputStream result =
+        new ByteArrayOutputStream(len / 2 + 64);
+
+    // Header
+    writeShort(result, GZIP_MAGIC);
+    result.write(Deflater.DEFLATED);
+    result.write(0);
+    writeInt(result, 0);
+    result.write(0);
+    result.write(0);
+
+    // Compressed data
+    final byte[] buf = new byte[DEFLATE_BUFFER_SIZE];
+    deflater.setInput(data, 0, len);
+    deflater.finish();
+    while (!deflater.finished()) {
+      final int n = deflater.deflate(buf);
+      result.write(buf, 0, n);
+    }
+    deflater.reset();
+    this.deflaters.add(deflater);
+
+    // Trailer
+    final CRC32 crc = new CRC32();
+    crc.update(data, 0, len);
+    writeInt(result, (int) crc.getValue());
+    writeInt(result, len);
+
+    return result;
+  }
+
+  private static void writeShort(final ByteArrayOutputStream out,
+      final int value) {
+
+    out.write(value & 0xff);
+    out.write((value >> 8) & 0xff);
+  }
+
+  private static void writeInt(final ByteArrayOutputStream out,
+      final int value) {
+
+    writeShort(out, value & 0xffff);
+    writeShort(out, (value >> 16) & 0xffff);
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Constructor.
+   * @param out the output stream to compress
+   * @param threads number of compression threads
+   */
+  public ParallelGZIPOutputStream(final OutputStream out, final int threads) {
+
+    this(out, threads, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Constructor.
+   * @param out the output stream to compress
+   * @param threads number of compression threads
+   * @param blockSize size of the uncompressed blocks
+   */
+  public ParallelGZIPOutputStream(final OutputStream out, final int threads,
+      final int blockSize) {
+
+    this(out, threads, blockSize, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Constructor.
+   * @param out the output stream to compress
+   * @param threads number of compression threads
+   * @param blockSize size of the uncompressed blocks
+   * @param level compression level
+   */
+  public ParallelGZIPOutputStream(final OutputStream out, final int threads,
+      final int blockSize, final int level) {
+
+    if (out == null) {
+      throw new NullPointerException("The output stream is null");
+    }
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "Invalid number of threads: " + threads);
+    }
+
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("Invalid block size: " + blockSize);
+    }
+
+    if (level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9)) {
+      throw new IllegalArgumentException(
+          "Invalid compression level: " + level);
+    }
+
+    this.out = out;
+    this.blockSize = blockSize;
+    this.maxPendingBlocks = 2 * threads;
+    this.level = level;
+    this.buffer = new byte[blockSize];
+    this.executor = Executors.newFixedThreadPool(threads, r -> {
+      final Thread t = new Thread(r, "gzip-compression");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+}
@@ -0,0 +1,305 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class define an input stream that read its underlying input stream in
+ * a background thread. The data is stored in a ring of reusable buffers, so
+ * the decompression of a compressed file can be done while the data is parsed
+ * in the caller thread.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class ReadAheadInputStream extends InputStream {
+
+  /** Default number of buffers. */
+  public static final int DEFAULT_BUFFER_COUNT = 4;
+
+  /** Default size of the buffers. */
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  private static final Chunk END_CHUNK = new Chunk(new byte[0]);
+
+  private final InputStream in;
+  private final BlockingQueue<Chunk> filledChunks;
+  private final BlockingQueue<Chunk> freeChunks;
+  private final Thread thread;
+
+  private Chunk current;
+  private int pos;
+  private volatile boolean closed;
+
+  /**
+   * This class define a buffer of the ring.
+   */
+  private static final class Chunk {
+
+    private final byte[] data;
+    private int length;
+    private IOException exception;
+
+    private Chunk(final byte[] data) {
+      this.data = data;
+    }
+  }
+
+  //
+  // InputStream methods
+  //
+
+  @Override
+  public int read() throws IOException {
+
+    if (!ensureData()) {
+      return -1;
+    }
+
+    return this.current.data[this.pos++] & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len)
+      throws IOException {
+
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    if (len == 0) {
+      return 0;
+    }
+
+    if (!ensureData()) {
+      return -1;
+    }
+
+    final int n = Math.min(len, this.current.length - this.pos);
+    System.arraycopy(this.current.data, this.pos, b, off, n);
+    this.pos += n;
+
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+
+    if (this.closed || this.current == null) {
+      return 0;
+    }
+
+    return this.current.length - this.pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+
+    this.closed = true;
+    this.thread.interrupt();
+
+    // The underlying stream cannot be closed while the background thread may
+    // still be reading it
+    boolean interrupted = false;
+    while (this.thread.isAlive()) {
+      try {
+        this.thread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    this.in.close();
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Get the next buffer of data if the current buffer has been fully read.
+   * @return false if the end of the stream has been reached
+   * @throws IOException if an error occurs while reading data
+   */
+  private boolean ensureData() throws IOException {
+
+    if (this.closed) {
+      throw new IOException("Stream closed");
+    }
+
+    if (this.current == END_CHUNK) {
+      return false;
+    }
+
+    if (this.current != null && this.pos < this.current.length) {
+      return true;
+    }
+
+    // Give back the buffer to the reading thread
+    if (this.current != null) {
+      this.freeChunks.add(this.current);
+    }
+
+    try {
+      this.current = this.filledChunks.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading data", e);
+    }
+    this.pos = 0;
+
+    if (this.current.exception != null) {
+      final IOException e = this.current.exception;
+      this.current = END_CHUNK;
+      throw e;
+    }
+
+    return this.current != END_CHUNK;
+  }
+
+  /**
+   * Read data in the background thread.
+   */
+  private void readAhead() {
+
+    try {
+
+      while (!this.closed) {
+
+        final Chunk chunk = this.freeChunks.take();
+
+        try {
+          chunk.length = fill(chunk.data);
+        } catch (IOException e) {
+
+          if (!this.closed) {
+            final Chunk error = new Chunk(new byte[0]);
+            error.exception = e;
+            this.filledChunks.put(error);
+          }
+          return;
+        }
+
+        if (chunk.length > 0) {
+          this.filledChunks.put(chunk);
+        }
+
+        // End of the stream
+        if (chunk.length < chunk.data.length) {
+          this.filledChunks.put(END_CHUNK);
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      // The stream has been closed
+    }
+  }
+
+  /**
+   * Fill a buffer with data.
+   * @param data the buffer to fill
+   * @return the number of bytes read
+   * @throws IOException if an error occurs while reading data
+   */
+  private int fill(final byte[] data) throws IOException {
+
+    int count = 0;
+
+    while (count < data.length) {
+
+      final int n = this.in.read(data, count, data.length - count);
+
+      if (n == -1) {
+        break;
+      }
+
+      count += n;
+    }
+
+    return count;
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Constructor.
+   * @param in the input stream to read
+   */
+  public ReadAheadInputStream(final InputStream in) {
+
+    this(in, DEFAULT_BUFFER_COUNT, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Constructor.
+   * @param in the input stream to read
+   * @param bufferCount number of buffers
+   * @param bufferSize size of the buffers
+   */
+  public ReadAheadInputStream(final InputStream in, final int bufferCount,
+      final int bufferSize) {
+
+    if (in == null) {
+      throw new NullPointerException("The input stream is null");
+    }
+
+    if (bufferCount < 1) {
+      throw new IllegalArgumentException(
+          "Invalid number of buffers: " + bufferCount);
+    }
+
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException(
+          "Invalid buffer size: " + bufferSize);
+    }
+
+    this.in = in;
+
+    // One more slot for the end or the error chunks
+    this.filledChunks = new ArrayBlockingQueue<>(bufferCount + 1);
+    this.freeChunks = new ArrayBlockingQueue<>(bufferCount);
+    for (int i = 0; i < bufferCount; i++) {
+      this.freeChunks.add(new Chunk(new byte[bufferSize]));
+    }
+
+    this.thread = new Thread(this::readAhead, "read-ahead");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+}
@@ -0,0 +1,212 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class define a reporter that can be shared by several threads. Each
+ * counter is a {@link LongAdder}, so threads that increment the same counter
+ * do not contend on a single value. The handles returned by
+ * {@link #getCounter(String, String)} increment the counter without any look
+ * up or allocation.
+ * <p>
+ * As with {@link LocalReporter}, increments lower or equals to 0 are ignored
+ * and a counter only exists once it has been incremented.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class ConcurrentReporter implements Reporter {
+
+  private final Map<String, Map<String, Counter>> map =
+      new ConcurrentHashMap<>();
+
+  /**
+   * This class define a counter of the reporter.
+   */
+  private static final class Counter implements ReporterCounter {
+
+    private final LongAdder value = new LongAdder();
+
+    @Override
+    public void increment(final long amount) {
+
+      if (amount > 0) {
+        this.value.add(amount);
+      }
+    }
+
+    @Override
+    public void increment() {
+
+      this.value.increment();
+    }
+  }
+
+  @Override
+  public void incrCounter(final String counterGroup, final String counter,
+      final long amount) {
+
+    if (counterGroup == null || counter == null || amount <= 0) {
+      return;
+    }
+
+    getOrCreateCounter(counterGroup, counter).value.add(amount);
+  }
+
+  @Override
+  public ReporterCounter getCounter(final String counterGroup,
+      final String counterName) {
+
+    if (counterGroup == null || counterName == null) {
+      throw new NullPointerException(
+          "counterGroup and counterName arguments cannot be null");
+    }
+
+    return getOrCreateCounter(counterGroup, counterName);
+  }
+
+  /**
+   * Get a counter and create it if not exists.
+   * @param counterGroup group of the counter
+   * @param counterName name of the counter
+   * @return the counter
+   */
+  private Counter getOrCreateCounter(final String counterGroup,
+      final String counterName) {
+
+    // Plain look up first, computeIfAbsent() is only used to create the
+    // missing entries
+    Map<String, Counter> group = this.map.get(counterGroup);
+    if (group == null) {
+      group = this.map.computeIfAbsent(counterGroup,
+          k -> new ConcurrentHashMap<>());
+    }
+
+    Counter result = group.get(counterName);
+    if (result == null) {
+      result = group.computeIfAbsent(counterName, k -> new Counter());
+    }
+
+    return result;
+  }
+
+  @Override
+  public long getCounterValue(final String counterGroup, final String counter) {
+
+    if (counterGroup == null || counter == null) {
+      return -1;
+    }
+
+    final Map<String, Counter> group = this.map.get(counterGroup);
+    if (group == null) {
+      return -1;
+    }
+
+    final Counter value = group.get(counter);
+    if (value == null) {
+      return -1;
+    }
+
+    final long result = value.value.sum();
+
+    return result == 0 ? -1 : result;
+  }
+
+  @Override
+  public Set<String> getCounterGroups() {
+
+    final Set<String> result = new TreeSet<>();
+
+    for (Map.Entry<String, Map<String, Counter>> e : this.map.entrySet()) {
+      if (!getCounterNames(e.getKey()).isEmpty()) {
+        result.add(e.getKey());
+      }
+    }
+
+    return Collections.unmodifiableSet(result);
+  }
+
+  @Override
+  public Set<String> getCounterNames(final String group) {
+
+    if (group == null || !this.map.containsKey(group)) {
+      return Collections.emptySet();
+    }
+
+    final Set<String> result = new TreeSet<>();
+
+    for (Map.Entry<String, Counter> e : this.map.get(group).entrySet()) {
+      if (e.getValue().value.sum() > 0) {
+        result.add(e.getKey());
+      }
+    }
+
+    return Collections.unmodifiableSet(result);
+  }
+
+  /**
+   * Create a snapshot of the counters in a LocalReporter.
+   * @return a new LocalReporter object with the values of the counters
+   */
+  public LocalReporter toLocalReporter() {
+
+    final LocalReporter result = new LocalReporter();
+
+    for (Map.Entry<String, Map<String, Counter>> group : this.map
+        .entrySet()) {
+      for (Map.Entry<String, Counter> counter : group.getValue().entrySet()) {
+        result.setCounter(group.getKey(), counter.getKey(),
+            counter.getValue().value.sum());
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the values of the counter of a group.
+   * @param counterGroup counter group
+   * @param header header before counter values
+   * @return a string with all the values of counter of the counter group
+   */
+  public String countersValuesToString(final String counterGroup,
+      final String header) {
+
+    return toLocalReporter().countersValuesToString(counterGroup, header);
+  }
+
+  @Override
+  public String toString() {
+
+    return toLocalReporter().toString();
+  }
+
+}
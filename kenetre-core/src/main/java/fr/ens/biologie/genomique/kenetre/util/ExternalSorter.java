@@ -0,0 +1,512 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class define an external sort of text lines. The lines are sorted in
+ * memory by chunks. When a chunk is full, it is sorted and written as a sorted
+ * run in the temporary directory by a pool of threads, while new lines are
+ * added to the next chunk. The sorted lines are then read using a k-way merge
+ * of the runs and of the last chunk. When there is more runs than the maximal
+ * fan-in of the merge, the oldest runs are first merged together into new runs
+ * to bound the number of files opened at the same time.
+ * <p>
+ * The lines are sorted using the natural order of String, independently of
+ * the locale of the host. The memory used by the sorter is bounded by the
+ * buffer size.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class ExternalSorter implements Closeable {
+
+  /** Default size of the buffer in bytes. */
+  public static final long DEFAULT_BUFFER_SIZE = 256L * 1024 * 1024;
+
+  // Estimated memory used by a String object and its array, without the chars
+  private static final int STRING_OVERHEAD = 64;
+  private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+  /** Maximal number of runs merged at the same time. */
+  static final int MAX_FAN_IN = 64;
+
+  private final File tmpDir;
+  private final boolean compressRuns;
+  private final long chunkSize;
+  private final int threads;
+  private final ExecutorService executor;
+
+  private List<String> chunk = new ArrayList<>();
+  private long chunkMemory;
+  private final Deque<Future<File>> pendingRuns = new ArrayDeque<>();
+  private final List<File> runs = new ArrayList<>();
+
+  private PriorityQueue<Run> queue;
+  private final List<Run> openRuns = new ArrayList<>();
+  private boolean finished;
+  private boolean closed;
+
+  /**
+   * This class define a sorted run to merge.
+   */
+  private abstract static class Run implements Comparable<Run> {
+
+    private String current;
+
+    /**
+     * Read the next line of the run.
+     * @return the next line or null if there is no more line
+     * @throws IOException if an error occurs while reading the run
+     */
+    protected abstract String readLine() throws IOException;
+
+    /**
+     * Close the run.
+     * @throws IOException if an error occurs while closing the run
+     */
+    protected void close() throws IOException {
+    }
+
+    /**
+     * Move to the next line.
+     * @return false if there is no more line
+     * @throws IOException if an error occurs while reading the run
+     */
+    private boolean advance() throws IOException {
+
+      this.current = readLine();
+      return this.current != null;
+    }
+
+    @Override
+    public int compareTo(final Run that) {
+
+      return this.current.compareTo(that.current);
+    }
+  }
+
+  /**
+   * This class define a run stored in memory.
+   */
+  private static final class MemoryRun extends Run {
+
+    private final Iterator<String> it;
+
+    @Override
+    protected String readLine() {
+
+      return this.it.hasNext() ? this.it.next() : null;
+    }
+
+    private MemoryRun(final List<String> lines) {
+
+      this.it = lines.iterator();
+    }
+  }
+
+  /**
+   * This class define a run stored in a file.
+   */
+  private static final class FileRun extends Run {
+
+    private final BufferedReader reader;
+
+    @Override
+    protected String readLine() throws IOException {
+
+      return this.reader.readLine();
+    }
+
+    @Override
+    protected void close() throws IOException {
+
+      this.reader.close();
+    }
+
+    private FileRun(final File file, final boolean compressed)
+        throws IOException {
+
+      InputStream is = new FileInputStream(file);
+      if (compressed) {
+        is = new GZIPInputStream(is, IO_BUFFER_SIZE);
+      }
+
+      this.reader =
+          new BufferedReader(new InputStreamReader(is, UTF_8), IO_BUFFER_SIZE);
+    }
+  }
+
+  //
+  // Sort methods
+  //
+
+  /**
+   * Add a line to sort.
+   * @param line the line to add
+   * @throws IOException if an error occurs while writing a sorted run
+   */
+  public void add(final String line) throws IOException {
+
+    if (line == null) {
+      throw new NullPointerException("line argument cannot be null");
+    }
+
+    if (this.finished) {
+      throw new IllegalStateException("The sorter has been already finished");
+    }
+
+    this.chunk.add(line);
+    this.chunkMemory += STRING_OVERHEAD + line.length();
+
+    if (this.chunkMemory >= this.chunkSize) {
+      spill();
+    }
+  }
+
+  /**
+   * Sort the current chunk and write it in a run file in a background thread.
+   * @throws IOException if an error occurs while writing a previous run
+   */
+  private void spill() throws IOException {
+
+    // Limit the number of chunks in memory
+    while (this.pendingRuns.size() >= this.threads) {
+      this.runs.add(waitRun(this.pendingRuns.removeFirst()));
+    }
+
+    final List<String> lines = this.chunk;
+    this.pendingRuns.add(this.executor.submit(() -> writeRun(lines)));
+
+    this.chunk = new ArrayList<>();
+    this.chunkMemory = 0;
+  }
+
+  /**
+   * Sort lines and write them in a new run file.
+   * @param lines the lines to write
+   * @return the run file
+   * @throws IOException if an error occurs while writing the run
+   */
+  private File writeRun(final List<String> lines) throws IOException {
+
+    Collections.sort(lines);
+
+    final File file = createRunFile();
+
+    try (Writer writer = newRunWriter(file)) {
+
+      for (String line : lines) {
+        writer.write(line);
+        writer.write('\n');
+      }
+    }
+
+    return file;
+  }
+
+  /**
+   * Merge the oldest run files into a new run file until the number of runs to
+   * merge at the end of the sort is not greater than the maximal fan-in.
+   * @throws IOException if an error occurs while merging the runs
+   */
+  private void mergeRuns() throws IOException {
+
+    // The last chunk in memory is also merged with the run files
+    while (this.runs.size() + 1 > MAX_FAN_IN) {
+
+      final List<File> inputs =
+          new ArrayList<>(this.runs.subList(0, MAX_FAN_IN));
+      final File output = createRunFile();
+      this.runs.add(output);
+
+      final List<Run> inputRuns = new ArrayList<>(inputs.size());
+      try (Writer writer = newRunWriter(output)) {
+
+        final PriorityQueue<Run> mergeQueue = new PriorityQueue<>(inputs.size());
+        for (File file : inputs) {
+          final Run run = new FileRun(file, this.compressRuns);
+          inputRuns.add(run);
+          if (run.advance()) {
+            mergeQueue.add(run);
+          }
+        }
+
+        Run run;
+        while ((run = mergeQueue.poll()) != null) {
+
+          writer.write(run.current);
+          writer.write('\n');
+
+          if (run.advance()) {
+            mergeQueue.add(run);
+          }
+        }
+
+      } finally {
+        for (Run run : inputRuns) {
+          run.close();
+        }
+      }
+
+      // The merged runs are not needed anymore
+      this.runs.removeAll(inputs);
+      for (File file : inputs) {
+        if (!file.delete()) {
+          file.deleteOnExit();
+        }
+      }
+    }
+  }
+
+  /**
+   * Create a new run file in the temporary directory.
+   * @return a new run file
+   * @throws IOException if an error occurs while creating the file
+   */
+  private File createRunFile() throws IOException {
+
+    return File.createTempFile("sort-run-",
+        this.compressRuns ? ".txt.gz" : ".txt", this.tmpDir);
+  }
+
+  /**
+   * Create a writer for a run file.
+   * @param file the run file
+   * @return a new writer
+   * @throws IOException if an error occurs while creating the writer
+   */
+  private Writer newRunWriter(final File file) throws IOException {
+
+    OutputStream os = new FileOutputStream(file);
+    if (this.compressRuns) {
+      os = new GZIPOutputStream(os, IO_BUFFER_SIZE) {
+        {
+          this.def.setLevel(Deflater.BEST_SPEED);
+        }
+      };
+    }
+
+    return new BufferedWriter(new OutputStreamWriter(os, UTF_8),
+        IO_BUFFER_SIZE);
+  }
+
+  /**
+   * Wait the end of the writing of a run.
+   * @param future the future of the run
+   * @return the run file
+   * @throws IOException if an error occurs while writing the run
+   */
+  private static File waitRun(final Future<File> future) throws IOException {
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Sort has been interrupted", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * End the adding of lines and prepare the merge of the sorted runs.
+   * @throws IOException if an error occurs while writing the sorted runs
+   */
+  public void finish() throws IOException {
+
+    if (this.finished) {
+      return;
+    }
+    this.finished = true;
+
+    while (!this.pendingRuns.isEmpty()) {
+      this.runs.add(waitRun(this.pendingRuns.removeFirst()));
+    }
+    this.executor.shutdown();
+
+    // Bound the number of runs opened at the same time
+    mergeRuns();
+
+    // The last chunk is merged from memory
+    Collections.sort(this.chunk);
+    this.openRuns.add(new MemoryRun(this.chunk));
+
+    for (File file : this.runs) {
+      this.openRuns.add(new FileRun(file, this.compressRuns));
+    }
+
+    this.queue = new PriorityQueue<>(Math.max(1, this.openRuns.size()));
+    for (Run run : this.openRuns) {
+      if (run.advance()) {
+        this.queue.add(run);
+      }
+    }
+  }
+
+  /**
+   * Read the next sorted line. The first call to this method ends the adding
+   * of lines.
+   * @return the next line or null if there is no more line
+   * @throws IOException if an error occurs while reading the sorted runs
+   */
+  public String readLine() throws IOException {
+
+    if (!this.finished) {
+      finish();
+    }
+
+    final Run run = this.queue.poll();
+    if (run == null) {
+      return null;
+    }
+
+    final String result = run.current;
+    if (run.advance()) {
+      this.queue.add(run);
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the number of sorted runs in the temporary directory. Once the sort is
+   * finished, this number is not greater than the maximal fan-in of the merge.
+   * @return the number of sorted runs
+   */
+  public int getRunCount() {
+
+    return this.runs.size() + this.pendingRuns.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+
+    this.executor.shutdownNow();
+
+    for (Run run : this.openRuns) {
+      run.close();
+    }
+
+    for (Future<File> future : this.pendingRuns) {
+      try {
+        this.runs.add(waitRun(future));
+      } catch (IOException e) {
+        // The run file has not been created
+      }
+    }
+
+    for (File file : this.runs) {
+      if (!file.delete()) {
+        file.deleteOnExit();
+      }
+    }
+
+    this.chunk = null;
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Constructor.
+   * @param tmpDir temporary directory, can be null
+   */
+  public ExternalSorter(final File tmpDir) {
+
+    this(tmpDir, DEFAULT_BUFFER_SIZE,
+        Runtime.getRuntime().availableProcessors(), false);
+  }
+
+  /**
+   * Constructor.
+   * @param tmpDir temporary directory, can be null
+   * @param bufferSize maximal size in bytes of the lines in memory
+   * @param threads number of threads to use to sort and write the runs
+   * @param compressRuns true to compress the sorted runs
+   */
+  public ExternalSorter(final File tmpDir, final long bufferSize,
+      final int threads, final boolean compressRuns) {
+
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException(
+          "Invalid buffer size: " + bufferSize);
+    }
+
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid thread count: " + threads);
+    }
+
+    this.tmpDir = tmpDir;
+    this.compressRuns = compressRuns;
+    this.threads = threads;
+
+    // The current chunk and the chunks being written share the buffer
+    this.chunkSize = Math.max(1, bufferSize / (threads + 1));
+
+    this.executor = Executors.newFixedThreadPool(threads, r -> {
+      final Thread t = new Thread(r, "external-sort");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+}
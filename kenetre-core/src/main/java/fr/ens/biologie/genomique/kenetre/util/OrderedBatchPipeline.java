@@ -0,0 +1,228 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class define a pipeline that processes batches on a pool of threads and
+ * gives the processed batches, in the order of their submission, to a
+ * consumer running in a dedicated thread. The number of batches waiting to be
+ * consumed is bounded, so the thread that submits the batches is blocked when
+ * the consumer is slower than the workers.
+ * <p>
+ * When a batch or the consumer fails, the next calls to
+ * {@link #submit(Callable)} or {@link #finish()} throw an
+ * {@link ExecutionException} with the original error as cause. The
+ * {@link #close()} method stops the threads and waits their end, so the
+ * resources used by the batches and by the consumer can be safely closed
+ * afterwards.
+ * @param <B> type of the batches
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class OrderedBatchPipeline<B> implements AutoCloseable {
+
+  private static final int PENDING_BATCHES_PER_THREAD = 4;
+
+  private final BlockingQueue<Future<B>> pending;
+  private final ExecutorService executor;
+  private final ExecutorService consumerExecutor;
+  private final Future<Void> consumerResult;
+  private final Future<B> endOfInput = new FutureTask<>(() -> null);
+
+  /**
+   * This interface define the consumer of the processed batches.
+   * @param <B> type of the batches
+   */
+  @FunctionalInterface
+  public interface BatchConsumer<B> {
+
+    /**
+     * Consume a processed batch.
+     * @param batch the batch
+     * @throws Exception if an error occurs while consuming the batch
+     */
+    void accept(B batch) throws Exception;
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of batches waiting to be consumed.
+   * @return the number of batches waiting to be consumed
+   */
+  public int getPendingBatchCount() {
+
+    return this.pending.size();
+  }
+
+  //
+  // Pipeline methods
+  //
+
+  /**
+   * Submit a batch to process.
+   * @param task the task that processes the batch and returns it
+   * @throws InterruptedException if the current thread has been interrupted
+   * @throws ExecutionException if a previous batch or the consumer has failed
+   */
+  public void submit(final Callable<B> task)
+      throws InterruptedException, ExecutionException {
+
+    requireNonNull(task, "task argument cannot be null");
+
+    put(this.executor.submit(task));
+  }
+
+  /**
+   * Wait the processing and the consumption of all the submitted batches.
+   * @throws InterruptedException if the current thread has been interrupted
+   * @throws ExecutionException if a batch or the consumer has failed
+   */
+  public void finish() throws InterruptedException, ExecutionException {
+
+    put(this.endOfInput);
+    this.consumerResult.get();
+  }
+
+  @Override
+  public void close() {
+
+    this.executor.shutdownNow();
+    this.consumerExecutor.shutdownNow();
+
+    boolean interrupted = false;
+    while (!this.executor.isTerminated()
+        || !this.consumerExecutor.isTerminated()) {
+      try {
+        this.executor.awaitTermination(1, TimeUnit.SECONDS);
+        this.consumerExecutor.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+
+    // Restore the interrupted status of the thread
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Add a batch to the queue of the consumer.
+   * @param future the future of the batch
+   * @throws InterruptedException if the current thread has been interrupted
+   * @throws ExecutionException if the consumer has failed
+   */
+  private void put(final Future<B> future)
+      throws InterruptedException, ExecutionException {
+
+    // Do not wait forever if the consumer has failed
+    while (!this.pending.offer(future, 100, TimeUnit.MILLISECONDS)) {
+      if (this.consumerResult.isDone()) {
+        this.consumerResult.get();
+      }
+    }
+  }
+
+  /**
+   * Consume the batches in the order of their submission until the end of the
+   * input.
+   * @param consumer the consumer
+   * @throws Exception if an error occurs while processing or consuming a batch
+   */
+  private void consume(final BatchConsumer<B> consumer) throws Exception {
+
+    Future<B> future;
+    while ((future = this.pending.take()) != this.endOfInput) {
+
+      final B batch;
+      try {
+        batch = future.get();
+      } catch (ExecutionException e) {
+
+        // Throw the error of the batch instead of a nested
+        // ExecutionException
+        final Throwable cause = e.getCause();
+        if (cause instanceof Exception) {
+          throw (Exception) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw e;
+      }
+
+      consumer.accept(batch);
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param threads number of threads to use to process the batches
+   * @param consumer consumer of the processed batches
+   */
+  public OrderedBatchPipeline(final int threads,
+      final BatchConsumer<B> consumer) {
+
+    requireNonNull(consumer, "consumer argument cannot be null");
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "Invalid number of threads: " + threads);
+    }
+
+    this.pending =
+        new ArrayBlockingQueue<>(PENDING_BATCHES_PER_THREAD * threads);
+    this.executor = Executors.newFixedThreadPool(threads);
+    this.consumerExecutor = Executors.newSingleThreadExecutor();
+    this.consumerResult = this.consumerExecutor.submit(() -> {
+      consume(consumer);
+      return null;
+    });
+  }
+
+}
@@ -29,13 +29,12 @@ import static java.nio.charset.Charset.defaultCharset;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.StringReader;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -48,7 +47,10 @@ import fr.ens.biologie.genomique.kenetre.log.DummyLogger;
 import fr.ens.biologie.genomique.kenetre.log.GenericLogger;
 
 /**
- * This class implements a pseudo map-reduce framework.
+ * This class implements a pseudo map-reduce framework. The output of the
+ * mapper is shuffled with an {@link ExternalSorter}: it is sorted in memory and
+ * spilled to sorted runs in the temporary directory when the sort buffer is
+ * full, then merged for the reducer.
  * @since 1.0
  * @author Laurent Jourdren
  */
@@ -57,7 +59,10 @@ public abstract class PseudoMapReduce {
   private File tmpDir;
   private final List<File> listMapOutputFile = new ArrayList<>();
 
-  private File sortOutputFile;
+  private long sortBufferSize = ExternalSorter.DEFAULT_BUFFER_SIZE;
+  private int sortThreads = Runtime.getRuntime().availableProcessors();
+  private boolean sortRunCompression;
+  private ExternalSorter sorter;
   private final LocalReporter reporter = new LocalReporter();
   private final GenericLogger logger;
 
@@ -236,25 +241,20 @@ public abstract class PseudoMapReduce {
 
     this.reporter.clear();
 
-    try (
-        BufferedReader br =
-            new BufferedReader(new InputStreamReader(is, defaultCharset()));
-        Writer bw = new FileWriter(getMapOutputTempFile(), defaultCharset())) {
+    final ExternalSorter sorter = getSorter();
+
+    try (BufferedReader br =
+        new BufferedReader(new InputStreamReader(is, defaultCharset()))) {
 
       final List<String> results = new ArrayList<>();
       String line;
 
-      final StringBuilder sb = new StringBuilder();
-
       while ((line = br.readLine()) != null) {
 
         map(line, results, this.reporter);
 
         for (String r : results) {
-          sb.setLength(0);
-          sb.append(r);
-          sb.append('\n');
-          bw.write(sb.toString());
+          addMapOutput(sorter, r);
         }
 
         results.clear();
@@ -263,6 +263,46 @@ public abstract class PseudoMapReduce {
     }
   }
 
+  /**
+   * Add the output of the mapper to the sorter. As the output of the mapper
+   * was previously written in a text file, an output that contains new line
+   * characters is split in several lines.
+   * @param sorter the sorter
+   * @param output the output of the mapper
+   * @throws IOException if an error occurs while sorting the output
+   */
+  private static void addMapOutput(final ExternalSorter sorter,
+      final String output) throws IOException {
+
+    if (output.indexOf('\n') == -1 && output.indexOf('\r') == -1) {
+      sorter.add(output);
+      return;
+    }
+
+    try (BufferedReader reader =
+        new BufferedReader(new StringReader(output))) {
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        sorter.add(line);
+      }
+    }
+  }
+
+  /**
+   * Get the sorter for the output of the mappers.
+   * @return the sorter
+   */
+  private ExternalSorter getSorter() {
+
+    if (this.sorter == null) {
+      this.sorter = new ExternalSorter(this.tmpDir, this.sortBufferSize,
+          this.sortThreads, this.sortRunCompression);
+    }
+
+    return this.sorter;
+  }
+
   //
   // Sort management
   //
@@ -286,56 +326,107 @@ public abstract class PseudoMapReduce {
   }
 
   /**
-   * Sort several files in sortOutputFile
-   * @return true if success sort
-   * @throws IOException if an error occurs while executing external sort
-   *           command
+   * Set the size of the memory buffer used to sort the output of the mappers.
+   * @param bufferSize the size of the buffer in bytes
    */
-  private boolean sort() throws IOException {
-
-    this.sortOutputFile = File.createTempFile("sort-", ".txt", this.tmpDir);
+  public void setSortBufferSize(final long bufferSize) {
 
-    if (this.listMapOutputFile.isEmpty()) {
-      this.sortOutputFile.createNewFile();
-      return true;
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException(
+          "Invalid sort buffer size: " + bufferSize);
     }
 
-    // Create command line to execute
-    final List<String> command = new ArrayList<>();
-    command.add("sort");
+    this.sortBufferSize = bufferSize;
+  }
 
-    // Set the temporary directory if needed
-    if (this.tmpDir != null) {
-      command.add("-T");
-      command.add(this.tmpDir.getAbsolutePath());
-    }
+  /**
+   * Get the size of the memory buffer used to sort the output of the mappers.
+   * @return the size of the buffer in bytes
+   */
+  public long getSortBufferSize() {
 
-    // Set the output file
-    command.add("-o");
-    command.add(this.sortOutputFile.getAbsolutePath());
+    return this.sortBufferSize;
+  }
 
-    // Set the files to sort
-    for (File mapOutputFile : this.listMapOutputFile) {
-      command.add(mapOutputFile.getAbsolutePath());
+  /**
+   * Set the number of threads used to sort and write the sorted runs.
+   * @param threads the number of threads
+   */
+  public void setSortThreads(final int threads) {
+
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid thread count: " + threads);
     }
 
-    // Execute command
-    final boolean result;
+    this.sortThreads = threads;
+  }
+
+  /**
+   * Get the number of threads used to sort and write the sorted runs.
+   * @return the number of threads
+   */
+  public int getSortThreads() {
+
+    return this.sortThreads;
+  }
+
+  /**
+   * Set if the sorted runs written in the temporary directory are compressed.
+   * @param compression true to compress the sorted runs
+   */
+  public void setSortRunCompression(final boolean compression) {
+
+    this.sortRunCompression = compression;
+  }
+
+  /**
+   * Test if the sorted runs written in the temporary directory are compressed.
+   * @return true if the sorted runs are compressed
+   */
+  public boolean isSortRunCompression() {
+
+    return this.sortRunCompression;
+  }
+
+  /**
+   * Sort the output of the mappers.
+   * @return the sorter to use to read the sorted lines
+   * @throws IOException if an error occurs while sorting data
+   */
+  private ExternalSorter sort() throws IOException {
+
+    final ExternalSorter sorter = getSorter();
+    this.sorter = null;
+
     try {
-      result = new ProcessBuilder(command).start().waitFor() == 0;
-    } catch (InterruptedException e) {
-      throw new IOException(e);
-    }
 
-    // Remove temporary map output files
-    for (File mapOutputFile : this.listMapOutputFile) {
-      if (!mapOutputFile.delete()) {
-        this.logger.warn("Can not delete map output file: "
-            + mapOutputFile.getAbsolutePath());
+      // Add the map output files created by the subclasses
+      for (File mapOutputFile : this.listMapOutputFile) {
+
+        try (BufferedReader br =
+            FileUtils.createBufferedReader(mapOutputFile)) {
+
+          String line;
+          while ((line = br.readLine()) != null) {
+            sorter.add(line);
+          }
+        }
+
+        if (!mapOutputFile.delete()) {
+          this.logger.warn("Can not delete map output file: "
+              + mapOutputFile.getAbsolutePath());
+        }
       }
+      this.listMapOutputFile.clear();
+
+      sorter.finish();
+
+    } catch (IOException | RuntimeException e) {
+      sorter.close();
+      throw e;
     }
 
-    return result;
+    return sorter;
   }
 
   //
@@ -369,72 +460,60 @@ public abstract class PseudoMapReduce {
       throw new NullPointerException("The output stream is null.");
     }
 
-    if (!sort()) {
-      throw new IOException("Unable to sort/shuffle data.");
-    }
+    // Sort the output of the mappers, the temporary runs are removed even if
+    // the reduce fails
+    try (ExternalSorter sorter = sort();
+        BufferedWriter bw =
+            new BufferedWriter(new OutputStreamWriter(os, defaultCharset()))) {
 
-    // Create reader
-    final BufferedReader br =
-        FileUtils.createBufferedReader(this.sortOutputFile);
-
-    // Create writer
-    final BufferedWriter bw =
-        new BufferedWriter(new OutputStreamWriter(os, defaultCharset()));
+      String line = null;
+      String currentKey = null;
+      final List<String> values = new RepeatedEntriesList<>();
+      final List<String> results = new ArrayList<>();
 
-    String line = null;
-    String currentKey = null;
-    final List<String> values = new RepeatedEntriesList<>();
-    final List<String> results = new ArrayList<>();
+      final StringBuilder sb = new StringBuilder();
 
-    final StringBuilder sb = new StringBuilder();
+      while ((line = sorter.readLine()) != null) {
 
-    while ((line = br.readLine()) != null) {
+        final int indexFirstTab = line.indexOf('\t');
 
-      final int indexFirstTab = line.indexOf('\t');
+        // Do not process line
+        if (line.isEmpty() || indexFirstTab == -1) {
+          continue;
+        }
 
-      // Do not process line
-      if (line.isEmpty() || indexFirstTab == -1) {
-        continue;
-      }
+        final String key = line.substring(0, indexFirstTab);
+        final String value = line.substring(indexFirstTab + 1);
 
-      final String key = line.substring(0, indexFirstTab);
-      final String value = line.substring(indexFirstTab + 1);
+        if (currentKey == null) {
+          currentKey = key;
+        } else if (!key.equals(currentKey)) {
 
-      if (currentKey == null) {
-        currentKey = key;
-      } else if (!key.equals(currentKey)) {
+          reduce(currentKey, values.iterator(), results, this.reporter);
 
-        reduce(currentKey, values.iterator(), results, this.reporter);
+          for (String result : results) {
+            sb.setLength(0);
+            sb.append(result);
+            sb.append('\n');
+            bw.write(sb.toString());
+          }
 
-        for (String result : results) {
-          sb.setLength(0);
-          sb.append(result);
-          sb.append('\n');
-          bw.write(sb.toString());
+          results.clear();
+          values.clear();
+          currentKey = key;
         }
 
-        results.clear();
-        values.clear();
-        currentKey = key;
+        values.add(value);
       }
 
-      values.add(value);
-    }
-
-    // Process lasts values
-    if (currentKey != null) {
-      reduce(currentKey, values.iterator(), results, this.reporter);
-    }
-
-    for (String result : results) {
-      bw.write(result);
-    }
+      // Process lasts values
+      if (currentKey != null) {
+        reduce(currentKey, values.iterator(), results, this.reporter);
+      }
 
-    br.close();
-    bw.close();
-    if (!this.sortOutputFile.delete()) {
-      this.logger.warn("Can not delete sort output file: "
-          + this.sortOutputFile.getAbsolutePath());
+      for (String result : results) {
+        bw.write(result);
+      }
     }
   }
 
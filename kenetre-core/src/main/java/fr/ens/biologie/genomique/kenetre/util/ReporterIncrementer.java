@@ -39,4 +39,18 @@ public interface ReporterIncrementer {
    */
   void incrCounter(String counterGroup, String counterName, long amount);
 
+  /**
+   * Get a handle on a counter. The group and the name of the counter are only
+   * resolved once, incrementing the counter with the handle avoid to look up
+   * the counter at each increment.
+   * @param counterGroup group of the counter
+   * @param counterName the counter to increment
+   * @return a handle on the counter
+   */
+  default ReporterCounter getCounter(final String counterGroup,
+      final String counterName) {
+
+    return amount -> incrCounter(counterGroup, counterName, amount);
+  }
+
 }
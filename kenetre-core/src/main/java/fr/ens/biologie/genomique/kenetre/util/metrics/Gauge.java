@@ -0,0 +1,80 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util.metrics;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.LongSupplier;
+
+/**
+ * This class define a metric whose value is read when the metrics are
+ * exported (e.g. the number of elements in a queue).
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class Gauge implements Metric {
+
+  private final String name;
+  private final LongSupplier supplier;
+
+  @Override
+  public String getName() {
+
+    return this.name;
+  }
+
+  /**
+   * Get the current value of the gauge.
+   * @return the current value of the gauge
+   */
+  public long getValue() {
+
+    return this.supplier.getAsLong();
+  }
+
+  @Override
+  public String toString() {
+
+    return this.getClass().getSimpleName()
+        + "{name=" + this.name + ", value=" + getValue() + "}";
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param name name of the gauge
+   * @param supplier supplier of the value of the gauge
+   */
+  Gauge(final String name, final LongSupplier supplier) {
+
+    this.name = requireNonNull(name, "name argument cannot be null");
+    this.supplier =
+        requireNonNull(supplier, "supplier argument cannot be null");
+  }
+
+}
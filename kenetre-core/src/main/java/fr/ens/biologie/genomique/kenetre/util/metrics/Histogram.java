@@ -0,0 +1,183 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util.metrics;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class define a metric that records the distribution of values. The
+ * values are counted in buckets of power of two sizes, so the quantiles are
+ * estimated with a precision of a factor 2. All the updates are done with
+ * {@link LongAdder} objects, without lock.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class Histogram implements Metric {
+
+  // The bucket i contains the values v where 2^(i-1) <= v < 2^i, the bucket 0
+  // contains the value 0
+  private static final int BUCKET_COUNT = Long.SIZE + 1;
+
+  private final String name;
+  private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  @Override
+  public String getName() {
+
+    return this.name;
+  }
+
+  /**
+   * Add a value to the histogram. Negative values are counted as 0.
+   * @param value the value to add
+   */
+  public void update(final long value) {
+
+    final long v = Math.max(0, value);
+
+    this.buckets[Long.SIZE - Long.numberOfLeadingZeros(v)].increment();
+    this.count.increment();
+    this.sum.add(v);
+    this.max.accumulate(v);
+  }
+
+  /**
+   * Get the number of values.
+   * @return the number of values
+   */
+  public long getCount() {
+
+    return this.count.sum();
+  }
+
+  /**
+   * Get the sum of the values.
+   * @return the sum of the values
+   */
+  public long getSum() {
+
+    return this.sum.sum();
+  }
+
+  /**
+   * Get the maximal value.
+   * @return the maximal value or 0 if the histogram is empty
+   */
+  public long getMax() {
+
+    return this.max.get();
+  }
+
+  /**
+   * Get the mean of the values.
+   * @return the mean of the values or 0 if the histogram is empty
+   */
+  public double getMean() {
+
+    final long count = getCount();
+
+    return count == 0 ? 0.0 : (double) getSum() / count;
+  }
+
+  /**
+   * Get an estimation of a quantile of the values. The result is the upper
+   * bound of the bucket that contains the quantile.
+   * @param quantile the quantile, between 0 and 1
+   * @return the estimation of the quantile or 0 if the histogram is empty
+   */
+  public long getQuantile(final double quantile) {
+
+    if (quantile < 0.0 || quantile > 1.0) {
+      throw new IllegalArgumentException("Invalid quantile: " + quantile);
+    }
+
+    final long[] counts = new long[BUCKET_COUNT];
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = this.buckets[i].sum();
+      total += counts[i];
+    }
+
+    if (total == 0) {
+      return 0;
+    }
+
+    final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long cumulative = 0;
+
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+
+      cumulative += counts[i];
+      if (cumulative >= rank) {
+        return Math.min(getMax(), upperBound(i));
+      }
+    }
+
+    return getMax();
+  }
+
+  /**
+   * Get the upper bound of a bucket.
+   * @param bucket the index of the bucket
+   * @return the upper bound of the bucket
+   */
+  private static long upperBound(final int bucket) {
+
+    return bucket == 0
+        ? 0 : bucket == Long.SIZE ? Long.MAX_VALUE : (1L << bucket) - 1;
+  }
+
+  @Override
+  public String toString() {
+
+    return this.getClass().getSimpleName()
+        + "{name=" + this.name + ", count=" + getCount() + ", mean="
+        + getMean() + ", max=" + getMax() + "}";
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param name name of the histogram
+   */
+  Histogram(final String name) {
+
+    this.name = requireNonNull(name, "name argument cannot be null");
+
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      this.buckets[i] = new LongAdder();
+    }
+  }
+
+}
@@ -0,0 +1,109 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util.metrics;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class define a metric that counts events (e.g. records or bytes) and
+ * computes their rate since the creation of the metric. The count is a
+ * {@link LongAdder}, so the meter can be updated by several threads without
+ * lock.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class Meter implements Metric {
+
+  private final String name;
+  private final LongAdder count = new LongAdder();
+  private final long startTime = System.nanoTime();
+
+  @Override
+  public String getName() {
+
+    return this.name;
+  }
+
+  /**
+   * Add one event.
+   */
+  public void mark() {
+
+    this.count.increment();
+  }
+
+  /**
+   * Add events.
+   * @param n number of events to add
+   */
+  public void mark(final long n) {
+
+    this.count.add(n);
+  }
+
+  /**
+   * Get the number of events.
+   * @return the number of events
+   */
+  public long getCount() {
+
+    return this.count.sum();
+  }
+
+  /**
+   * Get the mean rate of the events since the creation of the meter.
+   * @return a number of events per second
+   */
+  public double getMeanRate() {
+
+    final long elapsed = System.nanoTime() - this.startTime;
+
+    return elapsed <= 0 ? 0.0 : getCount() * 1e9 / elapsed;
+  }
+
+  @Override
+  public String toString() {
+
+    return this.getClass().getSimpleName()
+        + "{name=" + this.name + ", count=" + getCount() + ", meanRate="
+        + getMeanRate() + "}";
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param name name of the meter
+   */
+  Meter(final String name) {
+
+    this.name = requireNonNull(name, "name argument cannot be null");
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util.metrics;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This class define an input stream that counts the bytes read in a
+ * {@link Meter}.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class MeteredInputStream extends FilterInputStream {
+
+  private final Meter meter;
+
+  @Override
+  public int read() throws IOException {
+
+    final int result = super.read();
+    if (result != -1) {
+      this.meter.mark();
+    }
+
+    return result;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len)
+      throws IOException {
+
+    final int result = super.read(b, off, len);
+    if (result > 0) {
+      this.meter.mark(result);
+    }
+
+    return result;
+  }
+
+  @Override
+  public long skip(final long n) throws IOException {
+
+    final long result = super.skip(n);
+    if (result > 0) {
+      this.meter.mark(result);
+    }
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param in the underlying input stream
+   * @param meter the meter of the bytes read
+   */
+  public MeteredInputStream(final InputStream in, final Meter meter) {
+
+    super(requireNonNull(in, "in argument cannot be null"));
+    this.meter = requireNonNull(meter, "meter argument cannot be null");
+  }
+
+}
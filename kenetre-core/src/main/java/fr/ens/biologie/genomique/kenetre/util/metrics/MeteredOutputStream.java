@@ -0,0 +1,74 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util.metrics;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class define an output stream that counts the bytes written in a
+ * {@link Meter}.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+
+  private final Meter meter;
+
+  @Override
+  public void write(final int b) throws IOException {
+
+    this.out.write(b);
+    this.meter.mark();
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len)
+      throws IOException {
+
+    // Do not use the byte by byte implementation of FilterOutputStream
+    this.out.write(b, off, len);
+    this.meter.mark(len);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param out the underlying output stream
+   * @param meter the meter of the bytes written
+   */
+  public MeteredOutputStream(final OutputStream out, final Meter meter) {
+
+    super(requireNonNull(out, "out argument cannot be null"));
+    this.meter = requireNonNull(meter, "meter argument cannot be null");
+  }
+
+}
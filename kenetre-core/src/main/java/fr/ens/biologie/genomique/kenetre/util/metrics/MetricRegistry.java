@@ -0,0 +1,150 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util.metrics;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * This class define a registry of named metrics. The metrics are created on
+ * their first request and must be kept by the callers: the registry is only
+ * accessed at initialization and when the metrics are exported, never in the
+ * hot loops.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class MetricRegistry {
+
+  private final ConcurrentMap<String, Metric> metrics =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Get or create a meter.
+   * @param name name of the meter
+   * @return a Meter object
+   */
+  public Meter meter(final String name) {
+
+    return getOrCreate(name, Meter.class, Meter::new);
+  }
+
+  /**
+   * Get or create a histogram.
+   * @param name name of the histogram
+   * @return a Histogram object
+   */
+  public Histogram histogram(final String name) {
+
+    return getOrCreate(name, Histogram.class, Histogram::new);
+  }
+
+  /**
+   * Get or create a timer.
+   * @param name name of the timer
+   * @return a Timer object
+   */
+  public Timer timer(final String name) {
+
+    return getOrCreate(name, Timer.class, Timer::new);
+  }
+
+  /**
+   * Register a gauge. If a gauge with the same name already exists, it is
+   * replaced.
+   * @param name name of the gauge
+   * @param supplier supplier of the value of the gauge
+   * @return a Gauge object
+   */
+  public Gauge gauge(final String name, final LongSupplier supplier) {
+
+    requireNonNull(name, "name argument cannot be null");
+
+    final Gauge result = new Gauge(name, supplier);
+
+    this.metrics.compute(name, (k, previous) -> {
+
+      if (previous != null && !(previous instanceof Gauge)) {
+        throw new IllegalArgumentException(
+            "A metric of another type already exists with this name: "
+                + name);
+      }
+
+      return result;
+    });
+
+    return result;
+  }
+
+  /**
+   * Remove a metric.
+   * @param name name of the metric
+   * @return true if the metric has been removed
+   */
+  public boolean remove(final String name) {
+
+    requireNonNull(name, "name argument cannot be null");
+
+    return this.metrics.remove(name) != null;
+  }
+
+  /**
+   * Get the metrics of the registry, sorted by name.
+   * @return a list with the metrics of the registry
+   */
+  public List<Metric> getMetrics() {
+
+    final List<Metric> result = new ArrayList<>(this.metrics.values());
+    result.sort(Comparator.comparing(Metric::getName));
+
+    return result;
+  }
+
+  //
+  // Other methods
+  //
+
+  private <M extends Metric> M getOrCreate(final String name,
+      final Class<M> clazz, final Function<String, M> constructor) {
+
+    requireNonNull(name, "name argument cannot be null");
+
+    final Metric result = this.metrics.computeIfAbsent(name, constructor);
+
+    if (result.getClass() != clazz) {
+      throw new IllegalArgumentException(
+          "A metric of another type already exists with this name: " + name);
+    }
+
+    return clazz.cast(result);
+  }
+
+}
@@ -0,0 +1,404 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util.metrics;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class define an exporter that periodically writes the metrics of a
+ * registry in a file, in JSON or in the Prometheus text format. The file is
+ * replaced atomically at each export, so it can be read by a monitoring tool
+ * at any time. A last export is done when the exporter is closed.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class MetricsExporter implements Closeable {
+
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+  /**
+   * The output formats of the exporter.
+   */
+  public enum Format {
+
+    JSON, PROMETHEUS;
+
+    /**
+     * Get a format from its name.
+     * @param name name of the format
+     * @return a Format object
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public static Format getFormat(final String name) {
+
+      requireNonNull(name, "name argument cannot be null");
+
+      for (Format f : values()) {
+        if (f.name().equalsIgnoreCase(name.trim())) {
+          return f;
+        }
+      }
+
+      throw new IllegalArgumentException("Unknown metrics format: " + name);
+    }
+  }
+
+  private final MetricRegistry registry;
+  private final Path file;
+  private final Format format;
+  private final ScheduledExecutorService executor;
+  private volatile IOException exception;
+  private boolean closed;
+
+  //
+  // Export methods
+  //
+
+  /**
+   * Export the metrics in the file.
+   * @throws IOException if an error occurs while writing the file
+   */
+  public synchronized void export() throws IOException {
+
+    final String content = format(this.registry, this.format);
+
+    final Path tmpFile = this.file.resolveSibling(
+        this.file.getFileName() + ".tmp");
+    Files.write(tmpFile, content.getBytes(UTF_8));
+
+    try {
+      Files.move(tmpFile, this.file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmpFile, this.file, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private void scheduledExport() {
+
+    try {
+      export();
+    } catch (IOException e) {
+      this.exception = e;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+    }
+
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+    }
+
+    if (this.exception != null) {
+      throw this.exception;
+    }
+
+    export();
+  }
+
+  //
+  // Format methods
+  //
+
+  /**
+   * Format the metrics of a registry.
+   * @param registry the registry
+   * @param format the output format
+   * @return a String with the metrics
+   */
+  public static String format(final MetricRegistry registry,
+      final Format format) {
+
+    requireNonNull(registry, "registry argument cannot be null");
+    requireNonNull(format, "format argument cannot be null");
+
+    switch (format) {
+
+    case PROMETHEUS:
+      return toPrometheus(registry);
+
+    case JSON:
+    default:
+      return toJSON(registry);
+    }
+  }
+
+  /**
+   * Format the metrics of a registry in JSON.
+   * @param registry the registry
+   * @return a String with the metrics in JSON
+   */
+  public static String toJSON(final MetricRegistry registry) {
+
+    requireNonNull(registry, "registry argument cannot be null");
+
+    final StringBuilder sb = new StringBuilder();
+    sb.append("{\n  \"timestamp\": ");
+    sb.append(System.currentTimeMillis());
+    sb.append(",\n  \"metrics\": {");
+
+    boolean first = true;
+    for (Metric m : registry.getMetrics()) {
+
+      sb.append(first ? "\n" : ",\n");
+      first = false;
+
+      sb.append("    \"");
+      sb.append(escapeJSON(m.getName()));
+      sb.append("\": {");
+
+      if (m instanceof Meter) {
+
+        final Meter meter = (Meter) m;
+        sb.append("\"type\": \"meter\", \"count\": ");
+        sb.append(meter.getCount());
+        sb.append(", \"rate\": ");
+        sb.append(formatDouble(meter.getMeanRate()));
+
+      } else if (m instanceof Histogram) {
+
+        final Histogram h = (Histogram) m;
+        sb.append("\"type\": \"");
+        sb.append(m instanceof Timer ? "timer" : "histogram");
+        sb.append("\", \"count\": ");
+        sb.append(h.getCount());
+        sb.append(", \"sum\": ");
+        sb.append(h.getSum());
+        sb.append(", \"mean\": ");
+        sb.append(formatDouble(h.getMean()));
+        sb.append(", \"max\": ");
+        sb.append(h.getMax());
+        for (double q : QUANTILES) {
+          sb.append(", \"p");
+          sb.append(Math.round(q * 100));
+          sb.append("\": ");
+          sb.append(h.getQuantile(q));
+        }
+
+      } else if (m instanceof Gauge) {
+
+        sb.append("\"type\": \"gauge\", \"value\": ");
+        sb.append(((Gauge) m).getValue());
+      }
+
+      sb.append('}');
+    }
+
+    sb.append(first ? "}\n}\n" : "\n  }\n}\n");
+
+    return sb.toString();
+  }
+
+  /**
+   * Format the metrics of a registry in the Prometheus text format. Timers are
+   * exported in seconds.
+   * @param registry the registry
+   * @return a String with the metrics in the Prometheus text format
+   */
+  public static String toPrometheus(final MetricRegistry registry) {
+
+    requireNonNull(registry, "registry argument cannot be null");
+
+    final StringBuilder sb = new StringBuilder();
+
+    for (Metric m : registry.getMetrics()) {
+
+      final String name = prometheusName(m.getName());
+
+      if (m instanceof Meter) {
+
+        final Meter meter = (Meter) m;
+        appendPrometheus(sb, name + "_total", "counter",
+            Long.toString(meter.getCount()));
+        appendPrometheus(sb, name + "_rate", "gauge",
+            formatDouble(meter.getMeanRate()));
+
+      } else if (m instanceof Timer) {
+
+        appendSummary(sb, name + "_seconds", (Histogram) m, 1e-9);
+
+      } else if (m instanceof Histogram) {
+
+        appendSummary(sb, name, (Histogram) m, 1.0);
+
+      } else if (m instanceof Gauge) {
+
+        appendPrometheus(sb, name, "gauge",
+            Long.toString(((Gauge) m).getValue()));
+      }
+    }
+
+    return sb.toString();
+  }
+
+  private static void appendPrometheus(final StringBuilder sb,
+      final String name, final String type, final String value) {
+
+    sb.append("# TYPE ");
+    sb.append(name);
+    sb.append(' ');
+    sb.append(type);
+    sb.append('\n');
+    sb.append(name);
+    sb.append(' ');
+    sb.append(value);
+    sb.append('\n');
+  }
+
+  private static void appendSummary(final StringBuilder sb, final String name,
+      final Histogram h, final double factor) {
+
+    sb.append("# TYPE ");
+    sb.append(name);
+    sb.append(" summary\n");
+
+    for (double q : QUANTILES) {
+      sb.append(name);
+      sb.append("{quantile=\"");
+      sb.append(q);
+      sb.append("\"} ");
+      sb.append(formatDouble(h.getQuantile(q) * factor));
+      sb.append('\n');
+    }
+
+    sb.append(name);
+    sb.append("_sum ");
+    sb.append(formatDouble(h.getSum() * factor));
+    sb.append('\n');
+    sb.append(name);
+    sb.append("_count ");
+    sb.append(h.getCount());
+    sb.append('\n');
+
+    appendPrometheus(sb, name + "_max", "gauge",
+        formatDouble(h.getMax() * factor));
+  }
+
+  /**
+   * Convert a metric name to a valid Prometheus metric name.
+   * @param name the name to convert
+   * @return a valid Prometheus metric name
+   */
+  static String prometheusName(final String name) {
+
+    final StringBuilder sb = new StringBuilder(name.length() + 1);
+
+    if (name.isEmpty() || Character.isDigit(name.charAt(0))) {
+      sb.append('_');
+    }
+
+    for (int i = 0; i < name.length(); i++) {
+
+      final char c = name.charAt(i);
+      sb.append((c >= 'a' && c <= 'z')
+          || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_'
+          || c == ':' ? c : '_');
+    }
+
+    return sb.toString();
+  }
+
+  private static String escapeJSON(final String s) {
+
+    final StringBuilder sb = new StringBuilder(s.length());
+
+    for (int i = 0; i < s.length(); i++) {
+
+      final char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+
+    return sb.toString();
+  }
+
+  private static String formatDouble(final double value) {
+
+    return String.format(Locale.US, "%.6g", value);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param registry the registry to export
+   * @param file the output file
+   * @param format the output format
+   * @param period the period between two exports in milliseconds. If the
+   *          period is lower or equal to 0, the metrics are only exported
+   *          when the exporter is closed
+   */
+  public MetricsExporter(final MetricRegistry registry, final File file,
+      final Format format, final long period) {
+
+    this.registry =
+        requireNonNull(registry, "registry argument cannot be null");
+    this.file =
+        requireNonNull(file, "file argument cannot be null").toPath();
+    this.format = requireNonNull(format, "format argument cannot be null");
+
+    if (period > 0) {
+
+      this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread t = new Thread(r, "metrics-exporter");
+        t.setDaemon(true);
+        return t;
+      });
+      this.executor.scheduleAtFixedRate(this::scheduledExport, period,
+          period, TimeUnit.MILLISECONDS);
+    } else {
+      this.executor = null;
+    }
+  }
+
+}
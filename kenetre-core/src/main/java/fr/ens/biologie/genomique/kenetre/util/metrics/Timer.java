@@ -0,0 +1,68 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util.metrics;
+
+/**
+ * This class define a histogram of durations in nanoseconds. A duration is
+ * usually recorded with:
+ *
+ * <pre>
+ * final long start = System.nanoTime();
+ * ...
+ * timer.stop(start);
+ * </pre>
+ *
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class Timer extends Histogram {
+
+  /**
+   * Record the duration elapsed since a start time.
+   * @param startTime start time, as returned by {@link System#nanoTime()}
+   * @return the duration in nanoseconds
+   */
+  public long stop(final long startTime) {
+
+    final long result = System.nanoTime() - startTime;
+    update(result);
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param name name of the timer
+   */
+  Timer(final String name) {
+
+    super(name);
+  }
+
+}
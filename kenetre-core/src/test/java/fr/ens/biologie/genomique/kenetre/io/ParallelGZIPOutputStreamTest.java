@@ -0,0 +1,143 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class ParallelGZIPOutputStreamTest {
+
+  @Test
+  public void testCompress() throws IOException {
+
+    final byte[] data = createData(1_000_003);
+
+    // Compress with small blocks to create many GZip members
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (OutputStream os = new ParallelGZIPOutputStream(compressed, 4, 10_000)) {
+
+      os.write(data, 0, 1000);
+      os.write(data[1000]);
+      os.write(data, 1001, data.length - 1001);
+    }
+
+    assertArrayEquals(data, uncompress(compressed.toByteArray()));
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    new ParallelGZIPOutputStream(compressed, 2).close();
+
+    assertEquals(0, uncompress(compressed.toByteArray()).length);
+  }
+
+  @Test
+  public void testCompressionType() throws IOException {
+
+    final byte[] data = createData(500_000);
+
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (OutputStream os =
+        CompressionType.createGZipOutputStream(compressed, 3, 64 * 1024)) {
+      os.write(data);
+    }
+
+    assertArrayEquals(data, uncompress(compressed.toByteArray()));
+  }
+
+  @Test
+  public void testCloseOnError() {
+
+    final AtomicBoolean closed = new AtomicBoolean();
+    final OutputStream failing = new OutputStream() {
+
+      @Override
+      public void write(final int b) throws IOException {
+        throw new IOException("No space left on device");
+      }
+
+      @Override
+      public void write(final byte[] b, final int off, final int len)
+          throws IOException {
+        throw new IOException("No space left on device");
+      }
+
+      @Override
+      public void close() {
+        closed.set(true);
+      }
+    };
+
+    try {
+      final OutputStream os = new ParallelGZIPOutputStream(failing, 2, 1000);
+      os.write(createData(500));
+      os.close();
+      fail();
+    } catch (IOException e) {
+      assertTrue(closed.get());
+    }
+  }
+
+  private static byte[] createData(final int length) {
+
+    final Random random = new Random(42);
+    final byte[] bases = {'A', 'C', 'G', 'T', 'N', '\n'};
+    final byte[] result = new byte[length];
+
+    for (int i = 0; i < length; i++) {
+      result[i] = bases[random.nextInt(bases.length)];
+    }
+
+    return result;
+  }
+
+  private static byte[] uncompress(final byte[] data) throws IOException {
+
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+    try (InputStream is =
+        new GZIPInputStream(new ByteArrayInputStream(data))) {
+      is.transferTo(result);
+    }
+
+    return result.toByteArray();
+  }
+
+}
@@ -0,0 +1,194 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class ReadAheadInputStreamTest {
+
+  @Test
+  public void testReadAhead() throws IOException {
+
+    final byte[] data = createData(100_001);
+
+    try (InputStream is = new ReadAheadInputStream(
+        new ByteArrayInputStream(data), 3, 1000)) {
+
+      assertEquals(data[0], (byte) is.read());
+      final byte[] result = is.readAllBytes();
+      assertEquals(data.length - 1, result.length);
+      assertEquals(-1, is.read());
+    }
+
+    try (InputStream is = new ReadAheadInputStream(
+        new ByteArrayInputStream(new byte[0]))) {
+      assertEquals(-1, is.read());
+    }
+  }
+
+  @Test
+  public void testGZip() throws IOException {
+
+    final byte[] data = createData(300_000);
+
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (OutputStream os = new GZIPOutputStream(compressed)) {
+      os.write(data);
+    }
+
+    try (InputStream is = CompressionType.GZIP.createInputStream(
+        new ByteArrayInputStream(compressed.toByteArray()), true)) {
+
+      assertEquals(ReadAheadInputStream.class, is.getClass());
+      assertArrayEquals(data, is.readAllBytes());
+    }
+  }
+
+  @Test
+  public void testBGZF() throws IOException {
+
+    final byte[] data = createData(300_000);
+
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    for (int i = 0; i < data.length; i += 60_000) {
+      writeBGZFBlock(compressed, data, i,
+          Math.min(60_000, data.length - i));
+    }
+    writeBGZFBlock(compressed, data, 0, 0);
+
+    try (InputStream is = CompressionType.GZIP.createInputStream(
+        new ByteArrayInputStream(compressed.toByteArray()), true)) {
+
+      assertEquals(ParallelBGZFInputStream.class, is.getClass());
+      assertArrayEquals(data, is.readAllBytes());
+    }
+  }
+
+  @Test
+  public void testCloseWhileReading() throws IOException, InterruptedException {
+
+    final CountDownLatch reading = new CountDownLatch(1);
+    final AtomicBoolean inRead = new AtomicBoolean();
+    final AtomicBoolean closedWhileReading = new AtomicBoolean();
+    final AtomicBoolean closed = new AtomicBoolean();
+
+    // A slow stream that records if it is closed during a read
+    final InputStream slow = new InputStream() {
+
+      @Override
+      public int read() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public int read(final byte[] b, final int off, final int len) {
+
+        inRead.set(true);
+        reading.countDown();
+        try {
+          Thread.sleep(200);
+        } catch (InterruptedException e) {
+          // Ignore the interruption like a blocking read
+        }
+        inRead.set(false);
+
+        return len;
+      }
+
+      @Override
+      public void close() {
+        closedWhileReading.compareAndSet(false, inRead.get());
+        closed.set(true);
+      }
+    };
+
+    final InputStream is = new ReadAheadInputStream(slow, 2, 10);
+    reading.await();
+    is.close();
+
+    assertTrue(closed.get());
+    assertFalse(closedWhileReading.get());
+  }
+
+  private static void writeBGZFBlock(final ByteArrayOutputStream out,
+      final byte[] data, final int off, final int len) {
+
+    final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(data, off, len);
+    deflater.finish();
+    final byte[] buffer = new byte[65536];
+    final int compressedLength = deflater.deflate(buffer);
+    deflater.end();
+
+    final CRC32 crc = new CRC32();
+    crc.update(data, off, len);
+
+    out.writeBytes(new byte[] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0,
+        (byte) 0xff, 6, 0, 'B', 'C', 2, 0});
+    writeInt(out, compressedLength + 25, 2);
+    out.write(buffer, 0, compressedLength);
+    writeInt(out, (int) crc.getValue(), 4);
+    writeInt(out, len, 4);
+  }
+
+  private static void writeInt(final ByteArrayOutputStream out,
+      final int value, final int bytes) {
+
+    for (int i = 0; i < bytes; i++) {
+      out.write((value >> (8 * i)) & 0xff);
+    }
+  }
+
+  private static byte[] createData(final int length) {
+
+    final Random random = new Random(42);
+    final byte[] bases = {'A', 'C', 'G', 'T', 'N', '\n'};
+    final byte[] result = new byte[length];
+
+    for (int i = 0; i < length; i++) {
+      result[i] = bases[random.nextInt(bases.length)];
+    }
+
+    return result;
+  }
+
+}
@@ -0,0 +1,120 @@
+package fr.ens.biologie.genomique.kenetre.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ConcurrentReporterTest {
+
+  @Test
+  public void testIncrCounter() {
+
+    ConcurrentReporter r = new ConcurrentReporter();
+
+    assertEquals(-1, r.getCounterValue("group", "counter"));
+    assertTrue(r.getCounterGroups().isEmpty());
+
+    r.incrCounter("group", "counter", 2);
+    r.incrCounter("group", "counter", 3);
+    r.incrCounter("group", "counter", 0);
+    r.incrCounter("group", "counter", -5);
+    r.incrCounter(null, "counter", 1);
+    r.incrCounter("group", null, 1);
+
+    assertEquals(5, r.getCounterValue("group", "counter"));
+    assertEquals(-1, r.getCounterValue("group", "other"));
+    assertEquals(-1, r.getCounterValue("other", "counter"));
+    assertEquals(1, r.getCounterGroups().size());
+    assertEquals(1, r.getCounterNames("group").size());
+    assertTrue(r.getCounterNames("other").isEmpty());
+  }
+
+  @Test
+  public void testGetCounter() {
+
+    ConcurrentReporter r = new ConcurrentReporter();
+
+    ReporterCounter c = r.getCounter("group", "counter");
+    assertSame(c, r.getCounter("group", "counter"));
+
+    // A counter that has never been incremented does not exist
+    assertEquals(-1, r.getCounterValue("group", "counter"));
+    assertTrue(r.getCounterGroups().isEmpty());
+    assertTrue(r.getCounterNames("group").isEmpty());
+
+    c.increment();
+    c.increment(4);
+    c.increment(0);
+    c.increment(-1);
+    r.incrCounter("group", "counter", 10);
+
+    assertEquals(15, r.getCounterValue("group", "counter"));
+
+    try {
+      r.getCounter(null, "counter");
+      assertTrue(false);
+    } catch (NullPointerException e) {
+      assertTrue(true);
+    }
+  }
+
+  @Test
+  public void testToString() {
+
+    ConcurrentReporter r = new ConcurrentReporter();
+    LocalReporter l = new LocalReporter();
+
+    for (Reporter reporter : new Reporter[] {r, l}) {
+      reporter.incrCounter("b", "y", 2);
+      reporter.incrCounter("b", "x", 1);
+      reporter.incrCounter("a", "z", 3);
+    }
+    r.getCounter("a", "unused");
+
+    assertEquals(l.toString(), r.toString());
+    assertEquals(l.countersValuesToString("b", "header"),
+        r.countersValuesToString("b", "header"));
+  }
+
+  @Test
+  public void testConcurrentIncrements() throws InterruptedException {
+
+    final ConcurrentReporter r = new ConcurrentReporter();
+    final int threadCount = 4;
+    final int increments = 100000;
+
+    final List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+
+      final ReporterCounter c = r.getCounter("group", "handle");
+      threads.add(new Thread(() -> {
+        for (int j = 0; j < increments; j++) {
+          c.increment();
+          r.incrCounter("group", "counter", 1);
+          r.incrCounter("group", "counter" + (j % 10), 1);
+        }
+      }));
+    }
+
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    assertEquals(threadCount * increments,
+        r.getCounterValue("group", "handle"));
+    assertEquals(threadCount * increments,
+        r.getCounterValue("group", "counter"));
+    assertEquals(threadCount * increments / 10,
+        r.getCounterValue("group", "counter3"));
+    assertEquals(12, r.getCounterNames("group").size());
+  }
+
+}
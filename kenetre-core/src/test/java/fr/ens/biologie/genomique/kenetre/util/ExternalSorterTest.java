@@ -0,0 +1,182 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ExternalSorterTest {
+
+  @Test
+  public void testSort() throws IOException {
+
+    testSort(1000, ExternalSorter.DEFAULT_BUFFER_SIZE, 1, false);
+    testSort(10000, 10000, 1, false);
+    testSort(10000, 10000, 3, false);
+    testSort(10000, 10000, 3, true);
+    testSort(0, 10000, 2, false);
+  }
+
+  private static void testSort(final int count, final long bufferSize,
+      final int threads, final boolean compression) throws IOException {
+
+    final File tmpDir = Files.createTempDirectory("sort-test").toFile();
+    final Random random = new Random(count);
+    final List<String> expected = new ArrayList<>();
+
+    try (ExternalSorter sorter =
+        new ExternalSorter(tmpDir, bufferSize, threads, compression)) {
+
+      for (int i = 0; i < count; i++) {
+        final String line =
+            "key" + random.nextInt(count / 10 + 1) + "\tvalue" + i;
+        expected.add(line);
+        sorter.add(line);
+      }
+
+      sorter.finish();
+
+      if (bufferSize < count * 10) {
+        assertTrue(sorter.getRunCount() > 1);
+      } else {
+        assertEquals(0, sorter.getRunCount());
+      }
+
+      Collections.sort(expected);
+      for (String line : expected) {
+        assertEquals(line, sorter.readLine());
+      }
+      assertNull(sorter.readLine());
+    }
+
+    // Sorted runs must have been removed
+    assertEquals(0, tmpDir.list().length);
+    assertTrue(tmpDir.delete());
+  }
+
+  @Test
+  public void testMaxFanIn() throws IOException {
+
+    testMaxFanIn(false);
+    testMaxFanIn(true);
+  }
+
+  private static void testMaxFanIn(final boolean compression)
+      throws IOException {
+
+    final File tmpDir = Files.createTempDirectory("sort-test").toFile();
+    final Random random = new Random(0);
+    final List<String> expected = new ArrayList<>();
+
+    // Each run contains 2 lines, so several merge passes are required
+    try (ExternalSorter sorter =
+        new ExternalSorter(tmpDir, 150, 2, compression)) {
+
+      for (int i = 0; i < 500; i++) {
+        final String line = "key" + random.nextInt(100) + "\tvalue" + i;
+        expected.add(line);
+        sorter.add(line);
+      }
+
+      sorter.finish();
+
+      assertTrue(sorter.getRunCount() > 1);
+      assertTrue(sorter.getRunCount() < ExternalSorter.MAX_FAN_IN);
+      assertEquals(sorter.getRunCount(), tmpDir.list().length);
+
+      Collections.sort(expected);
+      for (String line : expected) {
+        assertEquals(line, sorter.readLine());
+      }
+      assertNull(sorter.readLine());
+    }
+
+    // Sorted runs must have been removed
+    assertEquals(0, tmpDir.list().length);
+    assertTrue(tmpDir.delete());
+  }
+
+  @Test
+  public void testPseudoMapReduce() throws IOException {
+
+    final PseudoMapReduce mr = new PseudoMapReduce() {
+
+      @Override
+      public void map(final String value, final List<String> output,
+          final Reporter reporter) throws IOException {
+
+        for (String word : value.split(" ")) {
+          output.add(word + "\t1");
+        }
+      }
+
+      @Override
+      public void reduce(final String key, final Iterator<String> values,
+          final List<String> output, final Reporter reporter)
+          throws IOException {
+
+        int count = 0;
+        while (values.hasNext()) {
+          count += Integer.parseInt(values.next());
+        }
+        output.add(key + "\t" + count);
+      }
+    };
+
+    final File tmpDir = Files.createTempDirectory("sort-test").toFile();
+    mr.setMapReduceTemporaryDirectory(tmpDir);
+    mr.setSortBufferSize(1000);
+    mr.setSortThreads(2);
+
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append("b a c a\n");
+    }
+
+    mr.doMap(new ByteArrayInputStream(sb.toString().getBytes()));
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    mr.doReduce(os);
+
+    assertEquals("a\t2000\nb\t1000\nc\t1000", os.toString());
+    assertEquals(0, tmpDir.list().length);
+    assertTrue(tmpDir.delete());
+  }
+
+}
@@ -0,0 +1,132 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+public class OrderedBatchPipelineTest {
+
+  @Test
+  public void testOrder() throws InterruptedException, ExecutionException {
+
+    final List<Integer> result = new ArrayList<>();
+    final Random random = new Random(0);
+
+    try (OrderedBatchPipeline<Integer> pipeline =
+        new OrderedBatchPipeline<>(4, result::add)) {
+
+      for (int i = 0; i < 200; i++) {
+
+        final int value = i;
+        final int delay = random.nextInt(3);
+        pipeline.submit(() -> {
+          Thread.sleep(delay);
+          return value;
+        });
+      }
+
+      pipeline.finish();
+    }
+
+    assertEquals(200, result.size());
+    for (int i = 0; i < result.size(); i++) {
+      assertEquals(i, (int) result.get(i));
+    }
+  }
+
+  @Test
+  public void testBatchError() throws InterruptedException {
+
+    final IOException error = new IOException("batch error");
+
+    try (OrderedBatchPipeline<Integer> pipeline =
+        new OrderedBatchPipeline<>(2, batch -> {
+        })) {
+
+      pipeline.submit(() -> 1);
+      pipeline.submit(() -> {
+        throw error;
+      });
+      pipeline.finish();
+      fail();
+
+    } catch (ExecutionException e) {
+
+      // The error of the batch is not nested in another ExecutionException
+      assertSame(error, e.getCause());
+    }
+  }
+
+  @Test
+  public void testConsumerError() throws InterruptedException {
+
+    final IOException error = new IOException("consumer error");
+
+    try (OrderedBatchPipeline<Integer> pipeline =
+        new OrderedBatchPipeline<>(2, batch -> {
+          throw error;
+        })) {
+
+      // The producer is not blocked forever when the consumer has failed
+      for (int i = 0; i < 100; i++) {
+        pipeline.submit(() -> 1);
+      }
+      pipeline.finish();
+      fail();
+
+    } catch (ExecutionException e) {
+      assertSame(error, e.getCause());
+    }
+  }
+
+  @Test
+  public void testClose() throws InterruptedException, ExecutionException {
+
+    final List<Integer> result = new ArrayList<>();
+
+    final OrderedBatchPipeline<Integer> pipeline =
+        new OrderedBatchPipeline<>(2, result::add);
+    pipeline.submit(() -> {
+      Thread.sleep(60000);
+      return 1;
+    });
+
+    // The threads are stopped and their end awaited
+    pipeline.close();
+    assertTrue(result.isEmpty());
+  }
+
+}
@@ -0,0 +1,189 @@
+package fr.ens.biologie.genomique.kenetre.util.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class MetricRegistryTest {
+
+  @Test
+  public void testRegistry() {
+
+    MetricRegistry registry = new MetricRegistry();
+
+    Meter m = registry.meter("b.meter");
+    assertSame(m, registry.meter("b.meter"));
+    Timer t = registry.timer("a.timer");
+    assertSame(t, registry.timer("a.timer"));
+
+    try {
+      registry.histogram("a.timer");
+      assertTrue(false);
+    } catch (IllegalArgumentException e) {
+      assertTrue(true);
+    }
+
+    try {
+      registry.gauge("b.meter", () -> 0);
+      assertTrue(false);
+    } catch (IllegalArgumentException e) {
+      assertTrue(true);
+    }
+
+    registry.gauge("c.gauge", () -> 42);
+    assertEquals(3, registry.getMetrics().size());
+    assertEquals("a.timer", registry.getMetrics().get(0).getName());
+    assertEquals("c.gauge", registry.getMetrics().get(2).getName());
+    assertEquals(42, ((Gauge) registry.getMetrics().get(2)).getValue());
+
+    assertTrue(registry.remove("c.gauge"));
+    assertEquals(2, registry.getMetrics().size());
+  }
+
+  @Test
+  public void testConcurrentUpdates() throws InterruptedException {
+
+    MetricRegistry registry = new MetricRegistry();
+    final Meter meter = registry.meter("meter");
+    final Histogram histogram = registry.histogram("histogram");
+
+    final List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      threads.add(new Thread(() -> {
+        for (int j = 0; j < 10000; j++) {
+          meter.mark();
+          histogram.update(j);
+        }
+      }));
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(40000, meter.getCount());
+    assertEquals(40000, histogram.getCount());
+    assertEquals(4L * 9999 * 10000 / 2, histogram.getSum());
+    assertEquals(9999, histogram.getMax());
+  }
+
+  @Test
+  public void testHistogram() {
+
+    Histogram h = new MetricRegistry().histogram("h");
+
+    assertEquals(0, h.getQuantile(0.5));
+    assertEquals(0.0, h.getMean(), 0.0);
+
+    for (int i = 1; i <= 100; i++) {
+      h.update(i);
+    }
+    h.update(-1);
+
+    assertEquals(101, h.getCount());
+    assertEquals(5050, h.getSum());
+    assertEquals(100, h.getMax());
+    assertEquals(0, h.getQuantile(0.0));
+
+    // The median (50) is in the [32, 63] bucket
+    assertEquals(63, h.getQuantile(0.5));
+
+    // The upper quantiles are bounded by the maximal value
+    assertEquals(100, h.getQuantile(0.99));
+    assertEquals(100, h.getQuantile(1.0));
+
+    try {
+      h.getQuantile(1.5);
+      assertTrue(false);
+    } catch (IllegalArgumentException e) {
+      assertTrue(true);
+    }
+  }
+
+  @Test
+  public void testExport() throws IOException {
+
+    MetricRegistry registry = new MetricRegistry();
+    registry.meter("reads.input").mark(10);
+    registry.timer("filter.quality").update(2000);
+    final AtomicLong queue = new AtomicLong(3);
+    registry.gauge("queue", queue::get);
+
+    String json = MetricsExporter.toJSON(registry);
+    assertTrue(json.contains("\"reads.input\": {\"type\": \"meter\", "
+        + "\"count\": 10"));
+    assertTrue(json.contains("\"filter.quality\": {\"type\": \"timer\", "
+        + "\"count\": 1, \"sum\": 2000"));
+    assertTrue(json.contains("\"queue\": {\"type\": \"gauge\", \"value\": 3}"));
+
+    String prometheus = MetricsExporter.toPrometheus(registry);
+    assertTrue(prometheus.contains("# TYPE reads_input_total counter\n"
+        + "reads_input_total 10\n"));
+    assertTrue(prometheus.contains("filter_quality_seconds_count 1\n"));
+    assertTrue(prometheus.contains("# TYPE queue gauge\nqueue 3\n"));
+    assertEquals("_1a_b:c", MetricsExporter.prometheusName("1a-b:c"));
+
+    File file = File.createTempFile("metrics-", ".prom");
+    try {
+
+      MetricsExporter exporter = new MetricsExporter(registry, file,
+          MetricsExporter.Format.PROMETHEUS, 0);
+      queue.set(5);
+      exporter.close();
+
+      String content =
+          new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+      assertTrue(content.contains("queue 5\n"));
+    } finally {
+      file.delete();
+    }
+
+    assertEquals(MetricsExporter.Format.PROMETHEUS,
+        MetricsExporter.Format.getFormat("Prometheus"));
+  }
+
+  @Test
+  public void testMeteredStreams() throws IOException {
+
+    MetricRegistry registry = new MetricRegistry();
+    Meter in = registry.meter("in");
+    Meter out = registry.meter("out");
+
+    byte[] data = new byte[1000];
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+    try (InputStream is =
+        new MeteredInputStream(new ByteArrayInputStream(data), in);
+        OutputStream os = new MeteredOutputStream(baos, out)) {
+
+      os.write(is.read());
+      byte[] buffer = new byte[100];
+      int n;
+      while ((n = is.read(buffer)) != -1) {
+        os.write(buffer, 0, n);
+      }
+    }
+
+    assertEquals(1000, in.getCount());
+    assertEquals(1000, out.getCount());
+    assertEquals(1000, baos.size());
+  }
+
+}
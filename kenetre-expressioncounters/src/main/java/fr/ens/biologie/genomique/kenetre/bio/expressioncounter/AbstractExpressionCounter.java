@@ -75,13 +75,16 @@ public abstract class AbstractExpressionCounter implements ExpressionCounter {
   }
 
   /**
-   * This class allow to save the modified SAM entries after the counting.
+   * This class allow to save the modified SAM entries after the counting. An
+   * entry is written only once the next entry has been counted, as the first
+   * entry of a pair is assigned with its mate.
    */
-  private static class IteratorWriter
+  static class IteratorWriter
       implements Iterable<SAMRecord>, Iterator<SAMRecord> {
 
     private final SAMFileWriter writer;
     private final Iterator<SAMRecord> samRecords;
+    private SAMRecord previous;
     private SAMRecord current;
 
     @Override
@@ -100,6 +103,10 @@ public abstract class AbstractExpressionCounter implements ExpressionCounter {
       boolean result = this.samRecords.hasNext();
 
       if (!result && this.current != null) {
+        if (this.previous != null) {
+          this.writer.addAlignment(this.previous);
+          this.previous = null;
+        }
         this.writer.addAlignment(this.current);
         this.writer.close();
         this.current = null;
@@ -111,11 +118,11 @@ public abstract class AbstractExpressionCounter implements ExpressionCounter {
     @Override
     public SAMRecord next() {
 
-      if (this.current != null) {
-        this.writer.addAlignment(this.current);
-        this.current = null;
+      if (this.previous != null) {
+        this.writer.addAlignment(this.previous);
       }
 
+      this.previous = this.current;
       this.current = this.samRecords.next();
 
       return this.current;
@@ -169,13 +176,26 @@ public abstract class AbstractExpressionCounter implements ExpressionCounter {
     return false;
   }
 
+  /**
+   * Create the reader of the annotation.
+   * @param annotationIs annotation input stream
+   * @param gtfFormat true if the annotation is in GTF format
+   * @return a new GFFReader object
+   */
+  protected GFFReader createAnnotationReader(final InputStream annotationIs,
+      final boolean gtfFormat) {
+
+    return gtfFormat
+        ? new GTFReader(annotationIs) : new GFFReader(annotationIs);
+  }
+
   @Override
   public void init(final GenomeDescription genomeDesc,
       final InputStream annotationIs, final boolean gtfFormat)
       throws KenetreException, IOException {
 
     try (GFFReader gffReader =
-        gtfFormat ? new GTFReader(annotationIs) : new GFFReader(annotationIs)) {
+        createAnnotationReader(annotationIs, gtfFormat)) {
 
       init(genomeDesc, gffReader);
     }
@@ -186,7 +206,7 @@ public abstract class AbstractExpressionCounter implements ExpressionCounter {
       final boolean gtfFormat) throws KenetreException, IOException {
 
     try (GFFReader gffReader =
-        gtfFormat ? new GTFReader(annotationIs) : new GFFReader(annotationIs)) {
+        createAnnotationReader(annotationIs, gtfFormat)) {
 
       init(GenomeDescription.load(descIs), gffReader);
     }
@@ -234,6 +254,23 @@ public abstract class AbstractExpressionCounter implements ExpressionCounter {
             .setMaxRecordsInRam(this.maxRecordsInRam)
             .makeSAMWriter(reader.getFileHeader(), false, outputSam);
 
+    return count(reader, writer, reporter, counterGroup);
+  }
+
+  /**
+   * Count alignments and write them with their assignments. The writer must be
+   * closed at the end of the counting.
+   * @param reader the SAM reader
+   * @param writer the SAM writer
+   * @param reporter the reporter
+   * @param counterGroup the counter group of the reporter
+   * @return a map with the counts
+   * @throws KenetreException if an error occurs while counting
+   */
+  protected Map<String, Integer> count(final SamReader reader,
+      final SAMFileWriter writer, final ReporterIncrementer reporter,
+      final String counterGroup) throws KenetreException {
+
     return count(new IteratorWriter(writer, reader), reporter, counterGroup);
   }
 
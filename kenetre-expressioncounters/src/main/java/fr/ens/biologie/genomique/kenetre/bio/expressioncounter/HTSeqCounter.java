@@ -26,13 +26,22 @@ package fr.ens.biologie.genomique.kenetre.bio.expressioncounter;
 
 import static fr.ens.biologie.genomique.kenetre.util.StringUtils.join;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import com.google.common.base.Splitter;
 
@@ -42,10 +51,18 @@ import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
 import fr.ens.biologie.genomique.kenetre.bio.GenomicArray;
 import fr.ens.biologie.genomique.kenetre.bio.GenomicInterval;
 import fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqUtils.UnknownChromosomeException;
+import fr.ens.biologie.genomique.kenetre.bio.io.GFFReader;
+import fr.ens.biologie.genomique.kenetre.bio.io.ParallelGFFReader;
 import fr.ens.biologie.genomique.kenetre.util.GuavaCompatibility;
+import fr.ens.biologie.genomique.kenetre.util.OrderedBatchPipeline;
 import fr.ens.biologie.genomique.kenetre.util.ReporterIncrementer;
+import fr.ens.biologie.genomique.kenetre.util.metrics.Meter;
+import fr.ens.biologie.genomique.kenetre.util.metrics.MetricRegistry;
+import fr.ens.biologie.genomique.kenetre.util.metrics.Timer;
 import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.SAMFileWriter;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamReader;
 
 /**
  * This class defines a wrapper on the HTSeq-count counter.
@@ -80,6 +97,11 @@ public class HTSeqCounter extends AbstractExpressionCounter
   public static final String REMOVE_NON_ASSIGNED_FEATURES_SAM_TAGS_PARAMETER_NAME =
       "remove.non.assigned.sam.tags";
   public static final String SAM_TAG_TO_USE_PARAMETER_NAME = "sam.tag.to.use";
+  public static final String THREADS_PARAMETER_NAME = "threads";
+  public static final String MATE_BUFFER_SIZE_PARAMETER_NAME =
+      "mate.buffer.size";
+  public static final String TEMPORARY_DIRECTORY_PARAMETER_NAME =
+      "temporary.directory";
 
   public static final String SAM_TAG_DEFAULT = "XF";
 
@@ -96,10 +118,22 @@ public class HTSeqCounter extends AbstractExpressionCounter
   private boolean removeNonAssignedFeatureSamTags = false;
 
   private String samTag = SAM_TAG_DEFAULT;
+  private int threads = 1;
+  private int mateBufferSize = 256;
+  private File temporaryDirectory =
+      new File(System.getProperty("java.io.tmpdir"));
 
-  private final GenomicArray<String> features = new GenomicArray<>();
+  private static final int BATCH_SIZE = 1024;
+
+  private GenomicArray<String> features = new GenomicArray<>();
+  private final Map<String, Integer> featureIndexes = new HashMap<>();
+  private String[] featureIds;
   private boolean initialized;
 
+  // Metrics
+  private transient MetricRegistry metrics;
+  private transient String metricsPrefix;
+
   /**
    * Internal class for counters
    */
@@ -118,6 +152,23 @@ public class HTSeqCounter extends AbstractExpressionCounter
     private int nonUnique;
     private int missingMate;
 
+    /**
+     * Add the values of other counters.
+     * @param counters the counters to add
+     */
+    private void add(final InternalCounters counters) {
+
+      this.input += counters.input;
+      this.empty += counters.empty;
+      this.ambiguous += counters.ambiguous;
+      this.notAligned += counters.notAligned;
+      this.lowQual += counters.lowQual;
+      this.secondaryAlignments += counters.secondaryAlignments;
+      this.supplementaryAlignments += counters.supplementaryAlignments;
+      this.nonUnique += counters.nonUnique;
+      this.missingMate += counters.missingMate;
+    }
+
     private void fillReporter(final HTSeqCounter counter) {
 
       reporter.incrCounter(counterGroup,
@@ -252,6 +303,32 @@ public class HTSeqCounter extends AbstractExpressionCounter
       }
       break;
 
+    case THREADS_PARAMETER_NAME:
+      try {
+        this.threads = Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        throw new KenetreException("Invalid thread count: " + value);
+      }
+      if (this.threads < 1) {
+        throw new KenetreException("Invalid thread count: " + value);
+      }
+      break;
+
+    case MATE_BUFFER_SIZE_PARAMETER_NAME:
+      try {
+        this.mateBufferSize = Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        throw new KenetreException("Invalid mate buffer size: " + value);
+      }
+      if (this.mateBufferSize < 1) {
+        throw new KenetreException("Invalid mate buffer size: " + value);
+      }
+      break;
+
+    case TEMPORARY_DIRECTORY_PARAMETER_NAME:
+      this.temporaryDirectory = new File(value);
+      break;
+
     default:
       throw new KenetreException("Unknown parameter: " + key);
     }
@@ -297,6 +374,8 @@ public class HTSeqCounter extends AbstractExpressionCounter
     // Check configuration
     checkConfiguration();
 
+    final long startTime = System.nanoTime();
+
     this.features.addChromosomes(desc);
 
     final Splitter splitter = Splitter.on(',').omitEmptyStrings().trimResults();
@@ -343,15 +422,136 @@ public class HTSeqCounter extends AbstractExpressionCounter
       }
     }
 
-    if (this.features.getFeaturesIds().size() == 0) {
+    // Build the zones of the features once for all the counts
+    this.features.freeze();
+
+    indexFeatures();
+    stopTimer("init", startTime);
+  }
+
+  @Override
+  protected GFFReader createAnnotationReader(final InputStream annotationIs,
+      final boolean gtfFormat) {
+
+    // Parse the annotation on the threads used for counting
+    if (this.threads > 1) {
+      return new ParallelGFFReader(annotationIs, gtfFormat, this.threads);
+    }
+
+    return super.createAnnotationReader(annotationIs, gtfFormat);
+  }
+
+  /**
+   * Initialize the counter from an annotation index saved by
+   * {@link #saveAnnotationIndex(File)}. The annotation index must have been
+   * created with the same annotation parameters (see
+   * {@link #getAnnotationIndexParameters()}).
+   * @param annotationIndexFile the annotation index file
+   * @throws KenetreException if the configuration of the counter is invalid or
+   *           if the annotation index does not contain any feature
+   * @throws IOException if an error occurs while reading the annotation index
+   */
+  public void init(final File annotationIndexFile)
+      throws KenetreException, IOException {
+
+    if (annotationIndexFile == null) {
+      throw new NullPointerException(
+          "the annotationIndexFile argument is null");
+    }
+
+    if (this.initialized) {
+      throw new IllegalStateException(
+          "the counter has been already initialized");
+    }
+
+    // Check configuration
+    checkConfiguration();
+
+    final long startTime = System.nanoTime();
+
+    this.features = GenomicArray.load(annotationIndexFile);
+
+    indexFeatures();
+    stopTimer("init", startTime);
+  }
+
+  /**
+   * Index the features to count them in an array.
+   * @throws KenetreException if no feature has been found
+   */
+  private void indexFeatures() throws KenetreException {
+
+    final Set<String> ids = this.features.getFeaturesIds();
+
+    if (ids.size() == 0) {
       throw new KenetreException(
           "Warning: No features of type '" + this.genomicType + "' found.\n");
     }
 
+    this.featureIds = ids.toArray(new String[0]);
+    for (int i = 0; i < this.featureIds.length; i++) {
+      this.featureIndexes.put(this.featureIds[i], i);
+    }
+
     // The counter is now initialized
     this.initialized = true;
   }
 
+  /**
+   * Get the parameters of the counter used to build the annotation index. An
+   * annotation index can be reused by any counter that has the same
+   * parameters for the same annotation.
+   * @return a map with the parameters of the annotation index
+   */
+  public Map<String, String> getAnnotationIndexParameters() {
+
+    final Map<String, String> result = new LinkedHashMap<>();
+    result.put(COUNTER_PARAMETER_NAME, COUNTER_NAME);
+    result.put(GENOMIC_TYPE_PARAMETER_NAME, this.genomicType);
+    result.put(ATTRIBUTE_ID_PARAMETER_NAME, this.attributeId);
+    result.put(STRANDED_PARAMETER_NAME, this.stranded.getName());
+    result.put(SPLIT_ATTRIBUTE_VALUES_PARAMETER_NAME,
+        Boolean.toString(this.splitAttributeValues));
+
+    return result;
+  }
+
+  /**
+   * Save the annotation index built by the initialization of the counter.
+   * @param os output stream
+   * @throws IOException if an error occurs while writing the annotation index
+   */
+  public void saveAnnotationIndex(final OutputStream os) throws IOException {
+
+    if (os == null) {
+      throw new NullPointerException("the os argument is null");
+    }
+
+    if (!this.initialized) {
+      throw new IllegalStateException("the counter has not been initialized");
+    }
+
+    this.features.save(os);
+  }
+
+  /**
+   * Save the annotation index built by the initialization of the counter.
+   * @param file output file
+   * @throws IOException if an error occurs while writing the annotation index
+   */
+  public void saveAnnotationIndex(final File file) throws IOException {
+
+    if (file == null) {
+      throw new NullPointerException("the file argument is null");
+    }
+
+    if (!this.initialized) {
+      throw new IllegalStateException("the counter has not been initialized");
+    }
+
+    this.features.save(file);
+  }
+
   @Override
   public Map<String, Integer> count(final Iterable<SAMRecord> samRecords,
       final ReporterIncrementer reporter, final String counterGroup)
@@ -369,71 +569,517 @@ public class HTSeqCounter extends AbstractExpressionCounter
       throw new IllegalStateException("the counter has not been initialized");
     }
 
+    if (this.threads > 1) {
+      return countParallel(samRecords, null, reporter, counterGroup);
+    }
+
     SAMRecord sam1 = null, sam2 = null;
-    final Map<String, Integer> counts = new HashMap<>();
+    final int[] counts = new int[this.featureIds.length];
     final List<GenomicInterval> ivSeq = new ArrayList<>();
     final InternalCounters internalCounters =
         new InternalCounters(reporter, counterGroup);
+    final Meter alignmentsMeter = meter("alignments");
+    final long startTime = System.nanoTime();
+    MateBuffer mateBuffer = null;
 
-    // Read the SAM file
-    for (final SAMRecord samRecord : samRecords) {
+    try {
 
-      internalCounters.input++;
+      // Read the SAM file
+      for (final SAMRecord samRecord : samRecords) {
 
-      // single-end mode
-      if (!samRecord.getReadPairedFlag()) {
+        internalCounters.input++;
+        if (alignmentsMeter != null) {
+          alignmentsMeter.mark();
+        }
 
-        sam1 = samRecord;
+        // single-end mode
+        if (!samRecord.getReadPairedFlag()) {
 
-        if (!processSingleEnd(sam1, ivSeq, internalCounters)) {
-          continue;
+          sam1 = samRecord;
+
+          if (!processSingleEnd(sam1, ivSeq, internalCounters)) {
+            continue;
+          }
         }
+
+        // paired-end mode sorted by coordinate
+        else if (mateBuffer != null || isCoordinateSorted(samRecord)) {
+
+          if (mateBuffer == null) {
+            mateBuffer = newMateBuffer(samRecord,
+                samRecords instanceof IteratorWriter);
+          }
+
+          final SAMRecord mate = mateBuffer.add(samRecord);
+          if (mate == null) {
+            continue;
+          }
+
+          sam1 = samRecord.getFirstOfPairFlag() ? samRecord : mate;
+          sam2 = sam1 == samRecord ? mate : samRecord;
+
+          ivSeq.clear();
+          if (!pairedEnd(sam1, sam2, ivSeq, internalCounters)) {
+            continue;
+          }
+        }
+
+        // paired-end mode
+        else {
+
+          if (sam1 != null && sam2 != null) {
+            sam1 = null;
+            sam2 = null;
+            ivSeq.clear();
+          }
+
+          if (samRecord.getFirstOfPairFlag()) {
+            sam1 = samRecord;
+          } else {
+            sam2 = samRecord;
+          }
+
+          if (sam1 == null || sam2 == null) {
+            continue;
+          }
+
+          if (!sam1.getReadName().equals(sam2.getReadName())) {
+            sam1 = sam2;
+            sam2 = null;
+            internalCounters.missingMate++;
+            continue;
+          }
+
+          if (!pairedEnd(sam1, sam2, ivSeq, internalCounters)) {
+            continue;
+          }
+        }
+
+        // Update counts
+        updateCounts(sam1, sam2, ivSeq, counts, internalCounters);
+      }
+
+      if (mateBuffer != null) {
+        internalCounters.missingMate += (int) mateBuffer.finish();
       }
 
-      // paired-end mode
-      else {
+    } catch (IOException e) {
+      throw new KenetreException(
+          "Error while pairing the alignments: " + e.getMessage(), e);
+    } finally {
+      closeMateBuffer(mateBuffer);
+    }
+
+    stopTimer("count", startTime);
+
+    // Set the counters in the reporter
+    internalCounters.fillReporter(this);
+
+    return toMap(counts);
+  }
+
+  //
+  // Metrics
+  //
+
+  /**
+   * Enable the metrics of the counter. The metrics contains timers for the
+   * initialization, the counting and, in multithreaded mode, the counting of
+   * each batch of alignments, a meter for the input alignments and, in
+   * multithreaded mode, a gauge with the number of batches waiting to be
+   * written, that is removed at the end of the counting.
+   * @param registry the metric registry, null to disable the metrics
+   * @param prefix prefix of the name of the metrics
+   */
+  public void setMetrics(final MetricRegistry registry, final String prefix) {
+
+    if (registry != null && prefix == null) {
+      throw new NullPointerException("the prefix argument is null");
+    }
+
+    this.metrics = registry;
+    this.metricsPrefix = registry == null ? null : prefix;
+  }
+
+  private Meter meter(final String name) {
+
+    return this.metrics == null
+        ? null : this.metrics.meter(this.metricsPrefix + '.' + name);
+  }
+
+  private Timer timer(final String name) {
+
+    return this.metrics == null
+        ? null : this.metrics.timer(this.metricsPrefix + '.' + name);
+  }
+
+  private void stopTimer(final String name, final long startTime) {
+
+    final Timer timer = timer(name);
+    if (timer != null) {
+      timer.stop(startTime);
+    }
+  }
+
+  //
+  // Mate buffer
+  //
+
+  /**
+   * Test if the alignments are sorted by coordinate.
+   * @param samRecord an alignment
+   * @return true if the alignments are sorted by coordinate
+   */
+  private static boolean isCoordinateSorted(final SAMRecord samRecord) {
+
+    return samRecord.getHeader().getSortOrder() == SortOrder.coordinate;
+  }
 
-        if (samRecord.getHeader().getSortOrder() == SortOrder.coordinate) {
-          throw new KenetreException(
-              "The counter does not support SAM data sorted by coordinate in paired-end mode");
+  /**
+   * Create the buffer that pairs the alignments sorted by coordinate.
+   * @param samRecord the first paired-end alignment
+   * @param writeAssignments true if the alignments are written with their
+   *          assignments
+   * @return a new MateBuffer object
+   * @throws KenetreException if the assignments must be written
+   */
+  private MateBuffer newMateBuffer(final SAMRecord samRecord,
+      final boolean writeAssignments) throws KenetreException {
+
+    // The assignment of an alignment is only known when its mate is read, the
+    // alignment may already have been written
+    if (writeAssignments) {
+      throw new KenetreException(
+          "The counter does not support writing the assignments of SAM data "
+              + "sorted by coordinate in paired-end mode");
+    }
+
+    return new MateBuffer(samRecord.getHeader(),
+        this.mateBufferSize * 1024L * 1024L, this.temporaryDirectory);
+  }
+
+  /**
+   * Close a mate buffer.
+   * @param mateBuffer the mate buffer, can be null
+   */
+  private void closeMateBuffer(final MateBuffer mateBuffer) {
+
+    if (mateBuffer == null) {
+      return;
+    }
+
+    if (mateBuffer.getSpilledRecordCount() > 0) {
+      getLogger().info("Alignments written in temporary files while waiting "
+          + "their mate: " + mateBuffer.getSpilledRecordCount());
+    }
+
+    try {
+      mateBuffer.close();
+    } catch (IOException e) {
+      getLogger().warn("Cannot remove the temporary files of the mate buffer: "
+          + e.getMessage());
+    }
+  }
+
+  @Override
+  protected Map<String, Integer> count(final SamReader reader,
+      final SAMFileWriter writer, final ReporterIncrementer reporter,
+      final String counterGroup) throws KenetreException {
+
+    if (this.threads == 1) {
+      return super.count(reader, writer, reporter, counterGroup);
+    }
+
+    if (reporter == null) {
+      throw new NullPointerException("the reporter argument is null");
+    }
+
+    if (counterGroup == null) {
+      throw new NullPointerException("the counterGroup argument is null");
+    }
+
+    if (!this.initialized) {
+      throw new IllegalStateException("the counter has not been initialized");
+    }
+
+    return countParallel(reader, writer, reporter, counterGroup);
+  }
+
+  //
+  // Parallel counting
+  //
+
+  /**
+   * This class define a batch of alignments to count. The alignments of a pair
+   * are always in the same batch.
+   */
+  private static final class Batch {
+
+    private final List<SAMRecord> records = new ArrayList<>(BATCH_SIZE);
+    private final List<SAMRecord> records1 = new ArrayList<>(BATCH_SIZE);
+    private final List<SAMRecord> records2 = new ArrayList<>(BATCH_SIZE);
+
+    /**
+     * Add an alignment or a pair of alignments to count.
+     * @param sam1 first alignment
+     * @param sam2 second alignment, null for single-end alignments
+     */
+    private void add(final SAMRecord sam1, final SAMRecord sam2) {
+
+      this.records1.add(sam1);
+      this.records2.add(sam2);
+    }
+  }
+
+  /**
+   * This class define a counting worker with its own counts and counters.
+   */
+  private final class Worker {
+
+    private final int[] counts = new int[HTSeqCounter.this.featureIds.length];
+    private final InternalCounters counters;
+    private final List<GenomicInterval> ivSeq = new ArrayList<>();
+    private final Timer batchTimer = timer("batch");
+
+    /**
+     * Count the alignments of a batch.
+     * @param batch the batch
+     * @return the batch
+     * @throws KenetreException if an error occurs while counting
+     */
+    private Batch count(final Batch batch) throws KenetreException {
+
+      final long startTime = System.nanoTime();
+
+      for (int i = 0; i < batch.records1.size(); i++) {
+
+        final SAMRecord sam1 = batch.records1.get(i);
+        final SAMRecord sam2 = batch.records2.get(i);
+
+        if (sam2 == null) {
+
+          if (!processSingleEnd(sam1, this.ivSeq, this.counters)) {
+            continue;
+          }
+        } else {
+
+          this.ivSeq.clear();
+          if (!pairedEnd(sam1, sam2, this.ivSeq, this.counters)) {
+            continue;
+          }
         }
 
-        if (sam1 != null && sam2 != null) {
-          sam1 = null;
-          sam2 = null;
-          ivSeq.clear();
+        updateCounts(sam1, sam2, this.ivSeq, this.counts, this.counters);
+      }
+
+      if (this.batchTimer != null) {
+        this.batchTimer.stop(startTime);
+      }
+
+      return batch;
+    }
+
+    private Worker(final ReporterIncrementer reporter,
+        final String counterGroup) {
+
+      this.counters = new InternalCounters(reporter, counterGroup);
+    }
+  }
+
+  /**
+   * Count alignments using several threads. The alignments are read and paired
+   * in the current thread, counted by batches by the workers and, if a writer
+   * is set, written in the input order by a dedicated thread. Without a
+   * writer, the assignments of the alignments are all set when this method
+   * returns.
+   * @param samRecords alignments to count
+   * @param writer writer for the alignments, can be null
+   * @param reporter the reporter
+   * @param counterGroup the counter group of the reporter
+   * @return a map with the counts
+   * @throws KenetreException if an error occurs while counting
+   */
+  private Map<String, Integer> countParallel(
+      final Iterable<SAMRecord> samRecords, final SAMFileWriter writer,
+      final ReporterIncrementer reporter, final String counterGroup)
+      throws KenetreException {
+
+    final BlockingQueue<Worker> workers =
+        new ArrayBlockingQueue<>(this.threads);
+    for (int i = 0; i < this.threads; i++) {
+      workers.add(new Worker(reporter, counterGroup));
+    }
+
+    final InternalCounters internalCounters =
+        new InternalCounters(reporter, counterGroup);
+
+    final Meter alignmentsMeter = meter("alignments");
+    final long startTime = System.nanoTime();
+    MateBuffer mateBuffer = null;
+
+    // Writer stage
+    try (OrderedBatchPipeline<Batch> pipeline =
+        new OrderedBatchPipeline<>(this.threads, batch -> {
+
+          if (writer != null) {
+            for (SAMRecord samRecord : batch.records) {
+              writer.addAlignment(samRecord);
+            }
+          }
+        })) {
+
+      if (this.metrics != null) {
+        this.metrics.gauge(this.metricsPrefix + ".queue.batches",
+            pipeline::getPendingBatchCount);
+      }
+
+      // Reader stage
+      SAMRecord sam1 = null, sam2 = null;
+      Batch batch = new Batch();
+
+      for (final SAMRecord samRecord : samRecords) {
+
+        internalCounters.input++;
+        batch.records.add(samRecord);
+        if (alignmentsMeter != null) {
+          alignmentsMeter.mark();
         }
 
-        if (samRecord.getFirstOfPairFlag()) {
+        // single-end mode
+        if (!samRecord.getReadPairedFlag()) {
+
           sam1 = samRecord;
-        } else {
-          sam2 = samRecord;
+          batch.add(sam1, null);
         }
 
-        if (sam1 == null || sam2 == null) {
-          continue;
+        // paired-end mode sorted by coordinate
+        else if (mateBuffer != null || isCoordinateSorted(samRecord)) {
+
+          if (mateBuffer == null) {
+            mateBuffer = newMateBuffer(samRecord, writer != null);
+          }
+
+          final SAMRecord mate = mateBuffer.add(samRecord);
+          if (mate == null) {
+            continue;
+          }
+
+          if (samRecord.getFirstOfPairFlag()) {
+            batch.add(samRecord, mate);
+          } else {
+            batch.add(mate, samRecord);
+          }
         }
 
-        if (!sam1.getReadName().equals(sam2.getReadName())) {
-          sam1 = sam2;
-          sam2 = null;
-          internalCounters.missingMate++;
-          continue;
+        // paired-end mode
+        else {
+
+          if (sam1 != null && sam2 != null) {
+            sam1 = null;
+            sam2 = null;
+          }
+
+          if (samRecord.getFirstOfPairFlag()) {
+            sam1 = samRecord;
+          } else {
+            sam2 = samRecord;
+          }
+
+          if (sam1 == null || sam2 == null) {
+            continue;
+          }
+
+          if (!sam1.getReadName().equals(sam2.getReadName())) {
+            sam1 = sam2;
+            sam2 = null;
+            internalCounters.missingMate++;
+            continue;
+          }
+
+          batch.add(sam1, sam2);
         }
 
-        if (!pairedEnd(sam1, sam2, ivSeq, internalCounters)) {
-          continue;
+        // Do not split the batch while waiting the mate of an alignment
+        if (batch.records.size() >= BATCH_SIZE) {
+          pipeline.submit(countTask(workers, batch));
+          batch = new Batch();
         }
       }
 
-      // Update counts
-      updateCounts(sam1, sam2, ivSeq, counts, internalCounters);
+      if (mateBuffer != null) {
+        internalCounters.missingMate += (int) mateBuffer.finish();
+      }
+
+      if (!batch.records.isEmpty()) {
+        pipeline.submit(countTask(workers, batch));
+      }
+
+      // Wait the end of the writer
+      pipeline.finish();
+      if (writer != null) {
+        writer.close();
+      }
+      stopTimer("count", startTime);
+
+    } catch (InterruptedException e) {
+
+      Thread.currentThread().interrupt();
+      throw new KenetreException("Counting has been interrupted");
+
+    } catch (ExecutionException e) {
+
+      if (e.getCause() instanceof KenetreException) {
+        throw (KenetreException) e.getCause();
+      }
+      throw new KenetreException(e.getCause());
+
+    } catch (IOException e) {
+
+      throw new KenetreException(
+          "Error while pairing the alignments: " + e.getMessage(), e);
+
+    } finally {
+      closeMateBuffer(mateBuffer);
+
+      // The gauge must not keep a reference to the queue
+      if (this.metrics != null) {
+        this.metrics.remove(this.metricsPrefix + ".queue.batches");
+      }
+    }
+
+    // Merge the counts and the counters of the workers
+    final int[] counts = new int[this.featureIds.length];
+    for (Worker worker : workers) {
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] += worker.counts[i];
+      }
+      internalCounters.add(worker.counters);
     }
 
     // Set the counters in the reporter
     internalCounters.fillReporter(this);
 
-    return counts;
+    return toMap(counts);
+  }
+
+  /**
+   * Create the task that counts a batch with the first available worker.
+   * @param workers the workers
+   * @param batch the batch to count
+   * @return the task that counts the batch
+   */
+  private static Callable<Batch> countTask(final BlockingQueue<Worker> workers,
+      final Batch batch) {
+
+    return () -> {
+
+      final Worker worker = workers.take();
+      try {
+        return worker.count(batch);
+      } finally {
+        workers.put(worker);
+      }
+    };
   }
 
   //
@@ -572,8 +1218,8 @@ public class HTSeqCounter extends AbstractExpressionCounter
    */
   private void updateCounts(final SAMRecord samRecord1,
       final SAMRecord samRecord2, final List<GenomicInterval> ivSeq,
-      final Map<String, Integer> counts,
-      final InternalCounters internalCounters) throws KenetreException {
+      final int[] counts, final InternalCounters internalCounters)
+      throws KenetreException {
 
     try {
       Set<String> fs = HTSeqUtils.featuresOverlapped(ivSeq, this.features,
@@ -614,14 +1260,27 @@ public class HTSeqCounter extends AbstractExpressionCounter
    * @param counts the counts
    * @param key the feature to increment
    */
-  private static void increment(final Map<String, Integer> counts,
-      final String key) {
+  private void increment(final int[] counts, final String key) {
 
-    if (!counts.containsKey(key)) {
-      counts.put(key, 1);
-    } else {
-      counts.put(key, counts.get(key) + 1);
+    counts[this.featureIndexes.get(key)]++;
+  }
+
+  /**
+   * Convert the counts of the features to a map.
+   * @param counts the counts
+   * @return a map with the features that have been counted
+   */
+  private Map<String, Integer> toMap(final int[] counts) {
+
+    final Map<String, Integer> result = new HashMap<>();
+
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        result.put(this.featureIds[i], counts[i]);
+      }
     }
+
+    return result;
   }
 
   /**
@@ -673,7 +1332,7 @@ public class HTSeqCounter extends AbstractExpressionCounter
       throw new IllegalStateException("the counter has not been initialized");
     }
 
-    for (String feature : this.features.getFeaturesIds()) {
+    for (String feature : this.featureIds) {
 
       if (!counts.containsKey(feature)) {
         counts.put(feature, 0);
@@ -693,7 +1352,8 @@ public class HTSeqCounter extends AbstractExpressionCounter
         + ", removeSecondaryAlignments=" + this.removeSecondaryAlignments
         + ", removeSupplementaryAlignments="
         + this.removeSupplementaryAlignments + " minAverageQuality="
-        + this.minimalQuality + ", initialized=" + this.initialized + "}";
+        + this.minimalQuality + ", threads=" + this.threads + ", initialized="
+        + this.initialized + "}";
   }
 
 }
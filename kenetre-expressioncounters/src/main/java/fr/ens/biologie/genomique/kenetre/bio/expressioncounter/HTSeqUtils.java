@@ -244,6 +244,65 @@ public class HTSeqUtils {
     return result;
   }
 
+  /**
+   * This class collect the features of the zones that overlap the genomic
+   * intervals of an alignment.
+   */
+  private static final class OverlapCollector
+      implements GenomicArray.ZoneConsumer<String> {
+
+    private final OverlapMode mode;
+    private final boolean filterStrand;
+    private char strand;
+    private boolean found;
+    private Set<String> fs;
+
+    @Override
+    public void accept(final int start, final int end, final char strand,
+        final Set<String> values) {
+
+      // Filter intervals if necessary
+      if (this.filterStrand && strand != this.strand) {
+        return;
+      }
+
+      this.found = true;
+
+      if (this.mode == UNION) {
+        this.fs.addAll(values);
+      } else {
+        intersect(values);
+      }
+    }
+
+    /**
+     * Intersect the features with the features of a zone.
+     * @param values features of the zone
+     */
+    private void intersect(final Set<String> values) {
+
+      if (values.size() > 0 || this.mode == INTERSECTION_STRICT) {
+        if (this.fs == null) {
+          this.fs = new HashSet<>(values);
+        } else {
+          this.fs.retainAll(values);
+        }
+      }
+    }
+
+    /**
+     * Constructor.
+     * @param mode the overlap mode
+     * @param stranded the stranded mode
+     */
+    OverlapCollector(final OverlapMode mode, final StrandUsage stranded) {
+
+      this.mode = mode;
+      this.filterStrand = stranded == YES || stranded == REVERSE;
+      this.fs = mode == UNION ? new HashSet<>() : null;
+    }
+  }
+
   /**
    * Determine features that overlap genomic intervals.
    * @param ivList the list of genomic intervals
@@ -260,125 +319,42 @@ public class HTSeqUtils {
       final OverlapMode mode, final StrandUsage stranded)
       throws KenetreException {
 
-    Set<String> fs = null;
-
-    // Overlap mode "union"
-    if (mode == UNION) {
-
-      fs = new HashSet<>();
-
-      for (final GenomicInterval iv : ivList) {
-
-        final String chr = iv.getChromosome();
-
-        if (!features.containsChromosome(chr)) {
-          throw new UnknownChromosomeException(chr);
-        }
-
-        // Get features that overlap the current interval of the read
-        final Map<GenomicInterval, Set<String>> intervals =
-            features.getEntries(chr, iv.getStart(), iv.getEnd());
-
-        // Filter intervals if necessary
-        if (stranded == YES || stranded == REVERSE) {
-          filterIntervalsStrands(intervals, iv.getStrand());
-        }
-
-        // At least one interval is found
-        if (intervals != null && intervals.size() > 0) {
-          for (Map.Entry<GenomicInterval, Set<String>> e : intervals
-              .entrySet()) {
-
-            if (e.getValue() != null) {
-              fs.addAll(e.getValue());
-            }
-          }
-        }
-
-      }
+    if (mode != UNION
+        && mode != INTERSECTION_NONEMPTY && mode != INTERSECTION_STRICT) {
+      throw new KenetreException("Error : illegal overlap mode.");
     }
 
-    // Overlap modes : "intersection-nonempty" or "intersection-strict"
-    else if (mode == INTERSECTION_NONEMPTY || mode == INTERSECTION_STRICT) {
+    final OverlapCollector collector = new OverlapCollector(mode, stranded);
 
-      for (final GenomicInterval iv : ivList) {
+    for (final GenomicInterval iv : ivList) {
 
-        final String chr = iv.getChromosome();
+      final String chr = iv.getChromosome();
 
-        if (!features.containsChromosome(chr)) {
-          throw new KenetreException("Unknown chromosome: " + chr);
-        }
-
-        // Get features that overlap the current interval of the read
-        final Map<GenomicInterval, Set<String>> intervals =
-            features.getEntries(chr, iv.getStart(), iv.getEnd());
+      collector.strand = iv.getStrand();
+      collector.found = false;
 
-        // Filter intervals if necessary
-        if (stranded == StrandUsage.YES || stranded == StrandUsage.REVERSE) {
-          filterIntervalsStrands(intervals, iv.getStrand());
-        }
+      // Get features that overlap the current interval of the read
+      if (!features.forEachEntry(chr, iv.getStart(), iv.getEnd(), collector)) {
 
-        // If internal is empty, add an entry with requested iv as key and an
-        // empty set as value (HTSeq compatibility)
-        if (intervals.isEmpty()) {
-          final Set<String> emptySet = Collections.emptySet();
-          intervals.put(iv, emptySet);
+        if (mode == UNION) {
+          throw new UnknownChromosomeException(chr);
         }
+        throw new KenetreException("Unknown chromosome: " + chr);
+      }
 
-        // At least one interval is found
-        if (intervals.size() > 0) {
-          for (Map.Entry<GenomicInterval, Set<String>> i : intervals
-              .entrySet()) {
-
-            final Set<String> fs2 = i.getValue();
-
-            if (fs2.size() > 0 || mode == INTERSECTION_STRICT) {
-              if (fs == null) {
-                fs = new HashSet<>(fs2);
-              } else {
-                fs.retainAll(fs2);
-              }
-
-            }
-          }
-        }
+      // If no interval has been found, use the requested iv with an empty set
+      // of features (HTSeq compatibility)
+      if (!collector.found && mode != UNION) {
+        collector.intersect(Collections.emptySet());
       }
-    } else {
-      throw new KenetreException("Error : illegal overlap mode.");
     }
 
     // Do not return null
-    if (fs == null) {
+    if (collector.fs == null) {
       return Collections.emptySet();
     }
 
-    return fs;
-  }
-
-  /**
-   * Filter the output of GenomicArray.getEntries() by keeping only features on
-   * a strand
-   * @param intervals intervals to filter
-   * @param strand strand to keep
-   */
-  private static void filterIntervalsStrands(
-      final Map<GenomicInterval, Set<String>> intervals, final char strand) {
-
-    if (intervals == null) {
-      return;
-    }
-
-    final Set<GenomicInterval> toRemove = new HashSet<>();
-
-    for (Map.Entry<GenomicInterval, Set<String>> e : intervals.entrySet()) {
-      if (e.getKey().getStrand() != strand) {
-        toRemove.add(e.getKey());
-      }
-    }
-
-    for (GenomicInterval iv : toRemove) {
-      intervals.remove(iv);
-    }
+    return collector.fs;
   }
 
 }
@@ -0,0 +1,563 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.expressioncounter;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.util.RuntimeIOException;
+
+/**
+ * This class define a buffer that pairs the alignments of a paired-end SAM
+ * file sorted by coordinate. An alignment waits in the buffer until its mate
+ * is read. The mates are matched using the read name, the first/second of pair
+ * flags and the mate position of the alignments, so the secondary alignments
+ * are paired like in a file sorted by read name.
+ * <p>
+ * The memory used by the waiting alignments is bounded: when the budget is
+ * exceeded, the alignments whose mate is the farthest are written in a
+ * temporary file, sorted by mate position. They are read back when the input
+ * reaches the position of their mate. An alignment whose mate position has
+ * been passed without finding its mate is counted as a missing mate. When there
+ * are too many temporary files, they are merged in a single file to bound the
+ * number of open files.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+final class MateBuffer implements Closeable {
+
+  /** Estimation of the memory used by an alignment without its sequences. */
+  private static final int RECORD_OVERHEAD = 512;
+
+  /** Maximal number of temporary files opened at the same time. */
+  static final int MAX_OPEN_RUNS = 16;
+
+  private final SAMFileHeader header;
+  private final long maxMemory;
+  private final File temporaryDirectory;
+
+  private final Map<String, Entry> entries = new HashMap<>();
+  private PriorityQueue<Entry> queue = newQueue();
+  private final PriorityQueue<Run> runs = new PriorityQueue<>(
+      Comparator.comparingLong((Run r) -> r.headMatePosition));
+  private long memory;
+  private long missingMates;
+  private long spilledRecords;
+
+  /**
+   * This class define an alignment waiting its mate.
+   */
+  private static final class Entry {
+
+    private final SAMRecord record;
+    private final String key;
+    private final long matePosition;
+    private final long size;
+    private Entry next;
+    private boolean removed;
+
+    private Entry(final SAMRecord record, final String key,
+        final long matePosition) {
+
+      this.record = record;
+      this.key = key;
+      this.matePosition = matePosition;
+      this.size = size(record);
+    }
+  }
+
+  /**
+   * This class define a temporary file with alignments sorted by mate
+   * position.
+   */
+  private final class Run implements Closeable {
+
+    private final File file;
+    private final InputStream in;
+    private final BAMRecordCodec codec;
+    private SAMRecord head;
+    private long headMatePosition;
+
+    /**
+     * Read the next alignment of the file.
+     * @throws IOException if an error occurs while reading the file
+     */
+    private void next() throws IOException {
+
+      try {
+        this.head = this.codec.decode();
+      } catch (RuntimeIOException e) {
+        throw new IOException(e);
+      }
+      this.headMatePosition =
+          this.head == null ? Long.MAX_VALUE : matePosition(this.head);
+    }
+
+    @Override
+    public void close() throws IOException {
+
+      this.in.close();
+      this.file.delete();
+    }
+
+    private Run(final File file) throws IOException {
+
+      this.file = file;
+      this.in = new BufferedInputStream(new FileInputStream(file));
+      this.codec = new BAMRecordCodec(MateBuffer.this.header);
+      this.codec.setInputStream(this.in, file.getName());
+      next();
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of alignments whose mate has not been found. This value is
+   * only complete once the {@link #finish()} method has been called.
+   * @return the number of alignments whose mate has not been found
+   */
+  public long getMissingMateCount() {
+
+    return this.missingMates;
+  }
+
+  /**
+   * Get the number of alignments written in temporary files.
+   * @return the number of alignments written in temporary files
+   */
+  public long getSpilledRecordCount() {
+
+    return this.spilledRecords;
+  }
+
+  /**
+   * Get the number of temporary files currently opened.
+   * @return the number of temporary files currently opened
+   */
+  public int getRunCount() {
+
+    return this.runs.size();
+  }
+
+  /**
+   * Get the number of alignments waiting their mate in memory.
+   * @return the number of alignments waiting their mate in memory
+   */
+  public int getBufferedRecordCount() {
+
+    int result = 0;
+    for (Entry e : this.entries.values()) {
+      for (; e != null; e = e.next) {
+        result++;
+      }
+    }
+
+    return result;
+  }
+
+  //
+  // Pairing methods
+  //
+
+  /**
+   * Add an alignment to the buffer. The alignments must be added in the
+   * coordinate order.
+   * @param record the alignment to add
+   * @return the mate of the alignment or null if the mate has not been read
+   *         yet
+   * @throws IOException if an error occurs while using the temporary files
+   */
+  public SAMRecord add(final SAMRecord record) throws IOException {
+
+    requireNonNull(record, "record argument cannot be null");
+
+    final long position =
+        position(record.getReferenceIndex(), record.getAlignmentStart());
+
+    // Get back the alignments whose mate can be the current alignment
+    load(position);
+
+    // The mates of the alignments waiting a previous position are missing
+    expire(position);
+
+    // Search the mate of the alignment
+    final String key = key(record.getReadName(), record.getFirstOfPairFlag(),
+        position);
+    final Entry mate = this.entries.get(key);
+
+    if (mate != null) {
+
+      if (mate.next == null) {
+        this.entries.remove(key);
+      } else {
+        this.entries.put(key, mate.next);
+      }
+      mate.removed = true;
+      this.memory -= mate.size;
+
+      return mate.record;
+    }
+
+    // Wait the mate of the alignment
+    put(record);
+
+    if (this.memory > this.maxMemory) {
+      spill(position);
+    }
+
+    return null;
+  }
+
+  /**
+   * Count the alignments whose mate has not been found at the end of the
+   * input.
+   * @return the number of alignments whose mate has not been found
+   * @throws IOException if an error occurs while using the temporary files
+   */
+  public long finish() throws IOException {
+
+    expire(Long.MAX_VALUE);
+
+    for (Run run : this.runs) {
+      while (run.head != null) {
+        this.missingMates++;
+        run.next();
+      }
+      run.close();
+    }
+    this.runs.clear();
+
+    return this.missingMates;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    for (Run run : this.runs) {
+      run.close();
+    }
+    this.runs.clear();
+    this.entries.clear();
+    this.queue.clear();
+    this.memory = 0;
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Put an alignment in the buffer.
+   * @param record the alignment
+   */
+  private void put(final SAMRecord record) {
+
+    final long matePosition = matePosition(record);
+    final Entry entry = new Entry(record, key(record.getReadName(),
+        !record.getFirstOfPairFlag(), matePosition), matePosition);
+
+    entry.next = this.entries.put(entry.key, entry);
+    this.queue.add(entry);
+    this.memory += entry.size;
+  }
+
+  /**
+   * Load the alignments of the temporary files whose mate position is lower or
+   * equal to a position.
+   * @param position the position
+   * @throws IOException if an error occurs while reading the temporary files
+   */
+  private void load(final long position) throws IOException {
+
+    // Only the files whose next alignment is due are read
+    Run run;
+    while ((run = this.runs.peek()) != null
+        && run.headMatePosition <= position) {
+
+      this.runs.poll();
+      while (run.head != null && run.headMatePosition <= position) {
+        put(run.head);
+        run.next();
+      }
+
+      if (run.head == null) {
+        run.close();
+      } else {
+        this.runs.add(run);
+      }
+    }
+  }
+
+  /**
+   * Remove the alignments whose mate position is lower than a position.
+   * @param position the position
+   */
+  private void expire(final long position) {
+
+    Entry e;
+    while ((e = this.queue.peek()) != null && e.matePosition < position) {
+
+      this.queue.poll();
+      if (e.removed) {
+        continue;
+      }
+
+      // Remove the entry from its list
+      final Entry first = this.entries.get(e.key);
+      if (first == e) {
+        if (e.next == null) {
+          this.entries.remove(e.key);
+        } else {
+          this.entries.put(e.key, e.next);
+        }
+      } else {
+        Entry previous = first;
+        while (previous.next != e) {
+          previous = previous.next;
+        }
+        previous.next = e.next;
+      }
+
+      e.removed = true;
+      this.memory -= e.size;
+      this.missingMates++;
+    }
+  }
+
+  /**
+   * Write in a temporary file the alignments whose mate is the farthest until
+   * the memory used by the buffer is halved. Only the alignments whose mate is
+   * after the current position can be written.
+   * @param position the current position
+   * @throws IOException if an error occurs while writing the temporary file
+   */
+  private void spill(final long position) throws IOException {
+
+    final List<Entry> candidates = new ArrayList<>();
+    for (Entry e : this.queue) {
+      if (!e.removed && e.matePosition > position) {
+        candidates.add(e);
+      }
+    }
+
+    if (candidates.isEmpty()) {
+      return;
+    }
+
+    // Select the farthest mates
+    candidates.sort(Comparator.comparingLong((Entry e) -> e.matePosition));
+    final long target = this.memory / 2;
+    int first = candidates.size();
+    while (first > 0 && this.memory > target) {
+      first--;
+      final Entry e = candidates.get(first);
+      e.removed = true;
+      this.memory -= e.size;
+    }
+
+    // Write the selected alignments sorted by mate position
+    final File file = createRunFile();
+    try (OutputStream out =
+        new BufferedOutputStream(new FileOutputStream(file))) {
+
+      final BAMRecordCodec codec = new BAMRecordCodec(this.header);
+      codec.setOutputStream(out, file.getName());
+      for (int i = first; i < candidates.size(); i++) {
+        codec.encode(candidates.get(i).record);
+      }
+    } catch (IOException | RuntimeIOException e) {
+      file.delete();
+      throw e instanceof IOException ? (IOException) e : new IOException(e);
+    }
+    this.spilledRecords += candidates.size() - first;
+
+    // Rebuild the index and the queue without the written alignments
+    final PriorityQueue<Entry> queue = newQueue();
+    this.entries.clear();
+    for (Entry e : this.queue) {
+      if (!e.removed) {
+        e.next = this.entries.put(e.key, e);
+        queue.add(e);
+      }
+    }
+    this.queue = queue;
+
+    this.runs.add(new Run(file));
+
+    if (this.runs.size() > MAX_OPEN_RUNS) {
+      mergeRuns();
+    }
+  }
+
+  /**
+   * Merge all the temporary files in a new temporary file sorted by mate
+   * position.
+   * @throws IOException if an error occurs while merging the temporary files
+   */
+  private void mergeRuns() throws IOException {
+
+    final List<Run> merged = new ArrayList<>(this.runs);
+    final File file = createRunFile();
+
+    try (OutputStream out =
+        new BufferedOutputStream(new FileOutputStream(file))) {
+
+      final BAMRecordCodec codec = new BAMRecordCodec(this.header);
+      codec.setOutputStream(out, file.getName());
+
+      Run run;
+      while ((run = this.runs.poll()) != null) {
+        codec.encode(run.head);
+        run.next();
+        if (run.head != null) {
+          this.runs.add(run);
+        }
+      }
+    } catch (IOException | RuntimeIOException e) {
+      file.delete();
+      throw e instanceof IOException ? (IOException) e : new IOException(e);
+    } finally {
+      for (Run run : merged) {
+        run.close();
+      }
+    }
+
+    this.runs.add(new Run(file));
+  }
+
+  /**
+   * Create a new temporary file.
+   * @return a new temporary file
+   * @throws IOException if an error occurs while creating the file
+   */
+  private File createRunFile() throws IOException {
+
+    return File.createTempFile("kenetre-mates-", ".bam",
+        this.temporaryDirectory);
+  }
+
+  private static PriorityQueue<Entry> newQueue() {
+
+    return new PriorityQueue<>(
+        Comparator.comparingLong((Entry e) -> e.matePosition));
+  }
+
+  /**
+   * Get the position of the mate of an alignment.
+   * @param record the alignment
+   * @return the position of the mate
+   */
+  private static long matePosition(final SAMRecord record) {
+
+    return position(record.getMateReferenceIndex(),
+        record.getMateAlignmentStart());
+  }
+
+  /**
+   * Get a position that follows the coordinate order. The unplaced alignments
+   * are at the end of the coordinate order.
+   * @param referenceIndex the reference index
+   * @param start the start of the alignment
+   * @return a long with the position
+   */
+  private static long position(final int referenceIndex, final int start) {
+
+    final long reference =
+        referenceIndex < 0 ? Integer.MAX_VALUE : referenceIndex;
+
+    return reference << 32 | (start & 0xffffffffL);
+  }
+
+  /**
+   * Get the key of an alignment.
+   * @param readName the read name
+   * @param firstOfPair the first of pair flag of the alignment
+   * @param position the position of the alignment
+   * @return a String with the key
+   */
+  private static String key(final String readName, final boolean firstOfPair,
+      final long position) {
+
+    return readName + (firstOfPair ? "/1:" : "/2:") + position;
+  }
+
+  /**
+   * Estimate the memory used by an alignment.
+   * @param record the alignment
+   * @return the estimated size of the alignment in bytes
+   */
+  private static long size(final SAMRecord record) {
+
+    return RECORD_OVERHEAD
+        + 2L * record.getReadName().length() + 2L * record.getReadLength();
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param header the header of the alignments
+   * @param maxMemory the maximal memory used by the alignments waiting their
+   *          mate in bytes
+   * @param temporaryDirectory directory for the temporary files
+   */
+  MateBuffer(final SAMFileHeader header, final long maxMemory,
+      final File temporaryDirectory) {
+
+    this.header = requireNonNull(header, "header argument cannot be null");
+    this.temporaryDirectory = requireNonNull(temporaryDirectory,
+        "temporaryDirectory argument cannot be null");
+
+    if (maxMemory < 1) {
+      throw new IllegalArgumentException(
+          "maxMemory must be greater than 0: " + maxMemory);
+    }
+    this.maxMemory = maxMemory;
+  }
+
+}
@@ -0,0 +1,259 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.expressioncounter;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.DenseExpressionMatrix;
+import fr.ens.biologie.genomique.kenetre.bio.ExpressionMatrix;
+import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+import fr.ens.biologie.genomique.kenetre.util.ReporterIncrementer;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+
+/**
+ * This class define a counter that counts the features of several samples with
+ * the same initialized expression counter. The annotation is only loaded once
+ * and the samples are counted concurrently on a bounded pool of threads. The
+ * counts are written in an expression matrix with a column for each sample
+ * and a row for each feature, that can be saved with any
+ * {@link fr.ens.biologie.genomique.kenetre.bio.io.ExpressionMatrixWriter}
+ * (e.g. TSVExpressionMatrixWriter or MarketMatrixExpressionMatrixWriter).
+ * <p>
+ * The counter must support concurrent calls to its
+ * {@link ExpressionCounter#count(Iterable, ReporterIncrementer, String)}
+ * method once it has been initialized, like {@link HTSeqCounter}. If the
+ * counter also uses several threads for each sample, the number of threads
+ * used is the product of the two settings.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class MultiSampleExpressionCounter {
+
+  private final ExpressionCounter counter;
+  private final int threads;
+
+  /**
+   * Count the features of samples in a new dense expression matrix.
+   * @param samples an ordered map with the sample names as keys and the
+   *          SAM/BAM files as values
+   * @param reporter the reporter
+   * @param counterGroupPrefix prefix of the counter groups of the samples in
+   *          the reporter
+   * @return an expression matrix with a column for each sample
+   * @throws KenetreException if an error occurs while counting a sample
+   * @throws IOException if an error occurs while reading a sample
+   */
+  public ExpressionMatrix count(final Map<String, File> samples,
+      final ReporterIncrementer reporter, final String counterGroupPrefix)
+      throws KenetreException, IOException {
+
+    final ExpressionMatrix result = new DenseExpressionMatrix();
+    count(samples, result, reporter, counterGroupPrefix);
+
+    return result;
+  }
+
+  /**
+   * Count the features of samples in an expression matrix. A column is added
+   * to the matrix for each sample, in the order of the samples, and a row for
+   * each feature of the counter that is not already in the matrix. The
+   * counters of each sample are set in the reporter in a group named with the
+   * prefix followed by the name of the sample.
+   * @param samples an ordered map with the sample names as keys and the
+   *          SAM/BAM files as values
+   * @param matrix the matrix to fill
+   * @param reporter the reporter
+   * @param counterGroupPrefix prefix of the counter groups of the samples in
+   *          the reporter
+   * @throws KenetreException if an error occurs while counting a sample
+   * @throws IOException if an error occurs while reading a sample
+   */
+  public void count(final Map<String, File> samples,
+      final ExpressionMatrix matrix, final ReporterIncrementer reporter,
+      final String counterGroupPrefix) throws KenetreException, IOException {
+
+    requireNonNull(samples, "samples argument cannot be null");
+    requireNonNull(matrix, "matrix argument cannot be null");
+    requireNonNull(reporter, "reporter argument cannot be null");
+    requireNonNull(counterGroupPrefix,
+        "counterGroupPrefix argument cannot be null");
+
+    for (Map.Entry<String, File> e : samples.entrySet()) {
+      requireNonNull(e.getKey(), "sample name cannot be null");
+      requireNonNull(e.getValue(), "file of sample cannot be null");
+      if (matrix.containsColumn(e.getKey())) {
+        throw new IllegalArgumentException(
+            "The matrix already contains the sample: " + e.getKey());
+      }
+    }
+
+    // Add all the features and the samples before the counting to keep the
+    // order of the rows and of the columns
+    final Map<String, Integer> features = new HashMap<>();
+    this.counter.addZeroCountFeatures(features);
+
+    final List<String> rowNames = new ArrayList<>();
+    for (String feature : features.keySet()) {
+      if (!matrix.containsRow(feature)) {
+        rowNames.add(feature);
+      }
+    }
+    Collections.sort(rowNames);
+    matrix.addRows(rowNames);
+    matrix.addColumns(new ArrayList<>(samples.keySet()));
+
+    final ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(this.threads, Math.max(1, samples.size())));
+
+    try {
+
+      final List<Future<Void>> futures = new ArrayList<>();
+      for (Map.Entry<String, File> e : samples.entrySet()) {
+
+        final String sampleName = e.getKey();
+        final File file = e.getValue();
+
+        futures.add(executor.submit(() -> {
+          countSample(sampleName, file, matrix, reporter,
+              counterGroupPrefix + sampleName);
+          return null;
+        }));
+      }
+
+      // Wait the end of the counting of all the samples
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+
+    } catch (InterruptedException e) {
+
+      Thread.currentThread().interrupt();
+      throw new KenetreException("Counting has been interrupted");
+
+    } catch (ExecutionException e) {
+
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof KenetreException) {
+        throw (KenetreException) cause;
+      }
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new KenetreException(cause);
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Count a sample and set its counts in the matrix.
+   * @param sampleName name of the sample
+   * @param file SAM/BAM file of the sample
+   * @param matrix matrix to fill
+   * @param reporter the reporter
+   * @param counterGroup the counter group of the sample in the reporter
+   * @throws KenetreException if an error occurs while counting the sample
+   * @throws IOException if an error occurs while reading the sample
+   */
+  private void countSample(final String sampleName, final File file,
+      final ExpressionMatrix matrix, final ReporterIncrementer reporter,
+      final String counterGroup) throws KenetreException, IOException {
+
+    this.counter.getLogger()
+        .info("Count sample " + sampleName + " (" + file + ")");
+
+    // The reporter of the caller may not be thread safe
+    final LocalReporter sampleReporter = new LocalReporter();
+    final Map<String, Integer> counts;
+
+    try (SamReader reader = SamReaderFactory.makeDefault().open(file)) {
+      counts = this.counter.count(reader, sampleReporter, counterGroup);
+    }
+
+    // Build the column of the sample outside of the lock. The matrix has
+    // already been filled with zeros, so only the non-zero counts are kept
+    final ExpressionMatrix column = new DenseExpressionMatrix();
+    for (Map.Entry<String, Integer> e : counts.entrySet()) {
+      if (e.getValue() != 0) {
+        column.setValue(e.getKey(), sampleName, e.getValue());
+      }
+    }
+
+    // The matrices are not thread safe, the column is set in a single call
+    synchronized (matrix) {
+      matrix.add(column);
+    }
+
+    synchronized (reporter) {
+
+      for (String group : sampleReporter.getCounterGroups()) {
+        for (String name : sampleReporter.getCounterNames(group)) {
+          reporter.incrCounter(group, name,
+              sampleReporter.getCounterValue(group, name));
+        }
+      }
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param counter an initialized expression counter
+   * @param threads maximal number of samples to count concurrently
+   */
+  public MultiSampleExpressionCounter(final ExpressionCounter counter,
+      final int threads) {
+
+    requireNonNull(counter, "counter argument cannot be null");
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "Invalid number of threads: " + threads);
+    }
+
+    this.counter = counter;
+    this.threads = threads;
+  }
+
+}
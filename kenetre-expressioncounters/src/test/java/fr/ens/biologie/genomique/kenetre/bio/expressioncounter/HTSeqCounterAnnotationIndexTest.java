@@ -0,0 +1,96 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.expressioncounter;
+
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.ATTRIBUTE_ID_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.GENOMIC_TYPE_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.OVERLAP_MODE_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.STRANDED_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounterParallelTest.createCounter;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounterParallelTest.createRecords;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.OverlapMode.UNION;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.StrandUsage.YES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+
+/**
+ * This class test that a counter initialized from a saved annotation index
+ * gives the same results as the counter that has created the index.
+ * @author Laurent Jourdren
+ */
+public class HTSeqCounterAnnotationIndexTest {
+
+  private static final String COUNTER_GROUP = "expression";
+
+  @Test
+  public void testAnnotationIndex()
+      throws KenetreException, BadBioEntryException, IOException {
+
+    final HTSeqCounter counter1 = createCounter(UNION, 1);
+
+    final File indexFile = File.createTempFile("annotation-", ".idx");
+    try {
+      counter1.saveAnnotationIndex(indexFile);
+
+      final HTSeqCounter counter2 = new HTSeqCounter();
+      counter2.setParameter(OVERLAP_MODE_PARAMETER_NAME, UNION.getName());
+      counter2.setParameter(GENOMIC_TYPE_PARAMETER_NAME, "exon");
+      counter2.setParameter(ATTRIBUTE_ID_PARAMETER_NAME, "gene_id");
+      counter2.setParameter(STRANDED_PARAMETER_NAME, YES.getName());
+      counter2.init(indexFile);
+
+      assertEquals(counter1.getAnnotationIndexParameters(),
+          counter2.getAnnotationIndexParameters());
+
+      final LocalReporter reporter1 = new LocalReporter();
+      final LocalReporter reporter2 = new LocalReporter();
+
+      final Map<String, Integer> counts1 =
+          counter1.count(createRecords(false), reporter1, COUNTER_GROUP);
+      final Map<String, Integer> counts2 =
+          counter2.count(createRecords(false), reporter2, COUNTER_GROUP);
+
+      counter1.addZeroCountFeatures(counts1);
+      counter2.addZeroCountFeatures(counts2);
+
+      assertTrue(counts1.size() > 0);
+      assertEquals(counts1, counts2);
+      assertEquals(reporter1.toString(), reporter2.toString());
+    } finally {
+      indexFile.delete();
+    }
+  }
+
+}
@@ -0,0 +1,243 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.expressioncounter;
+
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.ATTRIBUTE_ID_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.GENOMIC_TYPE_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.OVERLAP_MODE_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.SAM_TAG_DEFAULT;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.STRANDED_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.THREADS_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.OverlapMode.UNION;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.StrandUsage.YES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.GFFEntry;
+import fr.ens.biologie.genomique.kenetre.bio.GenomeDescription;
+import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+import fr.ens.biologie.genomique.kenetre.util.metrics.Metric;
+import fr.ens.biologie.genomique.kenetre.util.metrics.MetricRegistry;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+
+/**
+ * This class test that the multi-threaded mode of HTSeqCounter gives the same
+ * results as the single-threaded mode.
+ * @author Laurent Jourdren
+ */
+public class HTSeqCounterParallelTest {
+
+  private static final String COUNTER_GROUP = "expression";
+
+  @Test
+  public void testCount() throws KenetreException, BadBioEntryException {
+
+    for (boolean pairedEnd : new boolean[] {false, true}) {
+      for (OverlapMode mode : OverlapMode.values()) {
+
+        final List<SAMRecord> records1 = createRecords(pairedEnd);
+        final List<SAMRecord> records2 = createRecords(pairedEnd);
+
+        final LocalReporter reporter1 = new LocalReporter();
+        final LocalReporter reporter2 = new LocalReporter();
+
+        final Map<String, Integer> counts1 = createCounter(mode, 1)
+            .count(records1, reporter1, COUNTER_GROUP);
+        final Map<String, Integer> counts2 = createCounter(mode, 3)
+            .count(records2, reporter2, COUNTER_GROUP);
+
+        assertTrue(counts1.size() > 0);
+        assertEquals(counts1, counts2);
+        assertEquals(reporter1.toString(), reporter2.toString());
+
+        for (int i = 0; i < records1.size(); i++) {
+          assertEquals(records1.get(i).getAttribute(SAM_TAG_DEFAULT),
+              records2.get(i).getAttribute(SAM_TAG_DEFAULT));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCountSamOutput()
+      throws KenetreException, BadBioEntryException {
+
+    final List<SAMRecord> records = createRecords(true);
+
+    // Create the input SAM file
+    final ByteArrayOutputStream input = new ByteArrayOutputStream();
+    try (SAMFileWriter writer = new SAMFileWriterFactory()
+        .makeSAMWriter(records.get(0).getHeader(), true, input)) {
+      for (SAMRecord r : records) {
+        writer.addAlignment(r);
+      }
+    }
+
+    final File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+    final ByteArrayOutputStream output1 = new ByteArrayOutputStream();
+    final ByteArrayOutputStream output2 = new ByteArrayOutputStream();
+
+    createCounter(UNION, 1).count(
+        new ByteArrayInputStream(input.toByteArray()), output1, tmpDir,
+        new LocalReporter(), COUNTER_GROUP);
+    createCounter(UNION, 4).count(
+        new ByteArrayInputStream(input.toByteArray()), output2, tmpDir,
+        new LocalReporter(), COUNTER_GROUP);
+
+    assertTrue(output1.size() > input.size());
+    assertEquals(output1.toString(), output2.toString());
+  }
+
+  @Test
+  public void testMetrics() throws KenetreException, BadBioEntryException {
+
+    final MetricRegistry metrics = new MetricRegistry();
+    final HTSeqCounter counter = createCounter(UNION, 3);
+    counter.setMetrics(metrics, "htseq");
+    counter.count(createRecords(true), new LocalReporter(), COUNTER_GROUP);
+
+    final List<String> names = new ArrayList<>();
+    for (Metric m : metrics.getMetrics()) {
+      names.add(m.getName());
+    }
+
+    // The gauge of the queue is only registered during the counting
+    assertTrue(names.contains("htseq.alignments"));
+    assertFalse(names.contains("htseq.queue.batches"));
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Create a counter on a synthetic annotation.
+   * @param mode overlap mode
+   * @param threads number of threads to use
+   * @return a new initialized counter
+   * @throws KenetreException if an error occurs while creating the counter
+   * @throws BadBioEntryException if the annotation is invalid
+   */
+  static HTSeqCounter createCounter(final OverlapMode mode,
+      final int threads) throws KenetreException, BadBioEntryException {
+
+    final HTSeqCounter counter = new HTSeqCounter();
+    counter.setParameter(OVERLAP_MODE_PARAMETER_NAME, mode.getName());
+    counter.setParameter(GENOMIC_TYPE_PARAMETER_NAME, "exon");
+    counter.setParameter(ATTRIBUTE_ID_PARAMETER_NAME, "gene_id");
+    counter.setParameter(STRANDED_PARAMETER_NAME, YES.getName());
+    counter.setParameter(THREADS_PARAMETER_NAME, "" + threads);
+
+    final GenomeDescription desc = new GenomeDescription();
+    desc.addSequence("chr1", 100000);
+
+    final Random random = new Random(1);
+    final List<GFFEntry> annotation = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+
+      final int start = 1 + random.nextInt(99000);
+      final GFFEntry e = new GFFEntry();
+      e.parseGTF("chr1\ttest\texon\t"
+          + start + "\t" + (start + random.nextInt(1000)) + "\t.\t"
+          + (random.nextBoolean() ? '+' : '-') + "\t.\tgene_id \"g"
+          + random.nextInt(100) + "\";");
+      annotation.add(e);
+    }
+
+    counter.init(desc, annotation);
+
+    return counter;
+  }
+
+  /**
+   * Create synthetic alignments on the synthetic annotation.
+   * @param pairedEnd true to create paired-end alignments
+   * @return a list with alignments
+   */
+  static List<SAMRecord> createRecords(final boolean pairedEnd) {
+
+    final SAMFileHeader header = new SAMFileHeader();
+    header.setSortOrder(SAMFileHeader.SortOrder.unsorted);
+    header.addSequence(new SAMSequenceRecord("chr1", 100000));
+
+    final Random random = new Random(2);
+    final List<SAMRecord> result = new ArrayList<>();
+
+    for (int i = 0; i < 10000; i++) {
+
+      final int count = pairedEnd ? 2 : 1;
+      for (int j = 0; j < count; j++) {
+
+        // Some mates are missing
+        if (pairedEnd && random.nextInt(50) == 0) {
+          continue;
+        }
+
+        final SAMRecord r = new SAMRecord(header);
+        r.setReadName("read" + i);
+        r.setReadString("ACGTACGTACGTACGTACGTACGTACGTACGTACGTACGT");
+        r.setBaseQualityString("IIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIII");
+        r.setReadUnmappedFlag(random.nextInt(20) == 0);
+        if (!r.getReadUnmappedFlag()) {
+          r.setReferenceName("chr1");
+          r.setAlignmentStart(1 + random.nextInt(99000));
+          r.setCigarString(random.nextBoolean() ? "40M" : "20M500N20M");
+          r.setReadNegativeStrandFlag(random.nextBoolean());
+          r.setMappingQuality(random.nextInt(60));
+          if (random.nextInt(10) == 0) {
+            r.setAttribute("NH", 2);
+          }
+        }
+        if (pairedEnd) {
+          r.setReadPairedFlag(true);
+          r.setFirstOfPairFlag(j == 0);
+          r.setSecondOfPairFlag(j == 1);
+          r.setMateUnmappedFlag(true);
+        }
+        result.add(r);
+      }
+    }
+
+    return result;
+  }
+
+}
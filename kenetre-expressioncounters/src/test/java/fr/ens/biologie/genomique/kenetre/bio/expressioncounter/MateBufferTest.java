@@ -0,0 +1,274 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.expressioncounter;
+
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounter.MATE_BUFFER_SIZE_PARAMETER_NAME;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounterParallelTest.createCounter;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.OverlapMode.UNION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMSequenceRecord;
+
+/**
+ * This class test the pairing of the alignments of a paired-end SAM file
+ * sorted by coordinate.
+ * @author Laurent Jourdren
+ */
+public class MateBufferTest {
+
+  private static final String COUNTER_GROUP = "expression";
+
+  @Test
+  public void testPairing() throws IOException {
+
+    final List<SAMRecord> records = createPairs(true, 100);
+
+    // A tiny memory budget forces spills and merges of the temporary files
+    final File tmpDir = Files.createTempDirectory("mates-test").toFile();
+    try (MateBuffer buffer =
+        new MateBuffer(records.get(0).getHeader(), 16 * 1024, tmpDir)) {
+
+      int pairs = 0;
+      int maxRuns = 0;
+      for (SAMRecord r : records) {
+
+        final SAMRecord mate = buffer.add(r);
+        if (mate != null) {
+          assertEquals(r.getReadName(), mate.getReadName());
+          assertEquals(!r.getFirstOfPairFlag(), mate.getFirstOfPairFlag());
+          pairs++;
+        }
+
+        // The number of open temporary files is bounded
+        assertTrue(buffer.getRunCount() <= MateBuffer.MAX_OPEN_RUNS);
+        assertEquals(buffer.getRunCount(), tmpDir.list().length);
+        maxRuns = Math.max(maxRuns, buffer.getRunCount());
+      }
+
+      assertEquals(MateBuffer.MAX_OPEN_RUNS, maxRuns);
+      assertEquals(10000, pairs);
+      assertEquals(100, buffer.finish());
+      assertTrue(buffer.getSpilledRecordCount() > 0);
+      assertEquals(0, buffer.getBufferedRecordCount());
+      assertEquals(0, buffer.getRunCount());
+      assertEquals(0, tmpDir.list().length);
+    }
+
+    assertTrue(tmpDir.delete());
+  }
+
+  @Test
+  public void testClose() throws IOException {
+
+    final List<SAMRecord> records = createPairs(true, 0);
+
+    final File tmpDir = Files.createTempDirectory("mates-test").toFile();
+    try (MateBuffer buffer =
+        new MateBuffer(records.get(0).getHeader(), 16 * 1024, tmpDir)) {
+
+      for (SAMRecord r : records.subList(0, records.size() / 2)) {
+        buffer.add(r);
+      }
+
+      assertTrue(buffer.getRunCount() > 0);
+    }
+
+    // The temporary files must have been removed
+    assertEquals(0, tmpDir.list().length);
+    assertTrue(tmpDir.delete());
+  }
+
+  @Test
+  public void testCoordinateSortedPairedEnd()
+      throws KenetreException, BadBioEntryException, IOException {
+
+    for (int threads : new int[] {1, 3}) {
+
+      final LocalReporter reporter1 = new LocalReporter();
+      final LocalReporter reporter2 = new LocalReporter();
+      final LocalReporter reporter3 = new LocalReporter();
+
+      // Alignments grouped by read name
+      final Map<String, Integer> counts1 = createCounter(UNION, threads)
+          .count(createPairs(false, 0), reporter1, COUNTER_GROUP);
+
+      // Alignments sorted by coordinate
+      final Map<String, Integer> counts2 = createCounter(UNION, threads)
+          .count(createPairs(true, 0), reporter2, COUNTER_GROUP);
+
+      // Alignments sorted by coordinate with a small buffer
+      final HTSeqCounter counter = createCounter(UNION, threads);
+      counter.setParameter(MATE_BUFFER_SIZE_PARAMETER_NAME, "1");
+      final Map<String, Integer> counts3 =
+          counter.count(createPairs(true, 0), reporter3, COUNTER_GROUP);
+
+      assertTrue(counts1.size() > 0);
+      assertEquals(counts1, counts2);
+      assertEquals(counts1, counts3);
+      assertEquals(reporter1.toString(), reporter2.toString());
+      assertEquals(reporter1.toString(), reporter3.toString());
+    }
+
+    // Alignments without mate
+    final LocalReporter reporter1 = new LocalReporter();
+    final LocalReporter reporter2 = new LocalReporter();
+    final List<SAMRecord> records = createPairs(true, 0);
+    final List<SAMRecord> recordsWithOrphans = createPairs(true, 100);
+
+    final Map<String, Integer> counts1 = createCounter(UNION, 1)
+        .count(records, reporter1, COUNTER_GROUP);
+    final Map<String, Integer> counts2 = createCounter(UNION, 1)
+        .count(recordsWithOrphans, reporter2, COUNTER_GROUP);
+
+    assertEquals(counts1, counts2);
+    assertEquals(100, reporter2.getCounterValue(COUNTER_GROUP,
+        ExpressionCounterCounter.MISSING_MATES_COUNTER.counterName()));
+    assertEquals(records.size() + 100, reporter2.getCounterValue(COUNTER_GROUP,
+        ExpressionCounterCounter.TOTAL_ALIGNMENTS_COUNTER.counterName()));
+
+    // The assignments cannot be written
+    final ByteArrayOutputStream input = new ByteArrayOutputStream();
+    try (SAMFileWriter writer = new SAMFileWriterFactory()
+        .makeSAMWriter(records.get(0).getHeader(), true, input)) {
+      for (SAMRecord r : records) {
+        writer.addAlignment(r);
+      }
+    }
+
+    try {
+      createCounter(UNION, 1).count(
+          new ByteArrayInputStream(input.toByteArray()),
+          new ByteArrayOutputStream(),
+          new File(System.getProperty("java.io.tmpdir")), new LocalReporter(),
+          COUNTER_GROUP);
+      assertTrue(false);
+    } catch (KenetreException e) {
+      assertTrue(true);
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Create synthetic paired-end alignments with consistent mate information.
+   * @param coordinateSorted true to sort the alignments by coordinate
+   * @param orphans number of alignments without mate to add
+   * @return a list with alignments
+   */
+  private static List<SAMRecord> createPairs(final boolean coordinateSorted,
+      final int orphans) {
+
+    final SAMFileHeader header = new SAMFileHeader();
+    header.setSortOrder(coordinateSorted
+        ? SAMFileHeader.SortOrder.coordinate
+        : SAMFileHeader.SortOrder.queryname);
+    header.addSequence(new SAMSequenceRecord("chr1", 100000));
+
+    final Random random = new Random(3);
+    final List<SAMRecord> result = new ArrayList<>();
+
+    for (int i = 0; i < 10000 + orphans; i++) {
+
+      final SAMRecord[] pair = new SAMRecord[2];
+      for (int j = 0; j < 2; j++) {
+
+        final SAMRecord r = new SAMRecord(header);
+        r.setReadName("read" + i);
+        r.setReadString("ACGTACGTACGTACGTACGTACGTACGTACGTACGTACGT");
+        r.setBaseQualityString("IIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIII");
+        r.setReadPairedFlag(true);
+        r.setFirstOfPairFlag(j == 0);
+        r.setSecondOfPairFlag(j == 1);
+        r.setReadUnmappedFlag(random.nextInt(20) == 0);
+        if (!r.getReadUnmappedFlag()) {
+          r.setReferenceName("chr1");
+          r.setAlignmentStart(1 + random.nextInt(99000));
+          r.setCigarString(random.nextBoolean() ? "40M" : "20M500N20M");
+          r.setReadNegativeStrandFlag(random.nextBoolean());
+          r.setMappingQuality(random.nextInt(60));
+          if (random.nextInt(10) == 0) {
+            r.setAttribute("NH", 2);
+          }
+        }
+        pair[j] = r;
+      }
+
+      // An unmapped mate is placed at the position of the mapped mate
+      for (int j = 0; j < 2; j++) {
+        final SAMRecord r = pair[j];
+        final SAMRecord mate = pair[1 - j];
+        if (r.getReadUnmappedFlag() && !mate.getReadUnmappedFlag()) {
+          r.setReferenceName(mate.getReferenceName());
+          r.setAlignmentStart(mate.getAlignmentStart());
+        }
+      }
+
+      for (int j = 0; j < 2; j++) {
+        final SAMRecord r = pair[j];
+        final SAMRecord mate = pair[1 - j];
+        r.setMateUnmappedFlag(mate.getReadUnmappedFlag());
+        r.setMateReferenceName(mate.getReferenceName());
+        r.setMateAlignmentStart(mate.getAlignmentStart());
+      }
+
+      if (i < 10000) {
+        result.add(pair[0]);
+        result.add(pair[1]);
+      } else {
+        result.add(pair[random.nextInt(2)]);
+      }
+    }
+
+    if (coordinateSorted) {
+      result.sort(new SAMRecordCoordinateComparator());
+    }
+
+    return result;
+  }
+
+}
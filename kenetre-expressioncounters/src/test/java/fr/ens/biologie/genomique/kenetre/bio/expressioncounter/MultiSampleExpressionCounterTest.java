@@ -0,0 +1,131 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.expressioncounter;
+
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounterParallelTest.createCounter;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.HTSeqCounterParallelTest.createRecords;
+import static fr.ens.biologie.genomique.kenetre.bio.expressioncounter.OverlapMode.UNION;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.KenetreException;
+import fr.ens.biologie.genomique.kenetre.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.kenetre.bio.ExpressionMatrix;
+import fr.ens.biologie.genomique.kenetre.bio.io.TSVExpressionMatrixWriter;
+import fr.ens.biologie.genomique.kenetre.util.LocalReporter;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * This class test that the counts of several samples counted concurrently are
+ * the same as the counts of each sample.
+ * @author Laurent Jourdren
+ */
+public class MultiSampleExpressionCounterTest {
+
+  private static final String COUNTER_GROUP = "expression";
+
+  @Test
+  public void testMultiSampleCount()
+      throws KenetreException, BadBioEntryException, IOException {
+
+    final HTSeqCounter counter = createCounter(UNION, 1);
+    final Map<String, File> samples = new LinkedHashMap<>();
+    final List<File> files = new ArrayList<>();
+
+    try {
+
+      for (int i = 0; i < 4; i++) {
+
+        final File file = File.createTempFile("sample-", ".sam");
+        files.add(file);
+        samples.put("sample" + i, file);
+
+        final List<SAMRecord> records = createRecords(i % 2 == 1);
+        try (SAMFileWriter writer = new SAMFileWriterFactory()
+            .makeSAMWriter(records.get(0).getHeader(), true, file)) {
+          for (SAMRecord r : records.subList(0, records.size() - i * 100)) {
+            writer.addAlignment(r);
+          }
+        }
+      }
+
+      final LocalReporter reporter = new LocalReporter();
+      final ExpressionMatrix matrix = new MultiSampleExpressionCounter(counter,
+          3).count(samples, reporter, COUNTER_GROUP + "_");
+
+      assertEquals(new ArrayList<>(samples.keySet()), matrix.getColumnNames());
+
+      for (int i = 0; i < 4; i++) {
+
+        final List<SAMRecord> records = createRecords(i % 2 == 1);
+        final LocalReporter sampleReporter = new LocalReporter();
+        final Map<String, Integer> counts = counter.count(
+            records.subList(0, records.size() - i * 100), sampleReporter,
+            COUNTER_GROUP + "_sample" + i);
+        counter.addZeroCountFeatures(counts);
+
+        assertEquals(counts.size(), matrix.getRowCount());
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+          assertEquals(e.getValue(),
+              matrix.getValue(e.getKey(), "sample" + i), 0.0);
+        }
+
+        for (String name : sampleReporter
+            .getCounterNames(COUNTER_GROUP + "_sample" + i)) {
+          assertEquals(
+              sampleReporter.getCounterValue(COUNTER_GROUP + "_sample" + i,
+                  name),
+              reporter.getCounterValue(COUNTER_GROUP + "_sample" + i, name));
+        }
+      }
+
+      // The matrix can be written with the matrix writers
+      final ByteArrayOutputStream os = new ByteArrayOutputStream();
+      try (TSVExpressionMatrixWriter writer =
+          new TSVExpressionMatrixWriter(os)) {
+        writer.write(matrix);
+      }
+      assertEquals(matrix.getRowCount() + 1,
+          os.toString().split("\n").length);
+
+    } finally {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+  }
+
+}
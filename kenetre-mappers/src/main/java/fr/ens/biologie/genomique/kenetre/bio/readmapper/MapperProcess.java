@@ -30,23 +30,31 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import fr.ens.biologie.genomique.kenetre.bio.ReadSequence;
 import fr.ens.biologie.genomique.kenetre.bio.readmapper.MapperExecutor.Result;
 import fr.ens.biologie.genomique.kenetre.io.FileUtils;
 import fr.ens.biologie.genomique.kenetre.util.ReporterIncrementer;
+import fr.ens.biologie.genomique.kenetre.util.metrics.Meter;
+import fr.ens.biologie.genomique.kenetre.util.metrics.MetricRegistry;
 
 /**
  * This class define an abstract class that is returned by a mapper.
@@ -76,6 +84,8 @@ public abstract class MapperProcess {
   private String commandLine;
   private ReporterIncrementer incrementer;
   private String counterGroup;
+  private Meter inputReadsMeter;
+  private volatile Meter outputBytesMeter;
 
   private final List<File> filesToRemove = new ArrayList<>();
 
@@ -200,20 +210,33 @@ public abstract class MapperProcess {
     @Override
     public int read() throws IOException {
 
-      return this.is.read();
+      final int result = this.is.read();
+      markOutputBytes(result == -1 ? 0 : 1);
+
+      return result;
     }
 
     @Override
     public int read(final byte[] arg0, final int arg1, final int arg2)
         throws IOException {
 
-      return this.is.read(arg0, arg1, arg2);
+      return markOutputBytes(this.is.read(arg0, arg1, arg2));
     }
 
     @Override
     public int read(final byte[] b) throws IOException {
 
-      return this.is.read(b);
+      return markOutputBytes(this.is.read(b));
+    }
+
+    private int markOutputBytes(final int count) {
+
+      final Meter meter = MapperProcess.this.outputBytesMeter;
+      if (meter != null && count > 0) {
+        meter.mark(count);
+      }
+
+      return count;
     }
 
     @Override
@@ -295,43 +318,126 @@ public abstract class MapperProcess {
   }
 
   /**
-   * This class allow to do asynchronous writes in a named piped.
+   * This class define the metrics of an asynchronous writer of a mapper input
+   * pipe.
+   */
+  public static final class PipeWriterMetrics {
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesInFlight = new AtomicLong();
+    private final AtomicLong producerStallTime = new AtomicLong();
+    private final AtomicLong writerIdleTime = new AtomicLong();
+
+    /**
+     * Get the number of bytes written in the pipe.
+     * @return the number of bytes written in the pipe
+     */
+    public long getBytesWritten() {
+
+      return this.bytesWritten.get();
+    }
+
+    /**
+     * Get the number of bytes waiting to be written in the pipe.
+     * @return the number of bytes waiting to be written in the pipe
+     */
+    public long getBytesInFlight() {
+
+      return this.bytesInFlight.get();
+    }
+
+    /**
+     * Get the time spent by the producer waiting for a free buffer, i.e. the
+     * time while the mapper was slower than the producer.
+     * @return a time in milliseconds
+     */
+    public long getProducerStallTime() {
+
+      return TimeUnit.NANOSECONDS.toMillis(this.producerStallTime.get());
+    }
+
+    /**
+     * Get the time spent by the writer thread waiting for data, i.e. the time
+     * while the producer was slower than the mapper.
+     * @return a time in milliseconds
+     */
+    public long getWriterIdleTime() {
+
+      return TimeUnit.NANOSECONDS.toMillis(this.writerIdleTime.get());
+    }
+
+    @Override
+    public String toString() {
+
+      return "bytesWritten="
+          + getBytesWritten() + ", bytesInFlight=" + getBytesInFlight()
+          + ", producerStallTime=" + getProducerStallTime()
+          + " ms, writerIdleTime=" + getWriterIdleTime() + " ms";
+    }
+  }
+
+  /**
+   * This class allow to do asynchronous writes in a named piped. The producer
+   * encodes the data in a ring of reusable byte buffers that are written in
+   * the pipe by a dedicated thread.
    */
   static class FastqWriterThread extends Thread implements FastqWriter {
 
-    // The queue can store a little more than 1,00,000 * 1000 = 100,000,000
-    // characters
-    private static final int MAX_CAPACITY = 100000;
-    private static final int MIN_LINE_SIZE = 1000;
+    static final int BUFFER_COUNT = 16;
+    static final int BUFFER_SIZE = 256 * 1024;
 
-    private volatile boolean closed;
-    private final BlockingDeque<String> queue =
-        new LinkedBlockingDeque<>(MAX_CAPACITY);
-    private final Writer writer;
-    private Exception exception;
+    // Buffer used to signal the end of the data
+    private static final Buffer END_OF_DATA = new Buffer(0);
+
+    private final WritableByteChannel channel;
+    private final BlockingQueue<Buffer> freeBuffers =
+        new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private final BlockingQueue<Buffer> filledBuffers =
+        new ArrayBlockingQueue<>(BUFFER_COUNT + 1);
+    private final PipeWriterMetrics metrics = new PipeWriterMetrics();
 
-    private int lineCount;
-    private final StringBuilder buffer = new StringBuilder();
+    private Buffer current;
+    private boolean closed;
+    private volatile Exception exception;
+
+    /**
+     * A reusable buffer.
+     */
+    private static final class Buffer {
+
+      private final byte[] data;
+      private int length;
+
+      Buffer(final int size) {
+        this.data = new byte[size];
+      }
+    }
 
     @Override
     public void run() {
 
-      try {
-        while (!this.closed || !queue.isEmpty()) {
+      try (WritableByteChannel channel = this.channel) {
 
-          if (!this.queue.isEmpty()) {
+        while (true) {
 
-            while (!this.queue.isEmpty()) {
+          final long start = System.nanoTime();
+          final Buffer buffer = this.filledBuffers.take();
+          this.metrics.writerIdleTime.addAndGet(System.nanoTime() - start);
 
-              this.writer.write(queue.take());
-            }
+          if (buffer == END_OF_DATA) {
+            break;
+          }
 
-          } else {
-            Thread.sleep(1000);
+          final ByteBuffer bb = ByteBuffer.wrap(buffer.data, 0, buffer.length);
+          while (bb.hasRemaining()) {
+            channel.write(bb);
           }
-        }
 
-        this.writer.close();
+          this.metrics.bytesWritten.addAndGet(buffer.length);
+          this.metrics.bytesInFlight.addAndGet(-buffer.length);
+          buffer.length = 0;
+          this.freeBuffers.add(buffer);
+        }
 
       } catch (IOException e) {
         this.exception = e;
@@ -352,32 +458,27 @@ public abstract class MapperProcess {
         throw new IllegalStateException("FastqWriterThread is closed");
       }
 
-      this.buffer.append(s);
-      this.lineCount++;
-
-      // We only add lines of about 1000 character in the queue
-      if (this.buffer.length() < MIN_LINE_SIZE || this.lineCount % 4 != 0) {
-        return;
-      }
+      final int len = s.length();
+      int i = 0;
 
-      if (this.queue.remainingCapacity() == 0) {
+      while (i < len) {
 
-        this.writer.flush();
+        if (this.current.length == BUFFER_SIZE) {
+          handOff();
+        }
 
-        while (this.queue.remainingCapacity() == 0) {
+        // Encode the string in ISO-8859-1
+        final byte[] data = this.current.data;
+        int pos = this.current.length;
+        final int end = Math.min(len, i + BUFFER_SIZE - pos);
 
-          try {
-            Thread.sleep(1000);
-          } catch (InterruptedException e) {
-          }
+        for (; i < end; i++) {
+          final char c = s.charAt(i);
+          data[pos++] = c <= 0xFF ? (byte) c : (byte) '?';
         }
-      }
 
-      this.queue.add(this.buffer.toString());
-      this.buffer.setLength(0);
-      this.lineCount = 0;
-
-      throwExceptionIfExists();
+        this.current.length = pos;
+      }
     }
 
     /**
@@ -387,14 +488,75 @@ public abstract class MapperProcess {
     @Override
     public void close() throws IOException {
 
-      this.queue.add(buffer.toString());
-      this.buffer.setLength(0);
+      if (this.closed) {
+        return;
+      }
+
+      if (this.current.length > 0) {
+        handOff();
+      }
       this.closed = true;
 
       try {
+        put(END_OF_DATA);
         join();
       } catch (InterruptedException e) {
-        throw new IOException(e);
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while closing the pipe");
+      }
+
+      throwExceptionIfExists();
+    }
+
+    /**
+     * Get the metrics of the writer.
+     * @return the metrics of the writer
+     */
+    PipeWriterMetrics getMetrics() {
+
+      return this.metrics;
+    }
+
+    /**
+     * Send the current buffer to the writer thread and get a free buffer.
+     * @throws IOException if an error has occurred in writings
+     */
+    private void handOff() throws IOException {
+
+      try {
+
+        this.metrics.bytesInFlight.addAndGet(this.current.length);
+        put(this.current);
+
+        final long start = System.nanoTime();
+        Buffer buffer;
+
+        // Do not wait forever if the writer thread has failed
+        while ((buffer =
+            this.freeBuffers.poll(100, TimeUnit.MILLISECONDS)) == null) {
+          throwExceptionIfExists();
+        }
+
+        this.metrics.producerStallTime.addAndGet(System.nanoTime() - start);
+        this.current = buffer;
+
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while writing the pipe");
+      }
+    }
+
+    /**
+     * Send a buffer to the writer thread.
+     * @param buffer the buffer to send
+     * @throws InterruptedException if the current thread has been interrupted
+     * @throws IOException if an error has occurred in writings
+     */
+    private void put(final Buffer buffer)
+        throws InterruptedException, IOException {
+
+      while (!this.filledBuffers.offer(buffer, 100, TimeUnit.MILLISECONDS)) {
+        throwExceptionIfExists();
       }
 
       throwExceptionIfExists();
@@ -417,26 +579,35 @@ public abstract class MapperProcess {
 
     /**
      * Constructor.
-     * @param writer the writer to use to write data
+     * @param channel the channel to use to write data
+     * @param threadName the name of the writer thread
      */
-    public FastqWriterThread(final Writer writer, final String threadName) {
+    public FastqWriterThread(final WritableByteChannel channel,
+        final String threadName) {
 
       super(threadName);
 
-      this.writer = writer;
+      this.channel = channel;
+
+      for (int i = 0; i < BUFFER_COUNT; i++) {
+        this.freeBuffers.add(new Buffer(BUFFER_SIZE));
+      }
+      this.current = this.freeBuffers.poll();
 
       // Start the thread
+      setDaemon(true);
       start();
     }
 
     /**
      * Constructor.
      * @param namedPipeFile the named pipe file
+     * @param threadName the name of the writer thread
      */
     public FastqWriterThread(final File namedPipeFile, final String threadName)
         throws IOException {
 
-      this(createPipeWriter(namedPipeFile), threadName);
+      this(createPipeChannel(namedPipeFile), threadName);
     }
 
   }
@@ -519,6 +690,10 @@ public abstract class MapperProcess {
     if (this.incrementer != null) {
       this.incrementer.incrCounter(this.counterGroup, "mapper input reads", 1);
     }
+
+    if (this.inputReadsMeter != null) {
+      this.inputReadsMeter.mark();
+    }
   }
 
   /**
@@ -549,6 +724,44 @@ public abstract class MapperProcess {
     this.counterGroup = counterGroup;
   }
 
+  /**
+   * Enable the metrics of the process. The metrics contains a meter for the
+   * input reads, a meter for the bytes read on the standard output of the
+   * mapper and, for each asynchronous writer of the input pipes, gauges for
+   * the bytes written, the bytes waiting in the queue of the writer, the stall
+   * time of the producer and the idle time of the writer (in milliseconds).
+   * @param registry the metric registry
+   * @param prefix prefix of the name of the metrics
+   */
+  public void setMetrics(final MetricRegistry registry, final String prefix) {
+
+    requireNonNull(registry, "registry argument cannot be null");
+    requireNonNull(prefix, "prefix argument cannot be null");
+
+    this.inputReadsMeter = registry.meter(prefix + ".input.reads");
+    this.outputBytesMeter = registry.meter(prefix + ".output.bytes");
+
+    registerPipeWriterMetrics(registry, prefix + ".pipe1",
+        getPipeWriterMetrics1());
+    registerPipeWriterMetrics(registry, prefix + ".pipe2",
+        getPipeWriterMetrics2());
+  }
+
+  private static void registerPipeWriterMetrics(final MetricRegistry registry,
+      final String prefix, final PipeWriterMetrics metrics) {
+
+    if (metrics == null) {
+      return;
+    }
+
+    registry.gauge(prefix + ".bytes.written", metrics::getBytesWritten);
+    registry.gauge(prefix + ".queue.bytes", metrics::getBytesInFlight);
+    registry.gauge(prefix + ".producer.stall.millis",
+        metrics::getProducerStallTime);
+    registry.gauge(prefix + ".writer.idle.millis",
+        metrics::getWriterIdleTime);
+  }
+
   //
   // Low level streams
   //
@@ -693,6 +906,32 @@ public abstract class MapperProcess {
     }
   }
 
+  /**
+   * Get the metrics of the asynchronous writer of the first input pipe.
+   * @return the metrics of the writer or null if the first input is not
+   *         written by an asynchronous writer
+   */
+  public PipeWriterMetrics getPipeWriterMetrics1() {
+
+    return pipeWriterMetrics(this.writer1);
+  }
+
+  /**
+   * Get the metrics of the asynchronous writer of the second input pipe.
+   * @return the metrics of the writer or null if the second input is not
+   *         written by an asynchronous writer
+   */
+  public PipeWriterMetrics getPipeWriterMetrics2() {
+
+    return pipeWriterMetrics(this.writer2);
+  }
+
+  private static PipeWriterMetrics pipeWriterMetrics(final FastqWriter writer) {
+
+    return writer instanceof FastqWriterThread
+        ? ((FastqWriterThread) writer).getMetrics() : null;
+  }
+
   /**
    * Closes the streams for standard input for the mapper. After this the
    * writeEntry() methods cannot be used.
@@ -827,14 +1066,28 @@ public abstract class MapperProcess {
    */
   private static Writer createPipeWriter(final File file) throws IOException {
 
+    final OutputStream os = Channels.newOutputStream(createPipeChannel(file));
+
+    return new OutputStreamWriter(os, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Create pipe channel.
+   * @param file the pipe file to create
+   * @return a channel on the pipe
+   * @throws IOException if an error occurs while creating the pipe or the
+   *           channel
+   */
+  private static FileChannel createPipeChannel(final File file)
+      throws IOException {
+
     FileUtils.createNamedPipe(file);
 
+    // Open the pipe in read/write mode to not block until the mapper opens it
     @SuppressWarnings("resource")
     final RandomAccessFile raf = new RandomAccessFile(file, "rw");
 
-    final OutputStream os = Channels.newOutputStream(raf.getChannel());
-
-    return new OutputStreamWriter(os, StandardCharsets.ISO_8859_1);
+    return raf.getChannel();
   }
 
   /**
@@ -0,0 +1,169 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.bio.readmapper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.kenetre.bio.readmapper.MapperProcess.FastqWriterThread;
+import fr.ens.biologie.genomique.kenetre.bio.readmapper.MapperProcess.PipeWriterMetrics;
+
+public class FastqWriterThreadTest {
+
+  /**
+   * A channel that waits before its first write, like a mapper that is not
+   * yet ready to read its input.
+   */
+  private static final class SlowChannel implements WritableByteChannel {
+
+    private final WritableByteChannel channel;
+    private final long delay;
+    private boolean first = true;
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+
+      if (this.first) {
+        this.first = false;
+        try {
+          Thread.sleep(this.delay);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+
+      return this.channel.write(src);
+    }
+
+    @Override
+    public boolean isOpen() {
+      return this.channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.channel.close();
+    }
+
+    SlowChannel(final WritableByteChannel channel, final long delay) {
+      this.channel = channel;
+      this.delay = delay;
+    }
+  }
+
+  @Test
+  public void testWrite() throws IOException, InterruptedException {
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    final FastqWriterThread writer =
+        new FastqWriterThread(Channels.newChannel(os), "test");
+    final PipeWriterMetrics metrics = writer.getMetrics();
+
+    // The writer thread waits for data
+    Thread.sleep(200);
+
+    final String expected = writeReads(writer, 20000);
+    writer.close();
+
+    assertArrayEquals(expected.getBytes(StandardCharsets.ISO_8859_1),
+        os.toByteArray());
+    assertEquals(expected.length(), metrics.getBytesWritten());
+    assertEquals(0, metrics.getBytesInFlight());
+    assertTrue(metrics.getWriterIdleTime() >= 100);
+  }
+
+  @Test
+  public void testBackPressure() throws IOException {
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    final FastqWriterThread writer = new FastqWriterThread(
+        new SlowChannel(Channels.newChannel(os), 500), "test");
+    final PipeWriterMetrics metrics = writer.getMetrics();
+
+    // Fill more than all the buffers of the ring while the channel is blocked
+    final int readCount = 2
+        * FastqWriterThread.BUFFER_COUNT * FastqWriterThread.BUFFER_SIZE
+        / readLength(0);
+    final String expected = writeReads(writer, readCount);
+    writer.close();
+
+    assertTrue(expected.length()
+        > FastqWriterThread.BUFFER_COUNT * FastqWriterThread.BUFFER_SIZE);
+    assertArrayEquals(expected.getBytes(StandardCharsets.ISO_8859_1),
+        os.toByteArray());
+    assertEquals(expected.length(), metrics.getBytesWritten());
+    assertEquals(0, metrics.getBytesInFlight());
+    assertTrue(metrics.getProducerStallTime() >= 250);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testWriteAfterClose() throws IOException {
+
+    final FastqWriterThread writer = new FastqWriterThread(
+        Channels.newChannel(new ByteArrayOutputStream()), "test");
+    writer.close();
+    writer.write("@read\n");
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static String writeReads(final FastqWriterThread writer,
+      final int count) throws IOException {
+
+    final StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < count; i++) {
+      final String read = createRead(i);
+      writer.write(read);
+      sb.append(read);
+    }
+
+    return sb.toString();
+  }
+
+  private static int readLength(final int i) {
+
+    return createRead(i).length();
+  }
+
+  private static String createRead(final int i) {
+
+    return "@read" + i + "\nACGTACGTACGTACGTACGTACGTACGTACGTACGTACGT\n+\n"
+        + "IIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIII\n";
+  }
+
+}
@@ -0,0 +1,445 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.storage;
+
+import static com.google.common.base.Strings.nullToEmpty;
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import fr.ens.biologie.genomique.kenetre.io.FileUtils;
+import fr.ens.biologie.genomique.kenetre.log.DummyLogger;
+import fr.ens.biologie.genomique.kenetre.log.GenericLogger;
+import fr.ens.biologie.genomique.kenetre.util.StringUtils;
+
+/**
+ * This class define an abstract AnnotationIndexStorage based on an index file.
+ * The size of the storage can be bounded: when a new annotation index is added,
+ * the least recently used annotation indexes are removed until the size of the
+ * storage is lower than the maximal size. The date of the last use of an
+ * annotation index is the date of the last modification of its file.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public abstract class AbstractFileAnnotationIndexStorage
+    implements AnnotationIndexStorage {
+
+  private static final String INDEX_FILENAME = "annotations_index_storage.txt";
+
+  private final DataPath dir;
+  private final long maxSize;
+  private final Map<String, IndexEntry> entries = new LinkedHashMap<>();
+  private final GenericLogger logger;
+
+  /**
+   * This inner class define an entry of the index file.
+   * @author Laurent Jourdren
+   */
+  private static final class IndexEntry {
+
+    String key;
+    String annotationMD5;
+    String fileName;
+    String description;
+
+    @Override
+    public String toString() {
+      return this.getClass().getSimpleName()
+          + "{key=" + this.key + ", annotationMD5=" + this.annotationMD5
+          + ", fileName=" + this.fileName + ", description=" + this.description
+          + "}";
+    }
+  }
+
+  //
+  // Protected methods
+  //
+
+  /**
+   * Create a new DataPath object.
+   * @param source source of the DataPath object
+   * @return a new DataPath object
+   */
+  protected abstract DataPath newDataPath(String source);
+
+  /**
+   * Create a new DataPath object.
+   * @param parent parent of the DataPath object
+   * @param filename name of the file
+   * @return a new DataPath object
+   */
+  protected abstract DataPath newDataPath(DataPath parent, String filename);
+
+  /**
+   * Get from the storage the DataPath of an annotation index.
+   * @param annotationMD5 MD5 sum of the annotation file
+   * @param parameters parameters used to build the annotation index
+   * @return the path of the annotation index or null if not found
+   */
+  protected DataPath getDataPath(final String annotationMD5,
+      final Map<String, String> parameters) {
+
+    requireNonNull(annotationMD5, "annotationMD5 is null");
+    requireNonNull(parameters, "parameters is null");
+
+    final String key = createMD5Sum(
+        createMD5SumMap(annotationMD5, parameters), this.logger);
+    final IndexEntry entry = key == null ? null : this.entries.get(key);
+
+    if (entry == null) {
+      return null;
+    }
+
+    final DataPath result = newDataPath(this.dir, entry.fileName);
+
+    // The annotation index may have been removed by another instance
+    if (!result.exists()) {
+      return null;
+    }
+
+    // Update the date of the last use of the annotation index
+    final File file = result.toFile();
+    if (file != null && !file.setLastModified(System.currentTimeMillis())) {
+      this.logger.warn("Unable to update the last use date of "
+          + entry.fileName + " in annotation index storage");
+    }
+
+    return result;
+  }
+
+  /**
+   * Put in the storage an annotation index.
+   * @param annotationMD5 MD5 sum of the annotation file
+   * @param parameters parameters used to build the annotation index
+   * @param annotationIndex DataPath of the annotation index
+   */
+  protected void put(final String annotationMD5,
+      final Map<String, String> parameters, final DataPath annotationIndex) {
+
+    requireNonNull(annotationMD5, "annotationMD5 is null");
+    requireNonNull(parameters, "parameters is null");
+    requireNonNull(annotationIndex, "annotationIndex is null");
+
+    // Update the index to avoid to lost entries when several instances of
+    // Eoulsan are running
+    try {
+      load();
+    } catch (IOException e) {
+      this.logger.warn("Unable to reload the annotation index storage");
+    }
+
+    if (!annotationIndex.exists()) {
+      return;
+    }
+
+    final Map<String, String> md5Map =
+        createMD5SumMap(annotationMD5, parameters);
+    final String key = createMD5Sum(md5Map, this.logger);
+
+    if (key == null || this.entries.containsKey(key)) {
+      return;
+    }
+
+    final IndexEntry entry = new IndexEntry();
+    entry.key = key;
+    entry.annotationMD5 = annotationMD5.trim();
+    entry.fileName = "annotation-" + key + ".idx";
+    entry.description = md5Map.toString();
+
+    try {
+
+      FileUtils.copy(annotationIndex.rawOpen(),
+          newDataPath(this.dir, entry.fileName).rawCreate());
+      this.entries.put(entry.key, entry);
+      evict(entry);
+      save();
+      this.logger.info("Successfully added "
+          + annotationIndex.getName()
+          + " annotation index to annotation index storage.");
+    } catch (IOException e) {
+      this.logger.warn("Failed to add "
+          + annotationIndex.getName()
+          + " annotation index to annotation index storage: "
+          + e.getMessage());
+    }
+  }
+
+  //
+  // Interface methods
+  //
+
+  @Override
+  public File get(final String annotationMD5,
+      final Map<String, String> parameters) {
+
+    final DataPath result = getDataPath(annotationMD5, parameters);
+
+    return result == null ? null : result.toFile();
+  }
+
+  @Override
+  public void put(final String annotationMD5,
+      final Map<String, String> parameters, final File annotationIndex) {
+
+    requireNonNull(annotationIndex, "annotationIndex is null");
+
+    put(annotationMD5, parameters, new FileDataPath(annotationIndex));
+  }
+
+  //
+  // Eviction
+  //
+
+  /**
+   * Remove the least recently used annotation indexes until the size of the
+   * storage is lower than the maximal size.
+   * @param newEntry the entry that has been just added, never removed
+   */
+  private void evict(final IndexEntry newEntry) {
+
+    if (this.maxSize <= 0) {
+      return;
+    }
+
+    final List<IndexEntry> list = new ArrayList<>(this.entries.values());
+    final Map<IndexEntry, DataPath> paths = new LinkedHashMap<>();
+    long size = 0;
+
+    for (IndexEntry e : list) {
+      final DataPath path = newDataPath(this.dir, e.fileName);
+      paths.put(e, path);
+      size += path.getContentLength();
+    }
+
+    // Oldest entries first
+    list.sort(Comparator.comparingLong(e -> paths.get(e).getLastModified()));
+
+    for (IndexEntry e : list) {
+
+      if (size <= this.maxSize) {
+        break;
+      }
+
+      if (e == newEntry) {
+        continue;
+      }
+
+      final DataPath path = paths.get(e);
+      final long length = path.getContentLength();
+      final File file = path.toFile();
+
+      if (file != null && file.delete()) {
+        this.entries.remove(e.key);
+        size -= length;
+        this.logger.info("Removed "
+            + e.fileName + " annotation index from annotation index storage.");
+      } else {
+        this.logger.warn("Failed to remove "
+            + e.fileName + " annotation index from annotation index storage.");
+      }
+    }
+  }
+
+  //
+  // Sum creation method
+  //
+
+  private static Map<String, String> createMD5SumMap(
+      final String annotationMD5, final Map<String, String> parameters) {
+
+    final LinkedHashMap<String, String> map = new LinkedHashMap<>();
+
+    map.put("annotation.md5sum", nullToEmpty(annotationMD5).trim());
+
+    // Add sorted parameters
+    map.putAll(new TreeMap<>(parameters));
+
+    return map;
+  }
+
+  private static String createMD5Sum(final Map<String, String> map,
+      final GenericLogger logger) {
+
+    MessageDigest md5Digest;
+    try {
+      md5Digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      logger.warn("Failled to create checksum for annotation index: "
+          + e.getMessage());
+      return null;
+    }
+
+    for (Map.Entry<String, String> e : map.entrySet()) {
+
+      md5Digest.update(e.getKey().getBytes(Charset.defaultCharset()));
+      md5Digest.update(
+          nullToEmpty(e.getValue()).getBytes(Charset.defaultCharset()));
+    }
+
+    return StringUtils.md5DigestToString(md5Digest);
+  }
+
+  //
+  // Index management methods
+  //
+
+  /**
+   * Load the information from the index file
+   * @throws IOException if an error occurs while loading the index file
+   */
+  private void load() throws IOException {
+
+    if (!this.dir.exists()) {
+      throw new IOException("Annotation index storage directory not found: "
+          + this.dir.getSource());
+    }
+
+    final DataPath indexFile = newDataPath(this.dir, INDEX_FILENAME);
+
+    // Create an empty index file if no index exists
+    if (!indexFile.exists()) {
+
+      save();
+      return;
+    }
+
+    // Clear the entries (useful when reloading the index)
+    this.entries.clear();
+
+    try (final BufferedReader br = new BufferedReader(
+        new InputStreamReader(indexFile.open(), Charset.defaultCharset()))) {
+
+      final Pattern pattern = Pattern.compile("\t");
+      String line = null;
+
+      while ((line = br.readLine()) != null) {
+
+        final String trimmedLine = line.trim();
+        if ("".equals(trimmedLine) || trimmedLine.startsWith("#")) {
+          continue;
+        }
+
+        final List<String> fields = Arrays.asList(pattern.split(trimmedLine));
+
+        if (fields.size() < 3 || fields.size() > 4) {
+          continue;
+        }
+
+        final IndexEntry e = new IndexEntry();
+        e.key = fields.get(0);
+        e.annotationMD5 = fields.get(1);
+        e.fileName = fields.get(2);
+
+        if (fields.size() == 4) {
+          e.description = fields.get(3);
+        }
+
+        if (newDataPath(this.dir, e.fileName).exists()) {
+          this.entries.put(e.key, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Save the information in the index file
+   * @throws IOException if an error occurs while saving the index file
+   */
+  private void save() throws IOException {
+
+    if (!this.dir.exists()) {
+      throw new IOException("Annotation index storage directory not found: "
+          + this.dir.getSource());
+    }
+
+    final DataPath indexFile = newDataPath(this.dir, INDEX_FILENAME);
+
+    // Create an empty index file
+    try (final BufferedWriter writer = new BufferedWriter(
+        new OutputStreamWriter(indexFile.create(), Charset.defaultCharset()))) {
+      writer.write("#Checksum\tAnnotationChecksum\tIndexFile\tDescription\n");
+
+      for (IndexEntry ie : this.entries.values()) {
+
+        writer.append(ie.key);
+        writer.append("\t");
+        writer.append(ie.annotationMD5);
+        writer.append("\t");
+        writer.append(ie.fileName);
+
+        if (ie.description != null) {
+          writer.append("\t");
+          writer.append(ie.description);
+        }
+
+        writer.append("\n");
+      }
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Protected constructor.
+   * @param dir Path to the annotation index storage
+   * @param maxSize maximal size of the annotation indexes in bytes, no limit if
+   *          lower or equals to 0
+   * @param logger the logger
+   * @throws IOException if an error occurs while testing the annotation index
+   *           storage
+   */
+  protected AbstractFileAnnotationIndexStorage(final DataPath dir,
+      final long maxSize, final GenericLogger logger) throws IOException {
+
+    requireNonNull(dir, "Annotation index directory is null");
+
+    this.dir = dir;
+    this.maxSize = maxSize;
+    this.logger = logger != null ? logger : new DummyLogger();
+    load();
+
+    this.logger.info("Annotation index storage found. "
+        + this.entries.size() + " entries in : " + dir.getSource());
+  }
+
+}
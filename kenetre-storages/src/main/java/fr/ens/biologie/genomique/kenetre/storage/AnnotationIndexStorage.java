@@ -0,0 +1,57 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.storage;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * This interface define a storage of the annotation indexes built by the
+ * expression counters. An annotation index is identified by the MD5 sum of the
+ * annotation file and by the parameters of the counter used to build it.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public interface AnnotationIndexStorage {
+
+  /**
+   * Get the file of an annotation index.
+   * @param annotationMD5 MD5 sum of the annotation file
+   * @param parameters parameters used to build the annotation index
+   * @return the file of the annotation index or null if the index has not yet
+   *         been computed
+   */
+  File get(String annotationMD5, Map<String, String> parameters);
+
+  /**
+   * Put an annotation index in the storage.
+   * @param annotationMD5 MD5 sum of the annotation file
+   * @param parameters parameters used to build the annotation index
+   * @param annotationIndex the file that contains the annotation index
+   */
+  void put(String annotationMD5, Map<String, String> parameters,
+      File annotationIndex);
+
+}
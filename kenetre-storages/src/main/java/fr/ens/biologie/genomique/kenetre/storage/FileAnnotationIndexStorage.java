@@ -0,0 +1,108 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.kenetre.storage;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+
+import fr.ens.biologie.genomique.kenetre.log.GenericLogger;
+
+/**
+ * This class define a basic AnnotationIndexStorage based on an index file.
+ * @since 1.0
+ * @author Laurent Jourdren
+ */
+public class FileAnnotationIndexStorage
+    extends AbstractFileAnnotationIndexStorage {
+
+  @Override
+  protected DataPath newDataPath(String source) {
+
+    return new FileDataPath(source);
+  }
+
+  @Override
+  protected DataPath newDataPath(DataPath parent, String filename) {
+
+    return new FileDataPath(parent, filename);
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Create an AnnotationIndexStorage without size limit.
+   * @param dir the path of the annotation index storage
+   * @param logger the logger
+   * @return an AnnotationIndexStorage object if the path contains an annotation
+   *         index storage or null if no annotation index storage is found
+   */
+  public static AnnotationIndexStorage getInstance(final String dir,
+      final GenericLogger logger) {
+
+    return getInstance(dir, 0, logger);
+  }
+
+  /**
+   * Create an AnnotationIndexStorage.
+   * @param dir the path of the annotation index storage
+   * @param maxSize maximal size of the annotation indexes in bytes, no limit if
+   *          lower or equals to 0
+   * @param logger the logger
+   * @return an AnnotationIndexStorage object if the path contains an annotation
+   *         index storage or null if no annotation index storage is found
+   */
+  public static AnnotationIndexStorage getInstance(final String dir,
+      final long maxSize, final GenericLogger logger) {
+
+    requireNonNull(dir);
+
+    try {
+      return new FileAnnotationIndexStorage(new FileDataPath(dir), maxSize,
+          logger);
+    } catch (IOException | NullPointerException e) {
+      return null;
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   * @param dir the path of the annotation index storage
+   * @param maxSize maximal size of the annotation indexes in bytes
+   * @param logger logger to use
+   * @throws IOException if an error occurs while reading the storage
+   */
+  private FileAnnotationIndexStorage(final DataPath dir, final long maxSize,
+      final GenericLogger logger) throws IOException {
+    super(dir, maxSize, logger);
+  }
+
+}